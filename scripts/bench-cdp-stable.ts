@@ -0,0 +1,147 @@
+/**
+ * CdpEngine DOM-stable detection benchmark.
+ *
+ * Serves a local static fixture page that mutates its DOM in bursts, then
+ * measures time-to-stable for the old approach (MutationObserver state polled
+ * via Runtime.evaluate every 200ms) against the binding-driven detector in
+ * CdpEngine.waitForDomStable. Needs a local Chrome (auto-launched if absent).
+ * Run: npx tsx scripts/bench-cdp-stable.ts [rounds] [burstMs]
+ */
+
+import http from 'node:http';
+import type { AddressInfo } from 'node:net';
+import { CdpEngine } from '../server/web-access/cdp-engine.js';
+
+const DOM_STABLE_MS = 300;
+const POLL_INTERVAL_MS = 200;
+
+const FIXTURE_HTML = `<!doctype html>
+<html>
+<head><meta charset="utf-8"><title>cdp stable fixture</title></head>
+<body>
+  <ul id="list"></ul>
+  <script>
+    window.__benchQuietAt = Date.now();
+    // Append / mutate list items every 16ms for \`ms\`, then go quiet
+    window.burst = (ms) => {
+      const list = document.getElementById('list');
+      const end = Date.now() + ms;
+      const tick = () => {
+        const li = document.createElement('li');
+        li.textContent = 'row ' + list.children.length;
+        list.appendChild(li);
+        if (list.children.length > 50) list.removeChild(list.firstChild);
+        window.__benchQuietAt = Date.now();
+        if (Date.now() < end) setTimeout(tick, 16);
+      };
+      tick();
+      return true;
+    };
+  </script>
+</body>
+</html>`;
+
+interface Sample {
+  timeToStableMs: number;
+  /** Detection delay past the ideal moment (last mutation + DOM_STABLE_MS) */
+  lagMs: number;
+  roundTrips: number;
+}
+
+function startFixtureServer(): Promise<http.Server> {
+  const server = http.createServer((_req, res) => {
+    res.writeHead(200, { 'Content-Type': 'text/html; charset=utf-8' });
+    res.end(FIXTURE_HTML);
+  });
+  return new Promise(resolve => server.listen(0, '127.0.0.1', () => resolve(server)));
+}
+
+async function evalValue(engine: CdpEngine, tabId: string, expression: string): Promise<any> {
+  const resp = await engine.evaluate(tabId, expression);
+  if (!resp.success) throw new Error(resp.error);
+  return resp.result;
+}
+
+/** Baseline: the pre-binding implementation — poll an injected observer's timestamp */
+async function pollingWait(engine: CdpEngine, tabId: string): Promise<number> {
+  let roundTrips = 1;
+  await evalValue(engine, tabId, `(() => {
+    if (window.__benchPollObserver) return 'already-installed';
+    window.__benchLastMutation = Date.now();
+    window.__benchPollObserver = new MutationObserver(() => { window.__benchLastMutation = Date.now(); });
+    window.__benchPollObserver.observe(document.body, { childList: true, subtree: true, attributes: true });
+    return 'installed';
+  })()`);
+  for (;;) {
+    roundTrips++;
+    const elapsed = await evalValue(engine, tabId, 'Date.now() - window.__benchLastMutation');
+    if (elapsed >= DOM_STABLE_MS) return roundTrips;
+    await new Promise(r => setTimeout(r, POLL_INTERVAL_MS));
+  }
+}
+
+async function pushWait(engine: CdpEngine, tabId: string): Promise<number> {
+  await engine.waitForDomStable(tabId, { timeoutMs: 10_000, networkIdleMs: 0, domStableMs: DOM_STABLE_MS });
+  return 0;
+}
+
+async function runRound(
+  engine: CdpEngine,
+  tabId: string,
+  burstMs: number,
+  wait: (engine: CdpEngine, tabId: string) => Promise<number>,
+): Promise<Sample> {
+  const start = Date.now();
+  await evalValue(engine, tabId, `burst(${burstMs})`);
+  const roundTrips = await wait(engine, tabId);
+  const stableAt = Date.now();
+  const quietAt = await evalValue(engine, tabId, 'window.__benchQuietAt');
+  return {
+    timeToStableMs: stableAt - start,
+    lagMs: stableAt - (quietAt + DOM_STABLE_MS),
+    roundTrips,
+  };
+}
+
+function report(label: string, samples: Sample[]): void {
+  const avg = (pick: (s: Sample) => number) => samples.reduce((sum, s) => sum + pick(s), 0) / samples.length;
+  const max = (pick: (s: Sample) => number) => Math.max(...samples.map(pick));
+  console.log(
+    `${label.padEnd(28)} time-to-stable avg ${avg(s => s.timeToStableMs).toFixed(0).padStart(5)} ms` +
+    `  lag avg ${avg(s => s.lagMs).toFixed(0).padStart(4)} ms  max ${String(max(s => s.lagMs)).padStart(4)} ms` +
+    `  evaluate round trips/wait ${avg(s => s.roundTrips).toFixed(1)}`,
+  );
+}
+
+async function main(): Promise<void> {
+  const rounds = Number(process.argv[2]) || 10;
+  const burstMs = Number(process.argv[3]) || 500;
+  const server = await startFixtureServer();
+  const { port } = server.address() as AddressInfo;
+  const engine = new CdpEngine();
+
+  try {
+    const tab = await engine.newTab(`http://127.0.0.1:${port}/`);
+    // Warm both detectors so installation is not part of the measurement
+    await pollingWait(engine, tab.tabId);
+    await pushWait(engine, tab.tabId);
+
+    console.log(`DOM-stable benchmark (${rounds} rounds, ${burstMs}ms mutation burst, domStableMs ${DOM_STABLE_MS})\n`);
+    const polling: Sample[] = [];
+    const push: Sample[] = [];
+    for (let i = 0; i < rounds; i++) {
+      polling.push(await runRound(engine, tab.tabId, burstMs, pollingWait));
+      push.push(await runRound(engine, tab.tabId, burstMs, pushWait));
+    }
+    report(`polling (${POLL_INTERVAL_MS}ms evaluate)`, polling);
+    report('push (Runtime.addBinding)', push);
+  } finally {
+    await engine.dispose();
+    server.close();
+  }
+}
+
+main().catch(err => {
+  console.error(err);
+  process.exit(1);
+});
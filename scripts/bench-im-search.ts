@@ -0,0 +1,106 @@
+/**
+ * IM search benchmark over a synthetic message database.
+ *
+ * Compares the old `content LIKE '%q%'` full scan against the FTS5 trigram
+ * index behind IMStore.searchMessages (see server/im/im-search-index.ts).
+ * Run: npx tsx scripts/bench-im-search.ts [messageCount]   (default 1,000,000)
+ */
+
+import fs from 'fs';
+import os from 'os';
+import path from 'path';
+import { SessionStore } from '../server/session-store.js';
+import { IMStore } from '../server/im/im-store.js';
+
+const ROOMS = 200;
+const WORDS = [
+  'deploy', 'staging', 'cluster', 'rollback', 'review', 'merge', 'pipeline', 'latency',
+  'kubernetes', 'database', 'migration', 'incident', 'dashboard', 'release', 'hotfix',
+  '部署', '生产环境', '需求评审', '回滚', '数据库', '性能优化', '告警', '发布计划', '接口联调', '测试用例',
+];
+
+function tmpDbPath(): string {
+  return path.join(os.tmpdir(), `sman-bench-im-${process.pid}-${Date.now()}.db`);
+}
+
+function cleanup(dbPath: string): void {
+  for (const ext of ['', '-wal', '-shm']) {
+    const f = dbPath + ext;
+    if (fs.existsSync(f)) fs.unlinkSync(f);
+  }
+}
+
+/** Deterministic PRNG so runs are comparable */
+function rng(seed: number): () => number {
+  let s = seed;
+  return () => {
+    s = (s * 1103515245 + 12345) & 0x7fffffff;
+    return s / 0x7fffffff;
+  };
+}
+
+function time<T>(fn: () => T): { ms: number; result: T } {
+  const start = process.hrtime.bigint();
+  const result = fn();
+  return { ms: Number(process.hrtime.bigint() - start) / 1e6, result };
+}
+
+function report(label: string, ms: number, hits: number): void {
+  console.log(`${label.padEnd(52)} ${ms.toFixed(2).padStart(10)} ms  ${String(hits).padStart(4)} hits`);
+}
+
+function main(): void {
+  const count = Number(process.argv[2]) || 1_000_000;
+  const dbPath = tmpDbPath();
+  const store = new SessionStore(dbPath);
+  const db = store.getDatabase();
+  const im = new IMStore(db);
+
+  try {
+    const random = rng(42);
+    const insert = db.prepare(
+      'INSERT INTO im_messages (id, room_id, sender, content, type, timestamp, seq) VALUES (?, ?, ?, ?, ?, ?, ?)',
+    );
+    const fill = db.transaction((from: number, to: number) => {
+      for (let i = from; i < to; i++) {
+        const words: string[] = [];
+        const n = 5 + Math.floor(random() * 20);
+        for (let w = 0; w < n; w++) words.push(WORDS[Math.floor(random() * WORDS.length)]);
+        // A small share of rows are undecryptable ciphertext
+        const content = i % 100 === 0 ? `enc:${Buffer.from(words.join(' ')).toString('base64')}` : words.join(' ');
+        insert.run(`m${i}`, `room-${i % ROOMS}`, 'bench', content, i % 7 === 0 ? 'agent_output' : 'text', i, i);
+      }
+    });
+
+    const build = time(() => {
+      for (let i = 0; i < count; i += 10_000) fill(i, Math.min(i + 10_000, count));
+    });
+    console.log(`IM search benchmark — ${count} messages, ${ROOMS} rooms (indexed insert: ${(build.ms / 1000).toFixed(1)} s)\n`);
+
+    const likeScan = db.prepare(
+      'SELECT id FROM im_messages WHERE content LIKE ? ORDER BY timestamp DESC LIMIT ?',
+    );
+    const queries: Array<{ q: string; roomId?: string }> = [
+      { q: 'kubernetes' },
+      { q: '性能优化' },
+      { q: 'rollback hotfix' },
+      { q: '告警' },
+      { q: 'incident', roomId: 'room-7' },
+    ];
+    for (const { q, roomId } of queries) {
+      const scope = roomId ? ` in ${roomId}` : '';
+      const baseline = time(() => roomId
+        ? db.prepare('SELECT id FROM im_messages WHERE room_id = ? AND content LIKE ? ORDER BY timestamp DESC LIMIT ?')
+          .all(roomId, `%${q}%`, 50)
+        : likeScan.all(`%${q}%`, 50));
+      report(`LIKE scan   "${q}"${scope}`, baseline.ms, baseline.result.length);
+      const fts = time(() => im.searchMessages(q, { roomId, limit: 50 }));
+      report(`FTS5 search "${q}"${scope}`, fts.ms, fts.result.length);
+    }
+  } finally {
+    store.close();
+    cleanup(dbPath);
+  }
+}
+
+main();
@@ -0,0 +1,148 @@
+/**
+ * Streamed-markdown rendering benchmark.
+ *
+ * Replays a streamed answer (~50KB by default) flush by flush and compares
+ * re-splitting the whole message on every flush against the incremental
+ * MarkdownBlockSplitter behind the chat's markdown worker
+ * (src/lib/markdown-worker.ts). Besides split time it reports how much text
+ * each approach hands to the markdown renderer per flush — the full message
+ * vs only the blocks that changed.
+ *
+ * Run: npx tsx scripts/bench-markdown-blocks.ts [recording.json] [deltasPerFlush]
+ * A recording is a JSON array of the `chat.delta` content strings of one answer.
+ */
+
+import fs from 'fs';
+import { MarkdownBlockSplitter } from '../src/lib/markdown-blocks';
+
+const TARGET_BYTES = 50 * 1024;
+
+/** Deterministic PRNG so runs are comparable */
+function rng(seed: number): () => number {
+  let s = seed;
+  return () => {
+    s = (s * 1103515245 + 12345) & 0x7fffffff;
+    return s / 0x7fffffff;
+  };
+}
+
+/** A long answer shaped like real ones: prose, lists, tables and big code blocks */
+function syntheticAnswer(random: () => number): string {
+  const prose = [
+    'The scheduler keeps one queue per workspace so a slow repository never blocks the others.',
+    '这里需要注意：批量任务在暂停后恢复时，会从上一次的游标继续，而不是重新扫描全部数据。',
+    'Each retry doubles the delay up to the configured cap, and the jitter keeps clients from synchronizing.',
+    '如果配置了代理，请求会先经过本地转发，再由上游统一鉴权。',
+  ];
+  const parts: string[] = [];
+  let section = 1;
+  while (parts.join('').length < TARGET_BYTES) {
+    parts.push(`## ${section}. Step ${section}\n\n`);
+    parts.push(`${prose[Math.floor(random() * prose.length)]} ${prose[Math.floor(random() * prose.length)]}\n\n`);
+    parts.push(Array.from({ length: 3 + Math.floor(random() * 4) }, (_, i) => `- item ${i}: \`value_${i}\` ${prose[i % prose.length]}\n`).join('') + '\n');
+    if (random() < 0.6) {
+      const lines = Array.from({ length: 20 + Math.floor(random() * 120) }, (_, i) =>
+        `  const value${i} = await store.get('key-${i}') ?? compute(${i}, options); // ${i % 7 === 0 ? '注释' : 'note'}\n`);
+      parts.push('```ts\nexport async function step' + section + '(store: Store, options: Options) {\n' + lines.join('') + '}\n```\n\n');
+    }
+    if (random() < 0.3) {
+      parts.push('| Field | Type | Notes |\n|---|---|---|\n' + Array.from({ length: 6 }, (_, i) => `| f${i} | string | ${prose[i % prose.length].slice(0, 30)} |\n`).join('') + '\n');
+    }
+    section++;
+  }
+  return parts.join('');
+}
+
+/** Cut text into SSE-sized deltas (1..60 chars) */
+function toDeltas(text: string, random: () => number): string[] {
+  const deltas: string[] = [];
+  for (let i = 0; i < text.length;) {
+    const n = 1 + Math.floor(random() * 60);
+    deltas.push(text.slice(i, i + n));
+    i += n;
+  }
+  return deltas;
+}
+
+function percentile(sorted: number[], p: number): number {
+  return sorted[Math.min(sorted.length - 1, Math.floor(sorted.length * p))];
+}
+
+interface Result {
+  totalMs: number;
+  p50Ms: number;
+  p99Ms: number;
+  /** Characters handed to the renderer per flush */
+  avgRenderChars: number;
+  /** Blocks whose text changed per flush */
+  avgRenderBlocks: number;
+}
+
+function run(flushes: string[], incremental: boolean): Result {
+  const times: number[] = [];
+  let renderChars = 0;
+  let renderBlocks = 0;
+  const splitter = new MarkdownBlockSplitter();
+
+  for (const text of flushes) {
+    const start = process.hrtime.bigint();
+    let changed;
+    if (incremental) {
+      const { changedFrom } = splitter.update(text);
+      changed = splitter.blocks(changedFrom);
+    } else {
+      // Stateless split of the whole message, as a non-incremental renderer does per update
+      const full = new MarkdownBlockSplitter();
+      full.update(text);
+      changed = full.blocks();
+    }
+    times.push(Number(process.hrtime.bigint() - start) / 1e6);
+    renderBlocks += changed.length;
+    for (const block of changed) renderChars += block.text.length;
+  }
+
+  const sorted = [...times].sort((a, b) => a - b);
+  return {
+    totalMs: times.reduce((a, b) => a + b, 0),
+    p50Ms: percentile(sorted, 0.5),
+    p99Ms: percentile(sorted, 0.99),
+    avgRenderChars: renderChars / flushes.length,
+    avgRenderBlocks: renderBlocks / flushes.length,
+  };
+}
+
+function report(label: string, r: Result): void {
+  console.log(
+    `${label.padEnd(20)} total ${r.totalMs.toFixed(1).padStart(8)} ms  p50 ${r.p50Ms.toFixed(3).padStart(7)} ms  ` +
+    `p99 ${r.p99Ms.toFixed(3).padStart(7)} ms  render/flush ${Math.round(r.avgRenderChars).toString().padStart(6)} chars ` +
+    `${r.avgRenderBlocks.toFixed(1).padStart(5)} blocks`,
+  );
+}
+
+function main(): void {
+  const random = rng(42);
+  const recording = process.argv[2];
+  const deltasPerFlush = Number(process.argv[3]) || 4;
+  const deltas: string[] = recording
+    ? JSON.parse(fs.readFileSync(recording, 'utf-8'))
+    : toDeltas(syntheticAnswer(random), random);
+
+  // chat.ts batches deltas into pendingText and flushes on a timer
+  const flushes: string[] = [];
+  let text = '';
+  for (let i = 0; i < deltas.length; i++) {
+    text += deltas[i];
+    if ((i + 1) % deltasPerFlush === 0 || i === deltas.length - 1) flushes.push(text);
+  }
+
+  console.log(`Answer: ${(text.length / 1024).toFixed(1)} KB, ${deltas.length} deltas, ${flushes.length} flushes` +
+    `${recording ? ` (recording ${recording})` : ' (synthetic)'}`);
+  // Warm up the JIT on both paths
+  run(flushes.slice(0, 200), false);
+  run(flushes.slice(0, 200), true);
+
+  report('full re-split', run(flushes, false));
+  report('incremental', run(flushes, true));
+}
+
+main();
@@ -0,0 +1,118 @@
+/**
+ * SQLite write-path microbenchmark.
+ *
+ * Compares the old per-call prepare + autocommit pattern against the
+ * StatementCache / transaction / WriteBatcher data-access layer.
+ * Run: npx tsx scripts/bench-sqlite.ts [messageCount]
+ */
+
+import fs from 'fs';
+import os from 'os';
+import path from 'path';
+import { SessionStore } from '../server/session-store.js';
+
+function tmpDbPath(label: string): string {
+  return path.join(os.tmpdir(), `sman-bench-${label}-${process.pid}-${Date.now()}.db`);
+}
+
+function cleanup(dbPath: string): void {
+  for (const ext of ['', '-wal', '-shm']) {
+    const f = dbPath + ext;
+    if (fs.existsSync(f)) fs.unlinkSync(f);
+  }
+}
+
+function report(label: string, ops: number, ms: number): void {
+  const perSec = Math.round((ops / ms) * 1000);
+  console.log(`${label.padEnd(44)} ${String(ops).padStart(7)} ops  ${ms.toFixed(1).padStart(9)} ms  ${String(perSec).padStart(9)} ops/s`);
+}
+
+function time(fn: () => void): number {
+  const start = process.hrtime.bigint();
+  fn();
+  return Number(process.hrtime.bigint() - start) / 1e6;
+}
+
+/** Baseline: prepare on every call, two autocommitted statements per message */
+function benchAddMessageBaseline(count: number): void {
+  const dbPath = tmpDbPath('baseline');
+  const store = new SessionStore(dbPath);
+  store.createSession({ id: 's1', systemId: 'bench', workspace: '/bench' });
+  const db = store.getDatabase();
+  const ms = time(() => {
+    for (let i = 0; i < count; i++) {
+      db.prepare("UPDATE sessions SET last_active_at = datetime('now') WHERE id = ?").run('s1');
+      db.prepare('INSERT INTO messages (session_id, role, content, content_blocks) VALUES (?, ?, ?, ?)')
+        .run('s1', 'user', `message ${i}`, null);
+    }
+  });
+  report('addMessage (prepare per call, autocommit)', count, ms);
+  store.close();
+  cleanup(dbPath);
+}
+
+function benchAddMessage(count: number): void {
+  const dbPath = tmpDbPath('cached');
+  const store = new SessionStore(dbPath);
+  store.createSession({ id: 's1', systemId: 'bench', workspace: '/bench' });
+  const ms = time(() => {
+    for (let i = 0; i < count; i++) {
+      store.addMessage('s1', { role: 'user', content: `message ${i}` });
+    }
+  });
+  report('addMessage (cached statements, transaction)', count, ms);
+  store.close();
+  cleanup(dbPath);
+}
+
+/** Baseline: each streaming tick does SELECT + UPDATE/INSERT immediately */
+function benchPartialBaseline(count: number, sessions: number): void {
+  const dbPath = tmpDbPath('partial-baseline');
+  const store = new SessionStore(dbPath);
+  for (let s = 0; s < sessions; s++) store.createSession({ id: `s${s}`, systemId: 'bench', workspace: '/bench' });
+  const db = store.getDatabase();
+  const ms = time(() => {
+    for (let i = 0; i < count; i++) {
+      const sessionId = `s${i % sessions}`;
+      const existing = db.prepare('SELECT id FROM messages WHERE session_id = ? AND is_partial = 1 ORDER BY id DESC LIMIT 1')
+        .get(sessionId) as { id: number } | undefined;
+      if (existing) {
+        db.prepare('UPDATE messages SET content = ?, content_blocks = ? WHERE id = ?').run(`partial ${i}`, null, existing.id);
+      } else {
+        db.prepare('INSERT INTO messages (session_id, role, content, content_blocks, is_partial) VALUES (?, ?, ?, ?, 1)')
+          .run(sessionId, 'assistant', `partial ${i}`, null);
+      }
+    }
+  });
+  report(`partial upserts x${sessions} sessions (immediate)`, count, ms);
+  store.close();
+  cleanup(dbPath);
+}
+
+function benchPartialBatched(count: number, sessions: number): void {
+  const dbPath = tmpDbPath('partial-batched');
+  const store = new SessionStore(dbPath);
+  for (let s = 0; s < sessions; s++) store.createSession({ id: `s${s}`, systemId: 'bench', workspace: '/bench' });
+  const ms = time(() => {
+    for (let i = 0; i < count; i++) {
+      store.upsertPartialMessage(`s${i % sessions}`, `partial ${i}`);
+      // Simulate the flush timer firing once per streaming "tick" of 50 updates
+      if (i % 50 === 49) store.flushPendingWrites();
+    }
+    store.flushPendingWrites();
+  });
+  report(`partial upserts x${sessions} sessions (group commit)`, count, ms);
+  store.close();
+  cleanup(dbPath);
+}
+
+function main(): void {
+  const count = Number(process.argv[2]) || 5000;
+  console.log(`SQLite write benchmark (${count} ops each)\n`);
+  benchAddMessageBaseline(count);
+  benchAddMessage(count);
+  benchPartialBaseline(count, 4);
+  benchPartialBatched(count, 4);
+}
+
+main();
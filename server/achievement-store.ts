@@ -1,6 +1,7 @@
 import betterSqlite3 from 'better-sqlite3';
 import type { Database } from 'better-sqlite3';
 import { createLogger, type Logger } from './utils/logger.js';
+import { StatementCache } from './utils/sqlite.js';
 
 // @ts-expect-error - better-sqlite3 ESM interop
 const DatabaseConstructor = betterSqlite3 as unknown as typeof betterSqlite3.default;
@@ -30,14 +31,20 @@ export interface AchievementBoardEntry {
 
 export class AchievementStore {
   private db: Database;
+  private statements: StatementCache;
   private log: Logger;
 
   constructor(dbPath: string) {
     this.db = new DatabaseConstructor(dbPath);
+    this.statements = new StatementCache(this.db);
     this.log = createLogger('AchievementStore');
     this.init();
   }
 
+  private stmt(sql: string) {
+    return this.statements.get(sql);
+  }
+
   private init(): void {
     this.db.exec(`
       CREATE TABLE IF NOT EXISTS achievement_progress (
@@ -81,56 +88,59 @@ export class AchievementStore {
   }
 
   getProgress(achievementId: string): AchievementProgress | undefined {
-    return this.db.prepare(
+    return this.stmt(
       'SELECT achievement_id as achievementId, current_value as currentValue, unlocked_at as unlockedAt, notified_at as notifiedAt FROM achievement_progress WHERE achievement_id = ?'
     ).get(achievementId) as AchievementProgress | undefined;
   }
 
   setProgress(achievementId: string, value: number): void {
-    this.db.prepare(
+    this.stmt(
       'INSERT INTO achievement_progress (achievement_id, current_value, unlocked_at) VALUES (?, ?, NULL) ON CONFLICT(achievement_id) DO UPDATE SET current_value = ?, unlocked_at = unlocked_at'
     ).run(achievementId, value, value);
   }
 
   unlock(achievementId: string): void {
     const now = new Date().toISOString();
-    this.db.prepare(
+    this.stmt(
       'INSERT INTO achievement_progress (achievement_id, current_value, unlocked_at) VALUES (?, 0, ?) ON CONFLICT(achievement_id) DO UPDATE SET unlocked_at = ?'
     ).run(achievementId, now, now);
   }
 
   markNotified(achievementId: string): void {
     const now = new Date().toISOString();
-    this.db.prepare(
+    this.stmt(
       'UPDATE achievement_progress SET notified_at = ? WHERE achievement_id = ?'
     ).run(now, achievementId);
   }
 
   getAllProgress(): AchievementProgress[] {
-    return this.db.prepare(
+    return this.stmt(
       'SELECT achievement_id as achievementId, current_value as currentValue, unlocked_at as unlockedAt, notified_at as notifiedAt FROM achievement_progress'
     ).all() as AchievementProgress[];
   }
 
   getStat(key: string): string | undefined {
-    const row = this.db.prepare('SELECT value FROM achievement_stats WHERE key = ?').get(key) as { value: string } | undefined;
+    const row = this.stmt('SELECT value FROM achievement_stats WHERE key = ?').get(key) as { value: string } | undefined;
     return row?.value;
   }
 
   setStat(key: string, value: string): void {
     const now = new Date().toISOString();
-    this.db.prepare(
+    this.stmt(
       'INSERT INTO achievement_stats (key, value, updated_at) VALUES (?, ?, ?) ON CONFLICT(key) DO UPDATE SET value = ?, updated_at = ?'
     ).run(key, value, now, value, now);
   }
 
   incrementStat(key: string, delta: number = 1): void {
-    const current = parseInt(this.getStat(key) || '0', 10);
-    this.setStat(key, String(current + delta));
+    // Read-modify-write in one transaction
+    this.db.transaction(() => {
+      const current = parseInt(this.getStat(key) || '0', 10);
+      this.setStat(key, String(current + delta));
+    })();
   }
 
   getAllStats(): Record<string, string> {
-    const rows = this.db.prepare('SELECT key, value FROM achievement_stats').all() as { key: string; value: string }[];
+    const rows = this.stmt('SELECT key, value FROM achievement_stats').all() as { key: string; value: string }[];
     const result: Record<string, string> = {};
     for (const row of rows) {
       result[row.key] = row.value;
@@ -139,12 +149,16 @@ export class AchievementStore {
   }
 
   getStreak(): StreakData {
-    return this.db.prepare(
+    return this.stmt(
       'SELECT current_streak as currentStreak, longest_streak as longestStreak, last_active_date as lastActiveDate FROM achievement_streaks WHERE id = 1'
     ).get() as StreakData;
   }
 
   updateStreak(today: string): { current: number; longest: number } {
+    return this.db.transaction(() => this.updateStreakTx(today))();
+  }
+
+  private updateStreakTx(today: string): { current: number; longest: number } {
     const streak = this.getStreak();
     const lastDate = streak.lastActiveDate;
 
@@ -163,7 +177,7 @@ export class AchievementStore {
     }
 
     const newLongest = Math.max(streak.longestStreak, newCurrent);
-    this.db.prepare(
+    this.stmt(
       'UPDATE achievement_streaks SET current_streak = ?, longest_streak = ?, last_active_date = ? WHERE id = 1'
     ).run(newCurrent, newLongest, today);
 
@@ -171,13 +185,13 @@ export class AchievementStore {
   }
 
   getBoard(): AchievementBoardEntry[] {
-    return this.db.prepare(
+    return this.stmt(
       'SELECT agent_id as agentId, agent_name as agentName, total_unlocked as totalUnlocked, total_points as totalPoints, tier_counts as tierCounts, dimension_scores as dimensionScores, last_synced as lastSynced FROM achievement_board ORDER BY total_points DESC'
     ).all() as AchievementBoardEntry[];
   }
 
   upsertBoardEntry(entry: AchievementBoardEntry): void {
-    this.db.prepare(
+    this.stmt(
       `INSERT INTO achievement_board (agent_id, agent_name, total_unlocked, total_points, tier_counts, dimension_scores, last_synced)
        VALUES (?, ?, ?, ?, ?, ?, ?)
        ON CONFLICT(agent_id) DO UPDATE SET
@@ -1,21 +1,28 @@
-import { execFile } from 'child_process';
-import { promisify } from 'util';
+import { spawn } from 'child_process';
 import path from 'path';
 import fs from 'fs';
 import os from 'os';
 import { createLogger, type Logger } from './utils/logger.js';
 import type { BatchStore } from './batch-store.js';
+import type { BatchItem } from './types.js';
 import type { ClaudeSessionManager } from './claude-session.js';
 import { Semaphore, SemaphoreStoppedError } from './semaphore.js';
-import { renderTemplate, detectInterpreter } from './batch-utils.js';
+import { renderTemplate, detectInterpreter, JsonItemStream } from './batch-utils.js';
 import { emitAchievementEvent } from './achievement-events.js';
 
-const execFileAsync = promisify(execFile);
-
 const MAX_ITEMS = 100_000;
 const TEST_TIMEOUT_MS = 30_000;
-const MAX_BUFFER = 10 * 1024 * 1024; // 10MB
+const MAX_ITEM_CHARS = 10 * 1024 * 1024; // 10MB per item
+const MAX_STDERR_CHARS = 64 * 1024;
+/** Items inserted per transaction while ingesting generator output */
+const INGEST_CHUNK_SIZE = 1000;
+/** Items returned to the client with the test result */
+const TEST_RESULT_ITEMS = 100;
+/** Pending items loaded per page during execution */
+const EXEC_PAGE_SIZE = 500;
 const DRAIN_TIMEOUT_MS = 30 * 60 * 1000; // 30 minutes
+/** At most one batch.progress frame per task per window */
+const PROGRESS_INTERVAL_MS = 250;
 
 function isoNow(): string {
   return new Date().toISOString();
@@ -37,12 +44,22 @@ function extractTextFromMessage(msg: any): string {
   return '';
 }
 
+interface ActiveExecution {
+  semaphore: Semaphore;
+  cancelled: boolean;
+  /** Counters of this run, kept in memory; the store persists them via batched writes */
+  successCount: number;
+  failedCount: number;
+  totalCost: number;
+  totalItems: number;
+  /** Items dispatched but not finished; the run completes when this empties */
+  inFlight: Set<Promise<void>>;
+  progressTimer: ReturnType<typeof setTimeout> | null;
+}
+
 export class BatchEngine {
   private log: Logger;
-  private activeExecutions = new Map<string, {
-    semaphore: Semaphore;
-    cancelled: boolean;
-  }>();
+  private activeExecutions = new Map<string, ActiveExecution>();
   private _sessionManager: ClaudeSessionManager | null = null;
   private _config: { apiKey: string; model: string; baseUrl?: string } | null = null;
   private onProgressCallback: ((taskId: string, data: object) => void) | null = null;
@@ -73,15 +90,30 @@ export class BatchEngine {
     this.onProgressCallback = callback;
   }
 
-  private emitProgress(taskId: string): void {
-    if (!this.onProgressCallback) return;
-    const task = this.store.getTask(taskId);
-    if (!task) return;
-    this.onProgressCallback(taskId, {
-      successCount: task.successCount,
-      failedCount: task.failedCount,
-      totalItems: task.totalItems,
-      totalCost: task.totalCost,
+  /**
+   * Rate-limited progress: item transitions within PROGRESS_INTERVAL_MS are
+   * aggregated into one frame built from the in-memory counters (no DB read).
+   */
+  private scheduleProgress(taskId: string, exec: ActiveExecution): void {
+    if (!this.onProgressCallback || exec.progressTimer) return;
+    exec.progressTimer = setTimeout(() => {
+      exec.progressTimer = null;
+      this.emitProgress(taskId, exec);
+    }, PROGRESS_INTERVAL_MS);
+  }
+
+  private emitProgress(taskId: string, exec: ActiveExecution): void {
+    if (exec.progressTimer) {
+      clearTimeout(exec.progressTimer);
+      exec.progressTimer = null;
+    }
+    // Cumulative totals, so a frame superseded in a slow client's outbox loses nothing
+    this.onProgressCallback?.(taskId, {
+      successCount: exec.successCount,
+      failedCount: exec.failedCount,
+      totalItems: exec.totalItems,
+      totalCost: exec.totalCost,
+      running: exec.inFlight.size,
     });
   }
 
@@ -106,7 +138,8 @@ export class BatchEngine {
       '## Instructions:',
       '- Generate a self-contained script that fetches the data described in batch.md',
       '- Use the environment variables listed above for connections',
-      '- Output a JSON array to stdout (nothing else to stdout)',
+      '- Print the items to stdout as NDJSON (one JSON object per line) or as a single JSON array; nothing else to stdout',
+      '- Print items as they are fetched instead of collecting everything in memory first',
       '- The script should be executable with the appropriate interpreter',
       '- Do not include any interactive input prompts',
     ].join('\n');
@@ -132,7 +165,7 @@ export class BatchEngine {
         systemPrompt: {
           type: 'preset' as const,
           preset: 'claude_code' as const,
-          append: 'You are a data fetching script generator. Generate ONLY the script code, wrapped in a code block. The output must be a JSON array printed to stdout.',
+          append: 'You are a data fetching script generator. Generate ONLY the script code, wrapped in a code block. The output must be NDJSON (one JSON object per line) or a JSON array printed to stdout.',
         },
       };
       const q = query({
@@ -160,11 +193,16 @@ export class BatchEngine {
 
   // === Test ===
 
-  async testCode(taskId: string): Promise<{ items: Record<string, unknown>[]; preview: string }> {
+  async testCode(taskId: string): Promise<{ items: Record<string, unknown>[]; preview: string; totalItems: number }> {
     const task = this.store.getTask(taskId);
     if (!task) throw new Error(`Task not found: ${taskId}`);
     if (!task.generatedCode) throw new Error('No generated code for task');
+    // The items are rewritten below; an execution is paging through and updating them
+    if (this.activeExecutions.has(taskId) || task.status === 'running' || task.status === 'paused') {
+      throw new Error(`Cannot test task ${taskId} while it is ${task.status}`);
+    }
 
+    const previousStatus = task.status;
     this.store.updateTask(taskId, { status: 'testing' });
 
     const interpreter = detectInterpreter(task.generatedCode);
@@ -175,32 +213,121 @@ export class BatchEngine {
     const scriptPath = path.join(tmpDir, `fetch.${extMap[interpreter] || 'sh'}`);
     fs.writeFileSync(scriptPath, task.generatedCode);
 
+    const ingest = { replaced: false };
     try {
-      const { stdout } = await execFileAsync(interpreter, [scriptPath], {
-        cwd: tmpDir,
-        timeout: TEST_TIMEOUT_MS,
-        env: { ...process.env as Record<string, string>, ...envVars },
-        maxBuffer: MAX_BUFFER,
-      });
-
-      const items = JSON.parse(stdout.trim());
-      if (!Array.isArray(items)) throw new Error('Output is not a JSON array');
-      if (items.length > MAX_ITEMS) throw new Error(`数据量过大: ${items.length} 条，上限 ${MAX_ITEMS} 条`);
-
-      this.store.updateTask(taskId, { status: 'tested' });
+      const { items, totalItems } = await this.ingestScriptOutput(taskId, interpreter, scriptPath, tmpDir, envVars, ingest);
+      this.store.updateTask(taskId, { status: 'tested', totalItems });
+      this.log.info(`Ingested ${totalItems} items for task ${taskId}`);
 
       return {
         items,
         preview: items.slice(0, 10).map(i => JSON.stringify(i)).join('\n'),
+        totalItems,
       };
     } catch (err) {
-      this.store.updateTask(taskId, { status: 'generated' });
+      // Old items are gone and the new ones are incomplete
+      if (ingest.replaced) this.store.clearItems(taskId);
+      // The script produced nothing: earlier items (and the status they belong to) are kept
+      const keptItems = !ingest.replaced && task.totalItems > 0;
+      this.store.updateTask(taskId, { status: keptItems ? previousStatus : 'generated' });
       throw err;
     } finally {
       fs.rmSync(tmpDir, { recursive: true, force: true });
     }
   }
 
+  /**
+   * Run the generator script and stream its stdout into batch_items.
+   * Items are parsed as they arrive and inserted INGEST_CHUNK_SIZE per transaction,
+   * so memory stays bounded by one chunk no matter how much the script prints.
+   * The task's existing items are only cleared once the first chunk is ready
+   * (or the script succeeded without output); `ingest.replaced` tells whether
+   * that happened. Returns the first TEST_RESULT_ITEMS items for display and the total count.
+   */
+  private ingestScriptOutput(
+    taskId: string,
+    interpreter: string,
+    scriptPath: string,
+    cwd: string,
+    envVars: Record<string, string>,
+    ingest: { replaced: boolean },
+  ): Promise<{ items: Record<string, unknown>[]; totalItems: number }> {
+    const replaceItems = () => {
+      if (ingest.replaced) return;
+      this.store.clearItems(taskId);
+      ingest.replaced = true;
+    };
+
+    return new Promise((resolve, reject) => {
+      const child = spawn(interpreter, [scriptPath], {
+        cwd,
+        env: { ...process.env as Record<string, string>, ...envVars },
+        stdio: ['ignore', 'pipe', 'pipe'],
+      });
+      const parser = new JsonItemStream(MAX_ITEM_CHARS);
+      const head: Record<string, unknown>[] = [];
+      let chunk: unknown[] = [];
+      let total = 0;
+      let stderr = '';
+      let settled = false;
+
+      const flush = () => {
+        if (chunk.length === 0) return;
+        replaceItems();
+        this.store.insertItemChunk(taskId, total - chunk.length, chunk);
+        chunk = [];
+      };
+      const accept = (items: unknown[]) => {
+        for (const item of items) {
+          if (++total > MAX_ITEMS) throw new Error(`数据量过大: 超过上限 ${MAX_ITEMS} 条`);
+          if (head.length < TEST_RESULT_ITEMS) head.push(item as Record<string, unknown>);
+          chunk.push(item);
+          if (chunk.length >= INGEST_CHUNK_SIZE) flush();
+        }
+      };
+      const fail = (err: unknown) => {
+        if (settled) return;
+        settled = true;
+        clearTimeout(timer);
+        child.kill('SIGKILL');
+        reject(err instanceof Error ? err : new Error(String(err)));
+      };
+      const timer = setTimeout(() => fail(new Error(`Script timed out after ${TEST_TIMEOUT_MS}ms`)), TEST_TIMEOUT_MS);
+
+      child.stdout.setEncoding('utf-8');
+      child.stdout.on('data', (data: string) => {
+        if (settled) return;
+        try {
+          accept(parser.push(data));
+        } catch (err) {
+          fail(err);
+        }
+      });
+      child.stderr.setEncoding('utf-8');
+      child.stderr.on('data', (data: string) => {
+        if (stderr.length < MAX_STDERR_CHARS) stderr += data;
+      });
+      child.on('error', fail);
+      child.on('close', (code, signal) => {
+        if (settled) return;
+        try {
+          if (code !== 0) {
+            throw new Error(`Script exited with ${signal ?? `code ${code}`}${stderr ? `: ${stderr.trim()}` : ''}`);
+          }
+          accept(parser.end());
+          flush();
+          replaceItems();
+        } catch (err) {
+          fail(err);
+          return;
+        }
+        settled = true;
+        clearTimeout(timer);
+        resolve({ items: head, totalItems: total });
+      });
+    });
+  }
+
   // === Save ===
 
   async save(taskId: string): Promise<void> {
@@ -238,24 +365,36 @@ export class BatchEngine {
       this.store.resetItemsForExecution(taskId);
     }
 
-    const pendingItems = this.store.listItems(taskId);
-    if (pendingItems.length === 0) {
+    // Page through pending items by item_index so only one page plus the running items are in memory
+    let page = this.store.listPendingItemsAfter(taskId, -1, EXEC_PAGE_SIZE);
+    if (page.length === 0) {
       this.store.updateTask(taskId, { status: 'completed', finishedAt: isoNow() });
       return;
     }
 
     const semaphore = new Semaphore(task.concurrency);
-    const exec = { semaphore, cancelled: false };
+    const exec: ActiveExecution = {
+      semaphore,
+      cancelled: false,
+      successCount: 0,
+      failedCount: 0,
+      totalCost: 0,
+      totalItems: task.totalItems,
+      inFlight: new Set(),
+      progressTimer: null,
+    };
     this.activeExecutions.set(taskId, exec);
+    // Spawn CLI processes while the first items are being prepared
+    this.sessionManager.prewarmWorkspace(task.workspace);
 
-    const processItem = async (item: any) => {
+    const processItem = async (item: BatchItem) => {
       if (exec.cancelled) {
-        this.store.updateItem(item.id, { status: 'skipped' });
+        this.store.queueItemUpdate(item.id, { status: 'skipped' });
         return;
       }
 
       const sessionId = `batch-${task.id}-${item.id}`;
-      this.store.updateItem(item.id, { status: 'running', startedAt: isoNow(), sessionId });
+      this.store.queueItemUpdate(item.id, { status: 'running', startedAt: isoNow(), sessionId });
 
       const itemData = JSON.parse(item.itemData);
       const prompt = renderTemplate(task.execTemplate, itemData);
@@ -263,68 +402,72 @@ export class BatchEngine {
 
       try {
         this.sessionManager.createSessionWithId(task.workspace, sessionId);
-        await this.sessionManager.sendMessageForCron(sessionId, prompt, abortController, () => {});
-        this.store.updateItem(item.id, { status: 'success', finishedAt: isoNow() });
+        await this.sessionManager.sendMessageForCron(sessionId, prompt, abortController, () => {}, undefined, 'batch');
+        this.store.queueItemUpdate(item.id, { status: 'success', finishedAt: isoNow() });
         this.store.incrementSuccessCount(taskId);
+        exec.successCount++;
       } catch (err) {
         const errorMsg = err instanceof Error ? err.message : String(err);
-        this.store.updateItem(item.id, {
+        this.store.queueItemUpdate(item.id, {
           status: 'failed',
           errorMessage: errorMsg,
           finishedAt: isoNow(),
         });
         this.store.incrementFailedCount(taskId);
+        exec.failedCount++;
       } finally {
-        this.emitProgress(taskId);
+        this.scheduleProgress(taskId, exec);
       }
     };
 
     try {
-      for (const item of pendingItems) {
-        if (exec.cancelled) {
-          this.store.updateItem(item.id, { status: 'skipped' });
-          continue;
-        }
-
-        try {
-          await semaphore.acquire();
-        } catch (err) {
-          if (err instanceof SemaphoreStoppedError) {
-            this.store.updateItem(item.id, { status: 'skipped' });
-            continue;
+      dispatch: while (page.length > 0) {
+        for (const item of page) {
+          if (exec.cancelled) break dispatch;
+
+          try {
+            await semaphore.acquire();
+          } catch (err) {
+            if (err instanceof SemaphoreStoppedError) break dispatch;
+            throw err;
           }
-          throw err;
-        }
 
-        processItem(item).finally(() => semaphore.release());
+          const running: Promise<void> = processItem(item).finally(() => {
+            semaphore.release();
+            exec.inFlight.delete(running);
+          });
+          exec.inFlight.add(running);
+        }
+        page = this.store.listPendingItemsAfter(taskId, page[page.length - 1].itemIndex, EXEC_PAGE_SIZE);
       }
 
-      await this.drainActiveItems(taskId);
+      if (exec.cancelled) this.store.skipPendingItems(taskId);
+      await this.drainActiveItems(taskId, exec);
     } finally {
       this.activeExecutions.delete(taskId);
+      this.emitProgress(taskId, exec);
 
-      const finalTask = this.store.getTask(taskId)!;
       this.store.updateTask(taskId, {
         finishedAt: isoNow(),
         status: exec.cancelled ? 'failed' : 'completed',
       });
-
-      if (!exec.cancelled) {
-        const counts = this.store.getItemCounts(taskId);
-      }
     }
   }
 
-  private async drainActiveItems(taskId: string): Promise<void> {
-    const start = Date.now();
-    while (true) {
-      const counts = this.store.getItemCounts(taskId);
-      if (counts.running === 0) break;
-      if (Date.now() - start > DRAIN_TIMEOUT_MS) {
+  /** Resolves once every dispatched item has settled (or DRAIN_TIMEOUT_MS passes) */
+  private async drainActiveItems(taskId: string, exec: ActiveExecution): Promise<void> {
+    if (exec.inFlight.size === 0) return;
+    let timer: ReturnType<typeof setTimeout> | undefined;
+    const timedOut = new Promise<boolean>(resolve => {
+      timer = setTimeout(() => resolve(true), DRAIN_TIMEOUT_MS);
+    });
+    const drained = Promise.allSettled([...exec.inFlight]).then(() => false);
+    try {
+      if (await Promise.race([drained, timedOut])) {
         this.log.warn(`drainActiveItems timeout for ${taskId}, forcing completion`);
-        break;
       }
-      await new Promise(r => setTimeout(r, 200));
+    } finally {
+      clearTimeout(timer);
     }
   }
 
@@ -373,14 +516,7 @@ export class BatchEngine {
     if (!task) throw new Error(`Task not found: ${taskId}`);
 
     // Reset only failed items to pending, increment retries
-    const failedItems = this.store.listItems(taskId, { status: 'failed' });
-    for (const item of failedItems) {
-      this.store.updateItem(item.id, {
-        status: 'pending',
-        errorMessage: undefined,
-        retries: item.retries + 1,
-      });
-    }
+    this.store.requeueFailedItems(taskId);
 
     // Set status to saved so executeInternal passes status check
     this.store.updateTask(taskId, { status: 'saved' });
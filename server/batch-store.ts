@@ -5,6 +5,7 @@ const DatabaseConstructor = betterSqlite3 as unknown as typeof betterSqlite3.def
 import { createLogger, type Logger } from './utils/logger.js';
 import { v4 as uuidv4 } from 'uuid';
 import type { BatchTask, BatchItem, BatchTaskStatus, BatchItemStatus } from './types.js';
+import { StatementCache, WriteBatcher } from './utils/sqlite.js';
 
 interface ItemFilter {
   status?: BatchItemStatus;
@@ -12,6 +13,21 @@ interface ItemFilter {
   limit?: number;
 }
 
+type ItemUpdates = Partial<{
+  status: BatchItemStatus;
+  sessionId?: string;
+  startedAt?: string;
+  finishedAt?: string;
+  errorMessage?: string;
+  cost?: number;
+  retries?: number;
+}>;
+
+interface CountDelta {
+  success: number;
+  failed: number;
+}
+
 interface ItemCounts {
   pending: number;
   queued: number;
@@ -41,13 +57,52 @@ export class BatchStore {
     'created_at as createdAt', 'updated_at as updatedAt',
   ].join(', ');
 
+  /** Group-commit window for item status updates and counter increments */
+  static readonly WRITE_FLUSH_MS = 100;
+
   private db: Database;
   private log: Logger;
+  private statements: StatementCache;
+  private itemWrites: WriteBatcher<number, ItemUpdates>;
+  private countWrites: WriteBatcher<string, CountDelta>;
 
   constructor(dbPath: string) {
     this.db = new DatabaseConstructor(dbPath);
     this.log = createLogger('BatchStore');
     this.init();
+    this.statements = new StatementCache(this.db);
+    const onError = (err: unknown) => this.log.error('Failed to flush batch writes', { error: String(err) });
+    this.itemWrites = new WriteBatcher<number, ItemUpdates>(this.db, {
+      flushIntervalMs: BatchStore.WRITE_FLUSH_MS,
+      merge: (prev, next) => ({ ...prev, ...next }),
+      apply: (entries) => {
+        for (const [id, updates] of entries) {
+          this.buildDynamicUpdate('batch_items', id, updates, BatchStore.ITEM_COLUMN_MAP);
+        }
+      },
+      onError,
+    });
+    this.countWrites = new WriteBatcher<string, CountDelta>(this.db, {
+      flushIntervalMs: BatchStore.WRITE_FLUSH_MS,
+      merge: (prev, next) => ({ success: prev.success + next.success, failed: prev.failed + next.failed }),
+      apply: (entries) => {
+        const update = this.stmt(
+          'UPDATE batch_tasks SET success_count = success_count + ?, failed_count = failed_count + ? WHERE id = ?',
+        );
+        for (const [taskId, delta] of entries) update.run(delta.success, delta.failed, taskId);
+      },
+      onError,
+    });
+  }
+
+  private stmt(sql: string) {
+    return this.statements.get(sql);
+  }
+
+  /** Commit buffered item updates and counter increments; reads call this first */
+  flushPendingWrites(): void {
+    this.itemWrites.flush();
+    this.countWrites.flush();
   }
 
   private init(): void {
@@ -100,6 +155,7 @@ export class BatchStore {
     this.db.exec(`
       CREATE INDEX IF NOT EXISTS idx_batch_items_task ON batch_items(task_id);
       CREATE INDEX IF NOT EXISTS idx_batch_items_status ON batch_items(task_id, status);
+      CREATE INDEX IF NOT EXISTS idx_batch_items_cursor ON batch_items(task_id, status, item_index);
     `);
 
     this.db.pragma('journal_mode = WAL');
@@ -120,7 +176,7 @@ export class BatchStore {
   }): BatchTask {
     const id = uuidv4();
     const now = new Date().toISOString();
-    this.db.prepare(`
+    this.stmt(`
       INSERT INTO batch_tasks (id, workspace, skill_name, md_content, exec_template,
         env_vars, concurrency, retry_on_failure, created_at, updated_at)
       VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
@@ -133,14 +189,16 @@ export class BatchStore {
   }
 
   getTask(id: string): BatchTask | undefined {
-    const row = this.db.prepare(
+    this.flushPendingWrites();
+    const row = this.stmt(
       `SELECT ${BatchStore.TASK_COLUMNS} FROM batch_tasks WHERE id = ?`,
     ).get(id);
     return row ? this.rowToTask(row as Record<string, unknown>) : undefined;
   }
 
   listTasks(): BatchTask[] {
-    const rows = this.db.prepare(
+    this.flushPendingWrites();
+    const rows = this.stmt(
       `SELECT ${BatchStore.TASK_COLUMNS} FROM batch_tasks ORDER BY created_at DESC`,
     ).all() as Record<string, unknown>[];
     return rows.map(r => this.rowToTask(r));
@@ -166,6 +224,7 @@ export class BatchStore {
     const hasUpdates = Object.values(updates).some(v => v !== undefined);
     if (!hasUpdates) return this.getTask(id);
 
+    this.flushPendingWrites();
     this.buildDynamicUpdate(
       'batch_tasks', id, updates,
       BatchStore.TASK_COLUMN_MAP,
@@ -175,16 +234,19 @@ export class BatchStore {
   }
 
   deleteTask(id: string): void {
+    this.flushPendingWrites();
     // Manual delete for safety, even with CASCADE (foreign_keys = ON)
-    this.db.prepare('DELETE FROM batch_items WHERE task_id = ?').run(id);
-    this.db.prepare('DELETE FROM batch_tasks WHERE id = ?').run(id);
+    this.db.transaction(() => {
+      this.stmt('DELETE FROM batch_items WHERE task_id = ?').run(id);
+      this.stmt('DELETE FROM batch_tasks WHERE id = ?').run(id);
+    })();
   }
 
   // === Item CRUD ===
 
   createItem(taskId: string, itemIndex: number, itemData: string): BatchItem {
     const now = new Date().toISOString();
-    const result = this.db.prepare(`
+    const result = this.stmt(`
       INSERT INTO batch_items (task_id, item_index, item_data, started_at)
       VALUES (?, ?, ?, ?)
     `).run(taskId, itemIndex, itemData, now);
@@ -205,7 +267,7 @@ export class BatchStore {
   }
 
   bulkCreateItems(taskId: string, items: Record<string, unknown>[]): BatchItem[] {
-    const stmt = this.db.prepare(`
+    const insert = this.stmt(`
       INSERT INTO batch_items (task_id, item_index, item_data, started_at)
       VALUES (?, ?, ?, ?)
     `);
@@ -214,7 +276,7 @@ export class BatchStore {
 
     const transaction = this.db.transaction(() => {
       for (let i = 0; i < items.length; i++) {
-        const result = stmt.run(taskId, i, JSON.stringify(items[i]), now);
+        const result = insert.run(taskId, i, JSON.stringify(items[i]), now);
         created.push({
           id: result.lastInsertRowid as number,
           taskId,
@@ -227,21 +289,45 @@ export class BatchStore {
         });
       }
       // Update total items count
-      this.db.prepare('UPDATE batch_tasks SET total_items = ? WHERE id = ?').run(items.length, taskId);
+      this.stmt('UPDATE batch_tasks SET total_items = ? WHERE id = ?').run(items.length, taskId);
     });
 
     transaction();
     return created;
   }
 
+  /** Drop all items of a task before generator output is ingested again */
+  clearItems(taskId: string): void {
+    this.flushPendingWrites();
+    this.db.transaction(() => {
+      this.stmt('DELETE FROM batch_items WHERE task_id = ?').run(taskId);
+      this.stmt('UPDATE batch_tasks SET total_items = 0 WHERE id = ?').run(taskId);
+    })();
+  }
+
+  /**
+   * Insert one chunk of streamed generator output in a single transaction.
+   * Indexes continue from firstIndex; total_items is set by the caller once the stream ends.
+   */
+  insertItemChunk(taskId: string, firstIndex: number, items: unknown[]): void {
+    const insert = this.stmt('INSERT INTO batch_items (task_id, item_index, item_data) VALUES (?, ?, ?)');
+    this.db.transaction(() => {
+      for (let i = 0; i < items.length; i++) {
+        insert.run(taskId, firstIndex + i, JSON.stringify(items[i]));
+      }
+    })();
+  }
+
   getItem(id: number): BatchItem | undefined {
-    const row = this.db.prepare(
+    this.flushPendingWrites();
+    const row = this.stmt(
       `SELECT ${BatchStore.ITEM_COLUMNS} FROM batch_items WHERE id = ?`,
     ).get(id);
     return row ? this.rowToItem(row as Record<string, unknown>) : undefined;
   }
 
   listItems(taskId: string, filter?: ItemFilter): BatchItem[] {
+    this.flushPendingWrites();
     let sql = `SELECT ${BatchStore.ITEM_COLUMNS} FROM batch_items WHERE task_id = ?`;
     const params: (string | number)[] = [taskId];
 
@@ -258,28 +344,41 @@ export class BatchStore {
       params.push(filter.limit, offset);
     }
 
-    const rows = this.db.prepare(sql).all(...params) as Record<string, unknown>[];
+    const rows = this.stmt(sql).all(...params) as Record<string, unknown>[];
     return rows.map(r => this.rowToItem(r));
   }
 
-  updateItem(id: number, updates: Partial<{
-    status: BatchItemStatus;
-    sessionId?: string;
-    startedAt?: string;
-    finishedAt?: string;
-    errorMessage?: string;
-    cost?: number;
-    retries?: number;
-  }>): BatchItem | undefined {
+  /** Next page of pending items after the item_index cursor, for paging through a run */
+  listPendingItemsAfter(taskId: string, afterIndex: number, limit: number): BatchItem[] {
+    this.flushPendingWrites();
+    const rows = this.stmt(`
+      SELECT ${BatchStore.ITEM_COLUMNS} FROM batch_items
+      WHERE task_id = ? AND status = 'pending' AND item_index > ?
+      ORDER BY item_index ASC LIMIT ?
+    `).all(taskId, afterIndex, limit) as Record<string, unknown>[];
+    return rows.map(r => this.rowToItem(r));
+  }
+
+  updateItem(id: number, updates: ItemUpdates): BatchItem | undefined {
     const hasUpdates = Object.values(updates).some(v => v !== undefined);
     if (!hasUpdates) return this.getItem(id);
 
+    this.flushPendingWrites();
     this.buildDynamicUpdate('batch_items', id, updates, BatchStore.ITEM_COLUMN_MAP);
     return this.getItem(id);
   }
 
+  /**
+   * Fire-and-forget item update for the execution hot path.
+   * Updates to the same item are merged and group-committed every WRITE_FLUSH_MS.
+   */
+  queueItemUpdate(id: number, updates: ItemUpdates): void {
+    this.itemWrites.enqueue(id, updates);
+  }
+
   getItemCounts(taskId: string): ItemCounts {
-    const row = this.db.prepare(`
+    this.flushPendingWrites();
+    const row = this.stmt(`
       SELECT
         SUM(CASE WHEN status = 'pending' THEN 1 ELSE 0 END) as pending,
         SUM(CASE WHEN status = 'queued' THEN 1 ELSE 0 END) as queued,
@@ -301,39 +400,59 @@ export class BatchStore {
   }
 
   getOrphanedItems(): BatchItem[] {
-    const rows = this.db.prepare(
+    this.flushPendingWrites();
+    const rows = this.stmt(
       `SELECT ${BatchStore.ITEM_COLUMNS} FROM batch_items WHERE status = 'running'`,
     ).all() as Record<string, unknown>[];
     return rows.map(r => this.rowToItem(r));
   }
 
   resetRunningItems(reason: string): void {
+    this.flushPendingWrites();
     const now = new Date().toISOString();
-    this.db.prepare(`
+    this.stmt(`
       UPDATE batch_items SET status = 'failed', error_message = ?, finished_at = ?
       WHERE status = 'running'
     `).run(reason, now);
 
     // Also update any running batch tasks
-    this.db.prepare(`
+    this.stmt(`
       UPDATE batch_tasks SET status = 'failed', finished_at = ?, updated_at = ?
       WHERE status IN ('running', 'queued')
     `).run(now, now);
   }
 
   resetItemsForExecution(taskId: string): void {
-    this.db.prepare(`
+    this.flushPendingWrites();
+    this.stmt(`
       UPDATE batch_items SET status = 'pending', started_at = ?, finished_at = ?, error_message = ?, retries = 0
       WHERE task_id = ?
     `).run(null, null, null, taskId);
   }
 
+  /** Put all failed items back to pending for a retry run; returns how many were requeued */
+  requeueFailedItems(taskId: string): number {
+    this.flushPendingWrites();
+    return this.stmt(`
+      UPDATE batch_items SET status = 'pending', error_message = NULL, retries = retries + 1
+      WHERE task_id = ? AND status = 'failed'
+    `).run(taskId).changes;
+  }
+
+  /** Mark every still-pending item of a task as skipped (cancelled run) */
+  skipPendingItems(taskId: string): number {
+    this.flushPendingWrites();
+    return this.stmt(
+      "UPDATE batch_items SET status = 'skipped' WHERE task_id = ? AND status = 'pending'",
+    ).run(taskId).changes;
+  }
+
   incrementSuccessCount(taskId: string): void {
-    this.db.prepare('UPDATE batch_tasks SET success_count = success_count + 1 WHERE id = ?').run(taskId);
+    this.countWrites.enqueue(taskId, { success: 1, failed: 0 });
   }
 
   incrementFailedCount(taskId: string): void {
-    this.db.prepare('UPDATE batch_tasks SET failed_count = failed_count + 1 WHERE id = ?').run(taskId);
+    this.countWrites.enqueue(taskId, { success: 0, failed: 1 });
   }
 
   // === Helpers ===
@@ -395,7 +514,7 @@ export class BatchStore {
     }
 
     values.push(id);
-    this.db.prepare(`UPDATE ${table} SET ${fields.join(', ')} WHERE id = ?`).run(...values);
+    this.stmt(`UPDATE ${table} SET ${fields.join(', ')} WHERE id = ?`).run(...values);
   }
 
   private rowToTask(row: Record<string, unknown>): BatchTask {
@@ -440,6 +559,8 @@ export class BatchStore {
   }
 
   close(): void {
+    this.flushPendingWrites();
+    this.statements.clear();
     this.db.close();
   }
 }
@@ -24,3 +24,120 @@ export function detectInterpreter(code: string): Interpreter {
   }
   return 'node';
 }
+
+/**
+ * Incremental parser for generator script stdout.
+ *
+ * Accepts either one top-level JSON array or NDJSON (one JSON value per line),
+ * decided by the first non-blank character. Array elements are cut at depth 1
+ * as they arrive, so only the element being read is buffered — never the whole
+ * output. push() returns the items completed by a chunk; end() the remainder.
+ */
+export class JsonItemStream {
+  private mode: 'unknown' | 'array' | 'ndjson' = 'unknown';
+  /** Unconsumed text: the current array element or NDJSON line */
+  private buf = '';
+  /** How far into buf the array scanner has got */
+  private scanPos = 0;
+  private depth = 0;
+  private inString = false;
+  private escaped = false;
+  private arrayClosed = false;
+  private line = 0;
+
+  constructor(private readonly maxItemChars = Infinity) {}
+
+  push(chunk: string): unknown[] {
+    const items: unknown[] = [];
+    if (this.mode === 'unknown') {
+      const start = chunk.search(/\S/);
+      if (start < 0) return items;
+      chunk = chunk.slice(start);
+      if (chunk[0] === '[') {
+        this.mode = 'array';
+        this.depth = 1;
+        chunk = chunk.slice(1);
+      } else {
+        this.mode = 'ndjson';
+      }
+    }
+    this.buf += chunk;
+    if (this.mode === 'array') this.scanArray(items);
+    else this.scanLines(items);
+    if (this.buf.length > this.maxItemChars) {
+      throw new Error(`Single item exceeds ${this.maxItemChars} characters`);
+    }
+    return items;
+  }
+
+  end(): unknown[] {
+    const items: unknown[] = [];
+    if (this.mode === 'array') {
+      if (!this.arrayClosed) throw new Error('Output ended inside the JSON array');
+    } else if (this.mode === 'ndjson') {
+      this.parseLine(this.buf, items);
+      this.buf = '';
+    }
+    return items;
+  }
+
+  private scanArray(items: unknown[]): void {
+    const buf = this.buf;
+    /** Start of the element being scanned */
+    let elementStart = 0;
+    let i = this.scanPos;
+    for (; i < buf.length; i++) {
+      const ch = buf[i];
+      if (this.arrayClosed) {
+        if (!/\s/.test(ch)) throw new Error('Unexpected output after the JSON array');
+        continue;
+      }
+      if (this.inString) {
+        if (this.escaped) this.escaped = false;
+        else if (ch === '\\') this.escaped = true;
+        else if (ch === '"') this.inString = false;
+        continue;
+      }
+      if (ch === '"') {
+        this.inString = true;
+      } else if (ch === '[' || ch === '{') {
+        this.depth++;
+      } else if (ch === ']' || ch === '}') {
+        this.depth--;
+        if (this.depth === 0) {
+          const last = buf.slice(elementStart, i).trim();
+          if (last) items.push(JSON.parse(last));
+          this.arrayClosed = true;
+        }
+      } else if (ch === ',' && this.depth === 1) {
+        const element = buf.slice(elementStart, i).trim();
+        if (!element) throw new Error('Empty element in JSON array');
+        items.push(JSON.parse(element));
+        elementStart = i + 1;
+      }
+    }
+    this.buf = this.arrayClosed ? '' : buf.slice(elementStart);
+    this.scanPos = this.buf.length;
+  }
+
+  private scanLines(items: unknown[]): void {
+    let start = 0;
+    let nl: number;
+    while ((nl = this.buf.indexOf('\n', start)) >= 0) {
+      this.parseLine(this.buf.slice(start, nl), items);
+      start = nl + 1;
+    }
+    this.buf = this.buf.slice(start);
+  }
+
+  private parseLine(text: string, items: unknown[]): void {
+    this.line++;
+    const trimmed = text.trim();
+    if (!trimmed) return;
+    try {
+      items.push(JSON.parse(trimmed));
+    } catch (err) {
+      throw new Error(`Invalid JSON on line ${this.line}: ${err instanceof Error ? err.message : String(err)}`);
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/**
+ * Content-addressed blob store for message attachments (pasted images etc.)
+ *
+ * Layout: {rootDir}/{first 2 hex chars}/{sha256}
+ * - Dedup: identical payloads hash to the same file and are written once
+ * - Atomic writes: tmp file + rename, so readers never see partial blobs
+ * - Message rows keep only { type: 'blob', hash, media_type, size }
+ */
+
+import fs from 'fs';
+import path from 'path';
+import crypto from 'crypto';
+import { createLogger, type Logger } from './utils/logger.js';
+
+export interface BlobRef {
+  hash: string;
+  size: number;
+  mimeType: string;
+}
+
+const HASH_RE = /^[a-f0-9]{64}$/;
+
+export class BlobStore {
+  private log: Logger;
+
+  constructor(private rootDir: string) {
+    this.log = createLogger('BlobStore');
+    fs.mkdirSync(rootDir, { recursive: true });
+  }
+
+  static isValidHash(hash: string): boolean {
+    return HASH_RE.test(hash);
+  }
+
+  /** Store a payload and return its reference. Existing blobs are not rewritten. */
+  put(data: Buffer, mimeType: string): BlobRef {
+    const hash = crypto.createHash('sha256').update(data).digest('hex');
+    const filePath = this.pathFor(hash);
+    if (!fs.existsSync(filePath)) {
+      fs.mkdirSync(path.dirname(filePath), { recursive: true });
+      const tmpPath = `${filePath}.${process.pid}.${crypto.randomUUID()}.tmp`;
+      fs.writeFileSync(tmpPath, data);
+      fs.renameSync(tmpPath, filePath);
+      this.log.debug(`Stored blob ${hash} (${data.length} bytes)`);
+    }
+    return { hash, size: data.length, mimeType };
+  }
+
+  putBase64(base64Data: string, mimeType: string): BlobRef {
+    return this.put(Buffer.from(base64Data, 'base64'), mimeType);
+  }
+
+  has(hash: string): boolean {
+    return BlobStore.isValidHash(hash) && fs.existsSync(this.pathFor(hash));
+  }
+
+  /** Absolute path of a blob, or undefined if the hash is malformed or missing */
+  resolve(hash: string): string | undefined {
+    if (!BlobStore.isValidHash(hash)) return undefined;
+    const filePath = this.pathFor(hash);
+    return fs.existsSync(filePath) ? filePath : undefined;
+  }
+
+  readBase64(hash: string): string | undefined {
+    const filePath = this.resolve(hash);
+    return filePath ? fs.readFileSync(filePath).toString('base64') : undefined;
+  }
+
+  createReadStream(hash: string): fs.ReadStream | undefined {
+    const filePath = this.resolve(hash);
+    return filePath ? fs.createReadStream(filePath) : undefined;
+  }
+
+  private pathFor(hash: string): string {
+    return path.join(this.rootDir, hash.slice(0, 2), hash);
+  }
+}
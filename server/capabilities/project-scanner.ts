@@ -4,11 +4,14 @@
  */
 import fs from 'node:fs';
 import path from 'node:path';
-import { execSync } from 'node:child_process';
+import { execFile } from 'node:child_process';
+import { promisify } from 'node:util';
 import { createLogger, type Logger } from '../utils/logger.js';
 import { getScannerPrompt, SCANNER_TYPES, type ScannerType } from './scanner-prompts.js';
 import { validateSkillMd, parseFrontmatter } from './frontmatter-utils.js';
 
+const execFileAsync = promisify(execFile);
+
 // ── Types ──
 
 export interface ScanManifest {
@@ -41,43 +44,58 @@ export function sanitizeEndpointSlug(apiPath: string): string {
     .substring(0, 80);
 }
 
-export function getGitInfo(workspace: string): {
-  commitHash: string | null;
-  gitUrl: string | null;
-  branch: string | null;
-} {
+async function gitOutput(workspace: string, args: string[]): Promise<string | null> {
   try {
-    const commitHash = execSync('git rev-parse HEAD', { cwd: workspace, encoding: 'utf-8' }).trim();
-    let gitUrl: string | null = null;
-    try {
-      gitUrl = execSync('git remote get-url origin', { cwd: workspace, encoding: 'utf-8' }).trim();
-      gitUrl = gitUrl.replace(/:\/\/[^@]+@/, '://');
-    } catch { /* no remote */ }
-    let branch: string | null = null;
-    try {
-      branch = execSync('git rev-parse --abbrev-ref HEAD', { cwd: workspace, encoding: 'utf-8' }).trim();
-    } catch { /* detached head */ }
-    return { commitHash, gitUrl, branch };
+    const { stdout } = await execFileAsync('git', args, { cwd: workspace, encoding: 'utf-8' });
+    return stdout.trim();
   } catch {
-    return { commitHash: null, gitUrl: null, branch: null };
+    return null;
   }
 }
 
-export function isScanNeeded(workspace: string, scannerType: ScannerType): { needed: boolean; reason: string } {
+/** Commit / remote / branch of a workspace; the three git calls run in parallel, off the event loop */
+export async function getGitInfo(workspace: string): Promise<{
+  commitHash: string | null;
+  gitUrl: string | null;
+  branch: string | null;
+}> {
+  const [commitHash, remoteUrl, branch] = await Promise.all([
+    gitOutput(workspace, ['rev-parse', 'HEAD']),
+    gitOutput(workspace, ['remote', 'get-url', 'origin']),
+    gitOutput(workspace, ['rev-parse', '--abbrev-ref', 'HEAD']),
+  ]);
+  if (!commitHash) return { commitHash: null, gitUrl: null, branch: null };
+  return {
+    commitHash,
+    gitUrl: remoteUrl ? remoteUrl.replace(/:\/\/[^@]+@/, '://') : null,
+    branch,
+  };
+}
+
+/**
+ * Whether a scanner's SKILL.md is missing or was generated at another commit.
+ * `headCommit` lets callers checking several scanners resolve HEAD once
+ * (null: not a git repo); otherwise it is read here.
+ */
+export async function isScanNeeded(
+  workspace: string,
+  scannerType: ScannerType,
+  headCommit?: string | null,
+): Promise<{ needed: boolean; reason: string }> {
   const skillMdPath = path.join(workspace, '.claude', 'skills', `project-${scannerType}`, 'SKILL.md');
 
-  if (!fs.existsSync(skillMdPath)) {
+  let content: string;
+  try {
+    content = await fs.promises.readFile(skillMdPath, 'utf-8');
+  } catch {
     return { needed: true, reason: 'SKILL.md not found' };
   }
 
-  const content = fs.readFileSync(skillMdPath, 'utf-8');
   const frontmatter = parseFrontmatter(content);
   const scannedCommit = frontmatter?._scanned?.commitHash;
 
-  let currentCommit: string;
-  try {
-    currentCommit = execSync('git rev-parse HEAD', { cwd: workspace, encoding: 'utf-8' }).trim();
-  } catch {
+  const currentCommit = headCommit === undefined ? await gitOutput(workspace, ['rev-parse', 'HEAD']) : headCommit;
+  if (!currentCommit) {
     return { needed: true, reason: 'not a git repo' };
   }
 
@@ -190,8 +208,9 @@ export class ProjectScanner {
       return;
     }
     // Skip if all scanner types are up to date
-    const allUpToDate = SCANNER_TYPES.every(type => !isScanNeeded(workspace, type).needed);
-    if (allUpToDate) {
+    const headCommit = await gitOutput(workspace, ['rev-parse', 'HEAD']);
+    const checks = await Promise.all(SCANNER_TYPES.map(type => isScanNeeded(workspace, type, headCommit)));
+    if (checks.every(check => !check.needed)) {
       this.log.info(`All scanners up to date for ${workspace}, skipping`);
       return;
     }
@@ -202,10 +221,10 @@ export class ProjectScanner {
   async scanWorkspace(workspace: string): Promise<void> {
     acquireLock(workspace);
     try {
-      const gitInfo = getGitInfo(workspace);
+      const gitInfo = await getGitInfo(workspace);
 
       for (const type of SCANNER_TYPES) {
-        const { needed, reason } = isScanNeeded(workspace, type);
+        const { needed, reason } = await isScanNeeded(workspace, type, gitInfo.commitHash);
         if (!needed) {
           this.log.info(`Scanner [${type}] skipped: ${reason}`);
           continue;
@@ -316,7 +335,7 @@ export class ProjectScanner {
       try {
         const manifest: ScanManifest = JSON.parse(fs.readFileSync(manifestPath, 'utf-8'));
         if (manifest.commitHash) {
-          const currentHash = execSync('git rev-parse HEAD', { cwd: entry.path, encoding: 'utf-8' }).trim();
+          const currentHash = await gitOutput(entry.path, ['rev-parse', 'HEAD']);
           needsRescan = currentHash !== manifest.commitHash;
         } else {
           needsRescan = Date.now() - new Date(manifest.scannedAt).getTime() > 7 * 24 * 60 * 60 * 1000;
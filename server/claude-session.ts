@@ -28,6 +28,11 @@ import { createBaiduSearchMcpServer } from './web-search/baidu-mcp-server.js';
 import { buildContentBlocks, type ContentBlock } from './utils/content-blocks.js';
 import type { MediaAttachment } from './chatbot/types.js';
 import { UserProfileManager } from './user-profile.js';
+import type { BlobStore } from './blob-store.js';
+import type { OutboundPayload } from './ws-outbound.js';
+import { StreamReplayBuffer, type SequencedFrame } from './stream-replay.js';
+import { WarmPool, type WarmPoolStats } from './warm-pool.js';
+import { LlmScheduler, type LlmLane, type LlmPermit, type LlmSchedulerStats } from './llm-scheduler.js';
 import path from 'path';
 import os from 'os';
 import crypto from 'crypto';
@@ -107,7 +112,12 @@ export interface ActiveSession {
   isScanner?: boolean;
 }
 
-type WsSend = (data: string) => void;
+type WsSend = (data: OutboundPayload) => void;
+
+type CanUseTool = (params: { toolName: string; input: Record<string, unknown> }) => Promise<{ behavior: string; updatedInput?: Record<string, unknown> }>;
+
+/** Interactive session spawns go ahead of warm-pool refills waiting for the create lock */
+type CreateLockPriority = 'interactive' | 'background';
 
 interface V2SessionInfo {
   session: SDKSession;
@@ -167,14 +177,24 @@ export class ClaudeSessionManager {
   private sessionTokenUsage = new Map<string, { inputTokens: number; outputTokens: number }>();
   private log: Logger;
   private config: SmanConfig | null = null;
-  private cleanupTimer: ReturnType<typeof setInterval> | null = null;
   private configGeneration = 0;
+  /** Pre-spawned idle CLI processes for fresh (non-resumed) sessions, keyed by warmPoolKey() */
+  private warmPool: WarmPool<SDKSession>;
+  /** Late-bound canUseTool of pooled processes — set when a session checks one out */
+  private pooledToolBindings = new WeakMap<SDKSession, { canUseTool?: CanUseTool }>();
+  /** Every model turn takes a slot here (priority lanes, concurrency, rate limit, backoff) */
+  private llmScheduler = new LlmScheduler();
   private webAccessService: WebAccessService | null = null;
   private userProfile: UserProfileManager | null = null;
   private knowledgeExtractor: import('./knowledge-extractor.js').KnowledgeExtractor | null = null;
   private capabilityRegistry: CapabilityRegistry | null = null;
-  /** Serializes getOrCreateV2Session calls to prevent process.chdir races */
-  private v2CreateChain: Promise<void> = Promise.resolve();
+  private blobStore: BlobStore | null = null;
+  /**
+   * Serializes CLI process spawns to prevent process.chdir races. Waiting
+   * interactive spawns are served before queued warm-pool refills.
+   */
+  private createLockHeld = false;
+  private createLockWaiters: Record<CreateLockPriority, Array<() => void>> = { interactive: [], background: [] };
   /** Pending AskUserQuestion promises: sessionId -> { resolve, askId, questions, timer } */
   private pendingAskUser = new Map<string, {
     resolve: (result: { behavior: string; updatedInput?: Record<string, unknown> }) => void;
@@ -184,17 +204,23 @@ export class ClaudeSessionManager {
   }>();
   /** Last known wsSend callback per session (for canUseTool AskUserQuestion bridge) */
   private sessionWsSend = new Map<string, WsSend>();
+  /** Seq-stamped frames of the current/last streaming turn, replayed on session.resume */
+  private replayBuffers = new Map<string, { buffer: StreamReplayBuffer; evictTimer: ReturnType<typeof setTimeout> | null }>();
+  /** wsSend wrappers that already stamp seq (auto-retries reuse them) */
+  private sequencedSenders = new WeakSet<WsSend>();
 
   setUserProfile(manager: UserProfileManager): void {
     this.userProfile = manager;
     // Profile updates only run LLM when no sessions are actively streaming
     manager.setIdleCheck(() => this.activeStreams.size === 0);
+    manager.setLlmScheduler(this.llmScheduler);
     this.log.info('UserProfileManager injected');
   }
 
   setKnowledgeExtractor(extractor: import('./knowledge-extractor.js').KnowledgeExtractor): void {
     this.knowledgeExtractor = extractor;
     extractor.setActivityTimestampProvider(() => this.getLastStreamActivityAt());
+    extractor.setLlmScheduler(this.llmScheduler);
     this.log.info('KnowledgeExtractor injected');
   }
 
@@ -214,16 +240,35 @@ export class ClaudeSessionManager {
   private static readonly SEND_TIMEOUT_MS = 240 * 1000; // 4 minutes timeout for v2Session.send()
   private static readonly SESSION_CREATE_TIMEOUT_MS = 60 * 1000; // 1 minute timeout for session creation
   private static readonly TOOL_STALL_MS = 10 * 60 * 1000; // 10 minutes hard limit for tool/sub-agent execution
+  private static readonly HISTORY_CONTEXT_MESSAGES = 40; // recent messages scanned when rebuilding context for fresh sessions
+  private static readonly REPLAY_BUFFER_FRAMES = 2000; // frames kept per session for session.resume
+  private static readonly REPLAY_RETAIN_MS = 60 * 1000; // keep the replay buffer this long after a stream ends
   private static readonly AUTO_RETRY_ERRORS = new Set(['stall', 'process_dead', 'v2_session_lost', 'session_expired', 'bad_request', 'server_error', 'overloaded', 'network_error']);
 
   constructor(private store: SessionStore) {
     this.log = createLogger('ClaudeSessionManager');
-    this.startCleanup();
+    this.warmPool = new WarmPool<SDKSession>({
+      spawn: (key) => this.spawnPooledSession(key),
+      isAlive: (session) => this.isV2Alive(session),
+      dispose: (session) => session.close(),
+    }, { idleTimeoutMs: ClaudeSessionManager.SESSION_IDLE_TIMEOUT_MS });
+    this.warmPool.startMaintenance(ClaudeSessionManager.CLEANUP_INTERVAL_MS, () => this.closeIdleSessions());
   }
 
   updateConfig(config: SmanConfig): void {
     this.config = config;
     this.configGeneration++;
+    const pool = config.warmPool;
+    this.warmPool.configure({
+      sizePerKey: pool?.size ?? 1,
+      maxIdle: pool?.maxIdle ?? 4,
+      idleTimeoutMs: pool?.idleTimeoutMs ?? ClaudeSessionManager.SESSION_IDLE_TIMEOUT_MS,
+    });
+    // Idle processes were spawned with the previous config (API key, model, MCP servers)
+    const generation = `${this.configGeneration}|`;
+    this.warmPool.clear(key => key.startsWith(generation));
+    const scheduler = config.llmScheduler;
+    if (scheduler) this.llmScheduler.configure(scheduler);
   }
 
   setWebAccessService(service: WebAccessService): void {
@@ -236,6 +281,11 @@ export class ClaudeSessionManager {
     this.log.info('CapabilityRegistry injected');
   }
 
+  setBlobStore(blobStore: BlobStore): void {
+    this.blobStore = blobStore;
+    this.log.info('BlobStore injected');
+  }
+
   /**
    * Get the path to bundled claude-code executable
    */
@@ -843,7 +893,7 @@ export class ClaudeSessionManager {
    */
   private async getOrCreateV2Session(
     sessionId: string,
-    canUseToolOverride?: (params: { toolName: string; input: Record<string, unknown> }) => Promise<{ behavior: string; updatedInput?: Record<string, unknown> }>,
+    canUseToolOverride?: CanUseTool,
   ): Promise<{ session: SDKSession; isFresh: boolean }> {
     const session = this.sessions.get(sessionId);
     if (!session) throw new Error(`Session not found: ${sessionId}`);
@@ -852,32 +902,30 @@ export class ClaudeSessionManager {
     const existing = this.v2Sessions.get(sessionId);
     if (existing) {
       // Check if process is still alive
-      const pid = (existing.session as any).pid;
-      if (pid !== undefined) {
-        try {
-          process.kill(pid, 0); // Signal 0 = check if alive
-          existing.lastUsedAt = Date.now();
-          return { session: existing.session, isFresh: false };
-        } catch {
-          this.log.info(`V2 session process dead (PID: ${pid}), recreating...`);
-          this.closeV2Session(sessionId);
-        }
-      } else {
-        // No pid info, try to use anyway
+      if (this.isV2Alive(existing.session)) {
         existing.lastUsedAt = Date.now();
         return { session: existing.session, isFresh: false };
       }
+      this.log.info(`V2 session process dead (PID: ${(existing.session as any).pid}), recreating...`);
+      this.closeV2Session(sessionId);
+    }
+
+    const isScanner = session.isScanner === true;
+    const canUseTool = this.buildCanUseTool(sessionId, isScanner, canUseToolOverride);
+
+    // Fresh sessions can take a pre-spawned process; resumed ones need --resume at spawn time.
+    // Scanner sessions use a different option set and are rare, so they always spawn directly.
+    // Must run before taking the create lock — the pool's own spawns go through it.
+    let pooledMiss = false;
+    if (!isScanner && !this.resolveSdkSessionId(sessionId)) {
+      const pooled = await this.checkoutPooledSession(sessionId, session.workspace, canUseTool);
+      if (pooled) return pooled;
+      pooledMiss = true;
     }
 
     // Serialize V2 session creation to prevent process.chdir races between concurrent calls.
     // Each call awaits the previous one before proceeding.
-    let resolveChain!: () => void;
-    const chainPromise = new Promise<void>(r => { resolveChain = r; });
-    const previousChain = this.v2CreateChain;
-    this.v2CreateChain = chainPromise;
-    await previousChain;
-
-    try {
+    const created = this.withCreateLock(async () => {
       // Double-check after awaiting chain — another call may have created this session
       const existingAfter = this.v2Sessions.get(sessionId);
       if (existingAfter) {
@@ -886,60 +934,17 @@ export class ClaudeSessionManager {
       }
 
       // Create new V2 session
-      const sessionInfo = this.sessions.get(sessionId);
-      const isScanner = sessionInfo?.isScanner === true;
-
       const options = isScanner
         ? this.buildScannerSessionOptions(session.workspace)
         : this.buildSessionOptions(session.workspace);
 
       // Inject canUseTool callback
-      if (canUseToolOverride) {
-        (options as any).canUseTool = canUseToolOverride;
-      } else if (!isScanner) {
-        const capturedSessionId = sessionId;
-        (options as any).canUseTool = async (params: { toolName: string; input: Record<string, unknown> }) => {
-          if (params.toolName !== 'AskUserQuestion') {
-            return { behavior: 'allow' as const };
-          }
-          const wsSend = this.sessionWsSend.get(capturedSessionId);
-          if (!wsSend) {
-            this.log.warn(`No wsSend for session ${capturedSessionId}, denying AskUserQuestion`);
-            return { behavior: 'deny' as const };
-          }
-          const questions = params.input?.questions ?? [];
-          const askId = crypto.randomUUID();
-          this.log.info(`AskUserQuestion intercepted for session ${capturedSessionId}, askId=${askId}`);
-
-          wsSend(JSON.stringify({
-            type: 'chat.ask_user',
-            sessionId: capturedSessionId,
-            askId,
-            questions,
-          }));
-
-          return new Promise<{ behavior: string; updatedInput?: Record<string, unknown> }>((resolve) => {
-            const ASK_TIMEOUT_MS = 10 * 60 * 1000; // 10 minutes
-            const timer = setTimeout(() => {
-              this.pendingAskUser.delete(capturedSessionId);
-              this.log.warn(`AskUserQuestion timed out for session ${capturedSessionId}`);
-              resolve({ behavior: 'deny' });
-            }, ASK_TIMEOUT_MS);
-            timer.unref(); // Don't prevent process exit
-
-            this.pendingAskUser.set(capturedSessionId, { resolve, askId, questions: questions as unknown[], timer });
-          });
-        };
+      if (canUseTool) {
+        (options as any).canUseTool = canUseTool;
       }
 
       // Resume from persisted SDK session ID if available
-      let sdkSessionId = this.sdkSessionIds.get(sessionId);
-      if (!sdkSessionId) {
-        sdkSessionId = this.store.getSdkSessionId(sessionId);
-        if (sdkSessionId) {
-          this.sdkSessionIds.set(sessionId, sdkSessionId);
-        }
-      }
+      const sdkSessionId = this.resolveSdkSessionId(sessionId);
       if (sdkSessionId) {
         options.resume = sdkSessionId;
         this.log.info(`Resuming V2 session with SDK session_id: ${sdkSessionId}`);
@@ -947,28 +952,9 @@ export class ClaudeSessionManager {
 
       this.log.info(`Creating V2 session for ${sessionId}...`);
 
-      // SDK's unstable_v2_createSession doesn't pass cwd to ProcessTransport,
-      // so claude CLI inherits the parent process's cwd.
-      // Fix: temporarily chdir to workspace before creating the session.
-      const prevCwd = process.cwd();
-      if (prevCwd !== session.workspace) {
-        try { process.chdir(session.workspace); } catch {
-          this.log.warn(`Failed to chdir to ${session.workspace}, using ${prevCwd}`);
-        }
-      }
-
-      // Wrap session creation with timeout — CLI may hang during init (plugin loading, MCP connect, etc.)
-      const createTimeout = ClaudeSessionManager.SESSION_CREATE_TIMEOUT_MS;
-      const createWithTimeout = () => Promise.race([
-        unstable_v2_createSession(options as any),
-        new Promise<never>((_, reject) =>
-          setTimeout(() => reject(new Error(`创建会话超时（${createTimeout / 1000}s），CLI 初始化可能卡住`)), createTimeout)
-        ),
-      ]);
-
       let v2Session: SDKSession;
       try {
-        v2Session = await createWithTimeout();
+        v2Session = await this.spawnV2Session(options, session.workspace);
       } catch (err) {
         const errMsg = String(err);
         // Resume failed: conversation data lost (idle timeout killed the process).
@@ -978,35 +964,206 @@ export class ClaudeSessionManager {
           this.sdkSessionIds.delete(sessionId);
           try { this.store.updateSdkSessionId(sessionId, ''); } catch { /* ignore */ }
           delete options.resume;
-          v2Session = await createWithTimeout();
+          v2Session = await this.spawnV2Session(options, session.workspace);
         } else {
           throw err;
         }
-      } finally {
-        if (prevCwd !== session.workspace) {
-          try { process.chdir(prevCwd); } catch { /* ignore */ }
-        }
       }
 
-      const v2Info: V2SessionInfo = {
-        session: v2Session,
-        sessionId,
-        workspace: session.workspace,
-        createdAt: Date.now(),
-        lastUsedAt: Date.now(),
-        configGeneration: this.configGeneration,
-      };
-      this.v2Sessions.set(sessionId, v2Info);
-
+      this.registerV2Session(sessionId, session.workspace, v2Session);
       const pid = (v2Session as any).pid;
       this.log.info(`V2 session created for ${sessionId}, PID: ${pid ?? 'unknown'}`);
 
       return { session: v2Session, isFresh: true };
+    });
+
+    // Refill only after our own spawn — started earlier, it would hold the create lock ahead of us
+    if (pooledMiss) {
+      const refill = () => this.prewarmWorkspace(session.workspace);
+      created.then(refill, refill);
+    }
+    return created;
+  }
+
+  private async withCreateLock<T>(fn: () => Promise<T>, priority: CreateLockPriority = 'interactive'): Promise<T> {
+    if (this.createLockHeld) {
+      await new Promise<void>(resolve => this.createLockWaiters[priority].push(resolve));
+    } else {
+      this.createLockHeld = true;
+    }
+    try {
+      return await fn();
     } finally {
-      resolveChain();
+      // Hand the lock straight to the next waiter so nothing can slip in between
+      const next = this.createLockWaiters.interactive.shift() ?? this.createLockWaiters.background.shift();
+      if (next) next();
+      else this.createLockHeld = false;
     }
   }
 
+  /** Spawn the CLI process. Caller must hold withCreateLock (process.chdir is global). */
+  private async spawnV2Session(options: Record<string, any>, workspace: string): Promise<SDKSession> {
+    // SDK's unstable_v2_createSession doesn't pass cwd to ProcessTransport,
+    // so claude CLI inherits the parent process's cwd.
+    // Fix: temporarily chdir to workspace before creating the session.
+    const prevCwd = process.cwd();
+    if (prevCwd !== workspace) {
+      try { process.chdir(workspace); } catch {
+        this.log.warn(`Failed to chdir to ${workspace}, using ${prevCwd}`);
+      }
+    }
+
+    // Wrap session creation with timeout — CLI may hang during init (plugin loading, MCP connect, etc.)
+    const createTimeout = ClaudeSessionManager.SESSION_CREATE_TIMEOUT_MS;
+    let timeoutTimer: ReturnType<typeof setTimeout> | undefined;
+    try {
+      return await Promise.race([
+        unstable_v2_createSession(options as any),
+        new Promise<never>((_, reject) => {
+          timeoutTimer = setTimeout(() => reject(new Error(`创建会话超时（${createTimeout / 1000}s），CLI 初始化可能卡住`)), createTimeout);
+        }),
+      ]);
+    } finally {
+      if (timeoutTimer) clearTimeout(timeoutTimer);
+      if (prevCwd !== workspace) {
+        try { process.chdir(prevCwd); } catch { /* ignore */ }
+      }
+    }
+  }
+
+  private registerV2Session(sessionId: string, workspace: string, v2Session: SDKSession): void {
+    this.v2Sessions.set(sessionId, {
+      session: v2Session,
+      sessionId,
+      workspace,
+      createdAt: Date.now(),
+      lastUsedAt: Date.now(),
+      configGeneration: this.configGeneration,
+    });
+  }
+
+  private isV2Alive(v2Session: SDKSession): boolean {
+    const pid = (v2Session as any).pid;
+    // No pid info, try to use anyway
+    if (pid === undefined) return true;
+    try {
+      process.kill(pid, 0); // Signal 0 = check if alive
+      return true;
+    } catch {
+      return false;
+    }
+  }
+
+  private resolveSdkSessionId(sessionId: string): string | undefined {
+    let sdkSessionId = this.sdkSessionIds.get(sessionId);
+    if (!sdkSessionId) {
+      sdkSessionId = this.store.getSdkSessionId(sessionId) || undefined;
+      if (sdkSessionId) {
+        this.sdkSessionIds.set(sessionId, sdkSessionId);
+      }
+    }
+    return sdkSessionId;
+  }
+
+  /** canUseTool for a session: the caller's override, or the AskUserQuestion → frontend bridge */
+  private buildCanUseTool(sessionId: string, isScanner: boolean, override?: CanUseTool): CanUseTool | undefined {
+    if (override) return override;
+    if (isScanner) return undefined;
+    return async (params) => {
+      if (params.toolName !== 'AskUserQuestion') {
+        return { behavior: 'allow' as const };
+      }
+      const wsSend = this.sessionWsSend.get(sessionId);
+      if (!wsSend) {
+        this.log.warn(`No wsSend for session ${sessionId}, denying AskUserQuestion`);
+        return { behavior: 'deny' as const };
+      }
+      const questions = params.input?.questions ?? [];
+      const askId = crypto.randomUUID();
+      this.log.info(`AskUserQuestion intercepted for session ${sessionId}, askId=${askId}`);
+
+      wsSend({
+        type: 'chat.ask_user',
+        sessionId,
+        askId,
+        questions,
+      });
+
+      return new Promise<{ behavior: string; updatedInput?: Record<string, unknown> }>((resolve) => {
+        const ASK_TIMEOUT_MS = 10 * 60 * 1000; // 10 minutes
+        const timer = setTimeout(() => {
+          this.pendingAskUser.delete(sessionId);
+          this.log.warn(`AskUserQuestion timed out for session ${sessionId}`);
+          resolve({ behavior: 'deny' });
+        }, ASK_TIMEOUT_MS);
+        timer.unref(); // Don't prevent process exit
+
+        this.pendingAskUser.set(sessionId, { resolve, askId, questions: questions as unknown[], timer });
+      });
+    };
+  }
+
+  // ── Warm pool ──
+
+  /** Pool key: config generation + workspace (processes from an older config never match) */
+  private warmPoolKey(workspace: string): string {
+    return `${this.configGeneration}|${workspace}`;
+  }
+
+  /** Background refill: queued behind any interactive spawn waiting for the create lock */
+  private async spawnPooledSession(key: string): Promise<SDKSession> {
+    const workspace = key.slice(key.indexOf('|') + 1);
+    return this.withCreateLock(async () => {
+      const options = this.buildSessionOptions(workspace);
+      // The owning session is not known yet — route tool permission checks through a binding
+      const binding: { canUseTool?: CanUseTool } = {};
+      (options as any).canUseTool = (params: { toolName: string; input: Record<string, unknown> }) =>
+        binding.canUseTool ? binding.canUseTool(params) : Promise.resolve({ behavior: 'allow' as const });
+      const v2Session = await this.spawnV2Session(options, workspace);
+      this.pooledToolBindings.set(v2Session, binding);
+      this.log.info(`Warm CLI process ready for ${key}, PID: ${(v2Session as any).pid ?? 'unknown'}`);
+      return v2Session;
+    }, 'background');
+  }
+
+  private async checkoutPooledSession(
+    sessionId: string,
+    workspace: string,
+    canUseTool: CanUseTool | undefined,
+  ): Promise<{ session: SDKSession; isFresh: boolean } | null> {
+    if (!this.config?.llm?.apiKey || !this.config?.llm?.model) return null;
+    const key = this.warmPoolKey(workspace);
+    const v2Session = await this.warmPool.acquire(key);
+    if (!v2Session) return null;
+
+    // Another call created this session while we waited — return the process unused
+    const raced = this.v2Sessions.get(sessionId);
+    if (raced) {
+      this.warmPool.release(key, v2Session);
+      raced.lastUsedAt = Date.now();
+      return { session: raced.session, isFresh: false };
+    }
+
+    const binding = this.pooledToolBindings.get(v2Session);
+    if (binding) binding.canUseTool = canUseTool;
+    this.registerV2Session(sessionId, workspace, v2Session);
+    this.log.info(`V2 session for ${sessionId} taken from warm pool, PID: ${(v2Session as any).pid ?? 'unknown'}`);
+    return { session: v2Session, isFresh: true };
+  }
+
+  /**
+   * Start warming CLI processes for a workspace ahead of a run (batch task, path execution),
+   * so the first items don't pay the spawn cost.
+   */
+  prewarmWorkspace(workspace: string): void {
+    if (!this.config?.llm?.apiKey || !this.config?.llm?.model) return;
+    this.warmPool.prewarm(this.warmPoolKey(workspace));
+  }
+
+  getWarmPoolStats(): WarmPoolStats {
+    return this.warmPool.stats();
+  }
+
   // ── Workflow progress tracking ──
 
   /** AI notifies backend it entered a new dev-workflow step (via MCP tool) */
@@ -1079,22 +1236,18 @@ export class ClaudeSessionManager {
     return this.lastStreamActivityAt;
   }
 
-  private startCleanup(): void {
-    if (this.cleanupTimer) return;
-    const timer = setInterval(() => {
-      const now = Date.now();
-      for (const [sessionId, info] of this.v2Sessions) {
-        // Don't close if there's an active stream
-        if (this.activeStreams.has(sessionId)) continue;
+  /** Close V2 sessions idle past SESSION_IDLE_TIMEOUT_MS — runs on the warm pool's maintenance timer */
+  private closeIdleSessions(): void {
+    const now = Date.now();
+    for (const [sessionId, info] of this.v2Sessions) {
+      // Don't close if there's an active stream
+      if (this.activeStreams.has(sessionId)) continue;
 
-        if (now - info.lastUsedAt > ClaudeSessionManager.SESSION_IDLE_TIMEOUT_MS) {
-          this.log.info(`Closing idle V2 session ${sessionId} (idle ${Math.round((now - info.lastUsedAt) / 60000)}min)`);
-          this.closeV2Session(sessionId);
-        }
+      if (now - info.lastUsedAt > ClaudeSessionManager.SESSION_IDLE_TIMEOUT_MS) {
+        this.log.info(`Closing idle V2 session ${sessionId} (idle ${Math.round((now - info.lastUsedAt) / 60000)}min)`);
+        this.closeV2Session(sessionId);
       }
-    }, ClaudeSessionManager.CLEANUP_INTERVAL_MS);
-    timer.unref(); // Don't prevent process exit
-    this.cleanupTimer = timer;
+    }
   }
 
   // ── Public API ──
@@ -1276,10 +1429,19 @@ export class ClaudeSessionManager {
           } as import('./session-store.js').ContentBlock);
         }
       }
-      // Persist base64 images so they survive session switches
+      // Persist images so they survive session switches — as blob references when the
+      // blob store is available, so message rows don't carry megabytes of base64
       if (media && media.length > 0) {
         for (const m of media) {
           if (m.mimeType.startsWith('image/')) {
+            if (this.blobStore) {
+              const ref = this.blobStore.putBase64(m.base64Data, m.mimeType);
+              userContentBlocks.push({
+                type: 'image',
+                source: { type: 'blob', media_type: ref.mimeType, hash: ref.hash, size: ref.size },
+              } as import('./session-store.js').ContentBlock);
+              continue;
+            }
             userContentBlocks.push({
               type: 'image',
               source: {
@@ -1301,6 +1463,7 @@ export class ClaudeSessionManager {
 
     const abortController = new AbortController();
     this.markStreamStart(sessionId, abortController);
+    wsSend = this.sequenceFrames(sessionId, wsSend);
     this.sessionWsSend.set(sessionId, wsSend);
 
     // Track when this stream fully exits so the next sendMessage can await it
@@ -1312,10 +1475,10 @@ export class ClaudeSessionManager {
     let partialSaveTimer: ReturnType<typeof setInterval> | null = null;
 
     // Notify frontend immediately — let UI show "..." animation before heavy setup
-    wsSend(JSON.stringify({
+    wsSend({
       type: 'chat.start',
       sessionId,
-    }));
+    });
 
     // If preheat is in progress, wait for it to finish so we don't create a duplicate V2 session
     const preheatPromise = this.preheatPromises.get(sessionId);
@@ -1337,8 +1500,12 @@ export class ClaudeSessionManager {
     // Track whether this abort was user-initiated (stop button) vs system-initiated (stall/error).
     // User aborts preserve the V2 session so the user can "继续" without losing context.
     let userInitiatedAbort = false;
+    let llmPermit: LlmPermit | null = null;
+    /** Classified error of this turn, reported to the scheduler for backoff */
+    let llmErrorCode: string | undefined;
 
     try {
+      llmPermit = await this.llmScheduler.acquire('interactive', abortController.signal);
       this.log.info(`[sendMessage] ${sessionId}: getting/creating V2 session...`);
       const { session: v2Session, isFresh } = await this.getOrCreateV2Session(sessionId);
       this.log.info(`[sendMessage] ${sessionId}: V2 session ready, isFresh=${isFresh}, sending content (${content.length} chars)...`);
@@ -1376,7 +1543,8 @@ export class ClaudeSessionManager {
       if (isFresh) {
         // Fresh session (resume failed or first creation): inject recent conversation history
         // so Claude has context without relying on CLI's internal resume mechanism.
-        const history = this.getHistory(sessionId);
+        // Only the last few turns are injected — no need to load the full history
+        const { messages: history } = this.getHistoryPage(sessionId, undefined, ClaudeSessionManager.HISTORY_CONTEXT_MESSAGES);
         const recentTurns = this.buildHistoryContext(history, 3);
         const fullPrefix = recentTurns
           ? `${messagePrefix}\n\n${recentTurns}`
@@ -1540,17 +1708,17 @@ export class ClaudeSessionManager {
             // Flush previous tool use
             if (currentToolUse) {
               allToolUses.push(currentToolUse);
-              wsSend(JSON.stringify({ type: 'chat.tool_end', sessionId, toolUseId: currentToolUse.id }));
+              wsSend({ type: 'chat.tool_end', sessionId, toolUseId: currentToolUse.id });
               currentToolUse = null;
             }
             // Flush previous text segment so UI can freeze it
             if (fullContent.trim()) {
               textSegments.push(fullContent);
-              wsSend(JSON.stringify({
+              wsSend({
                 type: 'chat.segment',
                 sessionId,
                 segmentType: 'text',
-              }));
+              });
               fullContent = '';
             }
             break;
@@ -1568,12 +1736,12 @@ export class ClaudeSessionManager {
                   ? rawEvent.content_block.content : '';
                 currentToolResultContent = initialContent;
                 if (initialContent) {
-                  wsSend(JSON.stringify({
+                  wsSend({
                     type: 'chat.tool_result',
                     sessionId,
                     toolUseId: currentToolResultId,
                     content: initialContent,
-                  }));
+                  });
                 }
               } else if (blockType) {
                 currentBlockType = blockType;
@@ -1590,33 +1758,33 @@ export class ClaudeSessionManager {
                 // Check if this text is inside a tool_result block
                 if (currentBlockType === 'tool_result') {
                   currentToolResultContent += delta.content;
-                  wsSend(JSON.stringify({
+                  wsSend({
                     type: 'chat.tool_result',
                     sessionId,
                     toolUseId: currentToolResultId,
                     content: delta.content,
-                  }));
+                  });
                 } else {
                   fullContent += delta.content;
                   deltaCount++;
                   if (deltaCount <= 3) {
                     this.log.info(`[stream] ${sessionId}: sending text delta #${deltaCount}, len=${delta.content.length}`);
                   }
-                  wsSend(JSON.stringify({
+                  wsSend({
                     type: 'chat.delta',
                     sessionId,
                     content: delta.content,
                     deltaType: 'text',
-                  }));
+                  });
                 }
               } else if (delta.type === 'thinking') {
                 currentThinking += delta.content;
-                wsSend(JSON.stringify({
+                wsSend({
                   type: 'chat.delta',
                   sessionId,
                   content: delta.content,
                   deltaType: 'thinking',
-                }));
+                });
               } else if (delta.type === 'tool_use') {
                 toolInProgress = true;
                 if (delta.name && delta.id) {
@@ -1630,39 +1798,39 @@ export class ClaudeSessionManager {
                   // Freeze current text segment before tool starts
                   if (fullContent.trim()) {
                     textSegments.push(fullContent);
-                    wsSend(JSON.stringify({
+                    wsSend({
                       type: 'chat.segment',
                       sessionId,
                       segmentType: 'text',
-                    }));
+                    });
                     fullContent = '';
                   }
                   currentToolUse = { id: delta.id, name: delta.name, input: '' };
-                  wsSend(JSON.stringify({
+                  wsSend({
                     type: 'chat.tool_start',
                     sessionId,
                     toolId: delta.id,
                     toolName: delta.name,
-                  }));
+                  });
                 } else if (currentToolUse && delta.content) {
                   currentToolUse.input += delta.content;
-                  wsSend(JSON.stringify({
+                  wsSend({
                     type: 'chat.tool_delta',
                     sessionId,
                     toolId: currentToolUse.id,
                     content: delta.content,
-                  }));
+                  });
                 }
               } else if (delta.type === 'tool_result') {
                 // Initial content from content_block_start
                 toolInProgress = true;
                 currentToolResultContent += delta.content;
-                wsSend(JSON.stringify({
+                wsSend({
                   type: 'chat.tool_result',
                   sessionId,
                   toolUseId: delta.id,
                   content: delta.content,
-                }));
+                });
               }
             }
             break;
@@ -1671,7 +1839,7 @@ export class ClaudeSessionManager {
           case 'tool_progress': {
             const progress = sdkMsg as any;
             toolInProgress = true;
-            wsSend(JSON.stringify({
+            wsSend({
               type: 'chat.tool_progress',
               sessionId,
               toolUseId: progress.tool_use_id,
@@ -1679,7 +1847,7 @@ export class ClaudeSessionManager {
               elapsedSeconds: progress.elapsed_time_seconds,
               parentToolUseId: progress.parent_tool_use_id ?? null,
               taskId: progress.task_id ?? undefined,
-            }));
+            });
             break;
           }
 
@@ -1687,16 +1855,16 @@ export class ClaudeSessionManager {
             const sys = sdkMsg as any;
             const subtype = sys.subtype;
             if (subtype === 'task_started') {
-              wsSend(JSON.stringify({
+              wsSend({
                 type: 'chat.task_started',
                 sessionId,
                 taskId: sys.task_id,
                 toolUseId: sys.tool_use_id ?? undefined,
                 description: sys.description ?? '',
                 taskType: sys.task_type ?? undefined,
-              }));
+              });
             } else if (subtype === 'task_progress') {
-              wsSend(JSON.stringify({
+              wsSend({
                 type: 'chat.task_progress',
                 sessionId,
                 taskId: sys.task_id,
@@ -1705,7 +1873,7 @@ export class ClaudeSessionManager {
                 lastToolName: sys.last_tool_name ?? undefined,
                 summary: sys.summary ?? undefined,
                 usage: sys.usage ?? undefined,
-              }));
+              });
             } else if (subtype === 'task_notification') {
               const notifSummary = sys.summary ?? '';
               const notifToolUseId = sys.tool_use_id ?? '';
@@ -1718,7 +1886,7 @@ export class ClaudeSessionManager {
                   currentToolUse.summary = currentToolUse.summary || notifSummary;
                 }
               }
-              wsSend(JSON.stringify({
+              wsSend({
                 type: 'chat.task_notification',
                 sessionId,
                 taskId: sys.task_id,
@@ -1726,7 +1894,7 @@ export class ClaudeSessionManager {
                 status: sys.status, // completed | failed | stopped
                 summary: notifSummary,
                 usage: sys.usage ?? undefined,
-              }));
+              });
             }
             break;
           }
@@ -1745,12 +1913,12 @@ export class ClaudeSessionManager {
                 currentToolUse.summary = summaryText;
               }
             }
-            wsSend(JSON.stringify({
+            wsSend({
               type: 'chat.tool_use_summary',
               sessionId,
               summary: summaryText,
               precedingToolUseIds: precedingIds,
-            }));
+            });
             break;
           }
 
@@ -1762,9 +1930,8 @@ export class ClaudeSessionManager {
             const subagentType = result.subagent_type ?? result.type ?? '';
             this.log.info(`[stream] ${sessionId}: result event received, is_error=${isError}, stop_reason=${stopReason}, subagent_type=${subagentType}, deltas_sent=${deltaCount}, fullContent_len=${fullContent.length}`);
 
-            // Clear partial save timer and remove partial messages before saving final
+            // Stop partial saves; the partial row is compacted into the final message below
             if (partialSaveTimer) { clearInterval(partialSaveTimer); partialSaveTimer = null; }
-            this.store.clearPartialMessages(sessionId);
 
             // Save SDK session ID
             if (result.session_id) {
@@ -1818,32 +1985,23 @@ export class ClaudeSessionManager {
               contentBlocks.unshift(...textBlocks);
             }
 
-            // Store assistant message with contentBlocks
+            // Store assistant message with contentBlocks (replaces the streaming partial row)
             if (finalContent || contentBlocks.length > 0) {
-              this.store.addMessage(sessionId, {
+              this.store.finalizePartialMessage(sessionId, {
                 role: 'assistant',
                 content: finalContent,
                 contentBlocks: contentBlocks.length > 0 ? contentBlocks : undefined,
               });
+            } else {
+              this.store.clearPartialMessages(sessionId);
             }
 
-            let resultError: string | undefined;
+            const resultError = isError ? this.extractResultError(result) : undefined;
             if (isError) {
-              if ('errors' in result && result.errors?.length) {
-                resultError = result.errors.join(', ');
-              } else if ('error' in result && result.error) {
-                resultError = typeof result.error === 'string' ? result.error : JSON.stringify(result.error);
-              } else if ('result' in result && typeof result.result === 'string' && result.result) {
-                // SDK puts error message in 'result' field (e.g. "API Error: Request rejected (429)...")
-                resultError = result.result;
-              } else if ('message' in result && result.message) {
-                resultError = typeof result.message === 'string' ? result.message : JSON.stringify(result.message);
-              } else if ('api_error_status' in result && result.api_error_status) {
-                resultError = `API Error: HTTP ${result.api_error_status}`;
-              }
               this.log.warn(`SDK error for session ${sessionId}`, { resultError, apiStatus: result.api_error_status });
             }
             const classified = resultError ? this.classifyErrorMessage(resultError) : undefined;
+            if (isError) llmErrorCode = classified?.errorCode ?? 'unknown';
 
             // Context usage tracking.
             // Inspired by claude-hud: the SDK's result.usage contains API-level token counts
@@ -1897,7 +2055,7 @@ export class ClaudeSessionManager {
               break; // break out of stream loop, fall through to retry
             }
 
-            wsSend(JSON.stringify({
+            wsSend({
               type: isError ? 'chat.error' : 'chat.done',
               sessionId,
               cost,
@@ -1906,7 +2064,7 @@ export class ClaudeSessionManager {
                 outputTokens: totalOutputTokens,
               },
               ...(isError ? { error: classified?.userMessage ?? resultError ?? '模型服务返回未知错误，请稍后重试', errorCode: classified?.errorCode ?? 'unknown', rawError: resultError } : {}),
-            }));
+            });
 
             this.log.info(`Query completed for session ${sessionId}, cost: $${cost.toFixed(4)}, context: ${totalInputTokens} tokens (SDK: input=${sdkUsage?.input_tokens ?? 0}, cache_read=${sdkUsage?.cache_read_input_tokens ?? 0}, output=${sdkUsage?.output_tokens ?? 0}, model=${this.config?.llm?.model ?? 'unknown'})`);
 
@@ -1915,21 +2073,21 @@ export class ClaudeSessionManager {
               const CONTEXT_WARN_THRESHOLD = 100_000; // ~50% of typical 200k window
               const CONTEXT_CRITICAL_THRESHOLD = 150_000; // ~75% of typical 200k window
               if (totalInputTokens >= CONTEXT_CRITICAL_THRESHOLD) {
-                wsSend(JSON.stringify({
+                wsSend({
                   type: 'chat.context_warning',
                   sessionId,
                   level: 'critical',
                   inputTokens: totalInputTokens,
                   message: '对话上下文已接近模型上限，建议开启新会话继续',
-                }));
+                });
               } else if (totalInputTokens >= CONTEXT_WARN_THRESHOLD) {
-                wsSend(JSON.stringify({
+                wsSend({
                   type: 'chat.context_warning',
                   sessionId,
                   level: 'warning',
                   inputTokens: totalInputTokens,
                   message: '对话较长，如果感觉回复质量下降，建议开启新会话',
-                }));
+                });
               }
             }
 
@@ -1965,13 +2123,12 @@ export class ClaudeSessionManager {
       // Session expired retry: close stale session and resend with fresh session + history context
       if (needsSessionExpiredRetry) {
         this.log.info(`Retrying ${sessionId} with fresh session after session_expired`);
+        llmPermit?.release(llmErrorCode);
         return this.sendMessage(sessionId, content, wsSend, undefined, _retryCount + 1);
       }
 
       // Stream loop exited normally (break) — check if it was due to abort
       if (abortController.signal.aborted) {
-        // Clear partial messages before saving final partial message
-        this.store.clearPartialMessages(sessionId);
         this.savePartialAssistantMessage(sessionId, [...textSegments, fullContent].filter(s => s.trim()).join('\n'), allThinking, allToolUses, currentToolUse);
         const reason = stallAbortReason || '';
 
@@ -1990,18 +2147,17 @@ export class ClaudeSessionManager {
           this.log.info(`System abort for ${sessionId}, V2 session closed (reason: ${reason})`);
         }
 
-        wsSend(JSON.stringify({
+        wsSend({
           type: 'chat.aborted',
           sessionId,
           ...(reason ? { reason } : {}),
-        }));
+        });
       }
     } catch (err: any) {
       if (stallChecker) clearInterval(stallChecker);
       if (partialSaveTimer) { clearInterval(partialSaveTimer); partialSaveTimer = null; }
       if (err?.name === 'AbortError' || abortController.signal.aborted) {
         // Save partial assistant content so the user doesn't lose what was already streamed
-        this.store.clearPartialMessages(sessionId);
         this.savePartialAssistantMessage(sessionId, [...textSegments, fullContent].filter(s => s.trim()).join('\n'), allThinking, allToolUses, currentToolUse);
 
         const reason = stallAbortReason || '';
@@ -2012,7 +2168,7 @@ export class ClaudeSessionManager {
         // User abort: keep V2 session alive for "继续"
         if (userInitiatedAbort) {
           this.log.info(`User abort (catch) for ${sessionId}, keeping V2 session alive`);
-          wsSend(JSON.stringify({ type: 'chat.aborted', sessionId }));
+          wsSend({ type: 'chat.aborted', sessionId });
         }
         // Auto-retry for recoverable system errors (stall, process_dead, etc.) — max 2 retries
         else if (_retryCount < 2 && ClaudeSessionManager.AUTO_RETRY_ERRORS.has(reason)) {
@@ -2020,34 +2176,36 @@ export class ClaudeSessionManager {
           // Clean up the failed V2 session so a fresh one is created
           this.closeV2Session(sessionId);
           // Notify frontend that we're retrying
-          wsSend(JSON.stringify({
+          wsSend({
             type: 'chat.delta',
             sessionId,
             deltaType: 'text',
             content: '\n\n[自动重试中...]\n',
-          }));
+          });
           // Wait a moment before retrying — check if user sent a new message during wait
           await new Promise(r => setTimeout(r, 1000));
           if (this.activeStreams.has(sessionId)) {
             this.log.info(`User sent new message during retry wait for ${sessionId}, canceling auto-retry`);
-            wsSend(JSON.stringify({ type: 'chat.aborted', sessionId, reason }));
+            wsSend({ type: 'chat.aborted', sessionId, reason });
             return;
           }
           // Retry with "继续" to pick up where we left off
+          llmPermit?.release(llmErrorCode);
           return this.sendMessage(sessionId, '继续刚才的工作，不要重复已完成的部分', wsSend, undefined, _retryCount + 1);
         }
         // System abort: close V2 session
         else {
           this.closeV2Session(sessionId);
           this.log.info(`System abort (catch) for ${sessionId}, V2 session closed (reason: ${reason})`);
-          wsSend(JSON.stringify({
+          wsSend({
             type: 'chat.aborted',
             sessionId,
             ...(reason ? { reason } : {}),
-          }));
+          });
         }
       } else {
         const { errorCode, userMessage } = this.classifyError(err);
+        llmErrorCode = errorCode;
         const rawMessage = err instanceof Error ? err.message : String(err);
         this.log.error(`Query error for session ${sessionId}`, { error: rawMessage, errorCode, errorName: err instanceof Error ? err.name : undefined, errorStack: err instanceof Error ? err.stack?.slice(0, 500) : undefined });
 
@@ -2060,36 +2218,89 @@ export class ClaudeSessionManager {
             this.sdkSessionIds.delete(sessionId);
             try { this.store.updateSdkSessionId(sessionId, ''); } catch { /* ignore */ }
           }
-          wsSend(JSON.stringify({
+          wsSend({
             type: 'chat.delta',
             sessionId,
             deltaType: 'text',
             content: errorCode === 'session_expired'
               ? '\n\n[会话已过期，正在恢复历史上下文并重试...]\n'
               : '\n\n[遇到临时错误，自动重试中...]\n',
-          }));
+          });
           await new Promise(r => setTimeout(r, 2000));
           if (this.activeStreams.has(sessionId)) {
             this.log.info(`User sent new message during retry wait for ${sessionId}, canceling auto-retry`);
-            wsSend(JSON.stringify({ type: 'chat.error', sessionId, error: userMessage, errorCode, rawError: rawMessage }));
+            wsSend({ type: 'chat.error', sessionId, error: userMessage, errorCode, rawError: rawMessage });
             return;
           }
           // session_expired: retry with original user message (the failed turn never executed)
           const retryMsg = errorCode === 'session_expired' ? content : '继续刚才的工作，不要重复已完成的部分';
+          llmPermit?.release(llmErrorCode);
           return this.sendMessage(sessionId, retryMsg, wsSend, undefined, _retryCount + 1);
         }
 
-        wsSend(JSON.stringify({ type: 'chat.error', sessionId, error: userMessage, errorCode, rawError: rawMessage }));
+        wsSend({ type: 'chat.error', sessionId, error: userMessage, errorCode, rawError: rawMessage });
       }
     } finally {
+      llmPermit?.release(llmErrorCode);
       this.markStreamEnd(sessionId);
       this.activeQueries.delete(sessionId);
       this.sessionWsSend.delete(sessionId);
       this.streamDone.delete(sessionId);
+      this.scheduleReplayEviction(sessionId);
       streamResolve();
     }
   }
 
+  /**
+   * Wrap a turn's wsSend so every frame carries a per-session seq and is kept
+   * in the replay buffer; a reconnecting client resumes from its last seq.
+   */
+  private sequenceFrames(sessionId: string, wsSend: WsSend): WsSend {
+    if (this.sequencedSenders.has(wsSend)) return wsSend;
+
+    let entry = this.replayBuffers.get(sessionId);
+    if (!entry) {
+      entry = { buffer: new StreamReplayBuffer(ClaudeSessionManager.REPLAY_BUFFER_FRAMES), evictTimer: null };
+      this.replayBuffers.set(sessionId, entry);
+    }
+    if (entry.evictTimer) {
+      clearTimeout(entry.evictTimer);
+      entry.evictTimer = null;
+    }
+
+    const buffer = entry.buffer;
+    const sequenced: WsSend = (data) => {
+      wsSend(typeof data === 'string' ? data : buffer.push(data));
+    };
+    this.sequencedSenders.add(sequenced);
+    return sequenced;
+  }
+
+  private scheduleReplayEviction(sessionId: string): void {
+    const entry = this.replayBuffers.get(sessionId);
+    if (!entry) return;
+    if (entry.evictTimer) clearTimeout(entry.evictTimer);
+    entry.evictTimer = setTimeout(() => {
+      if (!this.activeStreams.has(sessionId)) this.replayBuffers.delete(sessionId);
+    }, ClaudeSessionManager.REPLAY_RETAIN_MS);
+    entry.evictTimer.unref?.();
+  }
+
+  /**
+   * Frames a client missed after `lastSeq`, for session.resume.
+   * Returns null when they are no longer buffered and the client must reload history.
+   */
+  getStreamReplay(sessionId: string, lastSeq: number): { frames: SequencedFrame[]; lastSeq: number } | null {
+    const entry = this.replayBuffers.get(sessionId);
+    if (!entry) return null;
+    const frames = entry.buffer.since(lastSeq);
+    return frames ? { frames, lastSeq: entry.buffer.lastSeq } : null;
+  }
+
+  isStreaming(sessionId: string): boolean {
+    return this.activeStreams.has(sessionId);
+  }
+
   /**
    * Classify an error from the Claude API into a user-friendly error code and message.
    */
@@ -2098,6 +2309,53 @@ export class ClaudeSessionManager {
     return this.classifyErrorMessage(msg);
   }
 
+  /** Error text of an is_error result message (the SDK uses several shapes) */
+  private extractResultError(result: any): string | undefined {
+    if ('errors' in result && result.errors?.length) {
+      return result.errors.join(', ');
+    }
+    if ('error' in result && result.error) {
+      return typeof result.error === 'string' ? result.error : JSON.stringify(result.error);
+    }
+    if ('result' in result && typeof result.result === 'string' && result.result) {
+      // SDK puts error message in 'result' field (e.g. "API Error: Request rejected (429)...")
+      return result.result;
+    }
+    if ('message' in result && result.message) {
+      return typeof result.message === 'string' ? result.message : JSON.stringify(result.message);
+    }
+    if ('api_error_status' in result && result.api_error_status) {
+      return `API Error: HTTP ${result.api_error_status}`;
+    }
+    return undefined;
+  }
+
+  /** Error code of a failed headless turn, for scheduler backoff */
+  private resultErrorCode(result: any): string | undefined {
+    if (!result.is_error) return undefined;
+    return this.classifyErrorMessage(this.extractResultError(result) ?? '').errorCode;
+  }
+
+  /** Queue for a scheduler slot; null when the caller aborted while waiting */
+  /**
+   * Register the stream, then queue for a model slot. Registering first lets
+   * abort() reach calls that are still queued; an abort while queued
+   * unregisters the stream and rejects with the scheduler's AbortError.
+   */
+  private async acquireLlmSlot(sessionId: string, lane: LlmLane, abortController: AbortController): Promise<LlmPermit> {
+    this.markStreamStart(sessionId, abortController);
+    try {
+      return await this.llmScheduler.acquire(lane, abortController.signal);
+    } catch (err) {
+      if (this.activeStreams.get(sessionId) === abortController) this.markStreamEnd(sessionId);
+      throw err;
+    }
+  }
+
+  getLlmSchedulerStats(): LlmSchedulerStats {
+    return this.llmScheduler.stats();
+  }
+
   private classifyErrorMessage(msg: string): { errorCode: string; userMessage: string } {
     // HTTP status patterns
     if (/\b429\b/.test(msg) || /rate.?limit/i.test(msg) || /too many requests/i.test(msg)) {
@@ -2144,6 +2402,7 @@ export class ClaudeSessionManager {
     abortController: AbortController,
     onActivity: () => void,
     onComplete?: (reply: string) => void,
+    lane: LlmLane = 'cron',
   ): Promise<void> {
     const session = this.sessions.get(sessionId);
     if (!session) throw new Error(`Session not found: ${sessionId}`);
@@ -2161,7 +2420,9 @@ export class ClaudeSessionManager {
 
     this.store.addMessage(sessionId, { role: 'user', content });
 
-    this.markStreamStart(sessionId, abortController);
+    // Queue for a model slot before the stall detector starts counting (abort() can cancel the wait)
+    const llmPermit = await this.acquireLlmSlot(sessionId, lane, abortController);
+    let llmErrorCode: string | undefined;
 
     // Stall detector for cron queries
     let lastActivityAt = Date.now();
@@ -2258,6 +2519,7 @@ export class ClaudeSessionManager {
           }
           case 'result': {
             const result = sdkMsg as any;
+            llmErrorCode = this.resultErrorCode(result);
             if (result.session_id) {
               this.sdkSessionIds.set(sessionId, result.session_id);
               this.store.updateSdkSessionId(sessionId, result.session_id);
@@ -2280,9 +2542,11 @@ export class ClaudeSessionManager {
     } catch (err: any) {
       clearInterval(stallChecker);
       if (err?.name !== 'AbortError' && !abortController.signal.aborted) {
+        llmErrorCode = this.classifyError(err).errorCode;
         throw err;
       }
     } finally {
+      llmPermit.release(llmErrorCode);
       this.markStreamEnd(sessionId);
     }
   }
@@ -2324,7 +2588,9 @@ export class ClaudeSessionManager {
 
     this.store.addMessage(sessionId, { role: 'user', content });
 
-    this.markStreamStart(sessionId, abortController);
+    // Queue for a model slot before the stall detector starts counting (abort() can cancel the wait)
+    const llmPermit = await this.acquireLlmSlot(sessionId, 'chatbot', abortController);
+    let llmErrorCode: string | undefined;
 
     // Track when this stream fully exits so the next call can await it
     let streamResolve!: () => void;
@@ -2542,6 +2808,7 @@ export class ClaudeSessionManager {
           }
           case 'result': {
             const result = sdkMsg as any;
+            llmErrorCode = this.resultErrorCode(result);
             if (result.session_id) {
               this.sdkSessionIds.set(sessionId, result.session_id);
               this.store.updateSdkSessionId(sessionId, result.session_id);
@@ -2570,10 +2837,12 @@ export class ClaudeSessionManager {
     } catch (err: any) {
       clearInterval(stallChecker);
       if (err?.name !== 'AbortError' && !abortController.signal.aborted) {
+        llmErrorCode = this.classifyError(err).errorCode;
         throw err;
       }
       return '';
     } finally {
+      llmPermit.release(llmErrorCode);
       this.markStreamEnd(sessionId);
       this.streamDone.delete(sessionId);
       streamResolve();
@@ -2586,6 +2855,7 @@ export class ClaudeSessionManager {
     abortController: AbortController,
     onDelta: (text: string) => void,
     systemPrompt?: string,
+    lane: LlmLane = 'smartpath',
   ): Promise<string> {
     const session = this.sessions.get(sessionId);
     if (!session) throw new Error(`Session not found: ${sessionId}`);
@@ -2606,7 +2876,9 @@ export class ClaudeSessionManager {
     }
 
     // 步骤执行不写 SQLite — 纯内存操作，不污染主会话列表
-    this.markStreamStart(sessionId, abortController);
+    // Queue for a model slot before the stall detector starts counting (abort() can cancel the wait)
+    const llmPermit = await this.acquireLlmSlot(sessionId, lane, abortController);
+    let llmErrorCode: string | undefined;
 
     let streamResolve!: () => void;
     const streamPromise = new Promise<void>(r => { streamResolve = r; });
@@ -2694,6 +2966,7 @@ export class ClaudeSessionManager {
           }
           case 'result': {
             const result = sdkMsg as any;
+            llmErrorCode = this.resultErrorCode(result);
             if (result.session_id) {
               this.sdkSessionIds.set(sessionId, result.session_id);
               // 不写 SQLite — 纯内存记录
@@ -2708,10 +2981,12 @@ export class ClaudeSessionManager {
     } catch (err: any) {
       clearInterval(stallChecker);
       if (err?.name !== 'AbortError' && !abortController.signal.aborted) {
+        llmErrorCode = this.classifyError(err).errorCode;
         throw err;
       }
       return '';
     } finally {
+      llmPermit.release(llmErrorCode);
       this.markStreamEnd(sessionId);
       this.streamDone.delete(sessionId);
       streamResolve();
@@ -2815,12 +3090,15 @@ export class ClaudeSessionManager {
 
     const finalContent = fullContent.trim();
     if (finalContent || contentBlocks.length > 0) {
-      this.store.addMessage(sessionId, {
+      // Replace the streaming partial with the final message
+      this.store.finalizePartialMessage(sessionId, {
         role: 'assistant',
         content: finalContent,
         contentBlocks: contentBlocks.length > 0 ? contentBlocks : undefined,
       });
       this.log.info(`Saved partial assistant message for session ${sessionId} (${finalContent.length} chars)`);
+    } else {
+      this.store.clearPartialMessages(sessionId);
     }
   }
 
@@ -2888,6 +3166,26 @@ export class ClaudeSessionManager {
     }));
   }
 
+  /**
+   * Newest-first paginated history for session.history.
+   * Pass the smallest id of the previous page as beforeId to load older messages.
+   */
+  getHistoryPage(sessionId: string, beforeId?: number, limit?: number): { messages: Array<Message & { timestamp: number }>; hasMore: boolean } {
+    const page = this.store.getMessagesPage(sessionId, { beforeId, limit });
+    return {
+      hasMore: page.hasMore,
+      messages: page.messages.map(msg => ({
+        ...msg,
+        timestamp: new Date(msg.createdAt + 'Z').getTime(),
+      })),
+    };
+  }
+
+  /** Load deferred content blocks for a single history message */
+  getMessageBlocks(sessionId: string, messageId: number): Array<import('./session-store.js').ContentBlock> | undefined {
+    return this.store.getMessageBlocks(sessionId, messageId);
+  }
+
   /**
    * Build a text context from recent conversation turns for fresh V2 sessions.
    * Each turn = user message + assistant reply. Returns empty string if no history.
@@ -2943,10 +3241,7 @@ export class ClaudeSessionManager {
   }
 
   close(): void {
-    if (this.cleanupTimer) {
-      clearInterval(this.cleanupTimer);
-      this.cleanupTimer = null;
-    }
+    this.warmPool.close();
     for (const controller of this.activeStreams.values()) {
       controller.abort();
     }
@@ -1,6 +1,9 @@
-import { execFile } from 'node:child_process';
+import { execFile, spawn } from 'node:child_process';
 import fs from 'node:fs';
 import path from 'node:path';
+import { Worker } from 'node:worker_threads';
+import { getWorkspaceFileIndex, peekWorkspaceFileIndex } from './workspace-file-index.js';
+import { getWorkerPool } from './worker-pool.js';
 
 export const MAX_FILE_SIZE = 1_048_576; // 1MB
 
@@ -146,6 +149,9 @@ export function handleListDir(workspace: string, dirPath: string): ListDirResult
 
   const rawEntries = fs.readdirSync(resolved, { withFileTypes: true });
   const entries: DirEntry[] = [];
+  // Sizes come from the file index when the workspace has one; stat only what it lacks
+  const index = peekWorkspaceFileIndex(workspace);
+  const relDir = toPosix(path.relative(path.resolve(workspace), resolved));
 
   for (const entry of rawEntries) {
     if (shouldHide(entry.name)) continue;
@@ -153,6 +159,11 @@ export function handleListDir(workspace: string, dirPath: string): ListDirResult
     if (entry.isDirectory()) {
       entries.push({ name: entry.name, type: 'directory' });
     } else if (entry.isFile()) {
+      const indexedSize = index?.sizeOf(relDir ? `${relDir}/${entry.name}` : entry.name);
+      if (indexedSize !== undefined) {
+        entries.push({ name: entry.name, type: 'file', size: indexedSize });
+        continue;
+      }
       try {
         const size = fs.statSync(path.join(resolved, entry.name)).size;
         entries.push({ name: entry.name, type: 'file', size });
@@ -162,12 +173,27 @@ export function handleListDir(workspace: string, dirPath: string): ListDirResult
     }
   }
 
-  entries.sort((a, b) => {
+  return { path: toPosix(resolved), entries: sortDirEntries(entries) };
+}
+
+/**
+ * handleListDir for WS handlers: readdir + per-file stat run on the worker
+ * pool, so a slow or huge directory never stalls the event loop.
+ */
+export async function handleListDirAsync(workspace: string, dirPath: string): Promise<ListDirResult> {
+  const resolved = validatePath(workspace, dirPath);
+  const entries = await getWorkerPool().run('listDir', { dir: resolved });
+  if (!entries) {
+    throw Object.assign(new Error('Directory not found'), { code: 'NOT_FOUND' });
+  }
+  return { path: toPosix(resolved), entries: sortDirEntries(entries.filter(e => !shouldHide(e.name))) };
+}
+
+function sortDirEntries(entries: DirEntry[]): DirEntry[] {
+  return entries.sort((a, b) => {
     if (a.type !== b.type) return a.type === 'directory' ? -1 : 1;
     return a.name.localeCompare(b.name);
   });
-
-  return { path: toPosix(resolved), entries };
 }
 
 export function handleReadFile(workspace: string, filePath: string): ReadFileResult | BinaryFileResult {
@@ -304,214 +330,324 @@ function isRgAvailable(): Promise<boolean> {
   return _rgCheckPromise;
 }
 
-function searchWithRg(
-  workspace: string,
-  symbol: string,
-  fileExt?: string,
-  maxResults: number = 20,
-): Promise<SearchMatch[] | null> {
-  return new Promise<SearchMatch[] | null>(async (resolve) => {
-    const available = await isRgAvailable();
-    if (!available) { resolve(null); return; }
-
-    const cleanSymbol = symbol.replace(/[^a-zA-Z0-9_]+/g, '_').replace(/^_+|_+$/g, '');
-    if (!cleanSymbol) { resolve([]); return; }
-
-    const args = [
-      '--no-heading',
-      '--line-number',
-      '--color=never',
-      '--max-count', String(maxResults),
-      '-C', '2',
-      '--word-regexp',
-      '--max-filesize', '1M',
-      '--regexp', cleanSymbol,
-    ];
-
-    if (fileExt) {
-      const ext = fileExt.startsWith('.') ? fileExt : '.' + fileExt;
-      args.push('--glob', '*' + ext);
-    } else {
-      args.push('--type-add', 'src:*.ts', '--type-add', 'src:*.tsx',
-        '--type-add', 'src:*.js', '--type-add', 'src:*.jsx',
-        '--type-add', 'src:*.py', '--type-add', 'src:*.java',
-        '--type-add', 'src:*.go', '--type-add', 'src:*.rs',
-        '--type-add', 'src:*.c', '--type-add', 'src:*.cpp',
-        '--type-add', 'src:*.h', '--type-add', 'src:*.hpp',
-        '--type-add', 'src:*.rb', '--type-add', 'src:*.php',
-        '--type-add', 'src:*.vue', '--type-add', 'src:*.svelte',
-        '--type', 'src');
-    }
+// ── Streaming symbol search ────────────────────────────────────────
 
-    const child = execFile('rg', args, {
-      cwd: path.resolve(workspace),
-      timeout: 5000,
-      maxBuffer: 5 * 1024 * 1024,
-      encoding: 'utf-8',
-    }, (err, stdout) => {
-      if (err || !stdout) { resolve(null); return; }
-      try {
-        resolve(parseRgOutput(stdout, maxResults));
-      } catch {
-        resolve(null);
-      }
-    });
+/** Safety net for runaway searches; results stream long before this */
+const SYMBOL_SEARCH_TIMEOUT_MS = 60_000;
+/** Files the worker-thread scanner reads before giving up (no rg) */
+const MAX_FILES_FALLBACK = 20_000;
+const CONTEXT_LINES = 2;
 
-    child.on('error', () => resolve(null));
-  });
+export interface SymbolSearchOptions {
+  /** Aborting kills rg / terminates the scanner; the partial result resolves with cancelled */
+  signal?: AbortSignal;
+  /** Called with each batch of matches as it arrives (one batch per file) */
+  onMatches?: (matches: SearchMatch[]) => void;
+}
+
+export interface StreamedSearchResult extends SearchResult {
+  cancelled?: boolean;
+}
+
+export function sanitizeSymbol(symbol: string): string {
+  return symbol.replace(/[^a-zA-Z0-9_]+/g, '_').replace(/^_+|_+$/g, '');
 }
 
-function parseRgOutput(stdout: string, maxResults: number): SearchMatch[] {
-  const lines = stdout.split('\n').filter(Boolean);
-  const matches: SearchMatch[] = [];
-  const fileLineMap = new Map<string, { line: number; content: string }[]>();
+/** Collects matches up to maxResults and forwards each batch to onMatches */
+class MatchSink {
+  readonly matches: SearchMatch[] = [];
+
+  constructor(readonly maxResults: number, private readonly onMatches?: (matches: SearchMatch[]) => void) {}
 
-  for (const line of lines) {
-    const matchLine = line.match(/^(.+?):(\d+):(.*)$/);
-    const contextLine = line.match(/^(.+?)-(\d+)-(.*)$/);
-    const parsed = matchLine || contextLine;
-    if (!parsed) continue;
+  get full(): boolean {
+    return this.matches.length >= this.maxResults;
+  }
 
-    const [, filePath, lineNum, content] = parsed;
-    const ln = parseInt(lineNum, 10);
+  push(batch: SearchMatch[]): void {
+    const accepted = batch.slice(0, this.maxResults - this.matches.length);
+    if (accepted.length === 0) return;
+    this.matches.push(...accepted);
+    this.onMatches?.(accepted);
+  }
+}
 
-    if (!fileLineMap.has(filePath)) {
-      fileLineMap.set(filePath, []);
+/** rg --json encodes non-UTF-8 paths / lines as base64 bytes */
+function rgText(data: { text?: string; bytes?: string } | undefined): string {
+  if (!data) return '';
+  if (data.text !== undefined) return data.text;
+  return data.bytes ? Buffer.from(data.bytes, 'base64').toString('utf-8') : '';
+}
+
+/**
+ * Incremental parser for `rg --json`. Lines of a file (matches + context) are
+ * buffered until its `end` event, then each match is emitted with its context
+ * — linear in the output size.
+ */
+class RgJsonParser {
+  private pending = '';
+  private lines = new Map<number, string>();
+  private matchLines: number[] = [];
+
+  constructor(private readonly onFile: (matches: SearchMatch[]) => void) {}
+
+  write(chunk: string): void {
+    const text = this.pending + chunk;
+    let start = 0;
+    let nl: number;
+    while ((nl = text.indexOf('\n', start)) >= 0) {
+      this.handleLine(text.slice(start, nl));
+      start = nl + 1;
     }
-    fileLineMap.get(filePath)!.push({ line: ln, content });
+    this.pending = text.slice(start);
   }
 
-  const seen = new Set<string>();
-  for (const [filePath, fileLines] of fileLineMap) {
-    const matchLines = lines
-      .filter(l => { const m = l.match(/^(.+?):(\d+):/); return m && m[1] === filePath; })
-      .map(l => { const m = l.match(/^.+?:(\d+):(.*)$/)!; return { line: parseInt(m[1], 10), content: m[2] }; });
-
-    for (const ml of matchLines) {
-      if (matches.length >= maxResults) break;
-      const key = `${filePath}:${ml.line}`;
-      if (seen.has(key)) continue;
-      seen.add(key);
-
-      const contextLines: string[] = [];
-      for (const fl of fileLines) {
-        if (fl.line >= ml.line - 2 && fl.line <= ml.line + 2) {
-          contextLines.push(fl.content);
+  private handleLine(line: string): void {
+    if (!line) return;
+    let event: { type: string; data: any };
+    try {
+      event = JSON.parse(line);
+    } catch {
+      return;
+    }
+    const { type, data } = event;
+    if (type === 'begin') {
+      this.lines.clear();
+      this.matchLines = [];
+    } else if (type === 'match' || type === 'context') {
+      const lineNumber = data.line_number as number | undefined;
+      if (lineNumber === undefined) return;
+      this.lines.set(lineNumber, rgText(data.lines).replace(/\r?\n$/, ''));
+      if (type === 'match') this.matchLines.push(lineNumber);
+    } else if (type === 'end') {
+      const filePath = toPosix(rgText(data.path)).replace(/^\.\//, '');
+      const matches: SearchMatch[] = this.matchLines.map((line) => {
+        const context: string[] = [];
+        for (let l = line - CONTEXT_LINES; l <= line + CONTEXT_LINES; l++) {
+          const content = this.lines.get(l);
+          if (content !== undefined) context.push(content);
         }
-      }
-
-      matches.push({
-        filePath: toPosix(filePath),
-        line: ml.line,
-        lineContent: ml.content,
-        context: contextLines.join('\n') || ml.content,
+        const lineContent = this.lines.get(line)!;
+        return { filePath, line, lineContent, context: context.join('\n') || lineContent };
       });
+      this.lines.clear();
+      this.matchLines = [];
+      if (matches.length > 0) this.onFile(matches);
     }
-    if (matches.length >= maxResults) break;
   }
+}
 
-  return matches;
+function buildRgArgs(symbol: string, fileExt: string | undefined, maxResults: number): string[] {
+  const args = [
+    '--json',
+    '--max-count', String(maxResults),
+    '-C', String(CONTEXT_LINES),
+    '--word-regexp',
+    '--max-filesize', '1M',
+    '--regexp', symbol,
+  ];
+
+  if (fileExt) {
+    const ext = fileExt.startsWith('.') ? fileExt : '.' + fileExt;
+    args.push('--glob', '*' + ext);
+  } else {
+    for (const ext of DEFAULT_SEARCH_EXTENSIONS) args.push('--type-add', `src:*${ext}`);
+    args.push('--type', 'src');
+  }
+  return args;
 }
 
-export async function handleSearchSymbols(
+/**
+ * Stream `rg --json` results into the sink. Resolves false when rg is not
+ * usable (missing, or failed before producing anything) so the caller can
+ * fall back to the scanner.
+ */
+async function searchWithRg(
   workspace: string,
   symbol: string,
-  fileExt?: string,
-  maxResults: number = 20,
-): Promise<SearchResult> {
-  const cleanSymbol = symbol.replace(/[^a-zA-Z0-9_]+/g, '_').replace(/^_+|_+$/g, '');
-  if (!cleanSymbol) return { symbol: '', matches: [] };
+  fileExt: string | undefined,
+  sink: MatchSink,
+  signal?: AbortSignal,
+): Promise<boolean> {
+  if (!(await isRgAvailable())) return false;
+  if (signal?.aborted) return true;
+
+  return new Promise<boolean>((resolve) => {
+    // stdin ignored: rg would otherwise search a piped stdin instead of cwd
+    const child = spawn('rg', buildRgArgs(symbol, fileExt, sink.maxResults), {
+      cwd: path.resolve(workspace),
+      stdio: ['ignore', 'pipe', 'ignore'],
+    });
+    let produced = false;
+    let settled = false;
+    const finish = (usable: boolean) => {
+      if (settled) return;
+      settled = true;
+      clearTimeout(timer);
+      signal?.removeEventListener('abort', stop);
+      if (child.exitCode === null) child.kill();
+      resolve(usable);
+    };
+    const stop = () => finish(true);
+    const timer = setTimeout(stop, SYMBOL_SEARCH_TIMEOUT_MS);
+    signal?.addEventListener('abort', stop, { once: true });
+
+    const parser = new RgJsonParser((matches) => {
+      produced = true;
+      sink.push(matches);
+      if (sink.full) stop();
+    });
+    child.stdout!.setEncoding('utf-8');
+    child.stdout!.on('data', (chunk: string) => {
+      if (!settled) parser.write(chunk);
+    });
+    child.on('error', () => finish(produced));
+    // Exit code 1 = no matches; 2 = errors (e.g. unreadable files) alongside results
+    child.on('close', (code) => finish(produced || code === 0 || code === 1));
+  });
+}
 
-  try {
-    const rgMatches = await searchWithRg(workspace, cleanSymbol, fileExt, maxResults);
-    if (rgMatches !== null) {
-      return { symbol: cleanSymbol, matches: rgMatches };
+/**
+ * Scanner used when rg is unavailable (evaluated as CommonJS so it runs the
+ * same under tsx and the compiled build). Posts one message per file with
+ * matches, then { done: true }.
+ */
+const SYMBOL_SCAN_WORKER_SOURCE = `
+const fs = require('node:fs');
+const path = require('node:path');
+const { parentPort, workerData } = require('node:worker_threads');
+const { root, symbol, extensions, skipDirs, maxResults, maxFiles, maxFileSize, contextLines } = workerData;
+const regex = new RegExp('\\\\b' + symbol + '\\\\b');
+const exts = new Set(extensions);
+const skip = new Set(skipDirs);
+let found = 0;
+let filesScanned = 0;
+const stack = [''];
+outer: while (stack.length > 0) {
+  const rel = stack.pop();
+  let entries;
+  try { entries = fs.readdirSync(path.join(root, rel), { withFileTypes: true }); } catch { continue; }
+  for (const entry of entries) {
+    if (skip.has(entry.name)) continue;
+    const childRel = rel ? rel + '/' + entry.name : entry.name;
+    if (entry.isDirectory()) { stack.push(childRel); continue; }
+    if (!entry.isFile() || !exts.has(path.extname(entry.name).toLowerCase())) continue;
+    if (++filesScanned > maxFiles) break outer;
+    let lines;
+    try {
+      const full = path.join(root, childRel);
+      if (fs.statSync(full).size > maxFileSize) continue;
+      lines = fs.readFileSync(full, 'utf-8').split('\\n');
+    } catch { continue; }
+    const matches = [];
+    for (let i = 0; i < lines.length && found + matches.length < maxResults; i++) {
+      if (!regex.test(lines[i])) continue;
+      matches.push({
+        filePath: childRel,
+        line: i + 1,
+        lineContent: lines[i],
+        context: lines.slice(Math.max(0, i - contextLines), i + contextLines + 1).join('\\n'),
+      });
+    }
+    if (matches.length > 0) {
+      found += matches.length;
+      parentPort.postMessage({ matches });
+      if (found >= maxResults) break outer;
     }
-  } catch {
-    // rg failed, fall through to Node.js implementation
   }
+}
+parentPort.postMessage({ done: true });
+`;
 
-  return handleSearchSymbolsFallback(workspace, cleanSymbol, fileExt, maxResults);
+function searchWithScanner(
+  workspace: string,
+  symbol: string,
+  fileExt: string | undefined,
+  sink: MatchSink,
+  signal?: AbortSignal,
+): Promise<void> {
+  if (signal?.aborted) return Promise.resolve();
+  const extensions = fileExt
+    ? [(fileExt.startsWith('.') ? fileExt : '.' + fileExt).toLowerCase()]
+    : [...DEFAULT_SEARCH_EXTENSIONS];
+
+  return new Promise<void>((resolve, reject) => {
+    const worker = new Worker(SYMBOL_SCAN_WORKER_SOURCE, {
+      eval: true,
+      workerData: {
+        root: path.resolve(workspace),
+        symbol,
+        extensions,
+        skipDirs: [...HIDDEN_DIRS],
+        maxResults: sink.maxResults,
+        maxFiles: MAX_FILES_FALLBACK,
+        maxFileSize: MAX_FILE_SIZE,
+        contextLines: CONTEXT_LINES,
+      },
+    });
+    let settled = false;
+    const finish = (err?: Error) => {
+      if (settled) return;
+      settled = true;
+      clearTimeout(timer);
+      signal?.removeEventListener('abort', stop);
+      void worker.terminate();
+      if (err) reject(err); else resolve();
+    };
+    const stop = () => finish();
+    const timer = setTimeout(stop, SYMBOL_SEARCH_TIMEOUT_MS);
+    signal?.addEventListener('abort', stop, { once: true });
+
+    worker.on('message', (msg: { matches?: SearchMatch[]; done?: boolean }) => {
+      if (settled) return;
+      if (msg.matches) sink.push(msg.matches);
+      if (msg.done || sink.full) stop();
+    });
+    worker.on('error', (err) => finish(err));
+    worker.on('exit', () => finish());
+  });
 }
 
-function handleSearchSymbolsFallback(
+export async function handleSearchSymbols(
   workspace: string,
-  cleanSymbol: string,
+  symbol: string,
   fileExt?: string,
   maxResults: number = 20,
-): SearchResult {
-  const regex = new RegExp(`\\b${escapeRegExp(cleanSymbol)}\\b`);
-
-  const extSet = fileExt
-    ? new Set([fileExt.startsWith('.') ? fileExt : '.' + fileExt])
-    : DEFAULT_SEARCH_EXTENSIONS;
-
-  const matches: SearchMatch[] = [];
-  let filesScanned = 0;
-  const MAX_FILES_FALLBACK = 5000;
-
-  function walk(dir: string, relativeTo: string): void {
-    if (matches.length >= maxResults || filesScanned >= MAX_FILES_FALLBACK) return;
-
-    let entries: fs.Dirent[];
-    try {
-      entries = fs.readdirSync(dir, { withFileTypes: true });
-    } catch {
-      return;
-    }
+  options: SymbolSearchOptions = {},
+): Promise<StreamedSearchResult> {
+  const cleanSymbol = sanitizeSymbol(symbol);
+  if (!cleanSymbol) return { symbol: '', matches: [] };
 
-    for (const entry of entries) {
-      if (matches.length >= maxResults || filesScanned >= MAX_FILES_FALLBACK) return;
-      if (HIDDEN_DIRS.has(entry.name)) continue;
+  const { signal, onMatches } = options;
+  const sink = new MatchSink(maxResults, onMatches);
 
-      const fullPath = path.join(dir, entry.name);
-      const relPath = toPosix(path.join(relativeTo, entry.name));
-
-      if (entry.isDirectory()) {
-        walk(fullPath, relPath);
-      } else if (entry.isFile()) {
-        const ext = path.extname(entry.name).toLowerCase();
-        if (!extSet.has(ext)) continue;
-
-        filesScanned++;
-        try {
-          const stat = fs.statSync(fullPath);
-          if (stat.size > MAX_FILE_SIZE) continue;
-          const content = fs.readFileSync(fullPath, 'utf-8');
-          const lines = content.split('\n');
-          for (let i = 0; i < lines.length; i++) {
-            if (matches.length >= maxResults) return;
-            if (regex.test(lines[i])) {
-              const contextStart = Math.max(0, i - 2);
-              const contextEnd = Math.min(lines.length, i + 3);
-              const context = lines.slice(contextStart, contextEnd).join('\n');
-              matches.push({
-                filePath: relPath,
-                line: i + 1,
-                lineContent: lines[i],
-                context,
-              });
-            }
-          }
-        } catch {
-          // Skip files we can't read
-        }
-      }
-    }
+  let usedRg = false;
+  try {
+    usedRg = await searchWithRg(workspace, cleanSymbol, fileExt, sink, signal);
+  } catch {
+    // rg failed, fall through to the scanner
+  }
+  if (!usedRg) {
+    await searchWithScanner(workspace, cleanSymbol, fileExt, sink, signal);
   }
 
-  walk(path.resolve(workspace), '');
-
-  return { symbol: cleanSymbol, matches };
+  return { symbol: cleanSymbol, matches: sink.matches, ...(signal?.aborted ? { cancelled: true } : {}) };
 }
 
 /**
- * Search for a file by name in the workspace (limited depth, skip hidden dirs).
- * Returns the first match's resolved path, or null.
+ * Search for a file by name in the workspace.
+ * Answered from the workspace file index when it is ready (shallowest match);
+ * otherwise a limited-depth walk, while the index builds in the background.
+ * Returns the match's resolved path, or null.
  */
 function findFileByName(workspace: string, fileName: string, maxDepth: number = 25): string | null {
   const resolvedWorkspace = path.resolve(workspace);
 
+  const index = getWorkspaceFileIndex(resolvedWorkspace);
+  if (index.isReady) {
+    const rel = index.findByName(fileName);
+    return rel ? path.join(resolvedWorkspace, rel) : null;
+  }
+
   function walk(dir: string, depth: number): string | null {
     if (depth > maxDepth) return null;
 
@@ -577,62 +713,19 @@ function isSourceFile(fileName: string): boolean {
   return SOURCE_EXTENSIONS.has(path.extname(fileName).toLowerCase());
 }
 
-export function handleSearchFiles(workspace: string, query: string, maxResults = 50, sourceOnly = true): FileSearchResult[] {
-  if (!query || query.length < 1) return [];
-
-  const normalizedQuery = query.toLowerCase();
-  const results: FileSearchResult[] = [];
-  const resolvedWorkspace = path.resolve(workspace);
-
-  function walk(dir: string, relativeTo: string): void {
-    if (results.length >= maxResults) return;
-
-    let entries: fs.Dirent[];
-    try {
-      entries = fs.readdirSync(dir, { withFileTypes: true });
-    } catch {
-      return;
-    }
-
-    for (const entry of entries) {
-      if (results.length >= maxResults) return;
-      if (shouldHide(entry.name)) continue;
-
-      const fullPath = path.join(dir, entry.name);
-      const relPath = toPosix(path.join(relativeTo, entry.name));
-
-      if (entry.isFile()) {
-        if (sourceOnly && !isSourceFile(entry.name)) continue;
-        if (fuzzyMatch(entry.name.toLowerCase(), normalizedQuery)) {
-          results.push({ filePath: relPath, fileName: entry.name });
-        }
-      } else if (entry.isDirectory()) {
-        walk(fullPath, relPath);
-      }
-    }
-  }
-
-  walk(resolvedWorkspace, '');
-  return results;
-}
-
 /**
- * Simple fuzzy match: all chars in `query` must appear in `target` in order.
- * "bc" matches "Abc.java" (b at index 1, c at index 2).
+ * Ranked fuzzy file search over the workspace file index (see
+ * workspace-file-index.ts). The first query of a workspace waits for the
+ * index (snapshot load or background build); later queries are in-memory.
  */
-function fuzzyMatch(target: string, query: string): boolean {
-  let ti = 0;
-  for (let qi = 0; qi < query.length; qi++) {
-    const ch = query[qi];
-    while (ti < target.length && target[ti] !== ch) ti++;
-    if (ti >= target.length) return false;
-    ti++;
-  }
-  return true;
-}
+export async function handleSearchFiles(workspace: string, query: string, maxResults = 50, sourceOnly = true): Promise<FileSearchResult[]> {
+  if (!query || query.length < 1) return [];
 
-function escapeRegExp(str: string): string {
-  return str.replace(/[.*+?^${}()|[\]\\]/g, '\\$&');
+  const index = getWorkspaceFileIndex(workspace);
+  await index.start();
+  return index
+    .search(query, { limit: maxResults, filter: sourceOnly ? isSourceFile : undefined })
+    .map(({ filePath, fileName }) => ({ filePath, fileName }));
 }
 
 export function detectLanguage(filePath: string): string {
@@ -1,9 +1,9 @@
 import cron from 'node-cron';
 import type { ScheduledTask } from 'node-cron';
 import { CronExpressionParser } from 'cron-parser';
-import fs from 'fs';
 import path from 'path';
 import { createLogger, type Logger } from './utils/logger.js';
+import { getWorkerPool } from './worker-pool.js';
 import type { CronTaskStore } from './cron-task-store.js';
 import { CronExecutor } from './cron-executor.js';
 import type { CronTask } from './types.js';
@@ -185,68 +185,60 @@ export class CronScheduler {
       // 收集所有扫描到的 (workspace, skillName) 组合
       const scannedKeys = new Set<string>();
 
-      for (const workspace of workspaces) {
-        const skillsDir = path.join(workspace, '.claude', 'skills');
-        if (!fs.existsSync(skillsDir)) continue;
-
-        const entries = fs.readdirSync(skillsDir, { withFileTypes: true });
-        for (const entry of entries) {
-          if (!entry.isDirectory()) continue;
-
-          const crontabPath = path.join(skillsDir, entry.name, 'crontab.md');
-          if (!fs.existsSync(crontabPath)) continue;
-
-          const content = fs.readFileSync(crontabPath, 'utf-8');
-          const parsed = parseCrontabMd(content);
-          if (!parsed) continue;
-
-          const key = `${workspace}:${entry.name}`;
-          scannedKeys.add(key);
-
-          const existing = this.taskStore.getTaskByWorkspaceAndSkill(workspace, entry.name);
-          if (existing) {
-            const cronChanged = existing.cronExpression !== parsed.expression;
-            // Don't override enabled state from crontab.md — user's manual toggle takes precedence
-            if (cronChanged) {
-              const updates: Partial<Pick<CronTask, 'cronExpression'>> = {};
-              updates.cronExpression = parsed.expression;
-              const updated = this.taskStore.updateTask(existing.id, updates);
-              if (updated && updated.enabled) {
-                this.schedule(updated);
-              }
-              result.updated++;
-            } else {
-              result.skipped++;
+      // 目录扫描和文件读取在 worker pool 上执行，不阻塞事件循环
+      const pool = getWorkerPool();
+      const crontabs = await pool.run('readCrontabs', { workspaces });
+      for (const { workspace, skillName, content } of crontabs) {
+        const parsed = parseCrontabMd(content);
+        if (!parsed) continue;
+
+        const key = `${workspace}:${skillName}`;
+        scannedKeys.add(key);
+
+        const existing = this.taskStore.getTaskByWorkspaceAndSkill(workspace, skillName);
+        if (existing) {
+          const cronChanged = existing.cronExpression !== parsed.expression;
+          // Don't override enabled state from crontab.md — user's manual toggle takes precedence
+          if (cronChanged) {
+            const updates: Partial<Pick<CronTask, 'cronExpression'>> = {};
+            updates.cronExpression = parsed.expression;
+            const updated = this.taskStore.updateTask(existing.id, updates);
+            if (updated && updated.enabled) {
+              this.schedule(updated);
             }
+            result.updated++;
           } else {
-            const task = this.taskStore.createTask({
-              workspace,
-              skillName: entry.name,
-              cronExpression: parsed.expression,
-              source: 'scan',
-              enabled: parsed.enabled ?? true,
-            });
-            if (task.enabled) {
-              this.schedule(task);
-            }
-            result.created++;
+            result.skipped++;
+          }
+        } else {
+          const task = this.taskStore.createTask({
+            workspace,
+            skillName,
+            cronExpression: parsed.expression,
+            source: 'scan',
+            enabled: parsed.enabled ?? true,
+          });
+          if (task.enabled) {
+            this.schedule(task);
           }
+          result.created++;
         }
       }
 
       // 禁用 crontab.md 已被删除的任务
-      const allTasks = this.taskStore.listTasks();
-      for (const task of allTasks) {
-        const key = `${task.workspace}:${task.skillName}`;
-        if (!scannedKeys.has(key) && task.enabled) {
-          // 检查 crontab.md 是否还存在
-          const crontabPath = path.join(task.workspace, '.claude', 'skills', task.skillName, 'crontab.md');
-          if (!fs.existsSync(crontabPath)) {
-            this.taskStore.updateTask(task.id, { enabled: false });
-            this.unschedule(task.id);
-            result.disabled++;
-          }
-        }
+      const orphaned = this.taskStore.listTasks()
+        .filter(task => task.enabled && !scannedKeys.has(`${task.workspace}:${task.skillName}`));
+      if (orphaned.length > 0) {
+        // 检查 crontab.md 是否还存在
+        const exists = await pool.run('pathsExist', {
+          paths: orphaned.map(task => path.join(task.workspace, '.claude', 'skills', task.skillName, 'crontab.md')),
+        });
+        orphaned.forEach((task, i) => {
+          if (exists[i]) return;
+          this.taskStore.updateTask(task.id, { enabled: false });
+          this.unschedule(task.id);
+          result.disabled++;
+        });
       }
 
       if (result.created > 0 || result.updated > 0 || result.disabled > 0) {
@@ -3,6 +3,7 @@ import type { Database } from 'better-sqlite3';
 // @ts-expect-error - better-sqlite3 ESM interop
 const DatabaseConstructor = betterSqlite3 as unknown as typeof betterSqlite3.default;
 import { createLogger, type Logger } from './utils/logger.js';
+import { StatementCache } from './utils/sqlite.js';
 import { v4 as uuidv4 } from 'uuid';
 import type { CronTask, CronRun } from './types.js';
 
@@ -19,14 +20,20 @@ function mapTaskRow(row: Record<string, unknown>): CronTask {
 
 export class CronTaskStore {
   private db: Database;
+  private statements: StatementCache;
   private log: Logger;
 
   constructor(dbPath: string) {
     this.db = new DatabaseConstructor(dbPath);
+    this.statements = new StatementCache(this.db);
     this.log = createLogger('CronTaskStore');
     this.init();
   }
 
+  private stmt(sql: string) {
+    return this.statements.get(sql);
+  }
+
   private init(): void {
     // 创建定时任务表
     this.db.exec(`
@@ -102,7 +109,7 @@ export class CronTaskStore {
     const now = new Date().toISOString();
     const source = input.source ?? 'manual';
     const enabled = input.enabled !== false ? 1 : 0;
-    this.db.prepare(`
+    this.stmt(`
       INSERT INTO cron_tasks (id, workspace, skill_name, cron_expression, source, enabled, created_at, updated_at)
       VALUES (?, ?, ?, ?, ?, ?, ?, ?)
     `).run(id, input.workspace, input.skillName, input.cronExpression, source, enabled, now, now);
@@ -111,7 +118,7 @@ export class CronTaskStore {
   }
 
   getTask(id: string): CronTask | undefined {
-    const row = this.db.prepare(`
+    const row = this.stmt(`
       SELECT ${TASK_COLUMNS} FROM cron_tasks WHERE id = ?
     `).get(id) as Record<string, unknown> | undefined;
     if (!row) return undefined;
@@ -119,7 +126,7 @@ export class CronTaskStore {
   }
 
   getTaskByWorkspaceAndSkill(workspace: string, skillName: string): CronTask | undefined {
-    const row = this.db.prepare(`
+    const row = this.stmt(`
       SELECT ${TASK_COLUMNS} FROM cron_tasks WHERE workspace = ? AND skill_name = ?
     `).get(workspace, skillName) as Record<string, unknown> | undefined;
     if (!row) return undefined;
@@ -127,14 +134,14 @@ export class CronTaskStore {
   }
 
   listTasks(): CronTask[] {
-    const rows = this.db.prepare(`
+    const rows = this.stmt(`
       SELECT ${TASK_COLUMNS} FROM cron_tasks ORDER BY created_at DESC
     `).all() as Record<string, unknown>[];
     return rows.map(mapTaskRow);
   }
 
   listEnabledTasks(): CronTask[] {
-    const rows = this.db.prepare(`
+    const rows = this.stmt(`
       SELECT ${TASK_COLUMNS} FROM cron_tasks WHERE enabled = 1 ORDER BY created_at DESC
     `).all() as Record<string, unknown>[];
     return rows.map(mapTaskRow);
@@ -167,7 +174,7 @@ export class CronTaskStore {
     values.push(new Date().toISOString());
     values.push(id);
 
-    this.db.prepare(`
+    this.stmt(`
       UPDATE cron_tasks SET ${fields.join(', ')} WHERE id = ?
     `).run(...values);
 
@@ -175,14 +182,14 @@ export class CronTaskStore {
   }
 
   deleteTask(id: string): void {
-    this.db.prepare('DELETE FROM cron_tasks WHERE id = ?').run(id);
+    this.stmt('DELETE FROM cron_tasks WHERE id = ?').run(id);
   }
 
   // === Run Records ===
 
   createRun(taskId: string, sessionId: string): CronRun {
     const now = new Date().toISOString();
-    const result = this.db.prepare(`
+    const result = this.stmt(`
       INSERT INTO cron_runs (task_id, session_id, status, started_at, last_activity_at)
       VALUES (?, ?, 'running', ?, ?)
     `).run(taskId, sessionId, now, now);
@@ -223,11 +230,11 @@ export class CronTaskStore {
     if (fields.length === 0) return;
 
     values.push(id);
-    this.db.prepare(`UPDATE cron_runs SET ${fields.join(', ')} WHERE id = ?`).run(...values);
+    this.stmt(`UPDATE cron_runs SET ${fields.join(', ')} WHERE id = ?`).run(...values);
   }
 
   getLatestRun(taskId: string): CronRun | undefined {
-    const row = this.db.prepare(`
+    const row = this.stmt(`
       SELECT id, task_id as taskId, session_id as sessionId, status,
              started_at as startedAt, finished_at as finishedAt,
              last_activity_at as lastActivityAt, error_message as errorMessage
@@ -237,7 +244,7 @@ export class CronTaskStore {
   }
 
   listRuns(taskId: string, limit = 20): CronRun[] {
-    return this.db.prepare(`
+    return this.stmt(`
       SELECT id, task_id as taskId, session_id as sessionId, status,
              started_at as startedAt, finished_at as finishedAt,
              last_activity_at as lastActivityAt, error_message as errorMessage
@@ -246,7 +253,7 @@ export class CronTaskStore {
   }
 
   getRunningRuns(): CronRun[] {
-    return this.db.prepare(`
+    return this.stmt(`
       SELECT id, task_id as taskId, session_id as sessionId, status,
              started_at as startedAt, finished_at as finishedAt,
              last_activity_at as lastActivityAt, error_message as errorMessage
@@ -0,0 +1,341 @@
+/**
+ * Paged commit graph with server-side lane assignment.
+ *
+ * - One `git log --all --topo-order` per workspace is read lazily: stdout is
+ *   paused once enough rows are buffered for the pages asked for so far, so
+ *   opening the log of a 100k-commit repository only parses the first page
+ * - Lanes are assigned incrementally as commits arrive (each lane holds the
+ *   hash it expects next); every row carries its own lane geometry so the
+ *   renderer can draw any window of rows without the ones before it
+ * - Rows are addressed by a cursor "<graphId>:<offset>". The graph id is a
+ *   hash of HEAD and every ref (recomputed when the git state cache sees refs
+ *   change), so it only changes with the history; a cursor from an older
+ *   graph restarts from the top with `reset: true`
+ * - An idle reader process is killed; reading further restarts git with
+ *   --skip and continues from the kept lane state. A failed read rejects the
+ *   pending pages and is retried by the next request
+ */
+
+import { execFile, spawn, type ChildProcess } from 'node:child_process';
+import { createHash, randomUUID } from 'node:crypto';
+import path from 'node:path';
+import { promisify } from 'node:util';
+import { getGitStateCache } from './git-state-cache.js';
+import { createLogger } from './utils/logger.js';
+
+const log = createLogger('GitCommitGraph');
+const execFileAsync = promisify(execFile);
+
+export const DEFAULT_GRAPH_PAGE_SIZE = 200;
+const MAX_GRAPH_PAGE_SIZE = 1_000;
+/** Rows parsed ahead of the last requested page */
+const READ_AHEAD_ROWS = 200;
+/** A paused reader with no page requests for this long is killed */
+const READER_IDLE_MS = 60_000;
+/** Open graphs kept at once */
+const MAX_OPEN_GRAPHS = 8;
+
+const FIELD_SEP = '\x01';
+const FORMAT = ['%H', '%P', '%h', '%s', '%an', '%aI', '%D'].join('%x01');
+
+export interface GitGraphRow {
+  hash: string;
+  shortHash: string;
+  parents: string[];
+  message: string;
+  author: string;
+  date: string;
+  refs: string;
+  /** Column of the commit dot */
+  lane: number;
+  /** Lanes entering the commit from the row above */
+  up: number[];
+  /** Lanes leaving the commit towards its parents */
+  down: number[];
+  /** Lanes passing straight through the row */
+  through: number[];
+  /** Lane slots in use on this row (for sizing the graph column) */
+  width: number;
+}
+
+export interface GitGraphPage {
+  graphId: string;
+  rows: GitGraphRow[];
+  /** Offset of rows[0] */
+  offset: number;
+  /** Cursor of the next page, null at the end of history */
+  nextCursor: string | null;
+  /** The cursor belonged to an older graph (refs changed): rows start at 0 */
+  reset?: boolean;
+}
+
+/**
+ * Incremental lane assignment. Lanes are never shifted, only freed and
+ * reused, so a lane that passes through a row is a straight vertical line.
+ */
+export class LaneAssigner {
+  private lanes: Array<string | null> = [];
+
+  place(hash: string, parents: string[]): Pick<GitGraphRow, 'lane' | 'up' | 'down' | 'through' | 'width'> {
+    const up: number[] = [];
+    const through: number[] = [];
+    for (let i = 0; i < this.lanes.length; i++) {
+      const expected = this.lanes[i];
+      if (expected === hash) up.push(i);
+      else if (expected !== null) through.push(i);
+    }
+
+    // Branch tip (no child seen yet) takes the first free slot
+    const lane = up.length > 0 ? up[0] : this.allocate();
+    for (const i of up) this.lanes[i] = null;
+
+    const down: number[] = [];
+    if (parents.length > 0) {
+      this.lanes[lane] = parents[0];
+      down.push(lane);
+    }
+    for (const parent of parents.slice(1)) {
+      const existing = this.lanes.indexOf(parent);
+      if (existing >= 0) {
+        down.push(existing);
+      } else {
+        const slot = this.allocate();
+        this.lanes[slot] = parent;
+        down.push(slot);
+      }
+    }
+
+    const width = Math.max(this.lanes.length, lane + 1);
+    while (this.lanes.length > 0 && this.lanes[this.lanes.length - 1] === null) this.lanes.pop();
+    return { lane, up, down, through, width };
+  }
+
+  private allocate(): number {
+    const free = this.lanes.indexOf(null);
+    if (free >= 0) return free;
+    this.lanes.push(null);
+    return this.lanes.length - 1;
+  }
+}
+
+interface Waiter {
+  until: number;
+  resolve: () => void;
+  reject: (err: Error) => void;
+}
+
+export class CommitGraph {
+  readonly id: string;
+  private readonly root: string;
+  private readonly lanes = new LaneAssigner();
+  private rows: GitGraphRow[] = [];
+  private child: ChildProcess | null = null;
+  private partial = '';
+  private done = false;
+  private wantRows = 0;
+  private waiters: Waiter[] = [];
+  private idleTimer: ReturnType<typeof setTimeout> | null = null;
+  private disposed = false;
+
+  constructor(root: string, id: string = randomUUID()) {
+    this.root = root;
+    this.id = id;
+  }
+
+  async page(offset: number, limit: number): Promise<GitGraphPage> {
+    const end = offset + limit;
+    await this.ensureRows(end);
+    const rows = this.rows.slice(offset, end);
+    const more = !this.done || this.rows.length > end;
+    return {
+      graphId: this.id,
+      rows,
+      offset,
+      nextCursor: more && rows.length > 0 ? `${this.id}:${offset + rows.length}` : null,
+    };
+  }
+
+  get loadedRows(): number {
+    return this.rows.length;
+  }
+
+  dispose(): void {
+    this.disposed = true;
+    this.stopReader();
+    this.rejectWaiters(new Error('Commit graph disposed'));
+  }
+
+  /** Read until `count` rows exist (plus read-ahead) or history ends */
+  private ensureRows(count: number): Promise<void> {
+    if (this.disposed) return Promise.reject(new Error('Commit graph disposed'));
+    this.wantRows = Math.max(this.wantRows, count + READ_AHEAD_ROWS);
+    this.touch();
+    // An extra row tells whether there is a next page
+    if (this.done || this.rows.length > count) {
+      this.resumeIfNeeded();
+      return Promise.resolve();
+    }
+    return new Promise((resolve, reject) => {
+      this.waiters.push({ until: count + 1, resolve, reject });
+      this.resumeIfNeeded();
+    });
+  }
+
+  private resumeIfNeeded(): void {
+    if (this.done || this.rows.length >= this.wantRows) return;
+    if (!this.child) this.startReader();
+    else this.child.stdout?.resume();
+  }
+
+  private startReader(): void {
+    const args = ['--no-pager', 'log', '--all', '--topo-order', `--format=${FORMAT}`];
+    if (this.rows.length > 0) args.push(`--skip=${this.rows.length}`);
+    const child = spawn('git', args, { cwd: this.root, stdio: ['ignore', 'pipe', 'pipe'] });
+    this.child = child;
+    this.partial = '';
+    let stderr = '';
+
+    child.stdout!.setEncoding('utf-8');
+    child.stdout!.on('data', (chunk: string) => {
+      if (this.child !== child) return;
+      const lines = (this.partial + chunk).split('\n');
+      this.partial = lines.pop() ?? '';
+      for (const line of lines) this.addLine(line);
+      this.settleWaiters();
+      if (this.rows.length >= this.wantRows) child.stdout!.pause();
+    });
+    child.stderr!.setEncoding('utf-8');
+    child.stderr!.on('data', (chunk: string) => { stderr += chunk; });
+    child.on('error', (err) => this.fail(child, err));
+    // Our own kills (stopReader / dispose) detach the child first, so a signal here is external
+    child.on('close', (code, signal) => {
+      if (this.child !== child) return;
+      if (code === 0) {
+        this.child = null;
+        if (this.partial) this.addLine(this.partial);
+        this.partial = '';
+        this.done = true;
+        this.settleWaiters();
+      } else if (!signal && /does not have any commits|bad default revision/.test(stderr)) {
+        // An empty repository has no HEAD to log
+        this.child = null;
+        this.done = true;
+        this.settleWaiters();
+      } else {
+        const reason = signal ? `git log was killed by ${signal}` : `git log exited with code ${code}`;
+        this.fail(child, new Error(stderr.trim() || reason));
+      }
+    });
+  }
+
+  private addLine(line: string): void {
+    const fields = line.split(FIELD_SEP);
+    if (fields.length < 7) return;
+    const [hash, parentList, shortHash, message, author, date, refs] = fields;
+    const parents = parentList ? parentList.split(' ') : [];
+    this.rows.push({ hash, shortHash, parents, message, author, date, refs, ...this.lanes.place(hash, parents) });
+  }
+
+  private settleWaiters(): void {
+    const ready = this.waiters.filter(w => this.done || this.rows.length >= w.until);
+    if (ready.length === 0) return;
+    this.waiters = this.waiters.filter(w => !ready.includes(w));
+    for (const w of ready) w.resolve();
+  }
+
+  private fail(child: ChildProcess, err: Error): void {
+    if (this.child !== child) return;
+    this.child = null;
+    // Rows read so far are kept; the next request restarts git with --skip
+    this.partial = '';
+    log.warn('Commit graph reader failed', { root: this.root, error: err.message });
+    this.rejectWaiters(err);
+  }
+
+  private rejectWaiters(err: Error): void {
+    const waiters = this.waiters.splice(0);
+    for (const w of waiters) w.reject(err);
+  }
+
+  private touch(): void {
+    if (this.idleTimer) clearTimeout(this.idleTimer);
+    this.idleTimer = setTimeout(() => {
+      this.idleTimer = null;
+      if (this.waiters.length === 0) this.stopReader();
+    }, READER_IDLE_MS);
+    this.idleTimer.unref?.();
+  }
+
+  private stopReader(): void {
+    if (this.idleTimer) clearTimeout(this.idleTimer);
+    this.idleTimer = null;
+    const child = this.child;
+    this.child = null;
+    // Lines after the last complete row are re-read via --skip
+    this.partial = '';
+    child?.kill();
+  }
+}
+
+// ── Registry ──────────────────────────────────────────────────────
+
+const graphs = new Map<string, CommitGraph>();
+
+/**
+ * Hash of HEAD and all refs: stable across cache recomputations (e.g. the
+ * short TTL used when the workspace can't be watched), changes with history
+ */
+async function refsStateId(root: string): Promise<string> {
+  // Exit code 1 is an empty answer: no refs at all (empty repository) / detached HEAD
+  const run = (args: string[]) => execFileAsync('git', args, { cwd: root, maxBuffer: 64 * 1024 * 1024 })
+    .then(r => r.stdout, (err: { code?: unknown }) => { if (err.code === 1) return ''; throw err; });
+  // The branch HEAD points at is part of the decorations, not only its commit
+  const [refs, head] = await Promise.all([run(['show-ref', '--head']), run(['symbolic-ref', '-q', 'HEAD'])]);
+  return createHash('sha1').update(head).update('\0').update(refs).digest('hex').slice(0, 16);
+}
+
+/** Current graph of a workspace; replaced when its refs change */
+async function currentGraph(workspace: string): Promise<CommitGraph> {
+  const root = path.resolve(workspace);
+  const graphId = await getGitStateCache(root).get('commitGraphId', ['refs'], () => refsStateId(root));
+  let graph = graphs.get(root);
+  if (graph && graph.id === graphId) {
+    graphs.delete(root);
+    graphs.set(root, graph);
+    return graph;
+  }
+  graph?.dispose();
+  graph = new CommitGraph(root, graphId);
+  graphs.set(root, graph);
+  if (graphs.size > MAX_OPEN_GRAPHS) {
+    const [oldestRoot, oldest] = graphs.entries().next().value as [string, CommitGraph];
+    graphs.delete(oldestRoot);
+    oldest.dispose();
+  }
+  return graph;
+}
+
+/** Parse "<graphId>:<offset>"; anything else starts from the top */
+function parseCursor(cursor: string | undefined): { graphId: string; offset: number } | null {
+  if (!cursor) return null;
+  const idx = cursor.lastIndexOf(':');
+  if (idx <= 0) return null;
+  const offset = Number(cursor.slice(idx + 1));
+  if (!Number.isInteger(offset) || offset < 0) return null;
+  return { graphId: cursor.slice(0, idx), offset };
+}
+
+export async function handleGitLogGraphPage(workspace: string, cursor?: string, limit = DEFAULT_GRAPH_PAGE_SIZE): Promise<GitGraphPage> {
+  const pageSize = Math.min(Math.max(1, Math.floor(limit) || DEFAULT_GRAPH_PAGE_SIZE), MAX_GRAPH_PAGE_SIZE);
+  const graph = await currentGraph(workspace);
+  const parsed = parseCursor(cursor);
+  if (parsed && parsed.graphId !== graph.id) {
+    return { ...(await graph.page(0, pageSize)), reset: true };
+  }
+  return graph.page(parsed?.offset ?? 0, pageSize);
+}
+
+export function disposeCommitGraphs(): void {
+  for (const graph of graphs.values()) graph.dispose();
+  graphs.clear();
+}
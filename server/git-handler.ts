@@ -1,19 +1,14 @@
 import { execFile } from 'node:child_process';
+import { createHash } from 'node:crypto';
 import { promisify } from 'node:util';
 import fs from 'node:fs';
 import path from 'node:path';
 import { validatePath } from './code-viewer-handler.js';
+import { getWorkerPool } from './worker-pool.js';
+import { getGitStateCache } from './git-state-cache.js';
 
 const execFileAsync = promisify(execFile);
 
-function isDirectory(workspace: string, filePath: string): boolean {
-  try {
-    return fs.statSync(path.resolve(workspace, filePath)).isDirectory();
-  } catch {
-    return false;
-  }
-}
-
 // Lazy-loaded Claude SDK for push (only when needed)
 let _sessionManager: any = null;
 
@@ -21,6 +16,9 @@ export function setSessionManagerForPush(sm: any): void {
   _sessionManager = sm;
 }
 
+/** Subcommands that move refs / the index / the worktree: cached git state is dropped after them */
+const MUTATING_COMMANDS = new Set(['add', 'commit', 'checkout', 'fetch', 'pull', 'push', 'reset', 'merge', 'rebase', 'stash']);
+
 async function git(workspace: string, args: string[], timeout = 10000): Promise<string> {
   try {
     const { stdout } = await execFileAsync('git', ['--no-pager', ...args], {
@@ -34,6 +32,8 @@ async function git(workspace: string, args: string[], timeout = 10000): Promise<
     const e = err as { stderr?: string; message?: string };
     const msg = e.stderr?.trim() || e.message || String(err);
     throw new Error(msg);
+  } finally {
+    if (MUTATING_COMMANDS.has(args[0])) getGitStateCache(workspace).invalidate();
   }
 }
 
@@ -102,51 +102,173 @@ export interface GitBranch {
 
 // ── Handlers ───────────────────────────────────────────────────────
 
+/** Parsed `git status --porcelain=v2 --branch`, before untracked dirs are expanded */
+interface StatusState {
+  branch: string;
+  ahead: number;
+  behind: number;
+  hasUpstream: boolean;
+  /** Entries in git's order; untracked directories keep their trailing '/' */
+  entries: GitFileStatus[];
+  /** Untracked directory entry → files found in it */
+  expansions: Map<string, GitFileStatus[]>;
+  /** Some entry is a rename/copy (its old path is not tracked here) */
+  hasRenames: boolean;
+}
+
+/** Worktree paths above this refresh status fully instead of by pathspec */
+const MAX_SCOPED_STATUS_PATHS = 100;
+
+/**
+ * Served from the per-workspace git state cache (see git-state-cache.ts):
+ * recomputed only after index / ref / worktree changes, and for a handful of
+ * changed worktree paths only those paths are re-statused. A changed
+ * .gitignore affects paths that did not change, so it forces a full status.
+ */
 export async function handleGitStatus(workspace: string): Promise<GitStatusResult> {
-  const [branch, porcelain] = await Promise.all([
-    git(workspace, ['rev-parse', '--abbrev-ref', 'HEAD']),
-    git(workspace, ['status', '--porcelain=v2', '--branch']),
-  ]);
-  const lines = porcelain.split('\n');
+  const state = await getGitStateCache(workspace).get<StatusState>(
+    'status',
+    ['refs', 'index', 'worktree'],
+    async ({ previous, paths, refsChanged, indexChanged }) => {
+      if (previous && paths && paths.length > 0 && paths.length <= MAX_SCOPED_STATUS_PATHS
+        && !refsChanged && !indexChanged && !previous.hasRenames
+        && !paths.some(p => path.posix.basename(p) === '.gitignore')) {
+        return refreshStatusPaths(workspace, previous, paths);
+      }
+      return readStatus(workspace);
+    },
+  );
 
   const files: GitFileStatus[] = [];
-  let ahead = 0;
-  let behind = 0;
-  let hasUpstream = false;
+  for (const entry of state.entries) {
+    const expanded = state.expansions.get(entry.path);
+    if (expanded) files.push(...expanded);
+    else files.push(entry);
+  }
+  return { branch: state.branch, files, ahead: state.ahead, behind: state.behind, hasUpstream: state.hasUpstream };
+}
 
-  for (const line of lines) {
+async function readStatus(workspace: string): Promise<StatusState> {
+  const porcelain = await git(workspace, ['status', '--porcelain=v2', '--branch']);
+  const state = parsePorcelainStatus(porcelain);
+  await expandUntrackedDirs(workspace, state, state.entries);
+  return state;
+}
+
+/** Re-status only `paths` and merge the result into `previous` */
+async function refreshStatusPaths(workspace: string, previous: StatusState, paths: string[]): Promise<StatusState> {
+  // A change inside an untracked directory re-statuses the whole directory
+  const scopes = new Set<string>();
+  for (const p of paths) {
+    const dir = previous.entries.find(e => e.path.endsWith('/') && p.startsWith(e.path));
+    scopes.add(dir ? dir.path.slice(0, -1) : p);
+  }
+  const inScope = (filePath: string) => {
+    const bare = filePath.endsWith('/') ? filePath.slice(0, -1) : filePath;
+    for (const scope of scopes) {
+      if (bare === scope || bare.startsWith(scope + '/')) return true;
+    }
+    return false;
+  };
+
+  const porcelain = await git(workspace, [
+    'status', '--porcelain=v2', '--branch', '--',
+    ...[...scopes].map(scope => `:(literal)${scope}`),
+  ]);
+  const scoped = parsePorcelainStatus(porcelain);
+
+  const kept = previous.entries.filter(e => !inScope(e.path));
+  const expansions = new Map([...previous.expansions].filter(([dir]) => !inScope(dir)));
+  const state: StatusState = {
+    ...scoped,
+    entries: [...kept, ...scoped.entries].sort(compareStatusEntries),
+    expansions,
+    hasRenames: previous.hasRenames || scoped.hasRenames,
+  };
+  await expandUntrackedDirs(workspace, state, scoped.entries);
+  return state;
+}
+
+/** Tracked changes first, then untracked, each by path (git's own order) */
+function compareStatusEntries(a: GitFileStatus, b: GitFileStatus): number {
+  const ua = a.status === 'untracked' ? 1 : 0;
+  const ub = b.status === 'untracked' ? 1 : 0;
+  if (ua !== ub) return ua - ub;
+  return a.path < b.path ? -1 : a.path > b.path ? 1 : 0;
+}
+
+/** Text after the n-th space (porcelain v2 paths may contain spaces) */
+function afterField(line: string, n: number): string {
+  let idx = -1;
+  for (let i = 0; i < n; i++) {
+    idx = line.indexOf(' ', idx + 1);
+    if (idx < 0) return '';
+  }
+  return line.slice(idx + 1);
+}
+
+function parsePorcelainStatus(porcelain: string): StatusState {
+  const state: StatusState = {
+    branch: 'HEAD',
+    ahead: 0,
+    behind: 0,
+    hasUpstream: false,
+    entries: [],
+    expansions: new Map(),
+    hasRenames: false,
+  };
+
+  for (const line of porcelain.split('\n')) {
+    if (line.startsWith('# branch.head ')) {
+      const head = line.slice('# branch.head '.length);
+      // Same as `rev-parse --abbrev-ref HEAD` for a detached HEAD
+      state.branch = head === '(detached)' ? 'HEAD' : head;
+      continue;
+    }
     if (line.startsWith('# branch.ab ')) {
-      hasUpstream = true;
+      state.hasUpstream = true;
       const parts = line.split(' ');
       for (const part of parts) {
-        if (part.startsWith('+')) ahead = parseInt(part.slice(1), 10) || 0;
-        if (part.startsWith('-')) behind = parseInt(part.slice(1), 10) || 0;
+        if (part.startsWith('+')) state.ahead = parseInt(part.slice(1), 10) || 0;
+        if (part.startsWith('-')) state.behind = parseInt(part.slice(1), 10) || 0;
       }
       continue;
     }
 
-    if (line.startsWith('1 ') || line.startsWith('2 ') || line.startsWith('u ')) {
-      const parts = line.split(' ');
-      const xy = parts.length > 1 ? parts[1] : '';
-      const filePath = parts[parts.length - 1];
-      files.push(parseStatusXY(filePath, xy));
+    const xy = line.slice(2, 4);
+    if (line.startsWith('1 ')) {
+      state.entries.push(parseStatusXY(afterField(line, 8), xy));
+    } else if (line.startsWith('2 ')) {
+      // "<path>\t<origPath>"
+      state.entries.push(parseStatusXY(afterField(line, 9).split('\t')[0], xy));
+      state.hasRenames = true;
+    } else if (line.startsWith('u ')) {
+      state.entries.push(parseStatusXY(afterField(line, 10), xy));
     } else if (line.startsWith('? ')) {
-      files.push({ path: line.slice(2), status: 'untracked', staged: false });
+      state.entries.push({ path: line.slice(2), status: 'untracked', staged: false });
     } else if (line.startsWith('! ')) {
       // ignored, skip
     }
   }
+  return state;
+}
 
-  const expandedFiles: GitFileStatus[] = [];
-  for (const f of files) {
-    if (f.status === 'untracked' && isDirectory(workspace, f.path)) {
-      expandDirFiles(workspace, f.path, expandedFiles);
-    } else {
-      expandedFiles.push(f);
-    }
-  }
-
-  return { branch, files: expandedFiles, ahead, behind, hasUpstream };
+/**
+ * Untracked directories (porcelain prints them with a trailing '/') are
+ * expanded into files on the worker pool — this walk used to block the loop
+ */
+async function expandUntrackedDirs(workspace: string, state: StatusState, entries: GitFileStatus[]): Promise<void> {
+  const dirs = entries.filter(e => e.status === 'untracked' && e.path.endsWith('/')).map(e => e.path);
+  await Promise.all(dirs.map(async (dir) => {
+    const expanded = await getWorkerPool().run('expandUntracked', {
+      root: path.resolve(workspace),
+      dirs: [dir],
+      skipDirs: [...SKIP_DIRS],
+      maxDepth: MAX_EXPAND_DEPTH,
+      maxFiles: MAX_EXPAND_FILES,
+    });
+    state.expansions.set(dir, expanded.map(p => ({ path: p, status: 'untracked' as const, staged: false })));
+  }));
 }
 
 // Skip common large directories when expanding untracked
@@ -154,31 +276,6 @@ const SKIP_DIRS = new Set(['node_modules', '.git', 'dist', 'build', 'out', '.nex
 const MAX_EXPAND_DEPTH = 3;
 const MAX_EXPAND_FILES = 500;
 
-function expandDirFiles(workspace: string, dirPath: string, out: GitFileStatus[], depth = 0): void {
-  if (depth > MAX_EXPAND_DEPTH || out.length >= MAX_EXPAND_FILES) return;
-  const resolved = path.resolve(workspace, dirPath);
-  let entries: fs.Dirent[];
-  try {
-    entries = fs.readdirSync(resolved, { withFileTypes: true });
-  } catch {
-    return;
-  }
-  for (const entry of entries) {
-    if (out.length >= MAX_EXPAND_FILES) break;
-    if (entry.name.startsWith('.')) continue;
-    const rel = dirPath ? `${dirPath}/${entry.name}` : entry.name;
-    if (entry.isDirectory()) {
-      if (SKIP_DIRS.has(entry.name)) {
-        out.push({ path: `${rel}/`, status: 'untracked', staged: false });
-        continue;
-      }
-      expandDirFiles(workspace, rel, out, depth + 1);
-    } else if (entry.isFile()) {
-      out.push({ path: rel, status: 'untracked', staged: false });
-    }
-  }
-}
-
 function parseStatusXY(filePath: string, xy: string): GitFileStatus {
   const x = xy[0] || '.';
   const y = xy[1] || '.';
@@ -274,7 +371,58 @@ export async function handleGitCommit(workspace: string, message: string, files?
   return { hash: match?.[1] || hash.split('\n').pop()?.slice(0, 7) || 'unknown' };
 }
 
+/** Commit hash of HEAD; null outside a repository or before the first commit */
+export async function readGitHead(workspace: string): Promise<string | null> {
+  return getGitStateCache(workspace).get<string | null>('head', ['refs'],
+    () => git(workspace, ['rev-parse', 'HEAD']).catch(() => null));
+}
+
+/** Changed paths above this are summarized by status alone instead of hashed */
+const MAX_HASHED_WORKTREE_PATHS = 2_000;
+const HASH_OBJECT_BATCH = 200;
+
+/**
+ * Fingerprint of uncommitted changes: `git status` plus the content hash of
+ * every modified / untracked file, so it changes whenever a file's content
+ * does. `excludes` are pathspecs left out (e.g. the app's own .sman output).
+ * Null outside a repository.
+ */
+export async function readWorktreeState(workspace: string, excludes: string[] = []): Promise<string | null> {
+  return getGitStateCache(workspace).get<string | null>(`worktreeState:${excludes.join('\0')}`, ['refs', 'index', 'worktree'], async () => {
+    const pathspec = ['--', '.', ...excludes.map(e => `:(exclude)${e}`)];
+    let status: string;
+    try {
+      status = await git(workspace, ['status', '--porcelain=v1', '-z', '--untracked-files=all', ...pathspec]);
+    } catch {
+      return null;
+    }
+    const hash = createHash('sha256').update(status);
+    // -z entries: "XY path", a rename / copy is followed by its source path
+    const entries = status.split('\0');
+    const changed: string[] = [];
+    for (let i = 0; i < entries.length; i++) {
+      const entry = entries[i];
+      if (entry.length < 4) continue;
+      if (entry[0] === 'R' || entry[0] === 'C') i++;
+      if (entry[0] !== 'D' && entry[1] !== 'D') changed.push(entry.slice(3));
+    }
+    if (changed.length <= MAX_HASHED_WORKTREE_PATHS) {
+      for (let i = 0; i < changed.length; i += HASH_OBJECT_BATCH) {
+        const batch = changed.slice(i, i + HASH_OBJECT_BATCH);
+        // Directories (untracked repositories) and vanished files can't be hashed; status covers them
+        const objects = await git(workspace, ['hash-object', '--', ...batch]).catch(() => batch.join('\n'));
+        hash.update(objects);
+      }
+    }
+    return hash.digest('hex');
+  });
+}
+
 export async function handleGitLog(workspace: string, maxCount = 20): Promise<GitLogEntry[]> {
+  return getGitStateCache(workspace).get(`log:${maxCount}`, ['refs'], () => readLog(workspace, maxCount));
+}
+
+async function readLog(workspace: string, maxCount: number): Promise<GitLogEntry[]> {
   const format = '%H%n%h%n%s%n%an%n%aI%n%D%n---END---';
   const raw = await git(workspace, ['log', `--max-count=${maxCount}`, `--pretty=format:${format}`]);
 
@@ -295,6 +443,10 @@ export async function handleGitLog(workspace: string, maxCount = 20): Promise<Gi
 }
 
 export async function handleGitLogGraph(workspace: string, maxCount = 200): Promise<GitLogGraphNode[]> {
+  return getGitStateCache(workspace).get(`logGraph:${maxCount}`, ['refs'], () => readLogGraph(workspace, maxCount));
+}
+
+async function readLogGraph(workspace: string, maxCount: number): Promise<GitLogGraphNode[]> {
   const format = '%x00%H%x01%h%x01%s%x01%an%x01%aI%x01%D';
   const raw = await git(workspace, ['log', '--graph', '--all', '--decorate', `--max-count=${maxCount}`, `--pretty=format:${format}`]);
   if (!raw) return [];
@@ -371,6 +523,10 @@ export async function handleGitLogSearch(workspace: string, query: string, maxCo
 }
 
 export async function handleGitAheadCommits(workspace: string): Promise<{ hash: string; shortHash: string; message: string; author: string; date: string }[]> {
+  return getGitStateCache(workspace).get('aheadCommits', ['refs'], () => readAheadCommits(workspace));
+}
+
+async function readAheadCommits(workspace: string): Promise<{ hash: string; shortHash: string; message: string; author: string; date: string }[]> {
   const format = '%H%x01%h%x01%s%x01%an%x01%aI';
   const raw = await git(workspace, ['log', `--pretty=format:${format}`, '@{upstream}..HEAD'], 10000);
   if (!raw) return [];
@@ -388,6 +544,10 @@ export async function handleGitAheadCommits(workspace: string): Promise<{ hash:
 }
 
 export async function handleGitBranchList(workspace: string): Promise<GitBranch[]> {
+  return getGitStateCache(workspace).get('branches', ['refs'], () => readBranchList(workspace));
+}
+
+async function readBranchList(workspace: string): Promise<GitBranch[]> {
   const raw = await git(workspace, ['branch', '-a', '--no-color']);
   return raw.split('\n')
     .map(line => line.trim())
@@ -479,11 +639,14 @@ export async function handleGitPush(workspace: string): Promise<{ success: boole
         abort,
         () => {},
         'You are a git conflict resolver. Resolve all merge conflicts and push. Be concise.',
+        'interactive',
       );
 
       _sessionManager.closeV2Session(tempSessionId);
       _sessionManager.removeEphemeralSession(tempSessionId);
 
+      // The resolver ran git in its own process
+      getGitStateCache(workspace).invalidate();
       const status = await handleGitStatus(workspace);
       if (status.ahead > 0) {
         return { success: false, message: `AI resolved conflicts but push may not have completed. Ahead: ${status.ahead}` };
@@ -562,6 +725,7 @@ Rules:
       abort,
       () => {},
       systemPrompt,
+      'interactive',
     );
 
     return { message: (result || '').trim() || template || 'chore: update files' };
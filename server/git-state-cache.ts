@@ -0,0 +1,282 @@
+/**
+ * Per-workspace cache for git query results (status, log, log graph, branches).
+ *
+ * - Each entry records which parts of the repo it depends on: refs (HEAD,
+ *   refs/, packed-refs), the index, and/or the worktree. A generation counter
+ *   per part is bumped by fs events, so a cached value is served as-is until
+ *   something it depends on changes
+ * - Worktree changes come from the shared workspace watcher (workspace-watcher.ts,
+ *   also used by the file index; it skips .git and node_modules). Git metadata
+ *   is watched directly and narrowly: the top level of the git dir (HEAD, index,
+ *   packed-refs) plus refs/
+ * - Concurrent requests for the same key share one git invocation
+ * - Worktree paths changed since an entry was computed are handed to its
+ *   compute function, so status can refresh just those paths
+ * - Without a working watcher entries fall back to a short TTL
+ */
+
+import { execFile } from 'node:child_process';
+import fs from 'node:fs';
+import path from 'node:path';
+import { promisify } from 'node:util';
+import { createLogger } from './utils/logger.js';
+import { subscribeWorkspaceChanges } from './workspace-watcher.js';
+
+const execFileAsync = promisify(execFile);
+const log = createLogger('GitStateCache');
+
+/** Entries are trusted this long when fs events are unavailable */
+const UNWATCHED_TTL_MS = 2_000;
+/** Worktree change log length; older entries get `paths: null` (recompute fully) */
+const MAX_TRACKED_CHANGES = 1_000;
+/** Open caches kept at once; the least recently used one is disposed */
+const MAX_OPEN_CACHES = 16;
+
+export type GitDependency = 'refs' | 'index' | 'worktree';
+
+export interface GitChangesSince<T> {
+  /** Value computed last time, if any */
+  previous: T | undefined;
+  /** Worktree paths (posix, workspace-relative) changed since `previous`; null when unknown */
+  paths: string[] | null;
+  refsChanged: boolean;
+  indexChanged: boolean;
+}
+
+export interface GitStateCacheOptions {
+  /** Watch the workspace for changes (default true); otherwise entries use a TTL */
+  watch?: boolean;
+}
+
+type Generations = Record<GitDependency, number>;
+
+interface Entry {
+  value: unknown;
+  deps: GitDependency[];
+  gens: Generations;
+  /** Worktree change sequence at compute start */
+  seq: number;
+  computedAt: number;
+}
+
+interface InFlight {
+  promise: Promise<unknown>;
+  gens: Generations;
+}
+
+const REF_FILES = new Set(['HEAD', 'packed-refs', 'FETCH_HEAD', 'ORIG_HEAD', 'MERGE_HEAD', 'CHERRY_PICK_HEAD']);
+
+export class GitStateCache {
+  readonly root: string;
+  private readonly watchEnabled: boolean;
+  private gens: Generations = { refs: 0, index: 0, worktree: 0 };
+  private entries = new Map<string, Entry>();
+  private inFlight = new Map<string, InFlight>();
+  /** Ring of recent worktree changes: changes[i] has sequence changeBase + i + 1 */
+  private changes: string[] = [];
+  private changeBase = 0;
+  private watchers: fs.FSWatcher[] = [];
+  private unwatchWorkspace: (() => void) | null = null;
+  /** Settles startWatchers() if the cache is disposed before the workspace watcher is ready */
+  private workspaceWatchSettled: (() => void) | null = null;
+  private watching = false;
+  private startPromise: Promise<void> | null = null;
+  private disposed = false;
+
+  constructor(root: string, options: GitStateCacheOptions = {}) {
+    this.root = path.resolve(root);
+    this.watchEnabled = options.watch ?? true;
+  }
+
+  /**
+   * Cached value for `key`, recomputed only when one of `deps` changed.
+   * Concurrent callers share a single compute.
+   */
+  async get<T>(key: string, deps: GitDependency[], compute: (changes: GitChangesSince<T>) => Promise<T>): Promise<T> {
+    if (this.watchEnabled) void this.start();
+
+    const entry = this.entries.get(key);
+    if (entry && this.isFresh(entry)) return entry.value as T;
+
+    const running = this.inFlight.get(key);
+    if (running && deps.every(d => running.gens[d] === this.gens[d])) return running.promise as Promise<T>;
+
+    const gens = { ...this.gens };
+    const seq = this.seq;
+    const changes: GitChangesSince<T> = {
+      previous: entry?.value as T | undefined,
+      paths: entry ? this.changesSince(entry.seq) : null,
+      refsChanged: !entry || entry.gens.refs !== gens.refs,
+      indexChanged: !entry || entry.gens.index !== gens.index,
+    };
+    const promise = compute(changes).then((value) => {
+      const current = this.entries.get(key);
+      if (!this.disposed && (!current || current.seq <= seq)) {
+        this.entries.set(key, { value, deps, gens, seq, computedAt: Date.now() });
+      }
+      return value;
+    }).finally(() => {
+      if (this.inFlight.get(key)?.promise === promise) this.inFlight.delete(key);
+    });
+    this.inFlight.set(key, { promise, gens });
+    return promise;
+  }
+
+  /** Drop cached state after a mutation this process made (commit, checkout, fetch...) */
+  invalidate(...deps: GitDependency[]): void {
+    for (const dep of deps.length > 0 ? deps : (['refs', 'index', 'worktree'] as GitDependency[])) {
+      if (dep === 'worktree') this.recordWorktreeChange(null);
+      else this.gens[dep]++;
+    }
+  }
+
+  /** A worktree path changed; null means "unknown" (forces full recomputes) */
+  recordWorktreeChange(relPath: string | null): void {
+    this.changes.push(relPath ?? '');
+    this.gens.worktree++;
+    if (this.changes.length > MAX_TRACKED_CHANGES) {
+      const drop = this.changes.length - MAX_TRACKED_CHANGES;
+      this.changes.splice(0, drop);
+      this.changeBase += drop;
+    }
+  }
+
+  dispose(): void {
+    this.disposed = true;
+    for (const w of this.watchers) w.close();
+    this.watchers = [];
+    this.unwatchWorkspace?.();
+    this.unwatchWorkspace = null;
+    this.workspaceWatchSettled?.();
+    this.watching = false;
+    this.entries.clear();
+    this.inFlight.clear();
+  }
+
+  stats(): { entries: number; inFlight: number; watching: boolean } {
+    return { entries: this.entries.size, inFlight: this.inFlight.size, watching: this.watching };
+  }
+
+  private get seq(): number {
+    return this.changeBase + this.changes.length;
+  }
+
+  private isFresh(entry: Entry): boolean {
+    if (!this.watching) return Date.now() - entry.computedAt < UNWATCHED_TTL_MS && this.gensMatch(entry);
+    return this.gensMatch(entry);
+  }
+
+  private gensMatch(entry: Entry): boolean {
+    return entry.deps.every(d => entry.gens[d] === this.gens[d]);
+  }
+
+  private changesSince(seq: number): string[] | null {
+    if (seq < this.changeBase) return null;
+    const paths = this.changes.slice(seq - this.changeBase);
+    if (paths.includes('')) return null;
+    return [...new Set(paths)];
+  }
+
+  // ── Watch ──
+
+  private start(): Promise<void> {
+    if (!this.startPromise) {
+      this.startPromise = this.startWatchers().catch((err) => {
+        log.warn('Git state watcher unavailable, using TTL', { root: this.root, error: String(err) });
+      });
+    }
+    return this.startPromise;
+  }
+
+  private async startWatchers(): Promise<void> {
+    const { stdout } = await execFileAsync('git', ['rev-parse', '--absolute-git-dir', '--git-common-dir'], {
+      cwd: this.root,
+      encoding: 'utf-8',
+    });
+    if (this.disposed) return;
+    const [gitDir, commonDirRaw] = stdout.trim().split('\n');
+    const commonDir = path.resolve(this.root, commonDirRaw || gitDir);
+
+    // HEAD and index live in the git dir; refs and packed-refs in the common dir (same unless a worktree)
+    this.watch(gitDir, false, (rel) => this.onGitDirEvent(rel));
+    if (commonDir !== gitDir) this.watch(commonDir, false, (rel) => this.onGitDirEvent(rel));
+    this.watch(path.join(commonDir, 'refs'), true, (rel) => this.onGitDirEvent(rel === null ? null : `refs/${rel}`));
+    // info/exclude changes which paths are ignored anywhere in the worktree
+    const infoDir = path.join(commonDir, 'info');
+    if (fs.existsSync(infoDir)) {
+      this.watch(infoDir, false, (rel) => {
+        if (rel === null || rel === 'exclude') this.recordWorktreeChange(null);
+      });
+    }
+
+    await new Promise<void>((resolve) => {
+      this.workspaceWatchSettled = resolve;
+      this.unwatchWorkspace = subscribeWorkspaceChanges(this.root, {
+        onChanges: (changes) => {
+          for (const [rel] of changes) this.recordWorktreeChange(rel);
+        },
+        onReady: resolve,
+        onError: (err) => {
+          log.warn('Workspace watcher failed, using TTL', { root: this.root, error: String(err) });
+          this.unwatchWorkspace = null;
+          this.watching = false;
+          resolve();
+        },
+      });
+    });
+    this.watching = !this.disposed && this.unwatchWorkspace !== null;
+  }
+
+  /** Watch a git metadata directory; refs/ is the only recursive one and stays small */
+  private watch(dir: string, recursive: boolean, onEvent: (rel: string | null) => void): void {
+    const watcher = fs.watch(dir, { recursive }, (_eventType, filename) => {
+      onEvent(filename == null ? null : String(filename).split(path.sep).join('/'));
+    });
+    watcher.on('error', (err) => {
+      log.warn('Git state watcher failed, using TTL', { root: this.root, error: String(err) });
+      this.watching = false;
+    });
+    watcher.unref();
+    this.watchers.push(watcher);
+  }
+
+  /** `rel` is relative to the git dir */
+  private onGitDirEvent(rel: string | null): void {
+    if (rel === null) {
+      this.invalidate('refs', 'index');
+    } else if (rel === 'index') {
+      this.gens.index++;
+    } else if (REF_FILES.has(rel) || rel.startsWith('refs/')) {
+      this.gens.refs++;
+    }
+    // objects/, logs/, *.lock: the final rename of index / refs is what matters
+  }
+}
+
+// ── Registry ──────────────────────────────────────────────────────
+
+const caches = new Map<string, GitStateCache>();
+
+/** Cache for a workspace, created on first use (LRU-bounded) */
+export function getGitStateCache(workspace: string): GitStateCache {
+  const root = path.resolve(workspace);
+  let cache = caches.get(root);
+  if (cache) {
+    caches.delete(root);
+    caches.set(root, cache);
+    return cache;
+  }
+  cache = new GitStateCache(root);
+  caches.set(root, cache);
+  if (caches.size > MAX_OPEN_CACHES) {
+    const [oldestRoot, oldest] = caches.entries().next().value as [string, GitStateCache];
+    caches.delete(oldestRoot);
+    oldest.dispose();
+  }
+  return cache;
+}
+
+export function disposeGitStateCaches(): void {
+  for (const cache of caches.values()) cache.dispose();
+  caches.clear();
+}
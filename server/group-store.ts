@@ -4,6 +4,7 @@ import path from 'path';
 import os from 'os';
 import { fileURLToPath } from 'url';
 import { createLogger, type Logger } from './utils/logger.js';
+import { StatementCache } from './utils/sqlite.js';
 
 const __dirname = path.dirname(fileURLToPath(import.meta.url));
 
@@ -65,16 +66,22 @@ const TASK_FIELDS = 'id, group_id as groupId, title, description, auto_dispatch
 
 export class GroupStore {
   private db: Database.Database;
+  private statements: StatementCache;
   private log: Logger;
   private groupBaseDir: string;
 
   constructor(db: Database.Database) {
     this.db = db;
+    this.statements = new StatementCache(this.db);
     this.log = createLogger('GroupStore');
     this.groupBaseDir = path.join(os.homedir(), '.sman', 'group');
     this.init();
   }
 
+  private stmt(sql: string) {
+    return this.statements.get(sql);
+  }
+
   private init(): void {
     this.db.exec(`
       CREATE TABLE IF NOT EXISTS groups (
@@ -173,7 +180,7 @@ export class GroupStore {
   createGroup(input: CreateGroupInput): Group {
     const { id, name, workspaceIds } = input;
     const workspaceIdsJson = JSON.stringify(workspaceIds);
-    this.db.prepare(
+    this.stmt(
       'INSERT INTO groups (id, name, workspace_ids) VALUES (?, ?, ?)'
     ).run(id, name, workspaceIdsJson);
 
@@ -181,7 +188,7 @@ export class GroupStore {
   }
 
   getGroup(id: string): Group | undefined {
-    const row = this.db.prepare(
+    const row = this.stmt(
       'SELECT id, name, workspace_ids as workspaceIds, status, created_at as createdAt, updated_at as updatedAt FROM groups WHERE id = ?'
     ).get(id) as Group | undefined;
     return row;
@@ -192,9 +199,9 @@ export class GroupStore {
       + (status ? ' WHERE status = ?' : '')
       + ' ORDER BY updated_at DESC';
     if (status) {
-      return this.db.prepare(sql).all(status) as Group[];
+      return this.stmt(sql).all(status) as Group[];
     }
-    return this.db.prepare(sql).all() as Group[];
+    return this.stmt(sql).all() as Group[];
   }
 
   updateGroup(id: string, updates: Partial<Pick<Group, 'name' | 'workspaceIds' | 'status'>>): Group | undefined {
@@ -221,7 +228,7 @@ export class GroupStore {
       updatesArray.push("updated_at = datetime('now')");
       values.push(id);
 
-      this.db.prepare(
+      this.stmt(
         `UPDATE groups SET ${updatesArray.join(', ')} WHERE id = ?`
       ).run(...values);
     }
@@ -230,7 +237,7 @@ export class GroupStore {
   }
 
   deleteGroup(id: string): boolean {
-    const result = this.db.prepare('DELETE FROM groups WHERE id = ?').run(id);
+    const result = this.stmt('DELETE FROM groups WHERE id = ?').run(id);
     return result.changes > 0;
   }
 
@@ -238,7 +245,7 @@ export class GroupStore {
 
   createGroupTask(input: CreateGroupTaskInput): GroupTask {
     const { id, groupId, title, description, autoDispatch } = input;
-    this.db.prepare(
+    this.stmt(
       'INSERT INTO group_tasks (id, group_id, title, description, auto_dispatch) VALUES (?, ?, ?, ?, ?)'
     ).run(id, groupId, title, description || null, autoDispatch ?? 0);
 
@@ -246,27 +253,27 @@ export class GroupStore {
   }
 
   getGroupTask(id: string): GroupTask | undefined {
-    const row = this.db.prepare(
+    const row = this.stmt(
       `SELECT ${TASK_FIELDS} FROM group_tasks WHERE id = ?`
     ).get(id) as GroupTask | undefined;
     return row;
   }
 
   listGroupTasks(groupId: string): GroupTask[] {
-    return this.db.prepare(
+    return this.stmt(
       `SELECT ${TASK_FIELDS} FROM group_tasks WHERE group_id = ? ORDER BY updated_at DESC`
     ).all(groupId) as GroupTask[];
   }
 
   updateGroupTaskStatus(id: string, status: string): GroupTask | undefined {
-    this.db.prepare(
+    this.stmt(
       "UPDATE group_tasks SET status = ?, updated_at = datetime('now') WHERE id = ?"
     ).run(status, id);
     return this.getGroupTask(id);
   }
 
   deleteGroupTask(id: string): boolean {
-    const result = this.db.prepare('DELETE FROM group_tasks WHERE id = ?').run(id);
+    const result = this.stmt('DELETE FROM group_tasks WHERE id = ?').run(id);
     return result.changes > 0;
   }
 
@@ -276,7 +283,7 @@ export class GroupStore {
 
   createSubtask(input: CreateGroupSubtaskInput): GroupSubtask {
     const { id, groupTaskId, sessionId, workspace, title, description } = input;
-    this.db.prepare(
+    this.stmt(
       'INSERT INTO group_subtasks (id, group_task_id, session_id, workspace, title, description) VALUES (?, ?, ?, ?, ?, ?)'
     ).run(id, groupTaskId, sessionId, workspace, title, description || null);
 
@@ -284,25 +291,25 @@ export class GroupStore {
   }
 
   getSubtask(id: string): GroupSubtask | undefined {
-    return this.db.prepare(
+    return this.stmt(
       `SELECT ${this.SUBTASK_FIELDS} FROM group_subtasks WHERE id = ?`
     ).get(id) as GroupSubtask | undefined;
   }
 
   listSubtasks(groupTaskId: string): GroupSubtask[] {
-    return this.db.prepare(
+    return this.stmt(
       `SELECT ${this.SUBTASK_FIELDS} FROM group_subtasks WHERE group_task_id = ? ORDER BY created_at ASC`
     ).all(groupTaskId) as GroupSubtask[];
   }
 
   getSubtaskBySessionId(sessionId: string): GroupSubtask | undefined {
-    return this.db.prepare(
+    return this.stmt(
       `SELECT ${this.SUBTASK_FIELDS} FROM group_subtasks WHERE session_id = ?`
     ).get(sessionId) as GroupSubtask | undefined;
   }
 
   deleteSubtask(id: string): boolean {
-    const result = this.db.prepare('DELETE FROM group_subtasks WHERE id = ?').run(id);
+    const result = this.stmt('DELETE FROM group_subtasks WHERE id = ?').run(id);
     return result.changes > 0;
   }
 }
@@ -1,6 +1,6 @@
 import { encrypt, decrypt, loadPsk } from '../hub/crypto.js';
 
-const IM_ENCRYPTED_PREFIX = 'enc:';
+export const IM_ENCRYPTED_PREFIX = 'enc:';
 
 /** Encrypt a string value for IM transmission */
 export function encryptField(plaintext: string): string {
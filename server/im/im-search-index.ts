@@ -0,0 +1,137 @@
+/**
+ * FTS5 search index for IM messages and rooms.
+ *
+ * - External-content FTS5 tables over im_messages / im_rooms, kept in sync by
+ *   triggers, so no text is stored twice
+ * - Trigram tokenizer: substring matching that works for CJK text without word
+ *   segmentation. Terms shorter than 3 characters cannot use the index; they
+ *   are matched with LIKE on the FTS candidates, or on a LIKE scan when the
+ *   query has no indexable term at all
+ * - Ciphertext (`enc:` content from im-crypto.ts that could not be decrypted)
+ *   is never indexed — the triggers skip it on insert, update and delete
+ *
+ * The index is keyed by the implicit rowid of im_messages. A VACUUM may
+ * renumber those rowids; call rebuildIMSearchIndex() afterwards.
+ */
+
+import type Database from 'better-sqlite3';
+import { IM_ENCRYPTED_PREFIX } from './im-crypto.js';
+
+/** Minimum term length (in characters) the trigram index can match */
+export const MIN_INDEXED_TERM_LENGTH = 3;
+/** Terms beyond this are ignored */
+const MAX_QUERY_TERMS = 8;
+
+const NOT_ENCRYPTED = (col: string) =>
+  `substr(${col}, 1, ${IM_ENCRYPTED_PREFIX.length}) != '${IM_ENCRYPTED_PREFIX}'`;
+
+const MESSAGE_INDEX_SCHEMA = `
+  CREATE VIRTUAL TABLE im_messages_fts USING fts5(
+    content,
+    content = 'im_messages',
+    content_rowid = 'rowid',
+    tokenize = 'trigram'
+  );
+
+  CREATE TRIGGER IF NOT EXISTS im_messages_fts_ai AFTER INSERT ON im_messages BEGIN
+    INSERT INTO im_messages_fts(rowid, content)
+      SELECT new.rowid, new.content WHERE ${NOT_ENCRYPTED('new.content')};
+  END;
+
+  CREATE TRIGGER IF NOT EXISTS im_messages_fts_ad AFTER DELETE ON im_messages BEGIN
+    INSERT INTO im_messages_fts(im_messages_fts, rowid, content)
+      SELECT 'delete', old.rowid, old.content WHERE ${NOT_ENCRYPTED('old.content')};
+  END;
+
+  CREATE TRIGGER IF NOT EXISTS im_messages_fts_au AFTER UPDATE OF content ON im_messages BEGIN
+    INSERT INTO im_messages_fts(im_messages_fts, rowid, content)
+      SELECT 'delete', old.rowid, old.content WHERE ${NOT_ENCRYPTED('old.content')};
+    INSERT INTO im_messages_fts(rowid, content)
+      SELECT new.rowid, new.content WHERE ${NOT_ENCRYPTED('new.content')};
+  END;
+`;
+
+const ROOM_INDEX_SCHEMA = `
+  CREATE VIRTUAL TABLE im_rooms_fts USING fts5(
+    name,
+    members,
+    content = 'im_rooms',
+    content_rowid = 'rowid',
+    tokenize = 'trigram'
+  );
+
+  CREATE TRIGGER IF NOT EXISTS im_rooms_fts_ai AFTER INSERT ON im_rooms BEGIN
+    INSERT INTO im_rooms_fts(rowid, name, members) VALUES (new.rowid, new.name, new.members);
+  END;
+
+  CREATE TRIGGER IF NOT EXISTS im_rooms_fts_ad AFTER DELETE ON im_rooms BEGIN
+    INSERT INTO im_rooms_fts(im_rooms_fts, rowid, name, members) VALUES ('delete', old.rowid, old.name, old.members);
+  END;
+
+  CREATE TRIGGER IF NOT EXISTS im_rooms_fts_au AFTER UPDATE OF name, members ON im_rooms BEGIN
+    INSERT INTO im_rooms_fts(im_rooms_fts, rowid, name, members) VALUES ('delete', old.rowid, old.name, old.members);
+    INSERT INTO im_rooms_fts(rowid, name, members) VALUES (new.rowid, new.name, new.members);
+  END;
+`;
+
+function tableExists(db: Database.Database, name: string): boolean {
+  return !!db.prepare("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?").get(name);
+}
+
+function fillMessageIndex(db: Database.Database): void {
+  db.exec(`
+    INSERT INTO im_messages_fts(rowid, content)
+      SELECT rowid, content FROM im_messages WHERE ${NOT_ENCRYPTED('content')};
+  `);
+}
+
+/**
+ * Create the FTS tables and triggers (requires im_messages / im_rooms).
+ * Existing rows are indexed once, when the index is first created.
+ */
+export function ensureIMSearchIndex(db: Database.Database): void {
+  db.transaction(() => {
+    if (!tableExists(db, 'im_messages_fts')) {
+      db.exec(MESSAGE_INDEX_SCHEMA);
+      fillMessageIndex(db);
+    }
+    if (!tableExists(db, 'im_rooms_fts')) {
+      db.exec(ROOM_INDEX_SCHEMA);
+      db.exec("INSERT INTO im_rooms_fts(im_rooms_fts) VALUES ('rebuild')");
+    }
+  })();
+}
+
+/** Re-index everything from the content tables (e.g. after a VACUUM) */
+export function rebuildIMSearchIndex(db: Database.Database): void {
+  db.transaction(() => {
+    db.exec("INSERT INTO im_messages_fts(im_messages_fts) VALUES ('delete-all')");
+    fillMessageIndex(db);
+    db.exec("INSERT INTO im_rooms_fts(im_rooms_fts) VALUES ('rebuild')");
+  })();
+}
+
+export interface ParsedSearchQuery {
+  /** FTS5 MATCH expression over the indexable terms, null when there are none */
+  match: string | null;
+  /** LIKE patterns (escaped with '\') for terms too short for the trigram index */
+  likePatterns: string[];
+}
+
+/** Split a user query into whitespace-separated terms, all of which must match */
+export function parseSearchQuery(query: string): ParsedSearchQuery {
+  const terms = query.trim().split(/\s+/).filter(Boolean).slice(0, MAX_QUERY_TERMS);
+  const indexed: string[] = [];
+  const likePatterns: string[] = [];
+  for (const term of terms) {
+    if ([...term].length >= MIN_INDEXED_TERM_LENGTH) {
+      indexed.push(`"${term.replace(/"/g, '""')}"`);
+    } else {
+      likePatterns.push(`%${term.replace(/[\\%_]/g, '\\$&')}%`);
+    }
+  }
+  return {
+    match: indexed.length > 0 ? indexed.join(' AND ') : null,
+    likePatterns,
+  };
+}
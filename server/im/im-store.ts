@@ -1,4 +1,7 @@
 import Database from 'better-sqlite3';
+import { parseSearchQuery } from './im-search-index.js';
+import { IM_ENCRYPTED_PREFIX } from './im-crypto.js';
+import { StatementCache } from '../utils/sqlite.js';
 
 export interface IMMessage {
   id: string;
@@ -77,15 +80,110 @@ function parseRoomRow(row: IMRoomRow): IMRoom {
 }
 
 const SELECT_MESSAGE_COLS = 'SELECT id, room_id, sender, content, mentioned_agents, quote_id, type, status, attachments, session_id, timestamp, seq FROM im_messages';
+/** Same columns, qualified for joins against im_messages_fts */
+const SELECT_MESSAGE_COLS_M = 'SELECT m.id, m.room_id, m.sender, m.content, m.mentioned_agents, m.quote_id, m.type, m.status, m.attachments, m.session_id, m.timestamp, m.seq FROM im_messages m';
+const SELECT_ROOM_COLS_R = 'SELECT r.id, r.name, r.type, r.members, r.last_message, r.last_message_time FROM im_rooms r';
+
+export interface IMSearchOptions {
+  /** Only search this room */
+  roomId?: string;
+  limit?: number;
+  offset?: number;
+}
+
+/**
+ * Read state and unread counters (replaces the im_rooms.last_read JSON column).
+ *
+ * - im_room_counters: non-system messages per room, bumped by insertMessage
+ * - im_read_state: per (room, client) read position plus a materialized
+ *   unread_count, bumped by insertMessage for readers behind the new message
+ *   and recomputed (an indexed range count) by updateLastRead
+ *
+ * Read positions are timestamps, not seqs: im.read reports a timestamp, and
+ * hub-relayed messages keep the seq of the node that sent them, so seq does
+ * not order a room's messages locally.
+ *
+ * A client with no read state for a room has every message unread.
+ * Created (and migrated from last_read) on first run.
+ */
+export function ensureIMReadState(db: Database.Database): void {
+  const exists = db.prepare("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'im_read_state'").get();
+  if (exists) return;
+
+  db.transaction(() => {
+    db.exec(`
+      CREATE TABLE im_read_state (
+        room_id TEXT NOT NULL,
+        client_id TEXT NOT NULL,
+        last_read_at INTEGER NOT NULL DEFAULT 0,
+        unread_count INTEGER NOT NULL DEFAULT 0,
+        PRIMARY KEY (room_id, client_id)
+      );
+      CREATE INDEX idx_im_read_state_client ON im_read_state(client_id);
+
+      CREATE TABLE im_room_counters (
+        room_id TEXT PRIMARY KEY,
+        message_count INTEGER NOT NULL DEFAULT 0
+      );
+      INSERT INTO im_room_counters (room_id, message_count)
+        SELECT room_id, COUNT(*) FROM im_messages WHERE type != 'system' GROUP BY room_id;
+    `);
+
+    const hasLegacyColumn = db.prepare("SELECT 1 FROM pragma_table_info('im_rooms') WHERE name = 'last_read'").get();
+    if (!hasLegacyColumn) return;
+    const statements = new StatementCache(db);
+    const rows = db.prepare(
+      "SELECT id, last_read FROM im_rooms WHERE last_read IS NOT NULL AND last_read != '{}'",
+    ).all() as Array<{ id: string; last_read: string }>;
+    for (const row of rows) {
+      let reads: Record<string, number>;
+      try {
+        reads = JSON.parse(row.last_read);
+      } catch {
+        continue;
+      }
+      for (const [clientId, timestamp] of Object.entries(reads)) {
+        if (typeof timestamp === 'number') writeReadState(statements, row.id, clientId, timestamp);
+      }
+    }
+  })();
+}
+
+/** Move a client's read position forward (never back) and recompute its unread count */
+function writeReadState(statements: StatementCache, roomId: string, clientId: string, timestamp: number): void {
+  const unread = statements.get(
+    "SELECT COUNT(*) as count FROM im_messages WHERE room_id = ? AND timestamp > ? AND type != 'system'",
+  ).get(roomId, timestamp) as { count: number };
+  statements.get(`
+    INSERT INTO im_read_state (room_id, client_id, last_read_at, unread_count)
+    VALUES (?, ?, ?, ?)
+    ON CONFLICT(room_id, client_id) DO UPDATE SET
+      last_read_at = excluded.last_read_at,
+      unread_count = excluded.unread_count
+    WHERE excluded.last_read_at > im_read_state.last_read_at
+  `).run(roomId, clientId, timestamp, unread.count);
+}
 
 export class IMStore {
   private roomSeqCounters = new Map<string, number>();
+  private statements: StatementCache;
 
-  constructor(private db: Database.Database) {}
+  private insertMessageTx: (msg: IMMessage) => void;
+  private updateLastReadTx: typeof writeReadState;
+
+  constructor(private db: Database.Database) {
+    this.statements = new StatementCache(db);
+    this.insertMessageTx = db.transaction((msg: IMMessage) => this.insertMessageTransaction(msg));
+    this.updateLastReadTx = db.transaction(writeReadState);
+  }
+
+  private stmt(sql: string) {
+    return this.statements.get(sql);
+  }
 
   getNextSeq(roomId: string): number {
     if (!this.roomSeqCounters.has(roomId)) {
-      const row = this.db.prepare(
+      const row = this.stmt(
         'SELECT MAX(seq) as maxSeq FROM im_messages WHERE room_id = ?',
       ).get(roomId) as { maxSeq: number | null } | undefined;
       this.roomSeqCounters.set(roomId, (row?.maxSeq ?? 0) + 1);
@@ -96,7 +194,11 @@ export class IMStore {
   }
 
   insertMessage(msg: IMMessage): void {
-    this.db.prepare(`
+    this.insertMessageTx(msg);
+  }
+
+  private insertMessageTransaction(msg: IMMessage): void {
+    const { changes } = this.stmt(`
       INSERT OR IGNORE INTO im_messages
         (id, room_id, sender, content, mentioned_agents, quote_id, type, status, attachments, session_id, timestamp, seq)
       VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
@@ -114,10 +216,20 @@ export class IMStore {
       msg.timestamp,
       msg.seq ?? 0,
     );
+    // Duplicates (hub echo) and system messages don't count towards unread
+    if (changes === 0 || msg.type === 'system') return;
+
+    this.stmt(`
+      INSERT INTO im_room_counters (room_id, message_count) VALUES (?, 1)
+      ON CONFLICT(room_id) DO UPDATE SET message_count = message_count + 1
+    `).run(msg.roomId);
+    this.stmt(
+      'UPDATE im_read_state SET unread_count = unread_count + 1 WHERE room_id = ? AND last_read_at < ?',
+    ).run(msg.roomId, msg.timestamp);
   }
 
   getMessage(id: string): IMMessage | undefined {
-    const row = this.db.prepare(
+    const row = this.stmt(
       `${SELECT_MESSAGE_COLS} WHERE id = ?`,
     ).get(id) as IMMessageRow | undefined;
     return row ? parseMessageRow(row) : undefined;
@@ -135,12 +247,12 @@ export class IMStore {
     sql += ' ORDER BY timestamp ASC LIMIT ?';
     params.push(options.limit);
 
-    const rows = this.db.prepare(sql).all(...params) as IMMessageRow[];
+    const rows = this.stmt(sql).all(...params) as IMMessageRow[];
     return rows.map(parseMessageRow);
   }
 
   getMessagesBefore(roomId: string, beforeTimestamp: number, limit: number): IMMessage[] {
-    const rows = this.db.prepare(
+    const rows = this.stmt(
       `${SELECT_MESSAGE_COLS} WHERE room_id = ? AND timestamp < ? ORDER BY timestamp DESC LIMIT ?`,
     ).all(roomId, beforeTimestamp, limit) as IMMessageRow[];
     // Return in ASC order (reversed from DESC query)
@@ -148,19 +260,19 @@ export class IMStore {
   }
 
   updateMessageStatus(id: string, status: string): void {
-    this.db.prepare(
+    this.stmt(
       "UPDATE im_messages SET status = ?, updated_at = datetime('now','localtime') WHERE id = ?",
     ).run(status, id);
   }
 
   updateMessageContent(id: string, content: string): void {
-    this.db.prepare(
+    this.stmt(
       "UPDATE im_messages SET content = ?, updated_at = datetime('now','localtime') WHERE id = ?",
     ).run(content, id);
   }
 
   createRoom(room: IMRoom): void {
-    this.db.prepare(`
+    this.stmt(`
       INSERT OR IGNORE INTO im_rooms (id, name, type, members, last_message, last_message_time)
       VALUES (?, ?, ?, ?, ?, ?)
     `).run(
@@ -174,78 +286,126 @@ export class IMStore {
   }
 
   getRoom(id: string): IMRoom | undefined {
-    const row = this.db.prepare(
+    const row = this.stmt(
       'SELECT id, name, type, members, last_message, last_message_time FROM im_rooms WHERE id = ?',
     ).get(id) as IMRoomRow | undefined;
     return row ? parseRoomRow(row) : undefined;
   }
 
   listRooms(): IMRoom[] {
-    const rows = this.db.prepare(
+    const rows = this.stmt(
       'SELECT id, name, type, members, last_message, last_message_time FROM im_rooms ORDER BY last_message_time DESC',
     ).all() as IMRoomRow[];
     return rows.map(parseRoomRow);
   }
 
   updateRoomLastMessage(roomId: string, preview: string, time: number): void {
-    this.db.prepare(
+    this.stmt(
       'UPDATE im_rooms SET last_message = ?, last_message_time = ? WHERE id = ?',
     ).run(preview, time, roomId);
   }
 
   updateRoomMembers(roomId: string, members: string[]): void {
-    this.db.prepare(
+    this.stmt(
       'UPDATE im_rooms SET members = ? WHERE id = ?',
     ).run(JSON.stringify(members), roomId);
   }
 
+  /** Record that `clientId` has read `roomId` up to `timestamp` (only moves forward) */
   updateLastRead(roomId: string, clientId: string, timestamp: number): void {
-    const row = this.db.prepare('SELECT last_read FROM im_rooms WHERE id = ?').get(roomId) as { last_read: string } | undefined;
-    const reads = row ? JSON.parse(row.last_read || '{}') : {};
-    reads[clientId] = timestamp;
-    this.db.prepare('UPDATE im_rooms SET last_read = ? WHERE id = ?').run(JSON.stringify(reads), roomId);
+    this.updateLastReadTx(this.statements, roomId, clientId, timestamp);
   }
 
   getLastRead(roomId: string, clientId: string): number {
-    const row = this.db.prepare('SELECT last_read FROM im_rooms WHERE id = ?').get(roomId) as { last_read: string } | undefined;
-    if (!row) return 0;
-    const reads = JSON.parse(row.last_read || '{}');
-    return reads[clientId] || 0;
+    const row = this.stmt(
+      'SELECT last_read_at FROM im_read_state WHERE room_id = ? AND client_id = ?',
+    ).get(roomId, clientId) as { last_read_at: number } | undefined;
+    return row?.last_read_at ?? 0;
   }
 
   getUnreadCount(roomId: string, clientId: string): number {
-    const lastRead = this.getLastRead(roomId, clientId);
-    if (!lastRead) {
-      const row = this.db.prepare('SELECT COUNT(*) as count FROM im_messages WHERE room_id = ? AND type != ?').get(roomId, 'system') as { count: number };
-      return row.count;
-    }
-    const row = this.db.prepare('SELECT COUNT(*) as count FROM im_messages WHERE room_id = ? AND timestamp > ? AND type != ?').get(roomId, lastRead, 'system') as { count: number };
+    const row = this.stmt(`
+      SELECT COALESCE(
+        (SELECT unread_count FROM im_read_state WHERE room_id = ?1 AND client_id = ?2),
+        (SELECT message_count FROM im_room_counters WHERE room_id = ?1),
+        0
+      ) as count
+    `).get(roomId, clientId) as { count: number };
     return row.count;
   }
 
+  /** Unread counts for every room with unread messages, in one indexed query */
   getAllUnreadCounts(clientId: string): Map<string, number> {
-    const rooms = this.listRooms();
-    const result = new Map<string, number>();
-    for (const room of rooms) {
-      const count = this.getUnreadCount(room.id, clientId);
-      if (count > 0) {
-        result.set(room.id, count);
-      }
-    }
-    return result;
+    const rows = this.stmt(`
+      SELECT r.id as room_id, COALESCE(s.unread_count, c.message_count, 0) as count
+      FROM im_rooms r
+      LEFT JOIN im_read_state s ON s.room_id = r.id AND s.client_id = ?
+      LEFT JOIN im_room_counters c ON c.room_id = r.id
+      WHERE COALESCE(s.unread_count, c.message_count, 0) > 0
+    `).all(clientId) as Array<{ room_id: string; count: number }>;
+    return new Map(rows.map(r => [r.room_id, r.count]));
   }
 
-  searchMessages(query: string, limit = 50): IMMessage[] {
-    const rows = this.db.prepare(
-      `${SELECT_MESSAGE_COLS} WHERE content LIKE ? ORDER BY timestamp DESC LIMIT ?`,
-    ).all(`%${query}%`, limit) as IMMessageRow[];
+  /**
+   * Full-text search over message content (see im-search-index.ts).
+   * Ranked by bm25 when the query has an indexable term, newest first otherwise.
+   */
+  searchMessages(query: string, options: IMSearchOptions = {}): IMMessage[] {
+    const { roomId, limit = 50, offset = 0 } = options;
+    const { match, likePatterns } = parseSearchQuery(query);
+    if (!match && likePatterns.length === 0) return [];
+
+    const where: string[] = [];
+    const params: (string | number)[] = [];
+    let sql: string;
+    let order: string;
+    if (match) {
+      sql = `${SELECT_MESSAGE_COLS_M} JOIN im_messages_fts f ON f.rowid = m.rowid`;
+      where.push('im_messages_fts MATCH ?');
+      params.push(match);
+      order = 'f.rank, m.timestamp DESC';
+    } else {
+      // No term long enough for the trigram index — scan, skipping ciphertext
+      sql = SELECT_MESSAGE_COLS_M;
+      where.push(`substr(m.content, 1, ${IM_ENCRYPTED_PREFIX.length}) != ?`);
+      params.push(IM_ENCRYPTED_PREFIX);
+      order = 'm.timestamp DESC';
+    }
+    for (const pattern of likePatterns) {
+      where.push("m.content LIKE ? ESCAPE '\\'");
+      params.push(pattern);
+    }
+    if (roomId) {
+      where.push('m.room_id = ?');
+      params.push(roomId);
+    }
+    sql += ` WHERE ${where.join(' AND ')} ORDER BY ${order} LIMIT ? OFFSET ?`;
+    params.push(limit, offset);
+
+    const rows = this.stmt(sql).all(...params) as IMMessageRow[];
     return rows.map(parseMessageRow);
   }
 
+  /** Search rooms by name or member id */
   searchRooms(query: string): IMRoom[] {
-    const rows = this.db.prepare(
-      'SELECT id, name, type, members, last_message, last_message_time FROM im_rooms WHERE name LIKE ? OR members LIKE ? ORDER BY last_message_time DESC',
-    ).all(`%${query}%`, `%${query}%`) as IMRoomRow[];
+    const { match, likePatterns } = parseSearchQuery(query);
+    if (!match && likePatterns.length === 0) return [];
+
+    const where: string[] = [];
+    const params: string[] = [];
+    let sql = SELECT_ROOM_COLS_R;
+    if (match) {
+      sql += ' JOIN im_rooms_fts f ON f.rowid = r.rowid';
+      where.push('im_rooms_fts MATCH ?');
+      params.push(match);
+    }
+    for (const pattern of likePatterns) {
+      where.push("(r.name LIKE ? ESCAPE '\\' OR r.members LIKE ? ESCAPE '\\')");
+      params.push(pattern, pattern);
+    }
+    sql += ` WHERE ${where.join(' AND ')} ORDER BY r.last_message_time DESC`;
+
+    const rows = this.stmt(sql).all(...params) as IMRoomRow[];
     return rows.map(parseRoomRow);
   }
 }
@@ -4,6 +4,9 @@ import { IMAgentBridge } from './im-agent-bridge.js';
 import { getHubWsClient } from '../hub/index.js';
 import { encryptIMMessage, decryptIMMessage } from './im-crypto.js';
 
+const SEARCH_PAGE_SIZE = 50;
+const MAX_SEARCH_PAGE_SIZE = 200;
+
 export class IMWsHandler {
   private agentBridge?: IMAgentBridge;
 
@@ -129,9 +132,19 @@ export class IMWsHandler {
       this.sendToWs(ws, { type: 'im.search', data: { rooms: [], messages: [] } });
       return;
     }
-    const rooms = this.imStore.searchRooms(query);
-    const messages = this.imStore.searchMessages(query);
-    this.sendToWs(ws, { type: 'im.search', data: { rooms, messages } });
+    // Not `roomId`: that field makes index.ts auto-join the room
+    const inRoomId = typeof msg.inRoomId === 'string' ? msg.inRoomId : undefined;
+    const limit = Math.min(Math.max(Number(msg.limit) || SEARCH_PAGE_SIZE, 1), MAX_SEARCH_PAGE_SIZE);
+    const offset = Math.max(Number(msg.offset) || 0, 0);
+
+    // Rooms only on the first page
+    const rooms = offset === 0 && !inRoomId ? this.imStore.searchRooms(query) : [];
+    const found = this.imStore.searchMessages(query, { roomId: inRoomId, limit: limit + 1, offset });
+    const messages = found.slice(0, limit);
+    this.sendToWs(ws, {
+      type: 'im.search',
+      data: { rooms, messages, offset, hasMore: found.length > limit, inRoomId },
+    });
   }
 
   private sendToHub(msg: Record<string, unknown>): void {
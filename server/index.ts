@@ -21,6 +21,7 @@ function resolveProjectRoot(): string {
 }
 
 import { SessionStore } from './session-store.js';
+import { BlobStore } from './blob-store.js';
 import { GroupStore } from './group-store.js';
 import { SkillsRegistry } from './skills-registry.js';
 import { ClaudeSessionManager, normalizeWorkspacePath } from './claude-session.js';
@@ -35,7 +36,12 @@ import { BatchEngine } from './batch-engine.js';
 import { SmartPathStore } from './smart-path-store.js';
 import { SmartPathEngine } from './smart-path-engine.js';
 import { SmartPathScheduler } from './smart-path-scheduler.js';
-import { handleListDir, handleReadFile, handleSaveFile, handleSearchSymbols, handleSearchFiles, validatePath } from './code-viewer-handler.js';
+import { handleListDirAsync, handleReadFile, handleSaveFile, handleSearchSymbols, handleSearchFiles, validatePath } from './code-viewer-handler.js';
+import { disposeWorkspaceFileIndexes } from './workspace-file-index.js';
+import { disposeGitStateCaches } from './git-state-cache.js';
+import { handleGitLogGraphPage, disposeCommitGraphs } from './git-commit-graph.js';
+import { getWorkerPool, closeWorkerPool } from './worker-pool.js';
+import { EventLoopLagMonitor } from './utils/event-loop-lag.js';
 import { handleGitStatus, handleGitDiff, handleGitDiffFile, handleGitCommit, handleGitLog, handleGitBranchList, handleGitCheckout, handleGitFetch, handleGitRemoteDiff, handleGitGenerateCommit, handleGitLogGraph, handleGitLogSearch, handleGitAheadCommits, handleGitPush, setSessionManagerForPush } from './git-handler.js';
 
 import { ChatbotStore } from './chatbot/chatbot-store.js';
@@ -57,6 +63,7 @@ import { AchievementStore } from './achievement-store.js';
 import { AchievementEngine } from './achievement-engine.js';
 import { handleAchievementMessage } from './achievement-ws-handler.js';
 import { initIM } from './im/index.js';
+import { OutboundHub, sessionTopic, smartPathTopic, isValidTopic, type OutboundFrame, type OutboundPayload } from './ws-outbound.js';
 
 const PORT = parseInt(process.env.PORT || '5880', 10);
 const log = createLogger('Server');
@@ -142,6 +149,15 @@ const broadcastStore = new BroadcastStore(store.getDatabase());
 const skillsRegistry = new SkillsRegistry(homeDir);
 const sessionManager = new ClaudeSessionManager(store);
 setSessionManagerForPush(sessionManager);
+
+// Content-addressed attachment store — images live here, message rows hold references
+const blobStore = new BlobStore(path.join(homeDir, 'blobs'));
+sessionManager.setBlobStore(blobStore);
+try {
+  store.migrateInlineImages(blobStore);
+} catch (err) {
+  log.warn(`Inline image migration failed: ${err instanceof Error ? err.message : String(err)}`);
+}
 const settingsManager = new SettingsManager(homeDir);
 const groupStore = new GroupStore(store.getDatabase());
 
@@ -174,6 +190,8 @@ const authenticatedClients = new Set<WebSocket>();
 const wsClientIdMap = new Map<WebSocket, string>();
 // IM room subscriptions: ws → Set<roomId> (like TailChat Socket.IO rooms)
 const wsRoomSubs = new Map<WebSocket, Set<string>>();
+// Running code.searchSymbols per client (cancelled when superseded or on disconnect)
+const wsSymbolSearches = new Map<WebSocket, AbortController>();
 
 function imJoinRoom(ws: WebSocket, roomId: string) {
   let rooms = wsRoomSubs.get(ws);
@@ -185,120 +203,76 @@ function imLeaveRoom(ws: WebSocket, roomId: string) {
   wsRoomSubs.get(ws)?.delete(roomId);
 }
 
-// ── Client ↔ Session bidirectional mapping ──
-// Tracks which sessions each client has subscribed to (for multi-tab support)
-const clientToSessions = new Map<WebSocket, Set<string>>();
+/** Max buffered amount before applying backpressure (256KB) */
+const WS_BACKPRESSURE_THRESHOLD = 256 * 1024;
 
-// Tracks which clients are subscribed to each session (for targeted message routing)
-const sessionToClients = new Map<string, Set<WebSocket>>();
+// ── Outbound fan-out ──
+// Per-client outbound queues + topic subscriptions (session / smart path).
+// Frames are typed envelopes; under backpressure deltas are coalesced rather than dropped.
+const outbound = new OutboundHub({ highWaterMark: WS_BACKPRESSURE_THRESHOLD });
 
-/**
- * Subscribe a client to a session (called when session list is loaded or session is switched)
- */
-function subscribeClientToSession(ws: WebSocket, sessionId: string): void {
-  // Add to client → sessions mapping
-  if (!clientToSessions.has(ws)) {
-    clientToSessions.set(ws, new Set());
-  }
-  clientToSessions.get(ws)!.add(sessionId);
+// ── Runtime metrics ──
+// Event-loop lag next to worker pool load: sync fs / git work runs on the pool
+// (see worker-pool.ts), so loop stalls should stay flat while the pool is busy.
+const eventLoopLag = new EventLoopLagMonitor();
+eventLoopLag.start();
 
-  // Add to session → clients mapping
-  if (!sessionToClients.has(sessionId)) {
-    sessionToClients.set(sessionId, new Set());
-  }
-  sessionToClients.get(sessionId)!.add(ws);
+function runtimeStats() {
+  return { eventLoop: eventLoopLag.snapshot(), workerPool: getWorkerPool().stats(), knowledgeExtraction: knowledgeExtractor.stats() };
 }
 
 /**
- * Unsubscribe a client from a session (called when session is deleted or client disconnects)
+ * Subscribe a client to a session (called when session list is loaded or session is switched)
  */
-function unsubscribeClientFromSession(ws: WebSocket, sessionId: string): void {
-  // Remove from client → sessions mapping
-  const sessions = clientToSessions.get(ws);
-  if (sessions) {
-    sessions.delete(sessionId);
-    if (sessions.size === 0) {
-      clientToSessions.delete(ws);
-    }
-  }
-
-  // Remove from session → clients mapping
-  const clients = sessionToClients.get(sessionId);
-  if (clients) {
-    clients.delete(ws);
-    if (clients.size === 0) {
-      sessionToClients.delete(sessionId);
-    }
-  }
+function subscribeClientToSession(ws: WebSocket, sessionId: string): void {
+  outbound.subscribe(ws, sessionTopic(sessionId));
 }
 
 /**
- * Unsubscribe a client from ALL sessions (called when client disconnects)
+ * Unsubscribe a client from a session (called when session is deleted)
  */
-function unsubscribeClientFromAllSessions(ws: WebSocket): void {
-  const sessions = clientToSessions.get(ws);
-  if (sessions) {
-    for (const sessionId of sessions) {
-      const clients = sessionToClients.get(sessionId);
-      if (clients) {
-        clients.delete(ws);
-        if (clients.size === 0) {
-          sessionToClients.delete(sessionId);
-        }
-      }
-    }
-    clientToSessions.delete(ws);
-  }
+function unsubscribeClientFromSession(ws: WebSocket, sessionId: string): void {
+  outbound.unsubscribe(ws, sessionTopic(sessionId));
 }
 
 /**
  * Get all clients subscribed to a specific session
  */
 function getSessionClients(sessionId: string): Set<WebSocket> {
-  return sessionToClients.get(sessionId) || new Set();
+  return outbound.subscribers(sessionTopic(sessionId));
 }
 
 /**
  * Send a message to all clients subscribed to a specific session
  * Returns true if at least one client received the message
  */
-function sendToSessionClients(sessionId: string, data: string): boolean {
-  const clients = getSessionClients(sessionId);
-  let sent = false;
-  for (const client of clients) {
-    if (client.readyState === WebSocket.OPEN) {
-      client.send(data);
-      sent = true;
-    }
-  }
-  return sent;
+function sendToSessionClients(sessionId: string, data: OutboundPayload): boolean {
+  return outbound.publish(sessionTopic(sessionId), data) > 0;
 }
 
-/** Max buffered amount before applying backpressure (256KB) */
-const WS_BACKPRESSURE_THRESHOLD = 256 * 1024;
-
-function broadcast(data: string): void {
-  for (const client of clients) {
-    if (client.readyState === WebSocket.OPEN) {
-      // Backpressure: skip non-critical messages if client is overwhelmed
-      if ((client as any).bufferedAmount > WS_BACKPRESSURE_THRESHOLD) {
-        // Only drop non-critical message types to preserve UX
-        try {
-          const parsed = JSON.parse(data);
-          const droppableTypes = new Set([
-            'chat.delta', 'chat.tool_delta', 'chat.tool_progress',
-            'smartpath.stepExecutionProgress', 'batch.progress',
-          ]);
-          if (droppableTypes.has(parsed.type)) {
-            continue; // Skip this client for this message
-          }
-        } catch {
-          // Not JSON — send anyway (likely shouldn't happen)
-        }
-      }
-      client.send(data);
-    }
+// Partial-message lifecycle goes to the session's subscribers, so clients that
+// opened a session mid-stream follow it without re-polling session.history
+store.setPartialMessageListener((event) => {
+  const message = event.message ? { ...event.message, timestamp: Date.now() } : null;
+  if (event.type === 'partialUpdated') {
+    sendToSessionClients(event.sessionId, { type: 'session.partialUpdated', sessionId: event.sessionId, message });
+  } else {
+    sendToSessionClients(event.sessionId, { type: 'session.streamCompleted', sessionId: event.sessionId, message });
   }
+});
+
+/**
+ * Send a high-volume smart path frame (step deltas and results) only to
+ * clients subscribed to that topic. Lifecycle frames (progress, completed,
+ * failed, scheduled runs) are broadcast: other tabs, reloaded pages and
+ * scheduler-started runs have no subscription.
+ */
+function publishToTopic(topic: string, frame: OutboundFrame): void {
+  outbound.publish(topic, frame);
+}
+
+function broadcast(data: OutboundPayload): void {
+  outbound.broadcast(data);
 }
 
 function broadcastToAllAuthenticated(data: string): void {
@@ -331,7 +305,7 @@ const batchEngine = new BatchEngine(batchStore);
 batchEngine.setSessionManager(sessionManager);
 batchEngine.setConfig(settingsManager.getConfig().llm);
 batchEngine.setOnProgress((taskId, data) => {
-  broadcast(JSON.stringify({ type: 'batch.progress', taskId, ...data }));
+  broadcast({ type: 'batch.progress', taskId, ...data });
 });
 batchEngine.start();
 
@@ -344,7 +318,7 @@ const resetCount = smartPathStore.resetRunningStatuses(allWorkspaces);
 if (resetCount > 0) log.info(`Reset ${resetCount} path(s) from running to failed (previous crash)`);
 const smartPathScheduler = new SmartPathScheduler(smartPathStore, smartPathEngine);
 smartPathScheduler.setOnProgress((pathId, data) => {
-  broadcast(JSON.stringify({ type: 'smartpath.scheduledRun', pathId, ...data }));
+  broadcast({ type: 'smartpath.scheduledRun', pathId, ...data });
 });
 
 // Chatbot integration (WeCom + Feishu)
@@ -852,12 +826,41 @@ const server = http.createServer((req, res) => {
     return;
   }
 
+  // Runtime metrics (event-loop lag, worker pool)
+  if (req.url === '/api/metrics/runtime') {
+    res.writeHead(200, { 'Content-Type': 'application/json' });
+    res.end(JSON.stringify(runtimeStats()));
+    return;
+  }
+
   // Hub proxy — forward to sman-server REST API
   if (req.url?.startsWith('/api/hub/')) {
     handleHubProxy(req, res);
     return;
   }
 
+  // Blob API — streams content-addressed attachments (chat images) on demand
+  if (req.url?.startsWith('/api/blobs/')) {
+    const urlObj = new URL(req.url, `http://localhost:${PORT}`);
+    const hash = urlObj.pathname.slice('/api/blobs/'.length);
+    const stream = blobStore.createReadStream(hash);
+    if (!stream) {
+      res.writeHead(404, { 'Content-Type': 'application/json' });
+      res.end(JSON.stringify({ error: 'Blob not found' }));
+      return;
+    }
+    const requestedType = urlObj.searchParams.get('type') || '';
+    const contentType = /^image\/[a-z0-9.+-]+$/i.test(requestedType) ? requestedType : 'application/octet-stream';
+    res.writeHead(200, {
+      'Content-Type': contentType,
+      // Content-addressed: a hash never changes content
+      'Cache-Control': 'private, max-age=31536000, immutable',
+    });
+    stream.on('error', () => res.destroy());
+    stream.pipe(res);
+    return;
+  }
+
   // Code image viewer API — serves image files from workspace
   if (req.url?.startsWith('/api/code/image')) {
     const urlObj = new URL(req.url, `http://localhost:${PORT}`);
@@ -1322,6 +1325,7 @@ wss.on('connection', (ws: WebSocket) => {
         clearTimeout(authTimeout);
         clients.add(ws);
         authenticatedClients.add(ws);
+        outbound.attach(ws);
         (ws as any).isAlive = true;
         ws.send(JSON.stringify({ type: 'auth.verified' }));
         log.info('WebSocket client authenticated');
@@ -1458,23 +1462,93 @@ wss.on('connection', (ws: WebSocket) => {
 
         case 'session.history': {
           if (!msg.sessionId) throw new Error('Missing sessionId');
-          const messages = sessionManager.getHistory(msg.sessionId);
-          const tokenUsage = store.getTokenUsage(msg.sessionId);
+          // Keyset pagination: no beforeId = newest page; beforeId = page of older messages
+          const beforeId = typeof msg.beforeId === 'number' ? msg.beforeId : undefined;
+          const limit = typeof msg.limit === 'number' ? msg.limit : undefined;
+          const { messages, hasMore } = sessionManager.getHistoryPage(msg.sessionId, beforeId, limit);
+          const tokenUsage = beforeId === undefined ? store.getTokenUsage(msg.sessionId) : undefined;
           ws.send(JSON.stringify({
             type: 'session.history',
             sessionId: msg.sessionId,
             messages,
+            hasMore,
+            ...(beforeId !== undefined ? { beforeId } : {}),
             usage: tokenUsage ?? null,
           }));
           break;
         }
 
+        case 'session.messageBlocks': {
+          if (!msg.sessionId) throw new Error('Missing sessionId');
+          if (typeof msg.messageId !== 'number') throw new Error('Missing messageId');
+          const contentBlocks = sessionManager.getMessageBlocks(msg.sessionId, msg.messageId);
+          ws.send(JSON.stringify({
+            type: 'session.messageBlocks',
+            sessionId: msg.sessionId,
+            messageId: msg.messageId,
+            contentBlocks: contentBlocks ?? null,
+          }));
+          break;
+        }
+
+        case 'session.resume': {
+          // Reconnect mid-stream: replay frames after the client's last seq, then continue live.
+          // Subscribing and replaying happen in the same tick, so no live frame can slip in between.
+          if (!msg.sessionId) throw new Error('Missing sessionId');
+          const resumeSessionId = String(msg.sessionId);
+          const clientLastSeq = typeof msg.lastSeq === 'number' ? msg.lastSeq : 0;
+          subscribeClientToSession(ws, resumeSessionId);
+          const replay = sessionManager.getStreamReplay(resumeSessionId, clientLastSeq);
+          if (replay) {
+            for (const frame of replay.frames) outbound.send(ws, frame);
+          }
+          outbound.send(ws, {
+            type: 'session.resumed',
+            sessionId: resumeSessionId,
+            replayed: replay?.frames.length ?? 0,
+            lastSeq: replay?.lastSeq ?? clientLastSeq,
+            streaming: sessionManager.isStreaming(resumeSessionId),
+            // Missed frames are gone — the client must reload history instead
+            reset: !replay,
+          });
+          break;
+        }
+
+        case 'topic.subscribe':
+        case 'topic.unsubscribe': {
+          // Explicit topic subscriptions (smartpath:<pathId>, session:<id>)
+          const topics = Array.isArray(msg.topics) ? msg.topics.filter(isValidTopic) : [];
+          for (const topic of topics) {
+            if (msg.type === 'topic.subscribe') outbound.subscribe(ws, topic);
+            else outbound.unsubscribe(ws, topic);
+          }
+          break;
+        }
+
         case 'session.preheat': {
           if (!msg.sessionId) throw new Error('Missing sessionId');
           sessionManager.preheatSession(msg.sessionId).catch(() => {});
           break;
         }
 
+        case 'session.poolStats': {
+          // Warm CLI pool metrics: hits / misses / spawn latency
+          ws.send(JSON.stringify({ type: 'session.poolStats', stats: sessionManager.getWarmPoolStats() }));
+          break;
+        }
+
+        case 'session.schedulerStats': {
+          // LLM scheduler: active / queued turns per lane, rate-limit tokens, current backoff
+          ws.send(JSON.stringify({ type: 'session.schedulerStats', stats: sessionManager.getLlmSchedulerStats() }));
+          break;
+        }
+
+        case 'runtime.stats': {
+          // Event-loop lag percentiles + worker pool queue / run times
+          ws.send(JSON.stringify({ type: 'runtime.stats', stats: runtimeStats() }));
+          break;
+        }
+
         case 'chat.send': {
           if (!msg.sessionId) throw new Error('Missing sessionId');
           if (!msg.content && !(msg as any).media?.length) throw new Error('Missing content or media');
@@ -1486,18 +1560,9 @@ wss.on('connection', (ws: WebSocket) => {
           }
           // Capture sessionId for the closure
           const chatSessionId = msg.sessionId;
-          const wsSend = (d: string) => {
+          const wsSend = (d: OutboundPayload) => {
             // Send to ALL clients subscribed to this session (supports multi-tab)
-            // Only send to clients that have this session in their subscription list
-            const sessionClients = getSessionClients(chatSessionId);
-            let sentCount = 0;
-
-            for (const client of sessionClients) {
-              if (client.readyState === WebSocket.OPEN) {
-                client.send(d);
-                sentCount++;
-              }
-            }
+            const sentCount = outbound.publish(sessionTopic(chatSessionId), d);
 
             // If no subscribed clients are available, log a warning
             if (sentCount === 0) {
@@ -1515,7 +1580,7 @@ wss.on('connection', (ws: WebSocket) => {
             const session = store.getSession(chatSessionId);
             if (session) {
               const workspace = session.workspace;
-              const paths = smartPathStore.list(workspace);
+              const paths = await smartPathStore.listAsync(workspace);
               // Find path by name or id (exact match first, then fuzzy)
               const matchedPath = paths.find(p => p.name === pathName)
                 || paths.find(p => p.id === pathName)
@@ -1523,6 +1588,7 @@ wss.on('connection', (ws: WebSocket) => {
               if (matchedPath) {
                 const argsToUse = pathArgs || matchedPath.defaultArgs || '';
                 const runPathId = matchedPath.id;
+                outbound.subscribe(ws, smartPathTopic(runPathId));
                 // Resolve actual workspace (same logic as smartpath.run)
                 const runAllWs = [...new Set(store.listSessions().map(s => s.workspace))];
                 const pathToRun = smartPathStore.get(runPathId, workspace, runAllWs);
@@ -1563,7 +1629,7 @@ wss.on('connection', (ws: WebSocket) => {
                   // Notify path page
                   const updatedPath = smartPathStore.get(runPathId, runWorkspace);
                   const refs = smartPathStore.listReferences(runWorkspace, runPathId);
-                  broadcast(JSON.stringify({ type: 'smartpath.completed', pathId: runPathId, path: updatedPath, references: refs }));
+                  broadcast({ type: 'smartpath.completed', pathId: runPathId, path: updatedPath, references: refs });
                 }).catch(async (err) => {
                   const errMsg = err instanceof Error ? err.message : String(err);
                   await sessionManager.sendMessage(chatSessionId, `路径执行失败: ${errMsg}`, wsSend, undefined, 1);
@@ -1612,7 +1678,7 @@ wss.on('connection', (ws: WebSocket) => {
           if (!session) throw new Error('Session not found');
           const skills = skillsRegistry.getProjectSkills(session.workspace);
           const commands = skillsRegistry.getProjectCommands(session.workspace);
-          const paths = smartPathStore.list(session.workspace).map(p => ({
+          const paths = (await smartPathStore.listAsync(session.workspace)).map(p => ({
             id: p.id,
             name: p.name,
             description: p.description || '',
@@ -1999,7 +2065,7 @@ wss.on('connection', (ws: WebSocket) => {
             // Execute in background, progress sent via batch.progress
             batchEngine.execute(msg.taskId as string).then(() => {
               const task = batchStore.getTask(msg.taskId as string);
-              broadcast(JSON.stringify({ type: 'batch.completed', taskId: msg.taskId, task }));
+              broadcast({ type: 'batch.completed', taskId: msg.taskId, task });
             }).catch((err) => {
               const errorMessage = err instanceof Error ? err.message : String(err);
               broadcast(JSON.stringify({ type: 'chat.error', error: errorMessage }));
@@ -2049,7 +2115,7 @@ wss.on('connection', (ws: WebSocket) => {
           try {
             batchEngine.retryFailed(msg.taskId as string).then(() => {
               const task = batchStore.getTask(msg.taskId as string);
-              broadcast(JSON.stringify({ type: 'batch.retried', taskId: msg.taskId, task }));
+              broadcast({ type: 'batch.retried', taskId: msg.taskId, task });
             }).catch((err) => {
               const errorMessage = err instanceof Error ? err.message : String(err);
               ws.send(JSON.stringify({ type: 'chat.error', error: errorMessage }));
@@ -2066,7 +2132,7 @@ wss.on('connection', (ws: WebSocket) => {
         case 'smartpath.list': {
           const wsList = msg.workspaces as string[] | undefined;
           if (!wsList?.length) throw new Error('Missing workspaces');
-          const paths = smartPathStore.listAll(wsList);
+          const paths = await smartPathStore.listAllAsync(wsList);
           // 确保 scheduler 覆盖所有 workspace
           smartPathScheduler.start(wsList);
           // 为每个有 cron 表达式的路径附加 nextRunAt
@@ -2121,6 +2187,7 @@ wss.on('connection', (ws: WebSocket) => {
           if (!msg.pathId || !msg.workspace) throw new Error('Missing pathId or workspace');
           try {
             const runPathId = msg.pathId as string;
+            outbound.subscribe(ws, smartPathTopic(runPathId));
             const runWorkspace = msg.workspace as string;
             const runAllWs = [...new Set(store.listSessions().map(s => s.workspace))];
             const pathToRun = smartPathStore.get(runPathId, runWorkspace, runAllWs);
@@ -2131,22 +2198,23 @@ wss.on('connection', (ws: WebSocket) => {
               runPathId,
               actualRunWs,
               (stepIndex, delta) => {
-                broadcast(JSON.stringify({ type: 'smartpath.stepExecutionProgress', pathId: runPathId, stepIndex, delta }));
+                publishToTopic(smartPathTopic(runPathId), { type: 'smartpath.stepExecutionProgress', pathId: runPathId, stepIndex, delta });
               },
               (stepIndex, result) => {
-                broadcast(JSON.stringify({ type: 'smartpath.stepExecutionResult', pathId: runPathId, stepIndex, result }));
+                publishToTopic(smartPathTopic(runPathId), { type: 'smartpath.stepExecutionResult', pathId: runPathId, stepIndex, result });
               },
               (data) => {
-                broadcast(JSON.stringify({ type: 'smartpath.progress', pathId: runPathId, ...data }));
+                broadcast({ type: 'smartpath.progress', pathId: runPathId, ...data });
               },
               runArgs,
               msg.useRefs === true,
+              typeof msg.reuseCache === 'boolean' ? msg.reuseCache : undefined,
             ).then(() => {
               const p = smartPathStore.get(runPathId, actualRunWs);
               const refs = smartPathStore.listReferences(actualRunWs, runPathId);
-              broadcast(JSON.stringify({ type: 'smartpath.completed', pathId: runPathId, path: p, references: refs }));
+              broadcast({ type: 'smartpath.completed', pathId: runPathId, path: p, references: refs });
             }).catch((err) => {
-              broadcast(JSON.stringify({ type: 'smartpath.failed', pathId: runPathId, error: err instanceof Error ? err.message : String(err) }));
+              broadcast({ type: 'smartpath.failed', pathId: runPathId, error: err instanceof Error ? err.message : String(err) });
             });
             ws.send(JSON.stringify({ type: 'smartpath.running', pathId: runPathId }));
           } catch (err) {
@@ -2294,6 +2362,7 @@ wss.on('connection', (ws: WebSocket) => {
           try {
             if (!msg.pathId || !msg.workspace) throw new Error('Missing pathId or workspace');
             const oPathId = msg.pathId as string;
+            outbound.subscribe(ws, smartPathTopic(oPathId));
             const oWorkspace = msg.workspace as string;
             const oAllWs = [...new Set(store.listSessions().map(s => s.workspace))];
             const oPath = smartPathStore.get(oPathId, oWorkspace, oAllWs);
@@ -2303,7 +2372,7 @@ wss.on('connection', (ws: WebSocket) => {
             const { blueprint, runId } = await smartPathEngine.orchestrateOnly(
               oPathId, oActualWs, oArgs,
               (stepIndex, delta) => {
-                broadcast(JSON.stringify({ type: 'smartpath.stepExecutionProgress', pathId: oPathId, stepIndex, delta }));
+                publishToTopic(smartPathTopic(oPathId), { type: 'smartpath.stepExecutionProgress', pathId: oPathId, stepIndex, delta });
               },
               msg.useRefs === true,
             );
@@ -2321,6 +2390,7 @@ wss.on('connection', (ws: WebSocket) => {
               throw new Error('Missing required: pathId, workspace, runId, blueprint, stepIndex');
             }
             const rsPathId = msg.pathId as string;
+            outbound.subscribe(ws, smartPathTopic(rsPathId));
             const rsWorkspace = msg.workspace as string;
             const rsRunId = msg.runId as string;
             const rsBlueprint = msg.blueprint as import('./types.js').PathBlueprint;
@@ -2350,20 +2420,20 @@ wss.on('connection', (ws: WebSocket) => {
               rsStepIndex, rsBlueprint.stepPlans.length,
               rsPriorResults, rsArgs,
               (stepIndex, delta) => {
-                broadcast(JSON.stringify({ type: 'smartpath.stepExecutionProgress', pathId: rsPathId, stepIndex, delta }));
+                publishToTopic(smartPathTopic(rsPathId), { type: 'smartpath.stepExecutionProgress', pathId: rsPathId, stepIndex, delta });
               },
               rsDeliveryCheck,
               msg.useRefs === true,
               rsSkills,
             );
 
-            broadcast(JSON.stringify({
+            publishToTopic(smartPathTopic(rsPathId), {
               type: 'smartpath.stepExecutionResult', pathId: rsPathId, stepIndex: rsStepIndex,
               result: rsResult.result,
               deliveryCheckPassed: rsResult.deliveryCheckPassed,
               deliveryCheckReason: rsResult.deliveryCheckReason,
               retried: rsResult.retried,
-            }));
+            });
           } catch (err) {
             ws.send(JSON.stringify({ type: 'chat.error', error: err instanceof Error ? err.message : String(err) }));
           }
@@ -2376,6 +2446,7 @@ wss.on('connection', (ws: WebSocket) => {
               throw new Error('Missing required: pathId, workspace, runId, blueprint, stepResults');
             }
             const fPathId = msg.pathId as string;
+            outbound.subscribe(ws, smartPathTopic(fPathId));
             const fWorkspace = msg.workspace as string;
             const fRunId = msg.runId as string;
             const fBlueprint = msg.blueprint as import('./types.js').PathBlueprint;
@@ -2390,7 +2461,7 @@ wss.on('connection', (ws: WebSocket) => {
 
             const p = smartPathStore.get(fPathId, fActualWs);
             const refs = smartPathStore.listReferences(fActualWs, fPathId);
-            broadcast(JSON.stringify({ type: 'smartpath.completed', pathId: fPathId, path: p, references: refs }));
+            broadcast({ type: 'smartpath.completed', pathId: fPathId, path: p, references: refs });
           } catch (err) {
             ws.send(JSON.stringify({ type: 'chat.error', error: err instanceof Error ? err.message : String(err) }));
           }
@@ -2595,12 +2666,13 @@ wss.on('connection', (ws: WebSocket) => {
             ws.send(JSON.stringify({ type: 'code.listDir', result: { error: 'Missing workspace' } }));
             break;
           }
-          try {
-            const result = handleListDir(String(msg.workspace), String(msg.dirPath || '.'));
-            ws.send(JSON.stringify({ type: 'code.listDir', result }));
-          } catch (err) {
-            ws.send(JSON.stringify({ type: 'code.listDir', result: { error: err instanceof Error ? err.message : String(err) } }));
-          }
+          handleListDirAsync(String(msg.workspace), String(msg.dirPath || '.'))
+            .then((result) => {
+              ws.send(JSON.stringify({ type: 'code.listDir', result }));
+            })
+            .catch((err) => {
+              ws.send(JSON.stringify({ type: 'code.listDir', result: { error: err instanceof Error ? err.message : String(err) } }));
+            });
           break;
         }
         case 'code.readFile': {
@@ -2621,12 +2693,30 @@ wss.on('connection', (ws: WebSocket) => {
             ws.send(JSON.stringify({ type: 'code.searchSymbols', result: { error: 'Missing workspace or symbol' } }));
             break;
           }
-          handleSearchSymbols(String(msg.workspace), String(msg.symbol), msg.fileExt ? String(msg.fileExt) : undefined)
+          // A newer query from the same client supersedes the running one
+          wsSymbolSearches.get(ws)?.abort();
+          const searchController = new AbortController();
+          wsSymbolSearches.set(ws, searchController);
+          const searchId = msg.searchId !== undefined ? String(msg.searchId) : undefined;
+          handleSearchSymbols(String(msg.workspace), String(msg.symbol), msg.fileExt ? String(msg.fileExt) : undefined, 20, {
+            signal: searchController.signal,
+            // Stream matches as rg / the scanner finds them; the final frame carries the full list
+            onMatches: (matches) => {
+              if (!searchController.signal.aborted) {
+                ws.send(JSON.stringify({ type: 'code.searchResult', searchId, matches }));
+              }
+            },
+          })
             .then((result) => {
-              ws.send(JSON.stringify({ type: 'code.searchSymbols', result }));
+              if (!searchController.signal.aborted) {
+                ws.send(JSON.stringify({ type: 'code.searchSymbols', searchId, result }));
+              }
             })
             .catch((err) => {
-              ws.send(JSON.stringify({ type: 'code.searchSymbols', result: { error: err instanceof Error ? err.message : String(err) } }));
+              ws.send(JSON.stringify({ type: 'code.searchSymbols', searchId, result: { error: err instanceof Error ? err.message : String(err) } }));
+            })
+            .finally(() => {
+              if (wsSymbolSearches.get(ws) === searchController) wsSymbolSearches.delete(ws);
             });
           break;
         }
@@ -2648,12 +2738,13 @@ wss.on('connection', (ws: WebSocket) => {
             ws.send(JSON.stringify({ type: 'code.searchFiles', result: { error: 'Missing workspace or query' } }));
             break;
           }
-          try {
-            const result = handleSearchFiles(String(msg.workspace), String(msg.query), 50, msg.sourceOnly !== false);
-            ws.send(JSON.stringify({ type: 'code.searchFiles', result }));
-          } catch (err) {
-            ws.send(JSON.stringify({ type: 'code.searchFiles', result: { error: err instanceof Error ? err.message : String(err) } }));
-          }
+          handleSearchFiles(String(msg.workspace), String(msg.query), 50, msg.sourceOnly !== false)
+            .then((result) => {
+              ws.send(JSON.stringify({ type: 'code.searchFiles', result }));
+            })
+            .catch((err) => {
+              ws.send(JSON.stringify({ type: 'code.searchFiles', result: { error: err instanceof Error ? err.message : String(err) } }));
+            });
           break;
         }
 
@@ -2700,6 +2791,14 @@ wss.on('connection', (ws: WebSocket) => {
             .catch(err => ws.send(JSON.stringify({ type: 'git.logGraph', result: { error: err instanceof Error ? err.message : String(err) } })));
           break;
         }
+        case 'git.logGraphPage': {
+          if (!msg.workspace) { ws.send(JSON.stringify({ type: 'git.logGraphPage', result: { error: 'Missing workspace' } })); break; }
+          const cursor = msg.cursor ? String(msg.cursor) : undefined;
+          handleGitLogGraphPage(String(msg.workspace), cursor, msg.limit ? Number(msg.limit) : undefined)
+            .then(result => ws.send(JSON.stringify({ type: 'git.logGraphPage', cursor: cursor ?? null, result })))
+            .catch(err => ws.send(JSON.stringify({ type: 'git.logGraphPage', cursor: cursor ?? null, result: { error: err instanceof Error ? err.message : String(err) } })));
+          break;
+        }
         case 'git.logSearch': {
           if (!msg.workspace || !msg.query) { ws.send(JSON.stringify({ type: 'git.logSearch', result: [] })); break; }
           handleGitLogSearch(String(msg.workspace), String(msg.query))
@@ -3083,7 +3182,7 @@ wss.on('connection', (ws: WebSocket) => {
 
             // Fire-and-forget: send task prompt, use noop wsSend since frontend doesn't have stream handlers
             // The AI response will be persisted to SQLite and visible when user loads session history
-            const noopWsSend = (_data: string) => {};
+            const noopWsSend = (_data: OutboundPayload) => {};
             sessionManager.sendMessage(sessionId, taskPrompt, noopWsSend).catch((err: unknown) => {
               log.error(`[group-task.create] Failed to send task prompt: ${err}`);
             });
@@ -3210,7 +3309,7 @@ wss.on('connection', (ws: WebSocket) => {
               subPrompt = subPrompt.replace(/\{parent_task_title\}/g, task.title);
 
               // Fire-and-forget send subtask prompt — noop wsSend since response persists in SQLite
-              const noopWsSend = (_data: string) => {};
+              const noopWsSend = (_data: OutboundPayload) => {};
               sessionManager.sendMessage(sessionId, subPrompt, noopWsSend).catch((err: unknown) => {
                 log.error(`[group-task.dispatch] Failed to send subtask prompt: ${err}`);
               });
@@ -3316,8 +3415,10 @@ wss.on('connection', (ws: WebSocket) => {
     authenticatedClients.delete(ws);
     wsClientIdMap.delete(ws);
     wsRoomSubs.delete(ws);
-    // Clean up session subscriptions for this client
-    unsubscribeClientFromAllSessions(ws);
+    wsSymbolSearches.get(ws)?.abort();
+    wsSymbolSearches.delete(ws);
+    // Clean up outbound queue and topic subscriptions for this client
+    outbound.detach(ws);
     log.info('WebSocket client disconnected');
   });
 });
@@ -3333,6 +3434,11 @@ function shutdown(): void {
   cronScheduler.stop();
   smartPathScheduler.stop();
   stopHub();
+  disposeWorkspaceFileIndexes();
+  disposeGitStateCaches();
+  disposeCommitGraphs();
+  eventLoopLag.stop();
+  void closeWorkerPool();
   sessionManager.close();
   knowledgeExtractorStore.close();
   wss.close();
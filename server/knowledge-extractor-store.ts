@@ -4,6 +4,14 @@ import type { Database } from 'better-sqlite3';
 const DatabaseConstructor = betterSqlite3 as unknown as typeof betterSqlite3.default;
 import { createLogger, type Logger } from './utils/logger.js';
 
+export interface PendingKnowledgeMessage {
+  id: number;
+  sessionId: string;
+  role: string;
+  content: string;
+  deleted: boolean;
+}
+
 export interface ExtractionProgress {
   workspace: string;
   sessionId: string;
@@ -53,6 +61,55 @@ export class KnowledgeExtractorStore {
     ).run(workspace, sessionId, lastExtractedMessageId);
   }
 
+  /** Advance several sessions at once (one transaction) */
+  setProgressMany(workspace: string, updates: Array<{ sessionId: string; lastId: number }>): void {
+    const stmt = this.db.prepare(
+      `INSERT INTO knowledge_extraction_progress (workspace, session_id, last_extracted_message_id, updated_at) VALUES (?, ?, ?, datetime('now'))
+       ON CONFLICT(workspace, session_id) DO UPDATE SET last_extracted_message_id = MAX(last_extracted_message_id, excluded.last_extracted_message_id), updated_at = datetime('now')`
+    );
+    this.db.transaction(() => {
+      for (const { sessionId, lastId } of updates) stmt.run(workspace, sessionId, lastId);
+    })();
+  }
+
+  /**
+   * Messages of a workspace not extracted yet, oldest first, in one query
+   * (sessions × progress × messages) instead of one query per session.
+   * Deleted sessions are included; cron sessions are not. A session's
+   * messages stop before its in-progress (partial) reply, so progress never
+   * moves past a message that is still being written.
+   */
+  getPendingMessages(workspace: string, limit: number): PendingKnowledgeMessage[] {
+    const rows = this.db.prepare(
+      `SELECT m.id, m.session_id as sessionId, m.role, m.content, s.deleted_at IS NOT NULL as deleted
+       FROM sessions s
+       LEFT JOIN knowledge_extraction_progress p ON p.workspace = s.workspace AND p.session_id = s.id
+       JOIN messages m ON m.session_id = s.id AND m.id > COALESCE(p.last_extracted_message_id, 0)
+       WHERE s.workspace = ? AND (s.is_cron = 0 OR s.is_cron IS NULL)
+         AND NOT EXISTS (
+           SELECT 1 FROM messages pm WHERE pm.session_id = m.session_id AND pm.is_partial = 1 AND pm.id <= m.id
+         )
+       ORDER BY m.id ASC
+       LIMIT ?`
+    ).all(workspace, limit) as Array<Omit<PendingKnowledgeMessage, 'deleted'> & { deleted: number }>;
+    return rows.map(row => ({ ...row, deleted: row.deleted === 1 }));
+  }
+
+  /** Number of messages getPendingMessages() would still return for a workspace */
+  countPendingMessages(workspace: string): number {
+    const row = this.db.prepare(
+      `SELECT COUNT(*) as count
+       FROM sessions s
+       LEFT JOIN knowledge_extraction_progress p ON p.workspace = s.workspace AND p.session_id = s.id
+       JOIN messages m ON m.session_id = s.id AND m.id > COALESCE(p.last_extracted_message_id, 0)
+       WHERE s.workspace = ? AND (s.is_cron = 0 OR s.is_cron IS NULL)
+         AND NOT EXISTS (
+           SELECT 1 FROM messages pm WHERE pm.session_id = m.session_id AND pm.is_partial = 1 AND pm.id <= m.id
+         )`
+    ).get(workspace) as { count: number };
+    return row.count;
+  }
+
   getAllProgressForWorkspace(workspace: string): ExtractionProgress[] {
     return this.db.prepare(
       'SELECT workspace, session_id as sessionId, last_extracted_message_id as lastExtractedMessageId, updated_at as updatedAt FROM knowledge_extraction_progress WHERE workspace = ?'
@@ -5,7 +5,11 @@
  * Follows the same fire-and-forget pattern as UserProfileManager:
  * - recordTurn() called after each conversation turn, marks workspace dirty
  * - 10-minute interval + idle check before running LLM extraction
- * - Serial queue to prevent concurrent extractions
+ * - Pending messages of a workspace come from one query, are split into
+ *   token-budgeted chunks and extracted chunk by chunk (each chunk sees the
+ *   knowledge written by the previous one)
+ * - Workspaces are extracted concurrently up to a configurable limit; one
+ *   workspace never runs twice at the same time
  *
  * Knowledge is stored per-user under {workspace}/.sman/knowledge/:
  * - business-{username}.md
@@ -23,8 +27,10 @@ import path from 'path';
 import os from 'os';
 import crypto from 'crypto';
 import { createLogger, type Logger } from './utils/logger.js';
-import type { SessionStore, Message } from './session-store.js';
-import type { KnowledgeExtractorStore } from './knowledge-extractor-store.js';
+import type { SessionStore } from './session-store.js';
+import type { KnowledgeExtractorStore, PendingKnowledgeMessage } from './knowledge-extractor-store.js';
+import { errorCodeForStatus, type LlmScheduler } from './llm-scheduler.js';
+import { Semaphore } from './semaphore.js';
 
 const KNOWLEDGE_CATEGORIES = ['business', 'conventions', 'technical'] as const;
 type KnowledgeCategory = typeof KNOWLEDGE_CATEGORIES[number];
@@ -44,19 +50,102 @@ const CATEGORY_META: Record<KnowledgeCategory, { label: string; description: str
   },
 };
 
+type ExtractionMessage = { sessionId: string; role: string; content: string; deleted?: boolean };
+
+/** `failed`: the call itself failed (HTTP error, network, empty reply); `knowledge` null: nothing usable in the reply */
+type ExtractionResult = { failed: true } | { failed: false; knowledge: Record<string, string> | null };
+
+export interface KnowledgeExtractionStats {
+  /** Messages extracted per minute over the last THROUGHPUT_WINDOW_MS */
+  messagesPerMinute: number;
+  /** Messages still waiting, as of each workspace's last pass */
+  backlog: number;
+  runningWorkspaces: number;
+  queuedWorkspaces: number;
+  chunksExtracted: number;
+  /** Failed LLM calls; their chunks stay pending and are retried */
+  chunksFailed: number;
+}
+
+/** Rough token count: CJK characters are ~1 token each, other text ~4 chars per token */
+export function estimateTokens(text: string): number {
+  const cjk = text.match(/[\u3000-\u9fff\uac00-\ud7af\uff00-\uffef]/g)?.length ?? 0;
+  return cjk + Math.ceil((text.length - cjk) / 4);
+}
+
+/** Split messages (in order) into chunks of at most `budget` estimated tokens */
+export function chunkByTokenBudget<T extends { content: string }>(messages: T[], budget: number): T[][] {
+  const chunks: T[][] = [];
+  let current: T[] = [];
+  let tokens = 0;
+  for (const msg of messages) {
+    const cost = estimateTokens(msg.content);
+    if (current.length > 0 && tokens + cost > budget) {
+      chunks.push(current);
+      current = [];
+      tokens = 0;
+    }
+    current.push(msg);
+    tokens += cost;
+  }
+  if (current.length > 0) chunks.push(current);
+  return chunks;
+}
+
+const ENTRY_RE = /(?:^##[^\n]*\n)?<!-- hash: ([0-9a-fA-F]+) -->[\s\S]*?<!-- end: \1 -->/gm;
+
+function knowledgeEntries(content: string): Map<string, string> {
+  const entries = new Map<string, string>();
+  for (const match of content.matchAll(ENTRY_RE)) entries.set(match[1], match[0]);
+  return entries;
+}
+
+/**
+ * Three-way merge by hash markers. `output` is the LLM's rewrite of `basis`
+ * (the file it was shown); entries that appeared in `current` since then —
+ * written by another extraction or edited by hand — are kept, while entries
+ * the LLM dropped from `basis` stay dropped.
+ */
+export function mergeKnowledgeFile(basis: string, current: string, output: string): string {
+  if (current === basis) return output;
+  const seen = knowledgeEntries(basis);
+  const kept = knowledgeEntries(output);
+  const added: string[] = [];
+  for (const [hash, block] of knowledgeEntries(current)) {
+    if (!seen.has(hash) && !kept.has(hash)) added.push(block);
+  }
+  if (added.length === 0) return output;
+  return `${output.trimEnd()}\n\n${added.join('\n\n')}\n`;
+}
+
 export class KnowledgeExtractor {
   private static readonly UPDATE_INTERVAL_MS = 10 * 60 * 1000; // 10 minutes
-  private static readonly MAX_MESSAGES_PER_EXTRACTION = 50;
+  /** Pending messages fetched per query */
+  private static readonly MAX_MESSAGES_PER_QUERY = 500;
   private static readonly MAX_MESSAGE_LENGTH = 1000;
-  private static readonly MAX_MESSAGES_CHARS = 30000;
+  /** Conversation tokens per LLM call (≈ the former 30k-char cap) */
+  private static readonly DEFAULT_CHUNK_TOKEN_BUDGET = 8000;
+  /** Chunks per workspace per flush; the rest waits for the next cycle */
+  private static readonly MAX_CHUNKS_PER_RUN = 6;
+  private static readonly DEFAULT_CONCURRENCY = 2;
+  private static readonly THROUGHPUT_WINDOW_MS = 10 * 60 * 1000;
   private config: import('./types.js').SmanConfig | null = null;
   private log: Logger;
-  private updateQueue: Promise<void> = Promise.resolve();
   private lastUpdateTime: number = 0;
   private dirtyWorkspaces = new Set<string>();
+  /** Tail of each workspace's extraction chain */
+  private workspaceRuns = new Map<string, Promise<void>>();
+  private runningWorkspaces = new Set<string>();
+  private limiter: Semaphore;
+  private concurrency: number;
   private getLastActivity: () => number = () => 0;
+  private llmScheduler: LlmScheduler | null = null;
   private static readonly IDLE_THRESHOLD_MS = 3 * 60 * 1000; // 3 minutes
   private username: string;
+  private backlog = new Map<string, number>();
+  private throughput: Array<{ at: number; messages: number }> = [];
+  private chunksExtracted = 0;
+  private chunksFailed = 0;
 
   constructor(
     private store: SessionStore,
@@ -66,16 +155,28 @@ export class KnowledgeExtractor {
     this.log = createLogger('KnowledgeExtractor');
     this.config = config ?? null;
     this.username = os.userInfo().username;
+    this.concurrency = this.configuredConcurrency();
+    this.limiter = new Semaphore(this.concurrency);
   }
 
   updateConfig(config: import('./types.js').SmanConfig): void {
     this.config = config;
+    const concurrency = this.configuredConcurrency();
+    if (concurrency !== this.concurrency) {
+      // Runs holding the old limiter finish under it
+      this.concurrency = concurrency;
+      this.limiter = new Semaphore(concurrency);
+    }
   }
 
   setActivityTimestampProvider(getLastActivity: () => number): void {
     this.getLastActivity = getLastActivity;
   }
 
+  setLlmScheduler(scheduler: LlmScheduler): void {
+    this.llmScheduler = scheduler;
+  }
+
   /**
    * Called after each conversation turn completes. Marks the workspace as
    * needing extraction. Actual extraction runs on 10-min idle cadence.
@@ -99,9 +200,35 @@ export class KnowledgeExtractor {
     this.tryFlush();
   }
 
+  stats(): KnowledgeExtractionStats {
+    const since = Date.now() - KnowledgeExtractor.THROUGHPUT_WINDOW_MS;
+    this.throughput = this.throughput.filter(t => t.at >= since);
+    const messages = this.throughput.reduce((sum, t) => sum + t.messages, 0);
+    let backlog = 0;
+    for (const count of this.backlog.values()) backlog += count;
+    return {
+      messagesPerMinute: Math.round((messages / (KnowledgeExtractor.THROUGHPUT_WINDOW_MS / 60_000)) * 10) / 10,
+      backlog,
+      runningWorkspaces: this.runningWorkspaces.size,
+      queuedWorkspaces: this.workspaceRuns.size - this.runningWorkspaces.size,
+      chunksExtracted: this.chunksExtracted,
+      chunksFailed: this.chunksFailed,
+    };
+  }
+
+  private configuredConcurrency(): number {
+    const value = this.config?.knowledgeExtraction?.concurrency;
+    return Math.max(1, Math.floor(value ?? KnowledgeExtractor.DEFAULT_CONCURRENCY));
+  }
+
+  private chunkTokenBudget(): number {
+    const value = this.config?.knowledgeExtraction?.chunkTokenBudget;
+    return Math.max(500, Math.floor(value ?? KnowledgeExtractor.DEFAULT_CHUNK_TOKEN_BUDGET));
+  }
+
   /**
-   * Attempt to flush all dirty workspaces. Waits for idle, then extracts
-   * knowledge from all sessions with new messages.
+   * Attempt to flush all dirty workspaces. Each workspace is chained behind
+   * its own previous run, waits for idle, then takes a concurrency slot.
    */
   private tryFlush(): void {
     const workspaces = [...this.dirtyWorkspaces];
@@ -109,27 +236,41 @@ export class KnowledgeExtractor {
     this.dirtyWorkspaces.clear();
     this.lastUpdateTime = Date.now();
 
-    this.updateQueue = this.updateQueue.then(async () => {
-      // Wait until 3 minutes since last SDK activity
-      while (true) {
-        const last = this.getLastActivity();
-        if (last === 0 || Date.now() - last >= KnowledgeExtractor.IDLE_THRESHOLD_MS) break;
-        await new Promise(r => setTimeout(r, 2000));
-      }
-      try {
-        for (const workspace of workspaces) {
+    for (const workspace of workspaces) {
+      const previous = this.workspaceRuns.get(workspace) ?? Promise.resolve();
+      const run = previous.then(async () => {
+        await this.waitForIdle();
+        const limiter = this.limiter;
+        await limiter.acquire();
+        this.runningWorkspaces.add(workspace);
+        try {
           await this.extractForWorkspace(workspace);
+        } catch (err) {
+          this.log.warn('Knowledge extraction skipped', { workspace, error: String(err) });
+        } finally {
+          this.runningWorkspaces.delete(workspace);
+          limiter.release();
         }
-      } catch (err) {
-        this.log.warn('Knowledge extraction skipped', { error: String(err) });
-      }
-    });
+      }).finally(() => {
+        if (this.workspaceRuns.get(workspace) === run) this.workspaceRuns.delete(workspace);
+      });
+      this.workspaceRuns.set(workspace, run);
+    }
+  }
+
+  /** Wait until 3 minutes since last SDK activity */
+  private async waitForIdle(): Promise<void> {
+    while (true) {
+      const last = this.getLastActivity();
+      if (last === 0 || Date.now() - last >= KnowledgeExtractor.IDLE_THRESHOLD_MS) return;
+      await new Promise(r => setTimeout(r, 2000));
+    }
   }
 
   /**
    * Extract knowledge from all sessions in a workspace that have
-   * messages beyond the last extraction point.
-   * Includes deleted sessions — they contain valuable "negative signal".
+   * messages beyond the last extraction point, one token-budgeted chunk at
+   * a time. Includes deleted sessions — they contain valuable "negative signal".
    */
   private async extractForWorkspace(workspace: string): Promise<void> {
     if (!this.config?.llm?.apiKey) {
@@ -137,84 +278,80 @@ export class KnowledgeExtractor {
       return;
     }
 
-    const sessions = this.store.getSessionsByWorkspace(workspace, true);
-    if (sessions.length === 0) return;
-
-    // Collect new messages from all sessions, respecting extraction progress
-    let allNewMessages: Array<{ sessionId: string; role: string; content: string; deleted?: boolean }> = [];
-    const progressUpdates: Array<{ sessionId: string; lastId: number }> = [];
-
-    for (const session of sessions) {
-      const progress = this.extractorStore.getProgress(workspace, session.id);
-      const lastId = progress?.lastExtractedMessageId ?? 0;
-      const messages = this.store.getMessagesAfterId(
-        session.id,
-        lastId,
-        KnowledgeExtractor.MAX_MESSAGES_PER_EXTRACTION,
+    let processed = 0;
+    for (let chunkIndex = 0; chunkIndex < KnowledgeExtractor.MAX_CHUNKS_PER_RUN; chunkIndex++) {
+      // Buffered partial rows must be visible so in-progress replies are skipped
+      this.store.flushPendingWrites();
+      const pending = this.extractorStore.getPendingMessages(workspace, KnowledgeExtractor.MAX_MESSAGES_PER_QUERY);
+      if (pending.length === 0) break;
+      // Chunks are a prefix in message-id order, so each session's progress
+      // can move to the last id of that session within the chunk
+      const [chunk] = chunkByTokenBudget(
+        pending.map(m => ({ ...m, content: this.truncateContent(m.content) })),
+        this.chunkTokenBudget(),
       );
+      // A failed call (rate limit, outage) leaves progress alone; retry next cycle
+      if (!(await this.extractChunk(workspace, chunk))) break;
+      processed += chunk.length;
+    }
 
-      if (messages.length === 0) continue;
-
-      const isDeleted = !!session.deletedAt;
-      for (const msg of messages) {
-        allNewMessages.push({
-          sessionId: session.id,
-          role: msg.role,
-          content: this.truncateContent(msg.content),
-          deleted: isDeleted,
-        });
-      }
-      progressUpdates.push({
-        sessionId: session.id,
-        lastId: messages[messages.length - 1].id,
-      });
+    const remaining = this.extractorStore.countPendingMessages(workspace);
+    this.backlog.set(workspace, remaining);
+    if (remaining > 0) {
+      // Leftovers continue on the next cycle instead of monopolizing a slot
+      this.dirtyWorkspaces.add(workspace);
     }
 
-    if (allNewMessages.length === 0) {
+    if (processed === 0) {
       this.log.info(`No new messages to extract for workspace ${workspace}`);
       return;
     }
+    this.log.info(`Knowledge extracted for workspace ${workspace} (${processed} messages processed, ${remaining} pending)`);
+  }
 
-    // Truncate total conversation text to fit token budget
-    allNewMessages = this.truncateMessages(allNewMessages);
-
-    // Read existing knowledge files
-    const knowledgeDir = this.getKnowledgeDir(workspace);
-    const existingKnowledge: Record<string, string> = {};
-    for (const category of KNOWLEDGE_CATEGORIES) {
-      const filePath = this.getKnowledgeFilePath(workspace, category);
-      if (fs.existsSync(filePath)) {
-        existingKnowledge[category] = fs.readFileSync(filePath, 'utf-8');
-      }
+  /** Returns false when the LLM call failed; progress then stays where it was */
+  private async extractChunk(workspace: string, chunk: PendingKnowledgeMessage[]): Promise<boolean> {
+    const existingKnowledge = this.readKnowledge(workspace);
+    const result = await this.callLLMForExtraction(chunk, existingKnowledge);
+    if (result.failed) {
+      this.chunksFailed++;
+      return false;
     }
 
-    // Call LLM to extract knowledge
-    const extracted = await this.callLLMForExtraction(allNewMessages, existingKnowledge);
-    if (!extracted) {
-      this.log.warn('LLM returned no knowledge, skipping');
-      // Still update progress so we don't reprocess these messages
-      for (const { sessionId, lastId } of progressUpdates) {
-        this.extractorStore.setProgress(workspace, sessionId, lastId);
+    const extracted = result.knowledge;
+    if (extracted) {
+      // Merge against the file as it is now, not as the LLM saw it
+      const current = this.readKnowledge(workspace);
+      fs.mkdirSync(this.getKnowledgeDir(workspace), { recursive: true });
+      for (const category of KNOWLEDGE_CATEGORIES) {
+        const content = extracted[category];
+        if (content && content.trim()) {
+          const merged = mergeKnowledgeFile(existingKnowledge[category] ?? '', current[category] ?? '', content);
+          fs.writeFileSync(this.getKnowledgeFilePath(workspace, category), merged, 'utf-8');
+        }
       }
-      return;
+      this.chunksExtracted++;
+    } else {
+      this.log.warn('LLM returned no knowledge, skipping');
     }
 
-    // Write knowledge files
-    fs.mkdirSync(knowledgeDir, { recursive: true });
+    // Progress moves on even without knowledge so these messages are not reprocessed
+    const lastIds = new Map<string, number>();
+    for (const msg of chunk) lastIds.set(msg.sessionId, Math.max(lastIds.get(msg.sessionId) ?? 0, msg.id));
+    this.extractorStore.setProgressMany(workspace, [...lastIds].map(([sessionId, lastId]) => ({ sessionId, lastId })));
+    this.throughput.push({ at: Date.now(), messages: chunk.length });
+    return true;
+  }
+
+  private readKnowledge(workspace: string): Record<string, string> {
+    const knowledge: Record<string, string> = {};
     for (const category of KNOWLEDGE_CATEGORIES) {
-      const content = extracted[category];
-      if (content && content.trim()) {
-        const filePath = this.getKnowledgeFilePath(workspace, category);
-        fs.writeFileSync(filePath, content, 'utf-8');
+      const filePath = this.getKnowledgeFilePath(workspace, category);
+      if (fs.existsSync(filePath)) {
+        knowledge[category] = fs.readFileSync(filePath, 'utf-8');
       }
     }
-
-    // Update extraction progress
-    for (const { sessionId, lastId } of progressUpdates) {
-      this.extractorStore.setProgress(workspace, sessionId, lastId);
-    }
-
-    this.log.info(`Knowledge extracted for workspace ${workspace} (${allNewMessages.length} messages processed)`);
+    return knowledge;
   }
 
   private getKnowledgeDir(workspace: string): string {
@@ -230,28 +367,14 @@ export class KnowledgeExtractor {
     return text.slice(0, KnowledgeExtractor.MAX_MESSAGE_LENGTH) + '...';
   }
 
-  private truncateMessages(
-    messages: Array<{ sessionId: string; role: string; content: string; deleted?: boolean }>,
-  ): Array<{ sessionId: string; role: string; content: string; deleted?: boolean }> {
-    let totalChars = 0;
-    const result: typeof messages = [];
-    // Take from the end (most recent) to stay within budget
-    for (let i = messages.length - 1; i >= 0; i--) {
-      totalChars += messages[i].content.length;
-      if (totalChars > KnowledgeExtractor.MAX_MESSAGES_CHARS) break;
-      result.unshift(messages[i]);
-    }
-    return result;
-  }
-
   /**
    * Call LLM to extract knowledge from conversations and merge with existing knowledge.
    * Each knowledge entry is wrapped in hash markers for deduplication.
    */
   private async callLLMForExtraction(
-    messages: Array<{ sessionId: string; role: string; content: string; deleted?: boolean }>,
+    messages: ExtractionMessage[],
     existingKnowledge: Record<string, string>,
-  ): Promise<Record<string, string> | null> {
+  ): Promise<ExtractionResult> {
     const config = this.config!;
     const model = config.llm.profileModel || config.llm.model;
     const baseUrl = (config.llm.baseUrl || 'https://api.anthropic.com').replace(/\/$/, '');
@@ -361,6 +484,9 @@ ${existingParts.join('\n\n')}
 ## 任务
 分析对话，提取新知识，输出三个完整的知识文件。`;
 
+    // Lowest-priority lane: yields to chat, chatbot, path, cron and batch turns
+    const permit = await this.llmScheduler?.acquire('background');
+    let errorCode: string | undefined;
     try {
       const response = await fetch(`${baseUrl}/v1/messages`, {
         method: 'POST',
@@ -379,6 +505,7 @@ ${existingParts.join('\n\n')}
       });
 
       if (!response.ok) {
+        errorCode = errorCodeForStatus(response.status) ?? 'unknown';
         const errorBody = await response.text();
         throw new Error(`LLM API error: ${response.status} ${errorBody}`);
       }
@@ -387,10 +514,13 @@ ${existingParts.join('\n\n')}
       const text = data.content?.[0]?.text;
       if (!text) throw new Error('Empty response from LLM');
 
-      return this.parseExtractedKnowledge(text);
+      return { failed: false, knowledge: this.parseExtractedKnowledge(text) };
     } catch (err) {
+      errorCode ??= 'unknown';
       this.log.warn('Knowledge extraction LLM call failed', { error: String(err) });
-      return null;
+      return { failed: true };
+    } finally {
+      permit?.release(errorCode);
     }
   }
 
@@ -0,0 +1,267 @@
+/**
+ * Global scheduler for model requests.
+ *
+ * Every ClaudeSessionManager.sendMessage* turn (and the KnowledgeExtractor's
+ * direct API calls) takes a slot here before talking to the provider:
+ * - Priority lanes: interactive > chatbot > smartpath > cron > batch > background.
+ *   Waiters are served strictly by lane, FIFO within a lane
+ * - Global concurrency budget, with slots reserved for interactive chat so a
+ *   wide batch cannot starve the user
+ * - Token bucket limiting how often new turns start
+ * - Adaptive backoff: rate_limit / overloaded / server_error reported on release
+ *   (the codes classifyErrorMessage produces) pause non-interactive lanes with
+ *   exponential backoff and halve the concurrency budget; successes restore it
+ *   one slot at a time
+ */
+
+import { createLogger, type Logger } from './utils/logger.js';
+
+export type LlmLane = 'interactive' | 'chatbot' | 'smartpath' | 'cron' | 'batch' | 'background';
+
+const LANE_PRIORITY: Record<LlmLane, number> = {
+  interactive: 0,
+  chatbot: 1,
+  smartpath: 2,
+  cron: 3,
+  batch: 4,
+  background: 5,
+};
+
+/** Error codes (from classifyErrorMessage) that mean the provider wants us to slow down */
+export const BACKOFF_ERROR_CODES = new Set(['rate_limit', 'overloaded', 'server_error']);
+
+/** Map an HTTP status from a direct API call to the classifyErrorMessage code space */
+export function errorCodeForStatus(status: number): string | undefined {
+  if (status === 429) return 'rate_limit';
+  if (status === 529) return 'overloaded';
+  if (status >= 500) return 'server_error';
+  return undefined;
+}
+
+export interface LlmSchedulerOptions {
+  /** Concurrent turns across all lanes */
+  maxConcurrent: number;
+  /** Slots only the interactive lane may use */
+  reservedInteractive: number;
+  /** Token bucket refill rate (turn starts per minute) */
+  requestsPerMinute: number;
+  /** Token bucket capacity */
+  burst: number;
+  baseBackoffMs: number;
+  maxBackoffMs: number;
+}
+
+export interface LlmPermit {
+  readonly lane: LlmLane;
+  /** Give the slot back; pass the classified error code if the turn failed. Idempotent. */
+  release(errorCode?: string): void;
+}
+
+export interface LlmSchedulerStats {
+  active: number;
+  activeByLane: Partial<Record<LlmLane, number>>;
+  queued: Partial<Record<LlmLane, number>>;
+  concurrencyLimit: number;
+  tokens: number;
+  backoffMs: number;
+  backoffRemainingMs: number;
+  granted: number;
+  throttled: number;
+}
+
+interface Waiter {
+  lane: LlmLane;
+  order: number;
+  resolve: (permit: LlmPermit) => void;
+  reject: (err: Error) => void;
+  cleanup: () => void;
+}
+
+const DEFAULT_OPTIONS: LlmSchedulerOptions = {
+  maxConcurrent: 8,
+  reservedInteractive: 2,
+  requestsPerMinute: 60,
+  burst: 10,
+  baseBackoffMs: 2_000,
+  maxBackoffMs: 60_000,
+};
+
+export class LlmScheduler {
+  private options: LlmSchedulerOptions = { ...DEFAULT_OPTIONS };
+  private queue: Waiter[] = [];
+  private nextOrder = 0;
+  private active = 0;
+  private activeByLane = new Map<LlmLane, number>();
+  private tokens: number;
+  private lastRefillAt = Date.now();
+  private concurrencyLimit: number;
+  private backoffMs = 0;
+  private backoffUntil = 0;
+  private wakeTimer: ReturnType<typeof setTimeout> | null = null;
+  private granted = 0;
+  private throttled = 0;
+  private log: Logger;
+
+  constructor(options: Partial<LlmSchedulerOptions> = {}) {
+    this.log = createLogger('LlmScheduler');
+    this.options = { ...DEFAULT_OPTIONS, ...options };
+    this.tokens = this.options.burst;
+    this.concurrencyLimit = this.options.maxConcurrent;
+  }
+
+  configure(options: Partial<LlmSchedulerOptions>): void {
+    this.options = { ...this.options, ...options };
+    this.tokens = Math.min(this.tokens, this.options.burst);
+    this.concurrencyLimit = Math.min(this.concurrencyLimit, this.options.maxConcurrent);
+    this.pump();
+  }
+
+  /** Wait for a slot in `lane`. Rejects with an AbortError if `signal` fires while queued. */
+  acquire(lane: LlmLane, signal?: AbortSignal): Promise<LlmPermit> {
+    if (signal?.aborted) return Promise.reject(abortError());
+
+    return new Promise<LlmPermit>((resolve, reject) => {
+      const onAbort = () => {
+        const idx = this.queue.indexOf(waiter);
+        if (idx !== -1) this.queue.splice(idx, 1);
+        reject(abortError());
+      };
+      const waiter: Waiter = {
+        lane,
+        order: this.nextOrder++,
+        resolve,
+        reject,
+        cleanup: () => signal?.removeEventListener('abort', onAbort),
+      };
+      signal?.addEventListener('abort', onAbort, { once: true });
+      this.enqueue(waiter);
+      this.pump();
+    });
+  }
+
+  /** Run `fn` inside a slot; `classify` maps a thrown error to an error code for backoff */
+  async run<T>(lane: LlmLane, fn: () => Promise<T>, classify?: (err: unknown) => string | undefined): Promise<T> {
+    const permit = await this.acquire(lane);
+    try {
+      const result = await fn();
+      permit.release();
+      return result;
+    } catch (err) {
+      permit.release(classify?.(err) ?? 'unknown');
+      throw err;
+    }
+  }
+
+  stats(): LlmSchedulerStats {
+    this.refill();
+    const queued: Partial<Record<LlmLane, number>> = {};
+    for (const w of this.queue) queued[w.lane] = (queued[w.lane] ?? 0) + 1;
+    return {
+      active: this.active,
+      activeByLane: Object.fromEntries(this.activeByLane) as Partial<Record<LlmLane, number>>,
+      queued,
+      concurrencyLimit: this.concurrencyLimit,
+      tokens: Math.floor(this.tokens),
+      backoffMs: this.backoffMs,
+      backoffRemainingMs: Math.max(0, this.backoffUntil - Date.now()),
+      granted: this.granted,
+      throttled: this.throttled,
+    };
+  }
+
+  private enqueue(waiter: Waiter): void {
+    const priority = LANE_PRIORITY[waiter.lane];
+    let idx = this.queue.length;
+    while (idx > 0 && LANE_PRIORITY[this.queue[idx - 1].lane] > priority) idx--;
+    this.queue.splice(idx, 0, waiter);
+  }
+
+  private refill(): void {
+    const now = Date.now();
+    const perMs = this.options.requestsPerMinute / 60_000;
+    this.tokens = Math.min(this.options.burst, this.tokens + (now - this.lastRefillAt) * perMs);
+    this.lastRefillAt = now;
+  }
+
+  /** Grant slots to waiters in priority order; stop at the first one that must wait */
+  private pump(): void {
+    this.refill();
+    while (this.queue.length > 0) {
+      const head = this.queue[0];
+      const interactive = head.lane === 'interactive';
+      const now = Date.now();
+
+      if (!interactive && now < this.backoffUntil) {
+        this.scheduleWake(this.backoffUntil - now);
+        return;
+      }
+      const limit = interactive
+        ? this.concurrencyLimit
+        : Math.max(1, this.concurrencyLimit - this.options.reservedInteractive);
+      // Interactive may exceed a backoff-reduced budget up to the configured maximum
+      const ceiling = interactive ? Math.max(limit, this.options.maxConcurrent) : limit;
+      if (this.active >= ceiling) return; // woken by release()
+      if (this.tokens < 1) {
+        this.throttled++;
+        this.scheduleWake((1 - this.tokens) / (this.options.requestsPerMinute / 60_000));
+        return;
+      }
+
+      this.queue.shift();
+      head.cleanup();
+      this.tokens -= 1;
+      this.active++;
+      this.activeByLane.set(head.lane, (this.activeByLane.get(head.lane) ?? 0) + 1);
+      this.granted++;
+      head.resolve(this.createPermit(head.lane));
+    }
+  }
+
+  private createPermit(lane: LlmLane): LlmPermit {
+    let released = false;
+    return {
+      lane,
+      release: (errorCode?: string) => {
+        if (released) return;
+        released = true;
+        this.active--;
+        const left = (this.activeByLane.get(lane) ?? 1) - 1;
+        if (left > 0) this.activeByLane.set(lane, left);
+        else this.activeByLane.delete(lane);
+        this.onOutcome(lane, errorCode);
+        this.pump();
+      },
+    };
+  }
+
+  private onOutcome(lane: LlmLane, errorCode: string | undefined): void {
+    if (errorCode && BACKOFF_ERROR_CODES.has(errorCode)) {
+      this.backoffMs = this.backoffMs
+        ? Math.min(this.backoffMs * 2, this.options.maxBackoffMs)
+        : this.options.baseBackoffMs;
+      this.backoffUntil = Date.now() + this.backoffMs;
+      this.concurrencyLimit = Math.max(1, Math.floor(this.concurrencyLimit / 2));
+      this.log.warn(`Provider pushback (${errorCode}) on ${lane} lane — backing off ${this.backoffMs}ms, concurrency ${this.concurrencyLimit}`);
+      return;
+    }
+    if (!errorCode) {
+      this.backoffMs = 0;
+      if (this.concurrencyLimit < this.options.maxConcurrent) this.concurrencyLimit++;
+    }
+  }
+
+  private scheduleWake(delayMs: number): void {
+    if (this.wakeTimer) return;
+    this.wakeTimer = setTimeout(() => {
+      this.wakeTimer = null;
+      this.pump();
+    }, Math.max(1, Math.ceil(delayMs)));
+    this.wakeTimer.unref?.();
+  }
+}
+
+function abortError(): Error {
+  const err = new Error('LLM request aborted while queued');
+  err.name = 'AbortError';
+  return err;
+}
@@ -0,0 +1,116 @@
+/**
+ * Append-only journal for streaming (partial) assistant messages.
+ *
+ * Instead of rewriting the whole accumulated content on every periodic save,
+ * SessionStore records only what changed since the last flush:
+ * - content: 'append' the new suffix, or 'reset' when the text was rewritten
+ * - block:   'append' to a growing thinking block, 'set' a changed block,
+ *            'truncate' when the block list shrank
+ *
+ * The journal is replayed on top of the partial message row when read, and
+ * compacted back into that row on finalize / crash recovery.
+ */
+
+import type { ContentBlock } from './session-store.js';
+
+export type JournalField = 'content' | 'block';
+export type JournalOpType = 'append' | 'reset' | 'set' | 'truncate';
+
+export interface JournalOp {
+  field: JournalField;
+  op: JournalOpType;
+  /** Block index for field='block' (new length for 'truncate') */
+  idx: number | null;
+  data: string | null;
+}
+
+/** Last persisted state of a partial message, kept per session by SessionStore */
+export interface PartialSnapshot {
+  content: string;
+  blocks: ContentBlock[];
+  /** JSON of each block as persisted, for cheap change detection */
+  blockJson: string[];
+}
+
+export function emptySnapshot(): PartialSnapshot {
+  return { content: '', blocks: [], blockJson: [] };
+}
+
+export function snapshotOf(content: string, blocks: ContentBlock[] | undefined): PartialSnapshot {
+  const list = blocks ?? [];
+  return { content, blocks: list, blockJson: list.map(b => JSON.stringify(b)) };
+}
+
+/** Compute the journal ops that turn `prev` into (content, blocks) */
+export function diffPartial(prev: PartialSnapshot, content: string, blocks: ContentBlock[] | undefined): JournalOp[] {
+  const ops: JournalOp[] = [];
+
+  if (content !== prev.content) {
+    if (content.startsWith(prev.content)) {
+      ops.push({ field: 'content', op: 'append', idx: null, data: content.slice(prev.content.length) });
+    } else {
+      ops.push({ field: 'content', op: 'reset', idx: null, data: content });
+    }
+  }
+
+  const next = blocks ?? [];
+  if (next.length < prev.blocks.length) {
+    ops.push({ field: 'block', op: 'truncate', idx: next.length, data: null });
+  }
+  for (let i = 0; i < next.length; i++) {
+    const block = next[i];
+    const before = prev.blocks[i];
+    // Growing thinking text: journal only the new suffix (when nothing else,
+    // e.g. the signature, changed along with it)
+    if (
+      before && before.type === 'thinking' && block.type === 'thinking'
+      && typeof before.thinking === 'string' && typeof block.thinking === 'string'
+      && block.thinking.startsWith(before.thinking)
+      && sameExceptThinking(before, block)
+    ) {
+      if (block.thinking.length > before.thinking.length) {
+        ops.push({ field: 'block', op: 'append', idx: i, data: block.thinking.slice(before.thinking.length) });
+      }
+      continue;
+    }
+    const json = JSON.stringify(block);
+    if (json !== prev.blockJson[i]) {
+      ops.push({ field: 'block', op: 'set', idx: i, data: json });
+    }
+  }
+
+  return ops;
+}
+
+function sameExceptThinking(a: ContentBlock, b: ContentBlock): boolean {
+  return JSON.stringify({ ...a, thinking: undefined }) === JSON.stringify({ ...b, thinking: undefined });
+}
+
+/** Apply journal ops (in id order) to a base snapshot */
+export function replayJournal(base: PartialSnapshot, ops: JournalOp[]): PartialSnapshot {
+  let content = base.content;
+  const blocks = base.blocks.map(b => ({ ...b }));
+
+  for (const op of ops) {
+    if (op.field === 'content') {
+      content = op.op === 'append' ? content + (op.data ?? '') : (op.data ?? '');
+      continue;
+    }
+    const idx = op.idx ?? 0;
+    switch (op.op) {
+      case 'truncate':
+        blocks.length = Math.min(blocks.length, idx);
+        break;
+      case 'set':
+        blocks[idx] = JSON.parse(op.data ?? '{}') as ContentBlock;
+        break;
+      case 'append': {
+        const target = blocks[idx];
+        if (target) target.thinking = (target.thinking ?? '') + (op.data ?? '');
+        break;
+      }
+    }
+  }
+
+  return snapshotOf(content, blocks.filter(Boolean));
+}
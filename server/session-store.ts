@@ -3,6 +3,14 @@ import path from 'node:path';
 import os from 'node:os';
 import { createLogger, type Logger } from './utils/logger.js';
 import { emitAchievementEvent } from './achievement-events.js';
+import type { BlobStore } from './blob-store.js';
+import { StatementCache, WriteBatcher } from './utils/sqlite.js';
+import { ensureIMSearchIndex } from './im/im-search-index.js';
+import { ensureIMReadState } from './im/im-store.js';
+import {
+  diffPartial, replayJournal, snapshotOf,
+  type JournalOp, type PartialSnapshot,
+} from './partial-journal.js';
 
 export interface Session {
   id: string;
@@ -22,21 +30,55 @@ export interface Message {
   role: 'user' | 'assistant';
   content: string;
   contentBlocks?: ContentBlock[];
+  /** Blocks exceed LAZY_BLOCKS_THRESHOLD and were not loaded — fetch via getMessageBlocks */
+  blocksDeferred?: boolean;
   isPartial?: boolean;
   createdAt: string;
 }
 
+/**
+ * Streaming-partial lifecycle, pushed to subscribed clients instead of them
+ * polling history: every committed partial snapshot, then the final message
+ * (null when the partial was dropped without one).
+ */
+export type PartialMessageEvent =
+  | { type: 'partialUpdated'; sessionId: string; message: Message }
+  | { type: 'streamCompleted'; sessionId: string; message: Message | null };
+
+/** One page of history, ordered oldest → newest within the page */
+export interface MessagePage {
+  messages: Message[];
+  /** True when older messages exist before the first message of this page */
+  hasMore: boolean;
+}
+
+interface GetMessagesPageOptions {
+  /** Keyset cursor: only return messages with id < beforeId */
+  beforeId?: number;
+  limit?: number;
+}
+
+/** content_blocks larger than this (chars) are left unparsed in paged reads */
+const LAZY_BLOCKS_THRESHOLD = 64 * 1024;
+const DEFAULT_PAGE_SIZE = 50;
+const MAX_PAGE_SIZE = 500;
+
 export interface ContentBlock {
   type: 'text' | 'thinking' | 'tool_use' | 'image' | 'attached_file';
   text?: string;
   thinking?: string;
+  /** Signature of a thinking block, required to send it back to the API */
+  signature?: string;
   id?: string;
   name?: string;
   input?: unknown;
   source?: {
+    /** 'base64' (inline, legacy) or 'blob' (content-addressed, see BlobStore) */
     type: string;
     media_type: string;
-    data: string;
+    data?: string;
+    hash?: string;
+    size?: number;
   };
   fileName?: string;
   filePath?: string;
@@ -55,14 +97,64 @@ interface AddMessageInput {
   contentBlocks?: ContentBlock[];
 }
 
+interface PendingPartial {
+  content: string;
+  contentBlocks?: ContentBlock[];
+}
+
+/** In-memory view of a session's streaming partial row and its journal */
+interface PartialState {
+  messageId: number;
+  snapshot: PartialSnapshot;
+  journalRows: number;
+}
+
 export class SessionStore {
+  /** Group-commit window for streaming partial-message upserts */
+  static readonly PARTIAL_FLUSH_MS = 50;
+  /** Fold the journal back into the partial row once it grows past this many records */
+  static readonly PARTIAL_COMPACT_ROWS = 200;
+
   private db: Database.Database;
   private log: Logger;
+  private statements: StatementCache;
+  private partialWrites: WriteBatcher<string, PendingPartial>;
+  private partialState = new Map<string, PartialState>();
+  private partialListener: ((event: PartialMessageEvent) => void) | null = null;
+  /** Sessions whose partial row changed in the batch being committed */
+  private changedPartials: string[] = [];
+  private insertMessageTx: (sessionId: string, role: string, content: string, contentBlocksJson: string | null) => Database.RunResult;
 
   constructor(dbPath: string) {
     this.db = new Database(dbPath);
     this.log = createLogger('SessionStore');
     this.init();
+    this.statements = new StatementCache(this.db);
+    this.partialWrites = new WriteBatcher<string, PendingPartial>(this.db, {
+      flushIntervalMs: SessionStore.PARTIAL_FLUSH_MS,
+      apply: (entries) => {
+        this.changedPartials = [];
+        for (const [sessionId, partial] of entries) {
+          if (this.writePartial(sessionId, partial)) this.changedPartials.push(sessionId);
+        }
+      },
+      onCommit: (entries) => this.emitPartialUpdates(entries),
+      onError: (err) => this.log.error('Failed to flush partial messages', { error: String(err) }),
+    });
+    // Touch the session and insert the message in one commit
+    this.insertMessageTx = this.db.transaction((sessionId: string, role: string, content: string, contentBlocksJson: string | null) => {
+      this.stmt(
+        "UPDATE sessions SET last_active_at = datetime('now') WHERE id = ?"
+      ).run(sessionId);
+      return this.stmt(
+        'INSERT INTO messages (session_id, role, content, content_blocks) VALUES (?, ?, ?, ?)'
+      ).run(sessionId, role, content, contentBlocksJson);
+    });
+    this.recoverPartialJournal();
+  }
+
+  private stmt(sql: string) {
+    return this.statements.get(sql);
   }
 
   private init(): void {
@@ -209,11 +301,77 @@ export class SessionStore {
       CREATE INDEX IF NOT EXISTS idx_im_messages_room_seq ON im_messages(room_id, seq);
     `);
 
+    // IM full-text search (FTS5 + sync triggers; backfills on first creation)
+    ensureIMSearchIndex(this.db);
+    // IM read state + unread counters (migrates im_rooms.last_read on first creation)
+    ensureIMReadState(this.db);
+
+    // Append-only streaming journal for partial assistant messages (see partial-journal.ts)
+    this.db.exec(`
+      CREATE TABLE IF NOT EXISTS partial_journal (
+        id INTEGER PRIMARY KEY AUTOINCREMENT,
+        message_id INTEGER NOT NULL,
+        field TEXT NOT NULL,
+        op TEXT NOT NULL,
+        idx INTEGER,
+        data TEXT,
+        FOREIGN KEY (message_id) REFERENCES messages(id) ON DELETE CASCADE
+      );
+      CREATE INDEX IF NOT EXISTS idx_partial_journal_message ON partial_journal(message_id, id);
+    `);
+
+    // Key/value flags for one-time data migrations
+    this.db.exec(`
+      CREATE TABLE IF NOT EXISTS store_meta (
+        key TEXT PRIMARY KEY,
+        value TEXT NOT NULL
+      );
+    `);
+
     this.db.pragma('journal_mode = WAL');
     this.db.pragma('foreign_keys = ON');
     this.log.info('Database initialized');
   }
 
+  /**
+   * One-time migration: move inline base64 images out of messages.content_blocks
+   * into the blob store, leaving { type: 'blob', hash } references behind.
+   * Runs in id-ordered batches so memory stays bounded on large databases.
+   */
+  migrateInlineImages(blobStore: BlobStore): number {
+    const done = this.db.prepare("SELECT value FROM store_meta WHERE key = 'inline_images_migrated'").get();
+    if (done) return 0;
+
+    const BATCH = 200;
+    const select = this.db.prepare(
+      `SELECT id, content_blocks as contentBlocks FROM messages
+       WHERE id > ? AND content_blocks LIKE '%"type":"base64"%' ORDER BY id ASC LIMIT ?`
+    );
+    const update = this.db.prepare('UPDATE messages SET content_blocks = ? WHERE id = ?');
+    let lastId = 0;
+    let migrated = 0;
+    for (;;) {
+      const rows = select.all(lastId, BATCH) as Array<{ id: number; contentBlocks: string }>;
+      if (rows.length === 0) break;
+      const updates: Array<{ id: number; json: string }> = [];
+      for (const row of rows) {
+        lastId = row.id;
+        let blocks: ContentBlock[];
+        try { blocks = JSON.parse(row.contentBlocks); } catch { continue; }
+        const rewritten = externalizeImageBlocks(blocks, blobStore);
+        if (rewritten) updates.push({ id: row.id, json: JSON.stringify(rewritten) });
+      }
+      this.db.transaction(() => {
+        for (const u of updates) update.run(u.json, u.id);
+      })();
+      migrated += updates.length;
+    }
+
+    this.db.prepare("INSERT OR REPLACE INTO store_meta (key, value) VALUES ('inline_images_migrated', datetime('now'))").run();
+    if (migrated > 0) this.log.info(`Migrated inline images of ${migrated} message(s) to blob store`);
+    return migrated;
+  }
+
   getDatabase(): Database.Database {
     return this.db;
   }
@@ -221,7 +379,7 @@ export class SessionStore {
   createSession(input: CreateSessionInput): Session {
     const { id, systemId, workspace, isCron } = input;
     const isCronValue = isCron ? 1 : 0;
-    this.db.prepare(
+    this.stmt(
       'INSERT OR IGNORE INTO sessions (id, system_id, workspace, is_cron) VALUES (?, ?, ?, ?)'
     ).run(id, systemId, workspace, isCronValue);
 
@@ -231,7 +389,7 @@ export class SessionStore {
   }
 
   getSession(id: string): Session | undefined {
-    const row = this.db.prepare(
+    const row = this.stmt(
       'SELECT id, system_id as systemId, workspace, label, is_cron as isCron, parent_task_id as parentTaskId, created_at as createdAt, last_active_at as lastActiveAt FROM sessions WHERE id = ?'
     ).get(id) as Session | undefined;
     return row;
@@ -243,25 +401,21 @@ export class SessionStore {
     const baseWhere = "(is_cron = 0 OR is_cron IS NULL) AND deleted_at IS NULL AND workspace NOT LIKE ?";
     const fields = 'id, system_id as systemId, workspace, label, is_cron as isCron, parent_task_id as parentTaskId, created_at as createdAt, last_active_at as lastActiveAt';
     if (systemId) {
-      return this.db.prepare(
+      return this.stmt(
         `SELECT ${fields} FROM sessions WHERE system_id = ? AND ${baseWhere} ORDER BY last_active_at DESC`
       ).all(systemId, `${groupBaseDir}/%`) as Session[];
     }
-    return this.db.prepare(
+    return this.stmt(
       `SELECT ${fields} FROM sessions WHERE ${baseWhere} ORDER BY last_active_at DESC`
     ).all(`${groupBaseDir}/%`) as Session[];
   }
 
   addMessage(sessionId: string, input: AddMessageInput): Message {
     const { role, content, contentBlocks } = input;
-    this.db.prepare(
-      "UPDATE sessions SET last_active_at = datetime('now') WHERE id = ?"
-    ).run(sessionId);
-
     const contentBlocksJson = contentBlocks ? JSON.stringify(contentBlocks) : null;
-    const result = this.db.prepare(
-      'INSERT INTO messages (session_id, role, content, content_blocks) VALUES (?, ?, ?, ?)'
-    ).run(sessionId, role, content, contentBlocksJson);
+    // Pending partial rows must land before the message that follows them
+    this.partialWrites.flush();
+    const result = this.insertMessageTx(sessionId, role, content, contentBlocksJson);
 
     return {
       id: result.lastInsertRowid as number,
@@ -275,13 +429,13 @@ export class SessionStore {
 
   /** Fix non-canonical workspace paths (e.g. \core → D:\core on Windows) */
   updateWorkspace(sessionId: string, workspace: string): void {
-    this.db.prepare(
+    this.stmt(
       'UPDATE sessions SET workspace = ?, system_id = ? WHERE id = ?'
     ).run(workspace, workspace, sessionId);
   }
 
   setParentTaskId(sessionId: string, parentTaskId: string): void {
-    this.db.prepare(
+    this.stmt(
       'UPDATE sessions SET parent_task_id = ? WHERE id = ?'
     ).run(parentTaskId, sessionId);
   }
@@ -290,56 +444,294 @@ export class SessionStore {
    * Upsert a partial assistant message for streaming progress.
    * Uses is_partial=1 flag on a regular 'assistant' message.
    * Called periodically during streaming so refresh doesn't lose in-progress content.
+   *
+   * Snapshots are coalesced per session and group-committed every PARTIAL_FLUSH_MS.
+   * Only the first flush writes the full row; later flushes append the delta to
+   * partial_journal, so a long answer costs O(n) bytes written instead of O(n²).
    */
   upsertPartialMessage(sessionId: string, content: string, contentBlocks?: unknown[]): void {
-    const contentBlocksJson = contentBlocks ? JSON.stringify(contentBlocks) : null;
-    const existing = this.db.prepare(
-      'SELECT id FROM messages WHERE session_id = ? AND is_partial = 1 ORDER BY id DESC LIMIT 1'
-    ).get(sessionId) as { id: number } | undefined;
-
-    if (existing) {
-      this.db.prepare(
-        'UPDATE messages SET content = ?, content_blocks = ? WHERE id = ?'
-      ).run(content, contentBlocksJson, existing.id);
-    } else {
-      this.db.prepare(
+    this.partialWrites.enqueue(sessionId, { content, contentBlocks: contentBlocks as ContentBlock[] | undefined });
+  }
+
+  /** Commit any buffered partial-message writes now */
+  flushPendingWrites(): void {
+    this.partialWrites.flush();
+  }
+
+  /** Receive partialUpdated / streamCompleted events (one listener; null to detach) */
+  setPartialMessageListener(listener: ((event: PartialMessageEvent) => void) | null): void {
+    this.partialListener = listener;
+  }
+
+  private emitPartial(event: PartialMessageEvent): void {
+    if (!this.partialListener) return;
+    try {
+      this.partialListener(event);
+    } catch (err) {
+      this.log.warn('Partial message listener failed', { sessionId: event.sessionId, error: String(err) });
+    }
+  }
+
+  private emitPartialUpdates(entries: Array<[string, PendingPartial]>): void {
+    const changed = this.changedPartials;
+    this.changedPartials = [];
+    if (!this.partialListener) return;
+    const pending = new Map(entries);
+    for (const sessionId of changed) {
+      const state = this.partialState.get(sessionId);
+      const partial = pending.get(sessionId);
+      if (!state || !partial) continue;
+      this.emitPartial({
+        type: 'partialUpdated',
+        sessionId,
+        message: {
+          id: state.messageId,
+          sessionId,
+          role: 'assistant',
+          content: partial.content,
+          contentBlocks: partial.contentBlocks,
+          isPartial: true,
+          createdAt: new Date().toISOString(),
+        },
+      });
+    }
+  }
+
+  /** Returns whether the partial row changed */
+  private writePartial(sessionId: string, partial: PendingPartial): boolean {
+    const state = this.partialState.get(sessionId) ?? this.loadPartialState(sessionId);
+
+    if (!state) {
+      const result = this.stmt(
         'INSERT INTO messages (session_id, role, content, content_blocks, is_partial) VALUES (?, ?, ?, ?, 1)'
-      ).run(sessionId, 'assistant', content, contentBlocksJson);
+      ).run(sessionId, 'assistant', partial.content, partial.contentBlocks ? JSON.stringify(partial.contentBlocks) : null);
+      this.partialState.set(sessionId, {
+        messageId: result.lastInsertRowid as number,
+        snapshot: snapshotOf(partial.content, partial.contentBlocks),
+        journalRows: 0,
+      });
+      return true;
+    }
+
+    const ops = diffPartial(state.snapshot, partial.content, partial.contentBlocks);
+    if (ops.length === 0) return false;
+    const insert = this.stmt('INSERT INTO partial_journal (message_id, field, op, idx, data) VALUES (?, ?, ?, ?, ?)');
+    for (const op of ops) insert.run(state.messageId, op.field, op.op, op.idx, op.data);
+    state.snapshot = snapshotOf(partial.content, partial.contentBlocks);
+    state.journalRows += ops.length;
+
+    if (state.journalRows >= SessionStore.PARTIAL_COMPACT_ROWS) {
+      this.compactPartial(state);
+    }
+    return true;
+  }
+
+  /** Rebuild the in-memory partial state from disk (first write after restart, or after eviction) */
+  private loadPartialState(sessionId: string): PartialState | undefined {
+    const row = this.stmt(
+      'SELECT id, content, content_blocks as contentBlocks FROM messages WHERE session_id = ? AND is_partial = 1 ORDER BY id DESC LIMIT 1'
+    ).get(sessionId) as { id: number; content: string; contentBlocks: string | null } | undefined;
+    if (!row) return undefined;
+
+    const ops = this.readJournal(row.id);
+    const base = snapshotOf(row.content, row.contentBlocks ? JSON.parse(row.contentBlocks) as ContentBlock[] : undefined);
+    const state: PartialState = {
+      messageId: row.id,
+      snapshot: ops.length > 0 ? replayJournal(base, ops) : base,
+      journalRows: ops.length,
+    };
+    this.partialState.set(sessionId, state);
+    return state;
+  }
+
+  private readJournal(messageId: number): JournalOp[] {
+    return this.stmt(
+      'SELECT field, op, idx, data FROM partial_journal WHERE message_id = ? ORDER BY id ASC'
+    ).all(messageId) as JournalOp[];
+  }
+
+  /** Fold the journal into the partial row and drop the journal records */
+  private compactPartial(state: PartialState): void {
+    const { content, blocks } = state.snapshot;
+    this.stmt(
+      'UPDATE messages SET content = ?, content_blocks = ? WHERE id = ?'
+    ).run(content, blocks.length > 0 ? JSON.stringify(blocks) : null, state.messageId);
+    this.stmt('DELETE FROM partial_journal WHERE message_id = ?').run(state.messageId);
+    state.journalRows = 0;
+  }
+
+  /**
+   * Crash recovery: partial rows left over from a previous run still have
+   * journal records. Compact them so the rows hold the full streamed content.
+   */
+  private recoverPartialJournal(): void {
+    const rows = this.stmt(
+      `SELECT DISTINCT j.message_id as messageId, m.session_id as sessionId
+       FROM partial_journal j LEFT JOIN messages m ON m.id = j.message_id`
+    ).all() as Array<{ messageId: number; sessionId: string | null }>;
+    if (rows.length === 0) return;
+
+    this.db.transaction(() => {
+      for (const row of rows) {
+        if (!row.sessionId) {
+          this.stmt('DELETE FROM partial_journal WHERE message_id = ?').run(row.messageId);
+          continue;
+        }
+        const state = this.loadPartialState(row.sessionId);
+        if (state && state.messageId === row.messageId) {
+          this.compactPartial(state);
+        } else {
+          this.stmt('DELETE FROM partial_journal WHERE message_id = ?').run(row.messageId);
+        }
+      }
+    })();
+    this.partialState.clear();
+    this.log.info(`Recovered streaming journal for ${rows.length} partial message(s)`);
+  }
+
+  /** Overlay journal records onto partial rows returned by a read */
+  private withJournal(messages: Message[]): Message[] {
+    for (const msg of messages) {
+      if (!msg.isPartial) continue;
+      let ops = this.readJournal(msg.id);
+      if (ops.length === 0) continue;
+      // Deferred blocks weren't loaded, so only the text can be replayed here
+      if (msg.blocksDeferred) ops = ops.filter(op => op.field === 'content');
+      const replayed = replayJournal(snapshotOf(msg.content, msg.contentBlocks), ops);
+      msg.content = replayed.content;
+      if (!msg.blocksDeferred) msg.contentBlocks = replayed.blocks.length > 0 ? replayed.blocks : undefined;
     }
+    return messages;
   }
 
   /**
    * Remove all partial messages for a session (called when stream completes).
    */
   clearPartialMessages(sessionId: string): void {
-    this.db.prepare(
-      'DELETE FROM messages WHERE session_id = ? AND is_partial = 1'
-    ).run(sessionId);
+    // Drop the buffered write so a late flush can't resurrect the partial row
+    this.partialWrites.discard(sessionId);
+    this.partialState.delete(sessionId);
+    this.db.transaction(() => {
+      this.stmt(
+        'DELETE FROM partial_journal WHERE message_id IN (SELECT id FROM messages WHERE session_id = ? AND is_partial = 1)'
+      ).run(sessionId);
+      this.stmt(
+        'DELETE FROM messages WHERE session_id = ? AND is_partial = 1'
+      ).run(sessionId);
+    })();
+    this.emitPartial({ type: 'streamCompleted', sessionId, message: null });
+  }
+
+  /**
+   * Replace the streaming partial with the final assistant message.
+   * The final message is inserted as a new row so it sorts after anything added
+   * while streaming (tool results, system notices); the partial row and its
+   * journal are dropped. Without a partial row this is a plain addMessage.
+   */
+  finalizePartialMessage(sessionId: string, input: AddMessageInput): Message {
+    this.partialWrites.discard(sessionId);
+    const state = this.partialState.get(sessionId) ?? this.loadPartialState(sessionId);
+    this.partialState.delete(sessionId);
+    if (!state) {
+      const message = this.addMessage(sessionId, input);
+      this.emitPartial({ type: 'streamCompleted', sessionId, message });
+      return message;
+    }
+
+    const { role, content, contentBlocks } = input;
+    const result = this.db.transaction(() => {
+      // The current partial row plus stale ones from earlier turns, if any
+      this.stmt(
+        'DELETE FROM partial_journal WHERE message_id IN (SELECT id FROM messages WHERE session_id = ? AND is_partial = 1)'
+      ).run(sessionId);
+      this.stmt(
+        'DELETE FROM messages WHERE session_id = ? AND is_partial = 1'
+      ).run(sessionId);
+      return this.insertMessageTx(sessionId, role, content, contentBlocks ? JSON.stringify(contentBlocks) : null);
+    })();
+
+    const message: Message = {
+      id: result.lastInsertRowid as number,
+      sessionId,
+      role,
+      content,
+      contentBlocks,
+      createdAt: new Date().toISOString(),
+    };
+    this.emitPartial({ type: 'streamCompleted', sessionId, message });
+    return message;
   }
 
   getMessages(sessionId: string, limit = 1000): Message[] {
-    const rows = this.db.prepare(
+    this.partialWrites.flush();
+    const rows = this.stmt(
       'SELECT id, session_id as sessionId, role, content, content_blocks as contentBlocks, is_partial as isPartial, created_at as createdAt FROM messages WHERE session_id = ? ORDER BY id ASC LIMIT ?'
     ).all(sessionId, limit) as Array<Omit<Message, 'contentBlocks' | 'isPartial'> & { contentBlocks: string | null; isPartial: number }>;
-    return rows.map(row => ({
+    return this.withJournal(rows.map(row => ({
       ...row,
       isPartial: row.isPartial === 1 || undefined,
       contentBlocks: row.contentBlocks ? JSON.parse(row.contentBlocks) as ContentBlock[] : undefined,
-    }));
+    })));
+  }
+
+  /**
+   * Keyset-paginated history: returns the newest `limit` messages with id < beforeId.
+   * Large content_blocks payloads (e.g. base64 images) are not read or parsed here;
+   * such messages come back with blocksDeferred=true and are loaded via getMessageBlocks.
+   */
+  getMessagesPage(sessionId: string, options: GetMessagesPageOptions = {}): MessagePage {
+    this.partialWrites.flush();
+    const limit = Math.min(Math.max(1, options.limit ?? DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE);
+    const beforeId = options.beforeId ?? Number.MAX_SAFE_INTEGER;
+    // Fetch one extra row to detect whether an older page exists
+    const rows = this.stmt(
+      `SELECT id, session_id as sessionId, role, content,
+        CASE WHEN length(content_blocks) > ? THEN NULL ELSE content_blocks END as contentBlocks,
+        length(content_blocks) > ? as blocksDeferred,
+        is_partial as isPartial, created_at as createdAt
+      FROM messages WHERE session_id = ? AND id < ? ORDER BY id DESC LIMIT ?`
+    ).all(LAZY_BLOCKS_THRESHOLD, LAZY_BLOCKS_THRESHOLD, sessionId, beforeId, limit + 1) as Array<Omit<Message, 'contentBlocks' | 'isPartial' | 'blocksDeferred'> & { contentBlocks: string | null; isPartial: number; blocksDeferred: number | null }>;
+
+    const hasMore = rows.length > limit;
+    const page = hasMore ? rows.slice(0, limit) : rows;
+    page.reverse();
+    return {
+      hasMore,
+      messages: this.withJournal(page.map(row => ({
+        ...row,
+        isPartial: row.isPartial === 1 || undefined,
+        blocksDeferred: row.blocksDeferred === 1 || undefined,
+        contentBlocks: row.contentBlocks ? JSON.parse(row.contentBlocks) as ContentBlock[] : undefined,
+      }))),
+    };
+  }
+
+  /** Load the full content blocks of a single message (used for deferred blocks). */
+  getMessageBlocks(sessionId: string, messageId: number): ContentBlock[] | undefined {
+    this.partialWrites.flush();
+    const row = this.stmt(
+      'SELECT content, content_blocks as contentBlocks, is_partial as isPartial FROM messages WHERE id = ? AND session_id = ?'
+    ).get(messageId, sessionId) as { content: string; contentBlocks: string | null; isPartial: number } | undefined;
+    if (!row) return undefined;
+    const blocks = row.contentBlocks ? JSON.parse(row.contentBlocks) as ContentBlock[] : undefined;
+    if (row.isPartial !== 1) return blocks;
+    const replayed = replayJournal(snapshotOf(row.content, blocks), this.readJournal(messageId));
+    return replayed.blocks.length > 0 ? replayed.blocks : undefined;
   }
 
   /**
    * Get messages with id > afterId for incremental extraction.
    */
   getMessagesAfterId(sessionId: string, afterId: number, limit = 2000): Message[] {
-    const rows = this.db.prepare(
+    this.partialWrites.flush();
+    const rows = this.stmt(
       'SELECT id, session_id as sessionId, role, content, content_blocks as contentBlocks, is_partial as isPartial, created_at as createdAt FROM messages WHERE session_id = ? AND id > ? ORDER BY id ASC LIMIT ?'
     ).all(sessionId, afterId, limit) as Array<Omit<Message, 'contentBlocks' | 'isPartial'> & { contentBlocks: string | null; isPartial: number }>;
-    return rows.map(row => ({
+    return this.withJournal(rows.map(row => ({
       ...row,
       isPartial: row.isPartial === 1 || undefined,
       contentBlocks: row.contentBlocks ? JSON.parse(row.contentBlocks) as ContentBlock[] : undefined,
-    }));
+    })));
   }
 
   /**
@@ -350,42 +742,42 @@ export class SessionStore {
     const sql = includeDeleted
       ? 'SELECT id, system_id as systemId, workspace, label, is_cron as isCron, deleted_at as deletedAt, created_at as createdAt, last_active_at as lastActiveAt FROM sessions WHERE workspace = ? AND (is_cron = 0 OR is_cron IS NULL) ORDER BY last_active_at DESC'
       : 'SELECT id, system_id as systemId, workspace, label, is_cron as isCron, created_at as createdAt, last_active_at as lastActiveAt FROM sessions WHERE workspace = ? AND deleted_at IS NULL AND (is_cron = 0 OR is_cron IS NULL) ORDER BY last_active_at DESC';
-    return this.db.prepare(sql).all(workspace) as Session[];
+    return this.stmt(sql).all(workspace) as Session[];
   }
 
   /** Get a single session's workspace path. */
   getSessionWorkspace(sessionId: string): string | undefined {
-    const row = this.db.prepare('SELECT workspace FROM sessions WHERE id = ?').get(sessionId) as { workspace: string } | undefined;
+    const row = this.stmt('SELECT workspace FROM sessions WHERE id = ?').get(sessionId) as { workspace: string } | undefined;
     return row?.workspace;
   }
 
   deleteSession(id: string): void {
-    this.db.prepare("UPDATE sessions SET deleted_at = datetime('now') WHERE id = ?").run(id);
+    this.stmt("UPDATE sessions SET deleted_at = datetime('now') WHERE id = ?").run(id);
   }
 
   restoreSession(id: string): void {
-    this.db.prepare('UPDATE sessions SET deleted_at = NULL WHERE id = ?').run(id);
+    this.stmt('UPDATE sessions SET deleted_at = NULL WHERE id = ?').run(id);
   }
 
   updateLabel(id: string, label: string): void {
-    this.db.prepare('UPDATE sessions SET label = ? WHERE id = ?').run(label, id);
+    this.stmt('UPDATE sessions SET label = ? WHERE id = ?').run(label, id);
   }
 
   updateSdkSessionId(id: string, sdkSessionId: string): void {
-    this.db.prepare('UPDATE sessions SET sdk_session_id = ? WHERE id = ?').run(sdkSessionId, id);
+    this.stmt('UPDATE sessions SET sdk_session_id = ? WHERE id = ?').run(sdkSessionId, id);
   }
 
   getSdkSessionId(id: string): string | undefined {
-    const row = this.db.prepare('SELECT sdk_session_id FROM sessions WHERE id = ?').get(id) as { sdk_session_id: string } | undefined;
+    const row = this.stmt('SELECT sdk_session_id FROM sessions WHERE id = ?').get(id) as { sdk_session_id: string } | undefined;
     return row?.sdk_session_id;
   }
 
   clearSdkSessionId(id: string): void {
-    this.db.prepare('UPDATE sessions SET sdk_session_id = NULL WHERE id = ?').run(id);
+    this.stmt('UPDATE sessions SET sdk_session_id = NULL WHERE id = ?').run(id);
   }
 
   getActiveSessionCount(): number {
-    const row = this.db.prepare(
+    const row = this.stmt(
       "SELECT COUNT(*) as c FROM sessions WHERE last_active_at > datetime('now', '-1 hour') AND deleted_at IS NULL"
     ).get() as { c: number };
     return row.c;
@@ -393,7 +785,7 @@ export class SessionStore {
 
   /** Get distinct active workspaces (excluding deleted, cron, and iterate/collect-bot sessions) */
   getActiveWorkspaces(): string[] {
-    const rows = this.db.prepare(
+    const rows = this.stmt(
       'SELECT DISTINCT workspace FROM sessions WHERE deleted_at IS NULL AND (is_cron = 0 OR is_cron IS NULL) ORDER BY workspace'
     ).all() as Array<{ workspace: string }>;
     const iterateDir = path.join(os.homedir(), '.sman', 'iterate');
@@ -401,15 +793,32 @@ export class SessionStore {
   }
 
   updateTokenUsage(id: string, inputTokens: number, outputTokens: number): void {
-    this.db.prepare('UPDATE sessions SET input_tokens = ?, output_tokens = ? WHERE id = ?').run(inputTokens, outputTokens, id);
+    this.stmt('UPDATE sessions SET input_tokens = ?, output_tokens = ? WHERE id = ?').run(inputTokens, outputTokens, id);
   }
 
   getTokenUsage(id: string): { inputTokens: number; outputTokens: number } | undefined {
-    const row = this.db.prepare('SELECT input_tokens as inputTokens, output_tokens as outputTokens FROM sessions WHERE id = ?').get(id) as { inputTokens: number; outputTokens: number } | undefined;
+    const row = this.stmt('SELECT input_tokens as inputTokens, output_tokens as outputTokens FROM sessions WHERE id = ?').get(id) as { inputTokens: number; outputTokens: number } | undefined;
     return row;
   }
 
   close(): void {
+    this.partialWrites.flush();
+    this.statements.clear();
     this.db.close();
   }
 }
+
+/**
+ * Replace inline base64 image blocks with blob references.
+ * Returns the rewritten array, or null if nothing changed.
+ */
+export function externalizeImageBlocks(blocks: ContentBlock[], blobStore: BlobStore): ContentBlock[] | null {
+  let changed = false;
+  const result = blocks.map(block => {
+    if (block.type !== 'image' || block.source?.type !== 'base64' || !block.source.data) return block;
+    const ref = blobStore.putBase64(block.source.data, block.source.media_type);
+    changed = true;
+    return { ...block, source: { type: 'blob', media_type: ref.mimeType, hash: ref.hash, size: ref.size } };
+  });
+  return changed ? result : null;
+}
@@ -3,16 +3,20 @@
  *
  * 执行流程：
  * 1. 主编分析：在一个 session 里理解整个 path 的目标、每步的作用，产出执行方案
- * 2. 逐步执行：每步用独立 ephemeral session（子 agent），包含全局目标 + 修正指令 + 前序关键信息
+ * 2. 按依赖图执行：每步用独立 ephemeral session（子 agent），包含全局目标 + 修正指令 + 依赖步骤的关键信息；
+ *    互不依赖的步骤在 max_parallel 上限内并发
  * 3. 经验沉淀：把主编分析 + 执行结果 + 修正记录写入 run.md
  */
 import fs from 'fs';
 import path from 'path';
+import crypto from 'crypto';
 import { createLogger, type Logger } from './utils/logger.js';
 import type { SmartPathStore } from './smart-path-store.js';
 import type { ClaudeSessionManager } from './claude-session.js';
-import type { SmartPathStep, StepPlan, PathBlueprint } from './types.js';
+import type { SmartPathStep, StepPlan, PathBlueprint, CachedStepResult } from './types.js';
 import { emitAchievementEvent } from './achievement-events.js';
+import { Semaphore } from './semaphore.js';
+import { readGitHead, readWorktreeState } from './git-handler.js';
 
 function readSkillContent(workspace: string, skillId: string): string | null {
   const skillMdPath = path.join(workspace, '.claude', 'skills', skillId, 'SKILL.md');
@@ -45,6 +49,85 @@ export interface StepExecutionResult {
   retried?: boolean;
 }
 
+/** Steps of one run executing at once unless path.md sets max_parallel */
+const DEFAULT_MAX_PARALLEL_STEPS = 3;
+
+export interface StepGraph {
+  /** Topological order (ties by step index) */
+  order: number[];
+  /** Direct dependencies of each step */
+  deps: number[][];
+  /** Steps that need each step's key outputs */
+  dependents: number[][];
+  /** Transitive dependencies of each step, ascending */
+  ancestors: number[][];
+}
+
+/** Resolve `dependsOn` into a DAG; throws on unknown references and cycles */
+export function buildStepGraph(steps: SmartPathStep[]): StepGraph {
+  const byName = new Map<string, number>();
+  steps.forEach((s, i) => { if (s.name && !byName.has(s.name)) byName.set(s.name, i); });
+
+  const deps = steps.map((s, i) => {
+    if (s.dependsOn === undefined || s.dependsOn === null) return i > 0 ? [i - 1] : [];
+    // YAML lets a single dependency be written as a scalar
+    const refs = Array.isArray(s.dependsOn) ? s.dependsOn : [s.dependsOn];
+    const out = new Set<number>();
+    for (const ref of refs) {
+      const d = typeof ref === 'number' ? ref : byName.get(String(ref));
+      if (d === undefined || !Number.isInteger(d) || d < 0 || d >= steps.length || d === i) {
+        throw new Error(`Invalid dependsOn in step ${i + 1}: ${String(ref)}`);
+      }
+      out.add(d);
+    }
+    return [...out].sort((a, b) => a - b);
+  });
+
+  const dependents = steps.map(() => [] as number[]);
+  deps.forEach((ds, i) => { for (const d of ds) dependents[d].push(i); });
+
+  const pending = deps.map(ds => ds.length);
+  const ready = pending.flatMap((n, i) => (n === 0 ? [i] : []));
+  const order: number[] = [];
+  while (ready.length > 0) {
+    const i = ready.shift()!;
+    order.push(i);
+    for (const j of dependents[i]) if (--pending[j] === 0) ready.push(j);
+  }
+  if (order.length < steps.length) {
+    const cyclic = pending.flatMap((n, i) => (n > 0 ? [i + 1] : []));
+    throw new Error(`Step dependencies form a cycle: steps ${cyclic.join(', ')}`);
+  }
+
+  const ancestors: number[][] = new Array(steps.length);
+  for (const i of order) {
+    const set = new Set<number>();
+    for (const d of deps[i]) {
+      set.add(d);
+      for (const a of ancestors[d]) set.add(a);
+    }
+    ancestors[i] = [...set].sort((a, b) => a - b);
+  }
+  return { order, deps, dependents, ancestors };
+}
+
+/** Bump when the prompt layout changes so stale step caches stop matching */
+const STEP_CACHE_VERSION = 3;
+
+/**
+ * Step cache key: the rendered prompt already carries args, guide, skills,
+ * delivery check, the dependencies' key outputs and — with useRefs — the
+ * references actually injected; git HEAD plus the uncommitted changes cover
+ * what the step reads from disk. .sman/ is left out of both: steps write their
+ * [REFERENCE:] scripts there, so every run would invalidate the next one.
+ */
+function stepCacheKey(kind: 'plan' | 'step', prompt: string, head: string, worktree: string): string {
+  return crypto.createHash('sha256')
+    .update(JSON.stringify([STEP_CACHE_VERSION, kind, prompt, head, worktree]))
+    .digest('hex')
+    .slice(0, 32);
+}
+
 function isoNow(): string {
   return new Date().toISOString();
 }
@@ -113,6 +196,10 @@ function buildOrchestratorPrompt(
     parts.push(`步骤 ${i + 1}: ${s.name || '(未命名)'}`);
     parts.push(`  用户输入: ${s.userInput}`);
     if (s.deliveryCheck) parts.push(`  交付检查: ${s.deliveryCheck}`);
+    if (Array.isArray(s.dependsOn)) {
+      const refs = s.dependsOn.map(r => (typeof r === 'number' ? `步骤 ${r + 1}` : r));
+      parts.push(`  依赖: ${refs.length > 0 ? refs.join(', ') : '无（可与其他步骤并行）'}`);
+    }
   });
 
   parts.push('');
@@ -182,7 +269,7 @@ function buildStepPrompt(
     parts.push(buildTmpRules(workspace, pathId, stepIndex));
   }
 
-  if (stepIndex === 0 && args) {
+  if (args) {
     parts.push(`\n用户参数为:{${args}}，请根据任务需要使用。`);
   }
 
@@ -282,6 +369,7 @@ export class SmartPathEngine {
     onProgress?: (data: { stepIndex: number; totalSteps: number; status: string }) => void,
     args?: string,
     useRefs?: boolean,
+    reuseCache?: boolean,
   ): Promise<void> {
     const result = await this.runWithResults(
       pathId, workspace, args,
@@ -290,6 +378,7 @@ export class SmartPathEngine {
         if (stepIndex === -1) onProgress?.({ stepIndex: -1, totalSteps: 0, status: 'analyzing' });
       },
       useRefs,
+      reuseCache,
     );
     // 路径页面需要逐步回调
     let steps: SmartPathStep[];
@@ -585,13 +674,17 @@ export class SmartPathEngine {
     return this.store.saveGuideFile(workspace, pathId, stepIndex, guideContent);
   }
 
-  /** 核心执行：主编分析 + 每步独立 session（task），返回结果 */
+  /**
+   * 核心执行：主编分析 + 每步独立 session（task），返回结果。
+   * reuseCache（默认取 path.md 的 reuse_cached_steps）：输入未变化的步骤直接复用上次成功运行的结果
+   */
   async runWithResults(
     pathId: string,
     workspace: string,
     args: string | undefined,
     onStepProgress: (stepIndex: number, delta: string) => void,
     useRefs?: boolean,
+    reuseCache?: boolean,
   ): Promise<{ stepResults: string[]; blueprint: PathBlueprint }> {
     const smartPath = this.store.get(pathId, workspace);
     if (!smartPath) throw new Error(`Path not found: ${pathId}`);
@@ -599,7 +692,12 @@ export class SmartPathEngine {
     let steps: SmartPathStep[];
     try { steps = JSON.parse(smartPath.steps); } catch { throw new Error('Invalid steps JSON'); }
     if (!Array.isArray(steps) || steps.length === 0) throw new Error('Path has no steps');
+    const graph = buildStepGraph(steps);
+    const maxParallel = Math.max(1, Math.floor(smartPath.maxParallel || DEFAULT_MAX_PARALLEL_STEPS));
+    const reuse = reuseCache ?? smartPath.reuseCachedSteps === true;
 
+    // Step sessions are fresh ephemeral sessions — let the warm pool start a CLI process during planning
+    this.sessionManager.prewarmWorkspace(workspace);
     const run = this.store.createRun(pathId, workspace, 'full', steps.length, args);
     this.store.update(pathId, workspace, { status: 'running' });
     this.store.insertRunLog({ id: run.id, pathId, pathName: smartPath.name, workspace, mode: 'full', stepCount: steps.length, args });
@@ -611,96 +709,100 @@ export class SmartPathEngine {
     const referencesContext = useRefs ? this.buildReferencesContext(workspace, smartPath.id) : '';
 
     try {
-      // 主编分析
+      // 缓存键的磁盘部分在任何步骤执行之前取定（referencesContext 同样只在开头读取一次）
+      const [head, worktree] = await Promise.all([
+        readGitHead(workspace).then(h => h ?? ''),
+        readWorktreeState(workspace, ['.sman']).then(w => w ?? ''),
+      ]);
+      const cacheEntries: Record<string, unknown> = {};
+      let cacheHits = 0;
+
+      // 主编分析（方案由 LLM 生成，复用时必须一并复用，否则后续步骤的 prompt 永远不会命中）
       let blueprint: PathBlueprint;
-      try {
-        blueprint = await this.orchestrate(smartPath, steps, referencesContext, workspace, args, abortController, sessionIds, onStepProgress);
-      } catch (err) {
-        this.log.warn(`Orchestration failed, using default blueprint: ${err}`);
-        blueprint = buildDefaultBlueprint(steps);
+      const planKey = stepCacheKey(
+        'plan', buildOrchestratorPrompt(smartPath.name, smartPath.description || '', steps, referencesContext, args),
+        head, worktree,
+      );
+      const cachedPlan = reuse ? this.store.getStepCache<PathBlueprint>(workspace, pathId, planKey) : null;
+      if (cachedPlan) {
+        blueprint = cachedPlan;
+        cacheEntries[planKey] = cachedPlan;
+        onStepProgress(-1, '[输入未变化，复用上次运行的执行方案]\n');
+      } else {
+        try {
+          blueprint = await this.orchestrate(smartPath, steps, referencesContext, workspace, args, abortController, sessionIds, onStepProgress);
+          cacheEntries[planKey] = blueprint;
+        } catch (err) {
+          this.log.warn(`Orchestration failed, using default blueprint: ${err}`);
+          blueprint = buildDefaultBlueprint(steps);
+        }
       }
 
-      // 逐步执行（每步独立 session）
-      const stepResults: string[] = [];
-      const keyOutputs: string[] = [];
-
-      for (let i = 0; i < steps.length; i++) {
-        if (abortController.signal.aborted) throw new Error('用户中止执行');
-
-        const plan = blueprint.stepPlans[i] || blueprint.stepPlans[0];
-        const stepDeliveryCheck = steps[i]?.deliveryCheck;
-        const stepSkills = steps[i]?.skills;
-        const guideContent = this.store.getGuide(workspace, pathId, i) || undefined;
-        const prompt = buildStepPrompt(
-          plan, blueprint.goal, i, steps.length,
-          keyOutputs, referencesContext,
-          i === 0 ? args : undefined,
-          stepDeliveryCheck,
-          workspace, pathId, stepSkills, guideContent,
-        );
-
-        const sessionId = `smartpath-ephemeral-${run.id}-step-${i}`;
-        this.sessionManager.createEphemeralSessionWithId(workspace, sessionId);
-        sessionIds.push(sessionId);
-
-        let stepFullContent = '';
-        try {
-          const stepReturned = await this.sessionManager.sendMessageForStep(
-            sessionId, prompt, abortController,
-            (delta) => {
-              stepFullContent += delta;
-              onStepProgress(i, delta);
-            },
-            STEP_SYSTEM_PROMPT,
-          );
-
-          let stepResult = (stepReturned || stepFullContent).trim();
-
-          // 交付检查（自动执行模式）
-          if (stepDeliveryCheck) {
-            const checkResult = await this.runDeliveryCheck(
-              stepResult, stepDeliveryCheck, workspace, pathId, run.id, i,
-              abortController, onStepProgress,
+      // 按依赖图执行（每步独立 session）：依赖完成即可开始，并发数受 maxParallel 限制
+      const stepResults: string[] = new Array(steps.length).fill('');
+      // 只为有后续依赖方的步骤提炼关键信息
+      const keyOutputs = new Map<number, string>();
+      const limiter = new Semaphore(maxParallel);
+      const tasks: Promise<void>[] = new Array(steps.length);
+      const failures: unknown[] = [];
+
+      for (const i of graph.order) {
+        tasks[i] = Promise.all(graph.deps[i].map(d => tasks[d])).then(async () => {
+          await limiter.acquire();
+          try {
+            if (abortController.signal.aborted) throw new Error('用户中止执行');
+            const plan = blueprint.stepPlans[i] || blueprint.stepPlans[0];
+            const priorKeyOutputs = graph.ancestors[i].map(a => `[步骤 ${a + 1}] ${keyOutputs.get(a) ?? ''}`);
+            const prompt = buildStepPrompt(
+              plan, blueprint.goal, i, steps.length,
+              priorKeyOutputs, referencesContext,
+              // Steps downstream of step 0 see the args through its key output; the others need them directly
+              graph.ancestors[i].includes(0) ? undefined : args,
+              steps[i].deliveryCheck,
+              workspace, pathId, steps[i].skills,
+              this.store.getGuide(workspace, pathId, i) || undefined,
             );
-
-            if (!checkResult.passed) {
-              // 自动重试一次
-              onStepProgress(i, '\n\n[交付检查未通过，自动重试...]\n');
-              const retrySessionId = `smartpath-ephemeral-${run.id}-step-${i}-retry`;
-              this.sessionManager.createEphemeralSessionWithId(workspace, retrySessionId);
-              let retryContent = '';
-              try {
-                const retryPrompt = `${prompt}\n\n[重要提示：上次执行未通过交付检查]\n检查标准：${stepDeliveryCheck}\n未通过原因：${checkResult.reason}\n请根据以上反馈重新执行，确保满足交付检查要求。`;
-                const retryReturned = await this.sessionManager.sendMessageForStep(
-                  retrySessionId, retryPrompt, abortController,
-                  (delta) => { retryContent += delta; onStepProgress(i, delta); },
-                  STEP_SYSTEM_PROMPT,
-                );
-                stepResult = (retryReturned || retryContent).trim();
-              } finally {
-                this.sessionManager.closeV2Session(retrySessionId);
-                this.sessionManager.removeEphemeralSession(retrySessionId);
-              }
+            const key = stepCacheKey('step', prompt, head, worktree);
+            const cached = reuse ? this.store.getStepCache<CachedStepResult>(workspace, pathId, key) : null;
+
+            if (cached) {
+              cacheHits++;
+              stepResults[i] = cached.result;
+              onStepProgress(i, `[输入未变化，复用上次运行的结果]\n\n${cached.result}`);
+            } else {
+              stepResults[i] = await this.executeStep(
+                pathId, workspace, run.id, i, prompt, steps[i].deliveryCheck,
+                abortController, sessionIds, onStepProgress,
+              );
             }
+            if (graph.dependents[i].length > 0) {
+              keyOutputs.set(i, cached?.keyOutputs ?? await this.extractKeyOutputs(
+                stepResults[i], plan.expectedOutputs, workspace, abortController, sessionIds, i,
+              ));
+            }
+            const entry: CachedStepResult = {
+              key, stepIndex: i, result: stepResults[i], keyOutputs: keyOutputs.get(i),
+              runId: cached?.runId ?? run.id, createdAt: cached?.createdAt ?? isoNow(),
+            };
+            cacheEntries[key] = entry;
+          } finally {
+            limiter.release();
           }
+        }).catch((err) => {
+          // 一步失败即中止同一 run 中仍在执行的步骤
+          if (failures.push(err) === 1) abortController.abort();
+          throw err;
+        });
+      }
+      await Promise.allSettled(tasks);
+      if (failures.length > 0) throw failures[0];
 
-          stepResults.push(stepResult);
-
-          const refs = extractReferences(stepResult);
-          for (const ref of refs) {
-            this.store.saveReference(workspace, pathId, ref.fileName, ref.content);
-          }
-
-          if (i < steps.length - 1) {
-            const summary = await this.extractKeyOutputs(
-              stepResult, plan.expectedOutputs, workspace, abortController, sessionIds,
-            );
-            keyOutputs.push(summary);
-          }
-        } finally {
-          this.sessionManager.closeV2Session(sessionId);
-          this.sessionManager.removeEphemeralSession(sessionId);
-        }
+      // 只缓存成功运行的结果；命中的条目一并重写以免被清理
+      if (cacheHits > 0) this.log.info(`Path ${pathId}: reused ${cacheHits}/${steps.length} cached step result(s)`);
+      try {
+        this.store.saveStepCache(workspace, pathId, cacheEntries);
+      } catch (err) {
+        this.log.warn(`Failed to save step cache for path ${pathId}: ${err}`);
       }
 
       // 完成报告 + 经验沉淀
@@ -736,6 +838,75 @@ export class SmartPathEngine {
     }
   }
 
+  /** 执行单个步骤（含交付检查与一次自动重试），保存 references，返回结果 */
+  private async executeStep(
+    pathId: string,
+    workspace: string,
+    runId: string,
+    stepIndex: number,
+    prompt: string,
+    deliveryCheck: string | undefined,
+    abortController: AbortController,
+    sessionIds: string[],
+    onStepProgress: (stepIndex: number, delta: string) => void,
+  ): Promise<string> {
+    const sessionId = `smartpath-ephemeral-${runId}-step-${stepIndex}`;
+    this.sessionManager.createEphemeralSessionWithId(workspace, sessionId);
+    sessionIds.push(sessionId);
+
+    let stepFullContent = '';
+    try {
+      const stepReturned = await this.sessionManager.sendMessageForStep(
+        sessionId, prompt, abortController,
+        (delta) => {
+          stepFullContent += delta;
+          onStepProgress(stepIndex, delta);
+        },
+        STEP_SYSTEM_PROMPT,
+      );
+
+      let stepResult = (stepReturned || stepFullContent).trim();
+
+      // 交付检查（自动执行模式）
+      if (deliveryCheck) {
+        const checkResult = await this.runDeliveryCheck(
+          stepResult, deliveryCheck, workspace, pathId, runId, stepIndex,
+          abortController, onStepProgress,
+        );
+
+        if (!checkResult.passed) {
+          // 自动重试一次
+          onStepProgress(stepIndex, '\n\n[交付检查未通过，自动重试...]\n');
+          const retrySessionId = `smartpath-ephemeral-${runId}-step-${stepIndex}-retry`;
+          this.sessionManager.createEphemeralSessionWithId(workspace, retrySessionId);
+          sessionIds.push(retrySessionId);
+          let retryContent = '';
+          try {
+            const retryPrompt = `${prompt}\n\n[重要提示：上次执行未通过交付检查]\n检查标准：${deliveryCheck}\n未通过原因：${checkResult.reason}\n请根据以上反馈重新执行，确保满足交付检查要求。`;
+            const retryReturned = await this.sessionManager.sendMessageForStep(
+              retrySessionId, retryPrompt, abortController,
+              (delta) => { retryContent += delta; onStepProgress(stepIndex, delta); },
+              STEP_SYSTEM_PROMPT,
+            );
+            stepResult = (retryReturned || retryContent).trim();
+          } finally {
+            this.sessionManager.closeV2Session(retrySessionId);
+            this.sessionManager.removeEphemeralSession(retrySessionId);
+          }
+        }
+      }
+
+      const refs = extractReferences(stepResult);
+      for (const ref of refs) {
+        this.store.saveReference(workspace, pathId, ref.fileName, ref.content);
+      }
+      return stepResult;
+    } finally {
+      this.sessionManager.closeV2Session(sessionId);
+      this.sessionManager.removeEphemeralSession(sessionId);
+    }
+  }
+
   /** 主编分析：理解整个 path，产出 PathBlueprint */
   private async orchestrate(
     smartPath: { name: string; description?: string },
@@ -826,10 +997,12 @@ export class SmartPathEngine {
     workspace: string,
     abortController: AbortController,
     sessionIds: string[],
+    stepIndex: number,
   ): Promise<string> {
     if (stepResult.length < 500) return stepResult;
 
-    const sessionId = `smartpath-summary-${Date.now()}`;
+    // Steps finishing in parallel may summarize in the same millisecond
+    const sessionId = `smartpath-summary-${stepIndex}-${Date.now()}`;
     this.sessionManager.createEphemeralSessionWithId(workspace, sessionId);
     sessionIds.push(sessionId);
 
@@ -3,6 +3,9 @@
  *
  * 所有方法都通过 workspace 参数定位文件，不依赖 basePath 遍历。
  * 新存储结构：{workspace}/.sman/paths/{pathId}/path.md + runs/ + reports/ + references/
+ *
+ * path.md 仍是唯一数据源；smartpath_index 表缓存解析结果，list/get 直接查表。
+ * 本进程的写入同步更新索引；外部修改按文件 mtime 惰性对账（见 reconcile）。
  */
 import fs from 'fs';
 import path from 'path';
@@ -13,6 +16,8 @@ import type { Database } from 'better-sqlite3';
 // @ts-expect-error - better-sqlite3 ESM interop
 const DatabaseConstructor = betterSqlite3 as unknown as typeof betterSqlite3.default;
 import { createLogger, type Logger } from './utils/logger.js';
+import { StatementCache } from './utils/sqlite.js';
+import { getWorkerPool } from './worker-pool.js';
 import type { SmartPath, SmartPathStep, SmartPathRun, SmartPathReference } from './types.js';
 
 /** 生成 8 位随机 ID（大小写字母+数字） */
@@ -24,14 +29,39 @@ function generateId(): string {
   return id;
 }
 
+/** 索引行的 workspace 键 */
+function wsKey(ws: string): string {
+  return path.resolve(ws);
+}
+
+interface IndexRow {
+  workspace: string;
+  id: string;
+  filePath: string;
+  fileMtime: number;
+  data: string;
+}
+
 export class SmartPathStore {
+  /** 对账后这段时间内直接信任索引，不再 stat 文件 */
+  private static readonly INDEX_TRUST_MS = 10_000;
+
   private db: Database;
+  private statements: StatementCache;
   private log: Logger;
+  /** wsKey → 上次对账时间 */
+  private reconciledAt = new Map<string, number>();
 
   constructor(dbPath: string) {
     this.db = new DatabaseConstructor(dbPath);
+    this.statements = new StatementCache(this.db);
     this.log = createLogger('SmartPathStore');
     this.initRunLogTable();
+    this.initIndexTable();
+  }
+
+  private stmt(sql: string) {
+    return this.statements.get(sql);
   }
 
   private initRunLogTable(): void {
@@ -52,11 +82,30 @@ export class SmartPathStore {
     `);
   }
 
+  private initIndexTable(): void {
+    this.db.exec(`
+      CREATE TABLE IF NOT EXISTS smartpath_index (
+        workspace TEXT NOT NULL,
+        id TEXT NOT NULL,
+        file_path TEXT NOT NULL,
+        name TEXT NOT NULL,
+        status TEXT NOT NULL,
+        cron_expression TEXT NOT NULL DEFAULT '',
+        created_at TEXT NOT NULL,
+        updated_at TEXT NOT NULL,
+        file_mtime REAL NOT NULL,
+        data TEXT NOT NULL,
+        PRIMARY KEY (workspace, id)
+      );
+      CREATE INDEX IF NOT EXISTS idx_smartpath_index_id ON smartpath_index(id);
+    `);
+  }
+
   insertRunLog(log: {
     id: string; pathId: string; pathName: string; workspace: string;
     mode: 'full' | 'stepping'; stepCount: number; args?: string;
   }): void {
-    this.db.prepare(`
+    this.stmt(`
       INSERT INTO smartpath_run_log (id, path_id, path_name, workspace, mode, step_count, args, status, started_at)
       VALUES (?, ?, ?, ?, ?, ?, ?, 'running', datetime('now', 'localtime'))
     `).run(log.id, log.pathId, log.pathName, log.workspace, log.mode, log.stepCount, log.args ?? null);
@@ -64,11 +113,11 @@ export class SmartPathStore {
 
   updateRunLogStatus(id: string, status: string, errorMessage?: string): void {
     if (errorMessage) {
-      this.db.prepare(`
+      this.stmt(`
         UPDATE smartpath_run_log SET status = ?, error_message = ?, finished_at = datetime('now', 'localtime') WHERE id = ?
       `).run(status, errorMessage, id);
     } else {
-      this.db.prepare(`
+      this.stmt(`
         UPDATE smartpath_run_log SET status = ?, finished_at = datetime('now', 'localtime') WHERE id = ?
       `).run(status, id);
     }
@@ -80,7 +129,7 @@ export class SmartPathStore {
     status: string; errorMessage: string | null;
     startedAt: string; finishedAt: string | null;
   }> {
-    return this.db.prepare(`
+    return this.stmt(`
       SELECT id, path_id as pathId, path_name as pathName, workspace,
              mode, step_count as stepCount, args,
              status, error_message as errorMessage,
@@ -135,6 +184,13 @@ export class SmartPathStore {
     return d;
   }
 
+  /** {workspace}/.sman/paths/{pathId}/step-cache/ */
+  private stepCacheDir(ws: string, pathId: string): string {
+    const d = path.join(this.pathDir(ws, pathId), 'step-cache');
+    fs.mkdirSync(d, { recursive: true });
+    return d;
+  }
+
   /** {workspace}/.sman/paths/{pathId}/references/ */
   private referencesDir(ws: string, pathId: string): string {
     const d = path.join(this.pathDir(ws, pathId), 'references');
@@ -209,7 +265,10 @@ export class SmartPathStore {
   }
 
   private read(filePath: string): SmartPath {
-    const raw = fs.readFileSync(filePath, 'utf-8');
+    return this.parse(filePath, fs.readFileSync(filePath, 'utf-8'));
+  }
+
+  private parse(filePath: string, raw: string): SmartPath {
     const { data } = matter(raw);
     const actualWs = this.resolveActualWorkspace(filePath);
     return {
@@ -221,6 +280,8 @@ export class SmartPathStore {
       status: data.status || 'draft',
       cronExpression: data.cron_expression || '',
       defaultArgs: data.default_args || '',
+      maxParallel: Number(data.max_parallel) || undefined,
+      reuseCachedSteps: data.reuse_cached_steps === true || undefined,
       createdAt: data.created_at || new Date().toISOString(),
       updatedAt: data.updated_at || data.created_at || new Date().toISOString(),
     };
@@ -240,6 +301,8 @@ export class SmartPathStore {
       status: p.status,
       cron_expression: p.cronExpression || '',
       default_args: p.defaultArgs || '',
+      ...(p.maxParallel ? { max_parallel: p.maxParallel } : {}),
+      ...(p.reuseCachedSteps ? { reuse_cached_steps: true } : {}),
       steps,
     };
     const contentBody = `# ${p.name}\n\n${p.description || ''}\n`;
@@ -247,34 +310,128 @@ export class SmartPathStore {
     const filePath = this.pathFile(p.workspace, p.id);
     fs.mkdirSync(path.dirname(filePath), { recursive: true });
     fs.writeFileSync(filePath, content, 'utf-8');
+    this.indexPath(p.workspace, filePath, this.parse(filePath, content), fs.statSync(filePath).mtimeMs);
     this.log.info(`Saved: ${filePath}`);
   }
 
-  // ── CRUD ──
+  // ── 索引 ──
 
-  list(ws: string): SmartPath[] {
-    const d = this.dir(ws);
-    if (!fs.existsSync(d)) return [];
+  private indexPath(ws: string, filePath: string, p: SmartPath, mtimeMs: number): void {
+    this.stmt(`
+      INSERT OR REPLACE INTO smartpath_index
+        (workspace, id, file_path, name, status, cron_expression, created_at, updated_at, file_mtime, data)
+      VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+    `).run(wsKey(ws), p.id, filePath, p.name, p.status, p.cronExpression || '', p.createdAt, p.updatedAt, mtimeMs, JSON.stringify(p));
+  }
+
+  private unindexPath(ws: string, id: string): void {
+    this.stmt('DELETE FROM smartpath_index WHERE workspace = ? AND id = ?').run(wsKey(ws), id);
+  }
+
+  private readAndIndex(ws: string, filePath: string): SmartPath {
+    const mtimeMs = fs.statSync(filePath).mtimeMs;
+    const p = this.read(filePath);
+    this.indexPath(ws, filePath, p, mtimeMs);
+    return p;
+  }
 
-    const results: SmartPath[] = [];
-    const entries = fs.readdirSync(d);
+  private isTrusted(ws: string): boolean {
+    const at = this.reconciledAt.get(wsKey(ws));
+    return at !== undefined && Date.now() - at < SmartPathStore.INDEX_TRUST_MS;
+  }
 
-    for (const entry of entries) {
+  /** 超出信任期才对账：对比每个 path.md 的 mtime，只重新解析变化的文件 */
+  private ensureReconciled(ws: string): void {
+    if (!this.isTrusted(ws)) this.reconcile(ws);
+  }
+
+  private reconcile(ws: string): void {
+    const d = this.dir(ws);
+    const files: Array<{ file: string; mtimeMs: number; read: () => string }> = [];
+    const add = (file: string) => {
+      try {
+        const st = fs.statSync(file);
+        if (st.isFile()) files.push({ file, mtimeMs: st.mtimeMs, read: () => fs.readFileSync(file, 'utf-8') });
+      } catch { /* no path.md */ }
+    };
+    for (const entry of fs.readdirSync(d)) {
       if (entry.endsWith('.md')) {
         // 旧结构: {id}.md
         const id = path.basename(entry, '.md');
         this.migrateIfNeeded(ws, id);
-        try { results.push(this.read(this.pathFile(ws, id))); } catch { /* skip */ }
-      } else if (fs.statSync(path.join(d, entry)).isDirectory()) {
+        add(this.pathFile(ws, id));
+      } else {
         // 新结构: {id}/path.md
-        const subPath = path.join(d, entry, 'path.md');
-        if (fs.existsSync(subPath)) {
-          try { results.push(this.read(subPath)); } catch { /* skip */ }
+        add(path.join(d, entry, 'path.md'));
+      }
+    }
+    this.applyScan(ws, files);
+  }
+
+  /** 用一次目录扫描结果更新该 workspace 的索引行 */
+  private applyScan(ws: string, files: Array<{ file: string; mtimeMs: number; read: () => string }>): void {
+    const key = wsKey(ws);
+    const known = new Map(
+      (this.stmt('SELECT id, file_mtime as fileMtime FROM smartpath_index WHERE workspace = ?').all(key) as Array<{ id: string; fileMtime: number }>)
+        .map(r => [r.id, r.fileMtime]),
+    );
+    const seen = new Set<string>();
+    this.db.transaction(() => {
+      for (const { file, mtimeMs, read } of files) {
+        const id = path.basename(path.dirname(file));
+        seen.add(id);
+        if (known.get(id) === mtimeMs) continue;
+        try {
+          this.indexPath(ws, file, this.parse(file, read()), mtimeMs);
+        } catch {
+          this.unindexPath(ws, id);
         }
       }
+      for (const id of known.keys()) {
+        if (!seen.has(id)) this.unindexPath(ws, id);
+      }
+    })();
+    this.reconciledAt.set(key, Date.now());
+  }
+
+  private queryList(ws: string): SmartPath[] {
+    return (this.stmt('SELECT data FROM smartpath_index WHERE workspace = ? ORDER BY created_at').all(wsKey(ws)) as Array<{ data: string }>)
+      .map(r => JSON.parse(r.data) as SmartPath);
+  }
+
+  /**
+   * 按 id 查索引，候选 workspace 按顺序优先。信任期外 stat 一次文件：
+   * mtime 未变直接用索引数据，变了就重新读取，文件已删除则移除索引行。
+   */
+  private lookupIndexed(id: string, candidates: string[]): SmartPath | undefined {
+    const rows = this.stmt(`
+      SELECT workspace, id, file_path as filePath, file_mtime as fileMtime, data
+      FROM smartpath_index WHERE id = ?
+    `).all(id) as IndexRow[];
+    if (rows.length === 0) return undefined;
+
+    for (const ws of candidates) {
+      const row = rows.find(r => r.workspace === wsKey(ws));
+      if (!row) continue;
+      if (this.isTrusted(ws)) return JSON.parse(row.data) as SmartPath;
+      let mtimeMs: number;
+      try {
+        mtimeMs = fs.statSync(row.filePath).mtimeMs;
+      } catch {
+        this.unindexPath(ws, id);
+        continue;
+      }
+      if (mtimeMs === row.fileMtime) return JSON.parse(row.data) as SmartPath;
+      try { return this.readAndIndex(ws, row.filePath); } catch { this.unindexPath(ws, id); }
     }
+    return undefined;
+  }
+
+  // ── CRUD ──
 
-    return results.sort((a, b) => a.createdAt.localeCompare(b.createdAt));
+  list(ws: string): SmartPath[] {
+    this.ensureReconciled(ws);
+    return this.queryList(ws);
   }
 
   listAll(workspaces: string[]): SmartPath[] {
@@ -282,15 +439,39 @@ export class SmartPathStore {
       .sort((a, b) => b.createdAt.localeCompare(a.createdAt));
   }
 
+  /**
+   * list() 的异步版本：目录扫描和文件读取在 worker pool 上执行，
+   * 主线程只做 front matter 解析。存在旧结构 {id}.md 时回退到 list() 完成迁移。
+   */
+  async listAsync(ws: string): Promise<SmartPath[]> {
+    if (this.isTrusted(ws)) return this.queryList(ws);
+    const scanned = await getWorkerPool().run('readSmartPathFiles', { dir: this.dir(ws) });
+    if (!scanned) {
+      this.applyScan(ws, []);
+      return [];
+    }
+    if (scanned.legacy.length > 0) return this.list(ws);
+
+    this.applyScan(ws, scanned.files.map(({ file, raw, mtimeMs }) => ({ file, mtimeMs, read: () => raw })));
+    return this.queryList(ws);
+  }
+
+  async listAllAsync(workspaces: string[]): Promise<SmartPath[]> {
+    const lists = await Promise.all(workspaces.map(ws => this.listAsync(ws)));
+    return lists.flat().sort((a, b) => b.createdAt.localeCompare(a.createdAt));
+  }
+
   /** 服务启动时将所有 running 状态的 path 重置为 failed（上次异常退出） */
   resetRunningStatuses(workspaces: string[]): number {
     let count = 0;
     for (const ws of workspaces) {
-      for (const p of this.list(ws)) {
-        if (p.status === 'running') {
-          this.update(p.id, ws, { status: 'failed' });
-          count++;
-        }
+      this.ensureReconciled(ws);
+      const running = this.stmt(
+        "SELECT id FROM smartpath_index WHERE workspace = ? AND status = 'running'",
+      ).all(wsKey(ws)) as Array<{ id: string }>;
+      for (const { id } of running) {
+        this.update(id, ws, { status: 'failed' });
+        count++;
       }
     }
     return count;
@@ -317,15 +498,20 @@ export class SmartPathStore {
   }
 
   get(id: string, ws: string, workspaces?: string[]): SmartPath | undefined {
+    const candidates = workspaces && workspaces.length > 0 ? [ws, ...workspaces.filter(w => w !== ws)] : [ws];
+    const indexed = this.lookupIndexed(id, candidates);
+    if (indexed) return indexed;
+
+    // 索引未命中（外部新建或尚未对账）：回退到直接查文件，并写入索引
+    const readFile = (resolvedWs: string) => {
+      const f = this.pathFile(resolvedWs, id);
+      return fs.existsSync(f) ? this.readAndIndex(resolvedWs, f) : undefined;
+    };
     if (workspaces && workspaces.length > 0) {
-      return this.findInWorkspaces(id, ws, workspaces, (resolvedWs) => {
-        const f = this.pathFile(resolvedWs, id);
-        return fs.existsSync(f) ? this.read(f) : undefined;
-      });
+      return this.findInWorkspaces(id, ws, workspaces, readFile);
     }
     this.migrateIfNeeded(ws, id);
-    const f = this.pathFile(ws, id);
-    return fs.existsSync(f) ? this.read(f) : undefined;
+    return readFile(ws);
   }
 
   create(input: { name: string; description?: string; workspace: string; steps: string }): SmartPath {
@@ -371,6 +557,7 @@ export class SmartPathStore {
 
       // 重命名目录内的 path.md 内容
       this.write({ ...merged, id: newId });
+      this.unindexPath(actualWs, id);
 
       // 清理旧平铺文件
       const oldFile = this.legacyFile(actualWs, id);
@@ -398,6 +585,7 @@ export class SmartPathStore {
     // 清理旧平铺文件
     if (fs.existsSync(legacyF)) fs.unlinkSync(legacyF);
 
+    this.unindexPath(actualWs, id);
     this.log.info(`Deleted: ${id}`);
   }
 
@@ -544,6 +732,32 @@ export class SmartPathStore {
     return fileName;
   }
 
+  // ── Step Cache ──
+
+  getStepCache<T>(ws: string, pathId: string, key: string): T | null {
+    const f = path.join(this.stepCacheDir(ws, pathId), `${key}.json`);
+    try {
+      return JSON.parse(fs.readFileSync(f, 'utf-8')) as T;
+    } catch {
+      return null;
+    }
+  }
+
+  /** 写入一次成功运行的缓存条目，只保留最近 maxEntries 个 */
+  saveStepCache(ws: string, pathId: string, entries: Record<string, unknown>, maxEntries = 200): void {
+    const cd = this.stepCacheDir(ws, pathId);
+    for (const [key, value] of Object.entries(entries)) {
+      fs.writeFileSync(path.join(cd, `${key}.json`), JSON.stringify(value), 'utf-8');
+    }
+    const files = fs.readdirSync(cd)
+      .filter(f => f.endsWith('.json'))
+      .map(f => ({ f, mtime: fs.statSync(path.join(cd, f)).mtimeMs }))
+      .sort((a, b) => b.mtime - a.mtime);
+    for (const { f } of files.slice(maxEntries)) {
+      try { fs.unlinkSync(path.join(cd, f)); } catch { /* ignore */ }
+    }
+  }
+
   /** 清空并重建 tmp/ 目录 */
   clearTmpDir(ws: string, pathId: string): void {
     const tmpDir = path.join(this.pathDir(ws, pathId), 'tmp');
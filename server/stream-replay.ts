@@ -0,0 +1,70 @@
+/**
+ * Sequence numbers and a bounded replay buffer for chat streaming frames.
+ *
+ * Every frame sent for a streaming turn is stamped with a per-session `seq`.
+ * A client that reconnects mid-stream sends `session.resume { sessionId, lastSeq }`
+ * and gets the frames it missed replayed from the buffer; if they have already
+ * been evicted, it is told to reload history instead.
+ */
+
+import type { OutboundFrame } from './ws-outbound.js';
+
+export type SequencedFrame = OutboundFrame & { seq: number };
+
+export class StreamReplayBuffer {
+  private ring: Array<SequencedFrame | undefined>;
+  private start = 0;
+  private count = 0;
+  private nextSeq: number;
+
+  /**
+   * @param capacity Frames kept for replay (oldest evicted first)
+   * @param seed First seq; defaults to the current time so seqs keep increasing
+   *             across server restarts and a stale client lastSeq never collides
+   */
+  constructor(private readonly capacity = 2000, seed = Date.now()) {
+    this.ring = new Array(capacity);
+    this.nextSeq = seed;
+  }
+
+  /** Seq of the most recently pushed frame (one below the seed when empty) */
+  get lastSeq(): number {
+    return this.nextSeq - 1;
+  }
+
+  get size(): number {
+    return this.count;
+  }
+
+  /** Stamp a frame with the next seq and record it for replay */
+  push(frame: OutboundFrame): SequencedFrame {
+    const stamped: SequencedFrame = { ...frame, seq: this.nextSeq++ };
+    if (this.count < this.capacity) {
+      this.ring[(this.start + this.count) % this.capacity] = stamped;
+      this.count++;
+    } else {
+      this.ring[this.start] = stamped;
+      this.start = (this.start + 1) % this.capacity;
+    }
+    return stamped;
+  }
+
+  /**
+   * Frames with seq > lastSeq, in order.
+   * Returns null when some of those frames were already evicted (the caller
+   * must fall back to reloading history).
+   */
+  since(lastSeq: number): SequencedFrame[] | null {
+    if (lastSeq >= this.lastSeq) return [];
+    if (this.count === 0) return null;
+    const oldest = this.ring[this.start]!.seq;
+    if (lastSeq < oldest - 1) return null;
+
+    const frames: SequencedFrame[] = [];
+    for (let i = 0; i < this.count; i++) {
+      const frame = this.ring[(this.start + i) % this.capacity]!;
+      if (frame.seq > lastSeq) frames.push(frame);
+    }
+    return frames;
+  }
+}
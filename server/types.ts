@@ -74,6 +74,19 @@ export interface SmanConfig {
     token: string;
   };
   stardom?: StardomConfig;
+  /** 预热 CLI 进程池：按工作区保持空闲进程，定时任务/批量/路径步骤无需等待进程启动 */
+  warmPool?: {
+    size: number;            // 每个工作区保持的空闲进程数，0 = 关闭
+    maxIdle?: number;        // 所有工作区空闲进程总上限，默认 4
+    idleTimeoutMs?: number;  // 空闲进程存活时间，默认 10 分钟
+  };
+  /** 全局模型请求调度：并发预算、限流与退避（缺省使用 LlmScheduler 默认值） */
+  llmScheduler?: Partial<import('./llm-scheduler.js').LlmSchedulerOptions>;
+  /** 知识提取：跨工作区并发上限与单次 LLM 调用的对话 token 预算 */
+  knowledgeExtraction?: {
+    concurrency?: number;       // 同时提取的工作区数，默认 2
+    chunkTokenBudget?: number;  // 每批对话的估算 token 数，默认 8000
+  };
   hub?: {
     serverUrl: string;       // @deprecated 向后兼容，优先读 serverBaseUrl
     updateUrl: string;       // @deprecated 向后兼容，统一用 serverBaseUrl
@@ -164,6 +177,11 @@ export interface SmartPathStep {
   generatedContent?: string;
   deliveryCheck?: string;
   skills?: string[];
+  /**
+   * Steps whose results this step needs: 0-based step indexes or step names.
+   * Omitted means the previous step (sequential); [] starts without waiting.
+   */
+  dependsOn?: Array<number | string>;
 }
 
 /** Runtime step with execution result — used in Run records and reports, NOT in path.md */
@@ -180,10 +198,25 @@ export interface SmartPath {
   status: SmartPathStatus;
   cronExpression?: string;
   defaultArgs?: string;
+  /** Max steps of one run executing at once (path.md `max_parallel`) */
+  maxParallel?: number;
+  /** Reuse cached results of steps whose inputs are unchanged (path.md `reuse_cached_steps`) */
+  reuseCachedSteps?: boolean;
   createdAt: string;
   updatedAt: string;
 }
 
+/** Memoized step output, stored as {pathId}/step-cache/{key}.json */
+export interface CachedStepResult {
+  key: string;
+  stepIndex: number;
+  result: string;
+  /** Summary handed to dependent steps, when one was extracted */
+  keyOutputs?: string;
+  runId: string;
+  createdAt: string;
+}
+
 export interface SmartPathRun {
   id: string;
   pathId: string;
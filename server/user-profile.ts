@@ -1,6 +1,7 @@
 import fs from 'fs';
 import path from 'path';
 import { createLogger, type Logger } from './utils/logger.js';
+import { errorCodeForStatus, type LlmScheduler } from './llm-scheduler.js';
 
 const PROFILE_FILENAME = 'user-profile.md';
 
@@ -36,6 +37,7 @@ export class UserProfileManager {
   private pendingConversations: Array<{ user: string; assistant: string }> = [];
   /** Callback to check if it's safe to call LLM (no active sessions streaming) */
   private isIdle: () => boolean = () => true;
+  private llmScheduler: LlmScheduler | null = null;
 
   constructor(private homeDir: string, config?: import('./types.js').SmanConfig) {
     this.profilePath = path.join(homeDir, PROFILE_FILENAME);
@@ -52,6 +54,10 @@ export class UserProfileManager {
     this.isIdle = check;
   }
 
+  setLlmScheduler(scheduler: LlmScheduler): void {
+    this.llmScheduler = scheduler;
+  }
+
   loadProfile(): string {
     try {
       if (!fs.existsSync(this.profilePath)) {
@@ -230,30 +236,40 @@ ${conversationText}
 ## 输出
 直接输出更新后的完整画像 Markdown，不要输出其他内容。`;
 
-    const response = await fetch(`${baseUrl}/v1/messages`, {
-      method: 'POST',
-      headers: {
-        'Content-Type': 'application/json',
-        'x-api-key': config.llm.apiKey,
-        'anthropic-version': '2023-06-01',
-        'anthropic-dangerous-direct-browser-access': 'true',
-      },
-      body: JSON.stringify({
-        model,
-        max_tokens: 2048,
-        system: systemPrompt,
-        messages: [{ role: 'user', content: userPrompt }],
-      }),
-    });
+    const permit = await this.llmScheduler?.acquire('background');
+    let errorCode: string | undefined;
+    try {
+      const response = await fetch(`${baseUrl}/v1/messages`, {
+        method: 'POST',
+        headers: {
+          'Content-Type': 'application/json',
+          'x-api-key': config.llm.apiKey,
+          'anthropic-version': '2023-06-01',
+          'anthropic-dangerous-direct-browser-access': 'true',
+        },
+        body: JSON.stringify({
+          model,
+          max_tokens: 2048,
+          system: systemPrompt,
+          messages: [{ role: 'user', content: userPrompt }],
+        }),
+      });
+
+      if (!response.ok) {
+        errorCode = errorCodeForStatus(response.status) ?? 'unknown';
+        const errorBody = await response.text();
+        throw new Error(`LLM API error: ${response.status} ${errorBody}`);
+      }
 
-    if (!response.ok) {
-      const errorBody = await response.text();
-      throw new Error(`LLM API error: ${response.status} ${errorBody}`);
+      const data = await response.json() as any;
+      const text = data.content?.[0]?.text;
+      if (!text) throw new Error('Empty response from LLM');
+      return text;
+    } catch (err) {
+      errorCode ??= 'unknown';
+      throw err;
+    } finally {
+      permit?.release(errorCode);
     }
-
-    const data = await response.json() as any;
-    const text = data.content?.[0]?.text;
-    if (!text) throw new Error('Empty response from LLM');
-    return text;
   }
 }
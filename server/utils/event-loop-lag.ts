@@ -0,0 +1,108 @@
+/**
+ * Event-loop lag metrics (perf_hooks.monitorEventLoopDelay).
+ *
+ * The histogram is rotated every window; snapshot() reports the last complete
+ * window next to the one in progress, so a stall shows up for at least one
+ * full window. Windows whose p99 crosses warnP99Ms are logged.
+ */
+
+import { monitorEventLoopDelay, type IntervalHistogram } from 'node:perf_hooks';
+import { createLogger } from './logger.js';
+
+const log = createLogger('EventLoopLag');
+
+export interface EventLoopLagWindow {
+  p50Ms: number;
+  p99Ms: number;
+  maxMs: number;
+  meanMs: number;
+  /** Window start (epoch ms) */
+  since: number;
+}
+
+export interface EventLoopLagSnapshot {
+  current: EventLoopLagWindow;
+  previous: EventLoopLagWindow | null;
+  /** Worst single delay since the monitor started */
+  maxEverMs: number;
+}
+
+export interface EventLoopLagOptions {
+  windowMs?: number;
+  /** Sampling resolution of the histogram */
+  resolutionMs?: number;
+  warnP99Ms?: number;
+}
+
+const NS_PER_MS = 1e6;
+
+function round(ms: number): number {
+  return Math.round(ms * 100) / 100;
+}
+
+export class EventLoopLagMonitor {
+  private histogram: IntervalHistogram | null = null;
+  private timer: ReturnType<typeof setInterval> | null = null;
+  private windowStart = 0;
+  private previous: EventLoopLagWindow | null = null;
+  private maxEverMs = 0;
+  private readonly windowMs: number;
+  private readonly resolutionMs: number;
+  private readonly warnP99Ms: number;
+
+  constructor(options: EventLoopLagOptions = {}) {
+    this.windowMs = options.windowMs ?? 60_000;
+    this.resolutionMs = options.resolutionMs ?? 20;
+    this.warnP99Ms = options.warnP99Ms ?? 100;
+  }
+
+  start(): void {
+    if (this.histogram) return;
+    this.histogram = monitorEventLoopDelay({ resolution: this.resolutionMs });
+    this.histogram.enable();
+    this.windowStart = Date.now();
+    this.timer = setInterval(() => this.rotate(), this.windowMs);
+    this.timer.unref?.();
+  }
+
+  stop(): void {
+    if (this.timer) clearInterval(this.timer);
+    this.timer = null;
+    this.histogram?.disable();
+    this.histogram = null;
+  }
+
+  snapshot(): EventLoopLagSnapshot {
+    const current = this.readWindow();
+    return {
+      current,
+      previous: this.previous,
+      maxEverMs: round(Math.max(this.maxEverMs, current.maxMs)),
+    };
+  }
+
+  private readWindow(): EventLoopLagWindow {
+    const h = this.histogram;
+    // Before the first sample the histogram reports NaN / huge sentinels
+    if (!h || h.count === 0) return { p50Ms: 0, p99Ms: 0, maxMs: 0, meanMs: 0, since: this.windowStart };
+    return {
+      p50Ms: round(h.percentile(50) / NS_PER_MS),
+      p99Ms: round(h.percentile(99) / NS_PER_MS),
+      maxMs: round(h.max / NS_PER_MS),
+      meanMs: round(h.mean / NS_PER_MS),
+      since: this.windowStart,
+    };
+  }
+
+  private rotate(): void {
+    if (!this.histogram) return;
+    const window = this.readWindow();
+    this.previous = window;
+    this.maxEverMs = Math.max(this.maxEverMs, window.maxMs);
+    if (window.p99Ms >= this.warnP99Ms) {
+      log.warn('Event loop lag high', { p50Ms: window.p50Ms, p99Ms: window.p99Ms, maxMs: window.maxMs });
+    }
+    this.histogram.reset();
+    this.windowStart = Date.now();
+  }
+}
@@ -0,0 +1,136 @@
+/**
+ * Shared SQLite data-access helpers for the better-sqlite3 stores.
+ *
+ * - StatementCache: prepare each SQL string once per connection and reuse it
+ * - WriteBatcher: coalesce high-frequency writes by key and group-commit them
+ *   in a single transaction on a short flush interval
+ */
+
+import type { Database, Statement } from 'better-sqlite3';
+
+const DEFAULT_MAX_STATEMENTS = 256;
+
+/**
+ * Per-connection prepared statement cache.
+ * Keys are the exact SQL text; dynamically built SQL (e.g. partial UPDATEs)
+ * is bounded by an LRU cap so it can't grow without limit.
+ */
+export class StatementCache {
+  private statements = new Map<string, Statement>();
+
+  constructor(private db: Database, private maxSize = DEFAULT_MAX_STATEMENTS) {}
+
+  get(sql: string): Statement {
+    const cached = this.statements.get(sql);
+    if (cached) {
+      // Refresh LRU position
+      this.statements.delete(sql);
+      this.statements.set(sql, cached);
+      return cached;
+    }
+    const stmt = this.db.prepare(sql);
+    this.statements.set(sql, stmt);
+    if (this.statements.size > this.maxSize) {
+      const oldest = this.statements.keys().next().value;
+      if (oldest !== undefined) this.statements.delete(oldest);
+    }
+    return stmt;
+  }
+
+  get size(): number {
+    return this.statements.size;
+  }
+
+  clear(): void {
+    this.statements.clear();
+  }
+}
+
+export interface WriteBatcherOptions<K, V> {
+  /** Write all pending entries; always invoked inside a transaction */
+  apply: (entries: Array<[K, V]>) => void;
+  /** Combine a queued value with a newer one for the same key (default: newer wins) */
+  merge?: (prev: V, next: V) => V;
+  /** Delay between the first enqueue and the commit */
+  flushIntervalMs?: number;
+  /** Commit immediately once this many distinct keys are pending */
+  maxPending?: number;
+  onError?: (err: unknown) => void;
+  /** Called with the committed entries after the transaction succeeded */
+  onCommit?: (entries: Array<[K, V]>) => void;
+}
+
+/**
+ * Group-commit buffer for hot write paths.
+ *
+ * Writes for the same key are merged in memory, and everything pending is
+ * committed in one transaction after `flushIntervalMs`. Callers that need
+ * read-your-writes consistency call flush() before reading.
+ */
+export class WriteBatcher<K, V> {
+  private pending = new Map<K, V>();
+  private timer: ReturnType<typeof setTimeout> | null = null;
+  private readonly commit: (entries: Array<[K, V]>) => void;
+  private readonly merge: (prev: V, next: V) => V;
+  private readonly flushIntervalMs: number;
+  private readonly maxPending: number;
+  private readonly onError?: (err: unknown) => void;
+  private readonly onCommit?: (entries: Array<[K, V]>) => void;
+
+  constructor(db: Database, options: WriteBatcherOptions<K, V>) {
+    this.commit = db.transaction((entries: Array<[K, V]>) => options.apply(entries));
+    this.merge = options.merge ?? ((_prev, next) => next);
+    this.flushIntervalMs = options.flushIntervalMs ?? 50;
+    this.maxPending = options.maxPending ?? 500;
+    this.onError = options.onError;
+    this.onCommit = options.onCommit;
+  }
+
+  enqueue(key: K, value: V): void {
+    const prev = this.pending.get(key);
+    this.pending.set(key, prev === undefined ? value : this.merge(prev, value));
+
+    if (this.pending.size >= this.maxPending) {
+      this.flush();
+      return;
+    }
+    if (!this.timer) {
+      this.timer = setTimeout(() => {
+        this.timer = null;
+        this.flush();
+      }, this.flushIntervalMs);
+      this.timer.unref?.();
+    }
+  }
+
+  /** Discard a pending write (e.g. the row is about to be deleted) */
+  discard(key: K): void {
+    this.pending.delete(key);
+  }
+
+  has(key: K): boolean {
+    return this.pending.has(key);
+  }
+
+  get size(): number {
+    return this.pending.size;
+  }
+
+  flush(): void {
+    if (this.timer) {
+      clearTimeout(this.timer);
+      this.timer = null;
+    }
+    if (this.pending.size === 0) return;
+    const entries = Array.from(this.pending.entries());
+    this.pending.clear();
+    try {
+      this.commit(entries);
+    } catch (err) {
+      if (this.onError) this.onError(err);
+      else throw err;
+      return;
+    }
+    this.onCommit?.(entries);
+  }
+}
@@ -0,0 +1,299 @@
+/**
+ * Warm pool of pre-spawned, idle resources (Claude CLI processes) keyed by
+ * workspace + option set.
+ *
+ * - acquire(key): take an idle resource (hit), wait for one that is already
+ *   spawning, or return null (miss) so the caller spawns its own
+ * - Keys that were recently requested are refilled in the background, so the
+ *   next cron run / batch item / path step finds a process ready. A miss does
+ *   not start the refill: the caller calls prewarm(key) once its own spawn is
+ *   done, so the two never compete (spawns share one create lock)
+ * - release(key, item): hand back a resource that was never used
+ * - A single maintenance timer health-checks and evicts idle entries, and runs
+ *   the owner's own idle sweep (see ClaudeSessionManager.closeIdleSessions)
+ */
+
+import { createLogger, type Logger } from './utils/logger.js';
+
+export interface WarmPoolOptions<T> {
+  spawn: (key: string) => Promise<T>;
+  /** Health check for idle entries (e.g. the process is still running) */
+  isAlive: (item: T) => boolean;
+  dispose: (item: T) => void;
+}
+
+export interface WarmPoolLimits {
+  /** Idle resources kept ready per recently requested key (0 disables the pool) */
+  sizePerKey: number;
+  /** Cap on idle + spawning resources across all keys */
+  maxIdle: number;
+  /** Idle resources older than this are closed */
+  idleTimeoutMs: number;
+  /** Keys not requested within this window are no longer refilled */
+  demandTtlMs: number;
+}
+
+export interface WarmPoolStats {
+  hits: number;
+  misses: number;
+  spawned: number;
+  spawnFailures: number;
+  evicted: number;
+  idle: number;
+  spawning: number;
+  spawnLatencyMs: { last: number; avg: number; max: number };
+}
+
+const DEFAULT_LIMITS: WarmPoolLimits = {
+  sizePerKey: 1,
+  maxIdle: 4,
+  idleTimeoutMs: 10 * 60 * 1000,
+  demandTtlMs: 30 * 60 * 1000,
+};
+
+interface IdleEntry<T> {
+  item: T;
+  readyAt: number;
+}
+
+export class WarmPool<T> {
+  private limits: WarmPoolLimits = { ...DEFAULT_LIMITS };
+  private idle = new Map<string, IdleEntry<T>[]>();
+  private spawning = new Map<string, number>();
+  /** Callers waiting for an in-flight spawn, per key */
+  private waiters = new Map<string, Array<(item: T | null) => void>>();
+  /** key → last time it was requested */
+  private demand = new Map<string, number>();
+  private maintenanceTimer: ReturnType<typeof setInterval> | null = null;
+  private closed = false;
+  private log: Logger;
+
+  private hits = 0;
+  private misses = 0;
+  private spawned = 0;
+  private spawnFailures = 0;
+  private evicted = 0;
+  private spawnLatencyTotal = 0;
+  private spawnLatencyLast = 0;
+  private spawnLatencyMax = 0;
+
+  constructor(private options: WarmPoolOptions<T>, limits: Partial<WarmPoolLimits> = {}) {
+    this.log = createLogger('WarmPool');
+    this.configure(limits);
+  }
+
+  configure(limits: Partial<WarmPoolLimits>): void {
+    this.limits = { ...this.limits, ...limits };
+  }
+
+  /**
+   * Take a ready resource for `key`. Waits for an in-flight spawn when one is
+   * not yet claimed; returns null on a miss, after which the caller should
+   * prewarm(key) once it has spawned its own resource.
+   */
+  async acquire(key: string): Promise<T | null> {
+    if (this.closed) return null;
+    this.demand.set(key, Date.now());
+
+    const item = this.takeIdle(key);
+    if (item !== null) {
+      this.hits++;
+      this.refill(key);
+      return item;
+    }
+
+    const inFlight = this.spawning.get(key) ?? 0;
+    const waiting = this.waiters.get(key)?.length ?? 0;
+    if (inFlight > waiting) {
+      const warmed = await new Promise<T | null>(resolve => {
+        const list = this.waiters.get(key) ?? [];
+        list.push(resolve);
+        this.waiters.set(key, list);
+      });
+      if (warmed !== null) {
+        this.hits++;
+        this.refill(key);
+        return warmed;
+      }
+    }
+
+    this.misses++;
+    return null;
+  }
+
+  /** Hand back a resource that was acquired but never used */
+  release(key: string, item: T): void {
+    if (this.closed || !this.options.isAlive(item) || this.idleCount(key) >= this.limits.sizePerKey) {
+      this.disposeItem(item);
+      return;
+    }
+    this.pushIdle(key, item);
+  }
+
+  /** Record demand for `key` and start spawning up to the per-key size */
+  prewarm(key: string): void {
+    if (this.closed) return;
+    this.demand.set(key, Date.now());
+    this.refill(key);
+  }
+
+  /** Close idle resources whose key does not satisfy `keep` (all when omitted) */
+  clear(keep?: (key: string) => boolean): void {
+    for (const [key, entries] of this.idle) {
+      if (keep?.(key)) continue;
+      for (const entry of entries) this.disposeItem(entry.item);
+      this.idle.delete(key);
+    }
+    for (const key of this.demand.keys()) {
+      if (!keep?.(key)) this.demand.delete(key);
+    }
+  }
+
+  /**
+   * Evict dead / expired idle entries, forget stale demand and top up the
+   * keys that are still in demand.
+   */
+  sweep(): void {
+    const now = Date.now();
+    for (const [key, entries] of this.idle) {
+      const kept = entries.filter(entry => {
+        if (now - entry.readyAt <= this.limits.idleTimeoutMs && this.options.isAlive(entry.item)) return true;
+        this.evicted++;
+        this.disposeItem(entry.item);
+        return false;
+      });
+      if (kept.length > 0) this.idle.set(key, kept);
+      else this.idle.delete(key);
+    }
+    for (const [key, at] of this.demand) {
+      if (now - at > this.limits.demandTtlMs) this.demand.delete(key);
+      else this.refill(key);
+    }
+  }
+
+  /** Run sweep() (and the owner's own idle sweep) on one shared timer */
+  startMaintenance(intervalMs: number, extraSweep?: () => void): void {
+    if (this.maintenanceTimer) return;
+    const timer = setInterval(() => {
+      this.sweep();
+      extraSweep?.();
+    }, intervalMs);
+    timer.unref(); // Don't prevent process exit
+    this.maintenanceTimer = timer;
+  }
+
+  close(): void {
+    this.closed = true;
+    if (this.maintenanceTimer) {
+      clearInterval(this.maintenanceTimer);
+      this.maintenanceTimer = null;
+    }
+    this.clear();
+    for (const list of this.waiters.values()) {
+      for (const resolve of list) resolve(null);
+    }
+    this.waiters.clear();
+  }
+
+  stats(): WarmPoolStats {
+    let idle = 0;
+    for (const entries of this.idle.values()) idle += entries.length;
+    let spawning = 0;
+    for (const n of this.spawning.values()) spawning += n;
+    return {
+      hits: this.hits,
+      misses: this.misses,
+      spawned: this.spawned,
+      spawnFailures: this.spawnFailures,
+      evicted: this.evicted,
+      idle,
+      spawning,
+      spawnLatencyMs: {
+        last: this.spawnLatencyLast,
+        avg: this.spawned > 0 ? Math.round(this.spawnLatencyTotal / this.spawned) : 0,
+        max: this.spawnLatencyMax,
+      },
+    };
+  }
+
+  private takeIdle(key: string): T | null {
+    const entries = this.idle.get(key);
+    while (entries && entries.length > 0) {
+      const entry = entries.shift()!;
+      if (entries.length === 0) this.idle.delete(key);
+      if (this.options.isAlive(entry.item)) return entry.item;
+      this.evicted++;
+      this.disposeItem(entry.item);
+    }
+    return null;
+  }
+
+  private pushIdle(key: string, item: T): void {
+    const entries = this.idle.get(key) ?? [];
+    entries.push({ item, readyAt: Date.now() });
+    this.idle.set(key, entries);
+  }
+
+  private idleCount(key: string): number {
+    return this.idle.get(key)?.length ?? 0;
+  }
+
+  private totalReserved(): number {
+    const { idle, spawning } = this.stats();
+    return idle + spawning;
+  }
+
+  private refill(key: string): void {
+    if (this.closed || this.limits.sizePerKey <= 0) return;
+    let missing = this.limits.sizePerKey - this.idleCount(key) - (this.spawning.get(key) ?? 0);
+    while (missing > 0 && this.totalReserved() < this.limits.maxIdle) {
+      this.spawnOne(key);
+      missing--;
+    }
+  }
+
+  private spawnOne(key: string): void {
+    this.spawning.set(key, (this.spawning.get(key) ?? 0) + 1);
+    const startedAt = Date.now();
+
+    const settle = (item: T | null) => {
+      const left = (this.spawning.get(key) ?? 1) - 1;
+      if (left > 0) this.spawning.set(key, left);
+      else this.spawning.delete(key);
+
+      const waiters = this.waiters.get(key);
+      const waiter = waiters?.shift();
+      if (waiters && waiters.length === 0) this.waiters.delete(key);
+      if (waiter) {
+        waiter(item);
+        return;
+      }
+      if (item === null) return;
+      if (this.closed || !this.demand.has(key)) this.disposeItem(item);
+      else this.pushIdle(key, item);
+    };
+
+    this.options.spawn(key).then(
+      (item) => {
+        const latency = Date.now() - startedAt;
+        this.spawned++;
+        this.spawnLatencyLast = latency;
+        this.spawnLatencyTotal += latency;
+        this.spawnLatencyMax = Math.max(this.spawnLatencyMax, latency);
+        settle(item);
+      },
+      (err) => {
+        // Not retried here — the next acquire() or sweep() tries again
+        this.spawnFailures++;
+        this.log.warn(`Warm spawn failed for ${key}: ${err instanceof Error ? err.message : String(err)}`);
+        settle(null);
+      },
+    );
+  }
+
+  private disposeItem(item: T): void {
+    try {
+      this.options.dispose(item);
+    } catch { /* already gone */ }
+  }
+}
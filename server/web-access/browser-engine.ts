@@ -59,6 +59,8 @@ export interface PageSnapshot {
   url: string;
   /** 紧凑序列化的可访问性树（语义节点 + 属性） */
   accessibilityTree: string;
+  /** 相对上一次快照的增量（"- " 删除行 / "+ " 新增行）；仅操作后的快照且明显小于全量树时提供 */
+  accessibilityTreeDelta?: string;
   /** 原始 AX 节点（用于 login detection 等精确检查） */
   axNodes?: AxNode[];
   /** 是否检测到登录页 */
@@ -38,6 +38,34 @@ export interface DomStableOptions {
   domStableMs?: number;
 }
 
+/** Pushed page activity for one CDP session (see CdpEngine.trackPageActivity) */
+interface PageActivity {
+  /** In-flight requests of the current document → start time */
+  activeRequests: Map<string, number>;
+  lastNetworkActivity: number;
+  lastMutation: number;
+  /** Page.loadEventFired seen for the current main-frame document */
+  loaded: boolean;
+  /** Bumped on every main-frame navigation (new document) */
+  documentEpoch: number;
+  /** Waiters re-checked on every activity event */
+  listeners: Set<() => void>;
+}
+
+interface SnapshotOptions {
+  /** Fetch only changed subtrees and attach a delta (post-action snapshots) */
+  incremental?: boolean;
+  /** Backend DOM nodes the action touched directly (re-fetched even without mutations) */
+  touched?: number[];
+}
+
+/** Last snapshot per tab, the baseline for incremental snapshots */
+interface AxTreeState {
+  serialized: string;
+  /** PageActivity.documentEpoch the dirty set was reset in; null when untracked */
+  epoch: number | null;
+}
+
 export class CdpEngine implements BrowserEngine {
   private ws: WebSocketLike | null = null;
   private cmdId = 0;
@@ -56,6 +84,10 @@ export class CdpEngine implements BrowserEngine {
   private launchingPromise: Promise<void> | null = null;
   /** Cached AX nodes per tab for ref-based element lookup */
   private cachedAxNodes = new Map<string, AxNode[]>();
+  private axTreeState = new Map<string, AxTreeState>();
+  /** Page activity trackers per CDP sessionId */
+  private pageActivity = new Map<string, PageActivity>();
+  private pageActivityReady = new Map<string, Promise<PageActivity>>();
 
   constructor(opts?: CdpEngineOptions) {
     this.defaultTimeoutMs = opts?.defaultTimeoutMs ?? 30_000;
@@ -338,6 +370,8 @@ export class CdpEngine implements BrowserEngine {
         this.cdpWsUrl = null;
         this.sessions.clear();
         this.cdpEventHandlers.clear();
+        this.pageActivity.clear();
+        this.pageActivityReady.clear();
       };
       const onMessage = (evt: any) => {
         this.onMessage(evt);
@@ -485,6 +519,13 @@ export class CdpEngine implements BrowserEngine {
       const { sessionId, targetInfo } = msg.params;
       this.sessions.set(targetInfo.targetId, sessionId);
     }
+    if (msg.method === 'Target.detachedFromTarget') {
+      this.dropPageActivity(msg.params?.sessionId);
+    }
+    // Built-in: page activity tracking for session-scoped events
+    if (msg.sessionId && msg.method) {
+      this.trackPageActivity(msg.sessionId, msg.method, msg.params);
+    }
     // Command response correlation
     if (msg.id && this.pending.has(msg.id)) {
       const { resolve, timer } = this.pending.get(msg.id)!;
@@ -509,104 +550,255 @@ export class CdpEngine implements BrowserEngine {
     domStableMs: 300,
   };
 
-  async waitForDomStable(tabId: string, opts: DomStableOptions = {}): Promise<void> {
-    const {
-      timeoutMs = 10_000,
-      networkIdleMs = 500,
-      domStableMs = 800,
-    } = opts;
-    const sessionId = await this.ensureSession(tabId);
+  /** Network.ResourceType values that stay open for the life of the page; not tracked for idle */
+  private static readonly STREAMING_RESOURCE_TYPES = new Set(['EventSource', 'WebSocket']);
 
-    // Inject MutationObserver
-    const installExpr = `(() => {
-      if (window.__domStableObserver) return 'already-installed';
-      window.__domMutations = 0;
-      window.__domLastMutation = Date.now();
-      window.__domStableObserver = new MutationObserver(() => {
-        window.__domMutations++;
-        window.__domLastMutation = Date.now();
-      });
-      if (document.body) {
-        window.__domStableObserver.observe(document.body, {
-          childList: true, subtree: true, attributes: true
-        });
-      }
-      return 'installed';
-    })()`;
-    await this.sendCDP('Runtime.evaluate', { expression: installExpr, returnByValue: true }, sessionId);
-
-    // Enable Network domain for request tracking
-    await this.sendCDP('Network.enable', {}, sessionId);
+  /** In-flight requests older than this stop blocking network idle (long-poll, streaming fetch) */
+  private static readonly LONG_REQUEST_MS = 5_000;
 
-    // Track network requests via events — use a Set of active requestId for clarity
-    const activeRequests = new Set<string>();
-    let lastNetworkActivity = Date.now();
+  /** Runtime binding the injected MutationObserver calls (payload: ms since the last mutation) */
+  private static readonly DOM_ACTIVITY_BINDING = '__smanDomActivity';
 
-    const onRequestStart = (params: any) => {
-      if (params.requestId) {
-        activeRequests.add(params.requestId);
-        lastNetworkActivity = Date.now();
-      }
-    };
-    const onRequestDone = (params: any) => {
-      if (activeRequests.delete(params.requestId)) {
-        lastNetworkActivity = Date.now();
-      }
-    };
+  /** Past this many mutated elements an incremental AX snapshot falls back to a full fetch */
+  private static readonly MAX_DIRTY_ELEMENTS = 64;
 
-    this.onCdpEvent('Network.requestWillBeSent', onRequestStart);
-    this.onCdpEvent('Network.loadingFinished', onRequestDone);
-    this.onCdpEvent('Network.loadingFailed', onRequestDone);
+  /**
+   * Injected into every document (and the current one): observes the whole
+   * document and reports mutations through the binding, throttled to one
+   * call per 100ms with leading and trailing edges. Also collects mutated
+   * elements for incremental AX snapshots (__smanTakeDirty). Returns ms since the last mutation.
+   */
+  private static readonly DOM_ACTIVITY_SCRIPT = `(() => {
+    const w = window;
+    if (!w.__smanDomWatch) {
+      let last = Date.now(), pending = false, timer = 0;
+      let dirty = new Set(), overflow = false;
+      const markDirty = (records) => {
+        if (overflow) return;
+        for (const r of records) {
+          const el = r.target.nodeType === 1 ? r.target : r.target.parentElement;
+          if (el) dirty.add(el);
+          if (dirty.size > ${CdpEngine.MAX_DIRTY_ELEMENTS}) { overflow = true; dirty.clear(); return; }
+        }
+      };
+      // Form state (value / checked) changes are not mutations — track them via events
+      const markEvent = (e) => { if (e.target && e.target.nodeType === 1) markDirty([{ target: e.target }]); };
+      document.addEventListener('input', markEvent, true);
+      document.addEventListener('change', markEvent, true);
+      // Topmost connected mutated elements since the last call; null when too many changed
+      w.__smanTakeDirty = () => {
+        const els = overflow ? null : [...dirty].filter(el => el.isConnected);
+        dirty = new Set();
+        overflow = false;
+        if (!els) return null;
+        const set = new Set(els);
+        return els.filter(el => {
+          for (let p = el.parentElement; p; p = p.parentElement) if (set.has(p)) return false;
+          return true;
+        });
+      };
+      const ping = () => { try { w.${CdpEngine.DOM_ACTIVITY_BINDING}(String(Date.now() - last)); } catch (e) {} };
+      const flush = () => {
+        if (!pending) { timer = 0; return; }
+        pending = false;
+        ping();
+        timer = setTimeout(flush, 100);
+      };
+      new MutationObserver((records) => {
+        markDirty(records);
+        last = Date.now();
+        if (timer) { pending = true; return; }
+        ping();
+        timer = setTimeout(flush, 100);
+      }).observe(document, { childList: true, subtree: true, attributes: true, characterData: true });
+      w.__smanDomWatch = () => Date.now() - last;
+    }
+    return w.__smanDomWatch();
+  })()`;
+
+  /** Per-CDP-session page activity, installed once and fed by pushed events */
+  private getPageActivity(sessionId: string): Promise<PageActivity> {
+    let ready = this.pageActivityReady.get(sessionId);
+    if (!ready) {
+      ready = this.installPageActivity(sessionId);
+      this.pageActivityReady.set(sessionId, ready);
+      ready.catch(() => {
+        if (this.pageActivityReady.get(sessionId) === ready) {
+          this.pageActivityReady.delete(sessionId);
+          this.pageActivity.delete(sessionId);
+        }
+      });
+    }
+    return ready;
+  }
 
-    try {
-      const start = Date.now();
-      const checkExpr = `(() => {
-        const elapsed = Date.now() - (window.__domLastMutation || 0);
-        const mutations = window.__domMutations || 0;
-        return JSON.stringify({ elapsed, mutations });
-      })()`;
+  private async installPageActivity(sessionId: string): Promise<PageActivity> {
+    const activity: PageActivity = {
+      activeRequests: new Map(),
+      lastNetworkActivity: Date.now(),
+      lastMutation: Date.now(),
+      loaded: false,
+      documentEpoch: 0,
+      listeners: new Set(),
+    };
+    // Registered before enabling the domains so no event is missed
+    this.pageActivity.set(sessionId, activity);
+
+    await Promise.all([
+      this.sendCDP('Network.enable', {}, sessionId),
+      this.sendCDP('Page.enable', {}, sessionId),
+      this.sendCDP('Runtime.enable', {}, sessionId),
+      // Keeps AX node ids stable between snapshots (needed for incremental AX fetches)
+      this.sendCDP('Accessibility.enable', {}, sessionId),
+      this.sendCDP('Runtime.addBinding', { name: CdpEngine.DOM_ACTIVITY_BINDING }, sessionId),
+      this.sendCDP('Page.addScriptToEvaluateOnNewDocument', { source: CdpEngine.DOM_ACTIVITY_SCRIPT }, sessionId),
+    ]);
+    const resp = await this.sendCDP('Runtime.evaluate', {
+      expression: CdpEngine.DOM_ACTIVITY_SCRIPT,
+      returnByValue: true,
+    }, sessionId);
+    const sinceMutation = Number(resp.result?.result?.value);
+    if (Number.isFinite(sinceMutation)) activity.lastMutation = Date.now() - sinceMutation;
+    return activity;
+  }
 
-      while (Date.now() - start < timeoutMs) {
-        const domResp = await this.sendCDP('Runtime.evaluate', {
-          expression: checkExpr,
-          returnByValue: true,
-        }, sessionId);
-        const domState = JSON.parse(domResp.result?.result?.value || '{"elapsed":0,"mutations":0}');
+  /** Update page activity from a session-scoped CDP event and wake its waiters */
+  private trackPageActivity(sessionId: string, method: string, params: any): void {
+    const activity = this.pageActivity.get(sessionId);
+    if (!activity) return;
+    const now = Date.now();
+
+    switch (method) {
+      case 'Runtime.bindingCalled': {
+        if (params?.name !== CdpEngine.DOM_ACTIVITY_BINDING) return;
+        const since = Number(params.payload);
+        activity.lastMutation = now - (Number.isFinite(since) ? Math.max(0, since) : 0);
+        break;
+      }
+      case 'Network.requestWillBeSent':
+        if (!params?.requestId) return;
+        // Never-ending by design; counting them would keep the page from ever going idle
+        if (CdpEngine.STREAMING_RESOURCE_TYPES.has(params.type)) return;
+        // Redirects reuse the requestId; keep the original start time
+        if (!activity.activeRequests.has(params.requestId)) activity.activeRequests.set(params.requestId, now);
+        activity.lastNetworkActivity = now;
+        break;
+      case 'Network.loadingFinished':
+      case 'Network.loadingFailed':
+        if (!activity.activeRequests.delete(params?.requestId)) return;
+        activity.lastNetworkActivity = now;
+        break;
+      case 'Page.frameNavigated':
+        if (params?.frame?.parentId) return; // subframe
+        // Requests of the old document never report loadingFinished
+        activity.activeRequests.clear();
+        activity.loaded = false;
+        activity.documentEpoch++;
+        activity.lastMutation = now;
+        break;
+      case 'Page.loadEventFired':
+        activity.loaded = true;
+        break;
+      default:
+        return;
+    }
+    for (const listener of [...activity.listeners]) listener();
+  }
 
-        const networkIdle = activeRequests.size === 0 && (Date.now() - lastNetworkActivity) >= networkIdleMs;
-        const domStable = domState.elapsed >= domStableMs;
+  private dropPageActivity(sessionId: string | undefined): void {
+    if (!sessionId) return;
+    this.pageActivity.delete(sessionId);
+    this.pageActivityReady.delete(sessionId);
+  }
 
-        if (networkIdle && domStable) return;
+  /**
+   * Resolve once `remainingMs()` reaches 0. Re-evaluated on every pushed
+   * activity event and on a timer for the remaining quiet period — no polling.
+   * `remainingMs` returns Infinity while waiting on an event.
+   */
+  private waitForPageActivity(
+    activity: PageActivity,
+    remainingMs: () => number,
+    timeoutMs: number,
+    operation: string,
+  ): Promise<void> {
+    return new Promise((resolve, reject) => {
+      const deadline = Date.now() + timeoutMs;
+      let timer: NodeJS.Timeout | null = null;
+
+      const finish = (err?: Error) => {
+        activity.listeners.delete(check);
+        if (timer) clearTimeout(timer);
+        if (err) reject(err);
+        else resolve();
+      };
+      const check = () => {
+        if (timer) {
+          clearTimeout(timer);
+          timer = null;
+        }
+        const wait = remainingMs();
+        if (wait <= 0) return finish();
+        const left = deadline - Date.now();
+        if (left <= 0) return finish(new BrowserTimeoutError(operation, timeoutMs));
+        timer = setTimeout(check, Math.min(wait, left));
+      };
 
-        await new Promise(r => setTimeout(r, 200));
-      }
+      activity.listeners.add(check);
+      check();
+    });
+  }
 
-      throw new BrowserTimeoutError('waitForDomStable', timeoutMs);
-    } finally {
-      this.removeCdpEventListener('Network.requestWillBeSent', onRequestStart);
-      this.removeCdpEventListener('Network.loadingFinished', onRequestDone);
-      this.removeCdpEventListener('Network.loadingFailed', onRequestDone);
-    }
+  async waitForDomStable(tabId: string, opts: DomStableOptions = {}): Promise<void> {
+    const {
+      timeoutMs = 10_000,
+      networkIdleMs = 500,
+      domStableMs = 800,
+    } = opts;
+    const sessionId = await this.ensureSession(tabId);
+    const activity = await this.getPageActivity(sessionId);
+
+    await this.waitForPageActivity(activity, () => {
+      const now = Date.now();
+      // Like Puppeteer's networkidle: requests pending for LONG_REQUEST_MS (long-poll,
+      // streaming fetch) no longer block idle; re-check when the youngest one ages out
+      let youngest = -Infinity;
+      for (const startedAt of activity.activeRequests.values()) youngest = Math.max(youngest, startedAt);
+      const agesOutIn = youngest + CdpEngine.LONG_REQUEST_MS - now;
+      if (agesOutIn > 0) return agesOutIn;
+      return Math.max(
+        networkIdleMs - (now - activity.lastNetworkActivity),
+        domStableMs - (now - activity.lastMutation),
+      );
+    }, timeoutMs, 'waitForDomStable');
   }
 
   // --- Wait for page load ---
 
   private async waitForLoad(sessionId: string, tabId: string, timeoutMs = 15_000): Promise<void> {
-    await this.sendCDP('Page.enable', {}, sessionId);
-
     const start = Date.now();
-    while (Date.now() - start < timeoutMs) {
-      try {
-        const resp = await this.sendCDP('Runtime.evaluate', {
-          expression: 'document.readyState',
-          returnByValue: true,
-        }, sessionId);
-        if (resp.result?.result?.value === 'complete') break;
-      } catch { /* ignore */ }
-      await new Promise(r => setTimeout(r, 500));
+    const activity = await this.getPageActivity(sessionId);
+
+    // One readyState check covers loads that finished before we attached;
+    // otherwise Page.loadEventFired is pushed to us
+    let complete = false;
+    try {
+      const resp = await this.sendCDP('Runtime.evaluate', {
+        expression: 'document.readyState',
+        returnByValue: true,
+      }, sessionId);
+      complete = resp.result?.result?.value === 'complete';
+    } catch { /* ignore */ }
+    if (!complete) {
+      await this.waitForPageActivity(
+        activity,
+        () => (activity.loaded ? 0 : Infinity),
+        Math.max(0, timeoutMs - (Date.now() - start)),
+        'waitForLoad',
+      ).catch(() => { /* fall through to the stability wait */ });
     }
 
-    // Wait for DOM stability after readyState is complete
+    // Wait for DOM stability after the load event
     await this.waitForDomStable(tabId, {
       timeoutMs: Math.max(1_000, timeoutMs - (Date.now() - start)),
       networkIdleMs: 500,
@@ -637,6 +829,163 @@ export class CdpEngine implements BrowserEngine {
     return resp.result?.nodes || [];
   }
 
+  /** Caps on an incremental AX fetch before falling back to getFullAXTree */
+  private static readonly MAX_DELTA_NODES = 400;
+  private static readonly MAX_DELTA_DEPTH = 40;
+  private static readonly DELTA_OBJECT_GROUP = 'sman-ax-delta';
+  /** Send a delta instead of the full tree only below this size ratio */
+  private static readonly MAX_DELTA_RATIO = 0.6;
+
+  /**
+   * AX nodes for a snapshot: previous tree + re-fetched subtrees of the
+   * elements mutated since the last snapshot (and `touched` backend nodes,
+   * whose property changes — value, checked — the MutationObserver cannot see),
+   * or the full tree when there is no usable baseline.
+   */
+  private async fetchSnapshotAxTree(
+    targetId: string,
+    sessionId: string,
+    opts: SnapshotOptions,
+  ): Promise<{ nodes: AxNode[]; epoch: number | null }> {
+    const activity = this.pageActivity.get(sessionId);
+    const prev = this.cachedAxNodes.get(targetId);
+    const baseline = this.axTreeState.get(targetId);
+
+    if (opts.incremental && activity && prev?.length && baseline?.epoch === activity.documentEpoch) {
+      const epoch = activity.documentEpoch;
+      const nodes = await this.fetchAxDelta(sessionId, prev, opts.touched ?? []).catch(() => null);
+      if (nodes && activity.documentEpoch === epoch) return { nodes, epoch };
+    }
+
+    // Full fetch — reset the dirty set first so mutations during the fetch show up next time
+    const epoch = activity ? activity.documentEpoch : null;
+    if (activity) {
+      await this.takeDirtyRoots(sessionId).catch(() => null);
+      this.sendCDP('Runtime.releaseObjectGroup', { objectGroup: CdpEngine.DELTA_OBJECT_GROUP }, sessionId).catch(() => { /* best effort */ });
+    }
+    return { nodes: await this.fetchAxTree(sessionId), epoch };
+  }
+
+  /** objectIds of the topmost elements mutated since the last call; null when unknown / too many */
+  private async takeDirtyRoots(sessionId: string): Promise<string[] | null> {
+    const resp = await this.sendCDP('Runtime.evaluate', {
+      expression: 'window.__smanTakeDirty ? window.__smanTakeDirty() : null',
+      objectGroup: CdpEngine.DELTA_OBJECT_GROUP,
+    }, sessionId);
+    const list = resp.result?.result;
+    if (list?.subtype !== 'array' || !list.objectId) return null;
+
+    const props = await this.sendCDP('Runtime.getProperties', {
+      objectId: list.objectId,
+      ownProperties: true,
+    }, sessionId);
+    return (props.result?.result || [])
+      .filter((p: any) => /^\d+$/.test(p.name) && p.value?.objectId)
+      .map((p: any) => p.value.objectId as string);
+  }
+
+  private async fetchAxDelta(sessionId: string, prev: AxNode[], touched: number[]): Promise<AxNode[] | null> {
+    try {
+      const roots = await this.takeDirtyRoots(sessionId);
+      if (!roots) return null;
+      const targets: Array<{ objectId: string } | { backendNodeId: number }> = [
+        ...roots.map(objectId => ({ objectId })),
+        ...touched.map(backendNodeId => ({ backendNodeId })),
+      ];
+      if (targets.length === 0) return prev;
+
+      const budget = { nodes: CdpEngine.MAX_DELTA_NODES };
+      const subtrees = await Promise.all(targets.map(t => this.fetchAxSubtree(sessionId, t, budget)));
+      if (subtrees.some(s => !s)) return null;
+      return CdpEngine.mergeAxSubtrees(prev, subtrees as AxNode[][]);
+    } finally {
+      this.sendCDP('Runtime.releaseObjectGroup', { objectGroup: CdpEngine.DELTA_OBJECT_GROUP }, sessionId).catch(() => { /* best effort */ });
+    }
+  }
+
+  /** AX subtree rooted at a DOM node, fetched level by level; null when over budget */
+  private async fetchAxSubtree(
+    sessionId: string,
+    target: { objectId: string } | { backendNodeId: number },
+    budget: { nodes: number },
+  ): Promise<AxNode[] | null> {
+    const resp = await this.sendCDP('Accessibility.getPartialAXTree', { ...target, fetchRelatives: false }, sessionId);
+    const root: AxNode | undefined = resp.result?.nodes?.[0];
+    if (!root) return null;
+
+    const nodes: AxNode[] = [root];
+    let frontier = [root];
+    for (let depth = 0; frontier.length > 0; depth++) {
+      const parents = frontier.filter(n => n.childIds?.length);
+      if (parents.length === 0) break;
+      if (depth >= CdpEngine.MAX_DELTA_DEPTH) return null;
+      const responses = await Promise.all(parents.map(n =>
+        this.sendCDP('Accessibility.getChildAXNodes', { id: n.nodeId }, sessionId)));
+      frontier = [];
+      for (const r of responses) {
+        const children: AxNode[] | undefined = r.result?.nodes;
+        if (!children) return null;
+        budget.nodes -= children.length;
+        if (budget.nodes < 0) return null;
+        nodes.push(...children);
+        frontier.push(...children);
+      }
+    }
+    return nodes;
+  }
+
+  /**
+   * Replace subtrees of `prev` with re-fetched ones (first node of each is
+   * the subtree root). Returns null when a root is not in `prev`.
+   */
+  static mergeAxSubtrees(prev: AxNode[], subtrees: AxNode[][]): AxNode[] | null {
+    const nodeMap = new Map<string, AxNode>();
+    for (const n of prev) nodeMap.set(n.nodeId, n);
+
+    for (const subtree of subtrees) {
+      const root = subtree[0];
+      const old = root && nodeMap.get(root.nodeId);
+      if (!old) return null;
+      const stack = [...(old.childIds ?? [])];
+      while (stack.length > 0) {
+        const id = stack.pop()!;
+        const child = nodeMap.get(id);
+        if (!child) continue;
+        nodeMap.delete(id);
+        stack.push(...(child.childIds ?? []));
+      }
+      for (const n of subtree) nodeMap.set(n.nodeId, n);
+    }
+    return Array.from(nodeMap.values());
+  }
+
+  /**
+   * Line-level delta between two serialized trees: removed lines ("- ") in
+   * old order, then added lines ("+ ") in new order. Empty when identical.
+   */
+  static diffSerializedTrees(prev: string, next: string): string {
+    const prevLines = prev ? prev.split('\n') : [];
+    const nextLines = next ? next.split('\n') : [];
+    const remaining = new Map<string, number>();
+    for (const line of prevLines) remaining.set(line, (remaining.get(line) ?? 0) + 1);
+
+    const added: string[] = [];
+    for (const line of nextLines) {
+      const n = remaining.get(line) ?? 0;
+      if (n > 0) remaining.set(line, n - 1);
+      else added.push(`+ ${line}`);
+    }
+    const removed: string[] = [];
+    for (const line of prevLines) {
+      const n = remaining.get(line) ?? 0;
+      if (n > 0) {
+        removed.push(`- ${line}`);
+        remaining.set(line, n - 1);
+      }
+    }
+    return [...removed, ...added].join('\n');
+  }
+
   /**
    * Serialize AX nodes into a compact indented string.
    * Each line: [role] "name" = "value" [key=value, ...] ref=<nodeId>
@@ -748,32 +1097,47 @@ export class CdpEngine implements BrowserEngine {
     return result;
   }
 
-  /** Full snapshot with AX tree — used by snapshot() and navigate() */
-  private async takeFullSnapshot(targetId: string): Promise<PageSnapshot> {
+  /**
+   * Full snapshot with AX tree — used by snapshot() and navigate().
+   * With `incremental` (post-action snapshots) only changed subtrees are
+   * fetched and a line delta against the previous snapshot is attached.
+   */
+  private async takeFullSnapshot(targetId: string, opts: SnapshotOptions = {}): Promise<PageSnapshot> {
     const sessionId = await this.ensureSession(targetId);
 
-    const [pageInfoResp, axNodes] = await Promise.all([
+    const [pageInfoResp, tree] = await Promise.all([
       this.sendCDP('Runtime.evaluate', {
         expression: `JSON.stringify({title: document.title, url: location.href})`,
         returnByValue: true,
       }, sessionId),
-      this.fetchAxTree(sessionId).catch(() => [] as AxNode[]),
+      this.fetchSnapshotAxTree(targetId, sessionId, opts).catch(() => ({ nodes: [] as AxNode[], epoch: null })),
     ]);
+    const axNodes = tree.nodes;
 
     const raw = pageInfoResp.result?.result?.value;
     const parsed = raw ? JSON.parse(raw) : { title: '', url: '' };
 
     const serialized = CdpEngine.serializeAxTree(axNodes);
 
+    // Delta only pays off when it is clearly smaller than the tree itself
+    let delta: string | undefined;
+    const previous = this.axTreeState.get(targetId);
+    if (opts.incremental && previous && axNodes.length > 0) {
+      const diff = CdpEngine.diffSerializedTrees(previous.serialized, serialized);
+      if (diff.length < serialized.length * CdpEngine.MAX_DELTA_RATIO) delta = diff || '(no changes)';
+    }
+
     // Cache AX nodes for ref-based element operations
     if (axNodes.length > 0) {
       this.cachedAxNodes.set(targetId, axNodes);
+      this.axTreeState.set(targetId, { serialized, epoch: tree.epoch });
     }
 
     const snapshot: PageSnapshot = {
       title: parsed.title || '',
       url: parsed.url || '',
       accessibilityTree: serialized,
+      accessibilityTreeDelta: delta,
       axNodes: axNodes.length > 0 ? axNodes : undefined,
       isLoginPage: false,
     };
@@ -789,7 +1153,7 @@ export class CdpEngine implements BrowserEngine {
   // --- Ref-based element operations ---
 
   /** Resolve an AX ref (nodeId) to a CDP RemoteObject via backendDOMNodeId */
-  private async resolveAxRef(tabId: string, ref: string): Promise<{ objectId: string; sessionId: string }> {
+  private async resolveAxRef(tabId: string, ref: string): Promise<{ objectId: string; sessionId: string; backendNodeId: number }> {
     const axNodes = this.cachedAxNodes.get(tabId);
     if (!axNodes?.length) {
       throw new BrowserConnectionError('No cached accessibility tree. Call snapshot or navigate first.');
@@ -808,13 +1172,13 @@ export class CdpEngine implements BrowserEngine {
     if (!resolveResp.result?.object?.objectId) {
       throw new BrowserConnectionError(`Failed to resolve ref "${ref}" to DOM element.`);
     }
-    return { objectId: resolveResp.result.object.objectId, sessionId };
+    return { objectId: resolveResp.result.object.objectId, sessionId, backendNodeId: node.backendDOMNodeId };
   }
 
   /** Click an element by AX ref */
   private async clickByRef(tabId: string, ref: string): Promise<PageSnapshot> {
     await this.ensureConnected();
-    const { objectId, sessionId } = await this.resolveAxRef(tabId, ref);
+    const { objectId, sessionId, backendNodeId } = await this.resolveAxRef(tabId, ref);
     const clickFn = `(el) => { el.scrollIntoView({ block: 'center' }); el.click(); return true; }`;
     await this.sendCDP('Runtime.callFunctionOn', {
       functionDeclaration: clickFn,
@@ -822,13 +1186,13 @@ export class CdpEngine implements BrowserEngine {
       returnByValue: true,
     }, sessionId);
     await this.waitForDomStable(tabId, CdpEngine.ACTION_STABLE_OPTS).catch(() => { /* non-fatal */ });
-    return this.takeFullSnapshot(tabId);
+    return this.takeFullSnapshot(tabId, { incremental: true, touched: [backendNodeId] });
   }
 
   /** Fill a form field by AX ref */
   private async fillByRef(tabId: string, ref: string, value: string): Promise<PageSnapshot> {
     await this.ensureConnected();
-    const { objectId, sessionId } = await this.resolveAxRef(tabId, ref);
+    const { objectId, sessionId, backendNodeId } = await this.resolveAxRef(tabId, ref);
     const valueJson = JSON.stringify(value);
     const fillFn = `(el) => { el.focus(); el.value = ${valueJson}; el.dispatchEvent(new Event('input', { bubbles: true })); el.dispatchEvent(new Event('change', { bubbles: true })); return true; }`;
     await this.sendCDP('Runtime.callFunctionOn', {
@@ -838,7 +1202,7 @@ export class CdpEngine implements BrowserEngine {
       arguments: [],
     }, sessionId);
     await this.waitForDomStable(tabId, CdpEngine.ACTION_STABLE_OPTS).catch(() => { /* non-fatal */ });
-    return this.takeFullSnapshot(tabId);
+    return this.takeFullSnapshot(tabId, { incremental: true, touched: [backendNodeId] });
   }
 
   /** Lightweight snapshot — only title/url, no AX tree */
@@ -988,7 +1352,7 @@ export class CdpEngine implements BrowserEngine {
       throw new Error(resp.result.result.value.error);
     }
     await this.waitForDomStable(tabId, CdpEngine.ACTION_STABLE_OPTS).catch(() => { /* non-fatal */ });
-    return this.takeFullSnapshot(tabId);
+    return this.takeFullSnapshot(tabId, { incremental: true });
   }
 
   /** Execute JS then take a lightweight snapshot (title/url only, no AX tree). */
@@ -1122,8 +1486,10 @@ export class CdpEngine implements BrowserEngine {
     await this.ensureConnected();
     await this.sendCDP('Target.closeTarget', { targetId: tabId });
     this.tabs.delete(tabId);
+    this.dropPageActivity(this.sessions.get(tabId));
     this.sessions.delete(tabId);
     this.cachedAxNodes.delete(tabId);
+    this.axTreeState.delete(tabId);
   }
 
   async dispose(): Promise<void> {
@@ -1137,7 +1503,10 @@ export class CdpEngine implements BrowserEngine {
     this.tabs.clear();
     this.sessions.clear();
     this.cachedAxNodes.clear();
+    this.axTreeState.clear();
     this.cdpEventHandlers.clear();
+    this.pageActivity.clear();
+    this.pageActivityReady.clear();
     // Clear pending
     for (const { timer } of this.pending.values()) {
       clearTimeout(timer);
@@ -8,7 +8,7 @@ import { z } from 'zod';
 import { createSdkMcpServer, tool } from '@anthropic-ai/claude-agent-sdk';
 import type { McpSdkServerConfigWithInstance } from '@anthropic-ai/claude-agent-sdk';
 import type { WebAccessService } from './web-access-service.js';
-import { BrowserConnectionError } from './browser-engine.js';
+import { BrowserConnectionError, type PageSnapshot } from './browser-engine.js';
 import { loadExperiences, addExperience } from './url-experience-store.js';
 import { readAllHistory } from './chrome-sites.js';
 
@@ -22,6 +22,13 @@ function errorResult(message: string): ToolResult {
   return textResult(message, true);
 }
 
+/** Tree fields for post-action results: the delta against the previous snapshot when available */
+function treeFields(snapshot: PageSnapshot): { accessibilityTree: string } | { accessibilityTreeDelta: string } {
+  return snapshot.accessibilityTreeDelta !== undefined
+    ? { accessibilityTreeDelta: snapshot.accessibilityTreeDelta }
+    : { accessibilityTree: snapshot.accessibilityTree };
+}
+
 /** Wrap a handler to catch engine-unavailable errors */
 function withEngineCheck(
   service: WebAccessService,
@@ -152,7 +159,8 @@ export function createWebAccessMcpServer(service: WebAccessService): McpSdkServe
 
   const clickTool = tool(
     'web_access_click',
-    'Click an element on the page. Prefer ref from accessibility tree snapshot; use CSS selector as fallback.',
+    'Click an element on the page. Prefer ref from accessibility tree snapshot; use CSS selector as fallback. '
+    + 'May return accessibilityTreeDelta instead of the full tree: "- " lines were removed and "+ " lines added since the previous snapshot.',
     {
       tab_id: z.string().describe('Tab ID'),
       ref: z.string().optional().describe('Element ref from accessibility tree (e.g. "e5"). Preferred over selector.'),
@@ -166,7 +174,7 @@ export function createWebAccessMcpServer(service: WebAccessService): McpSdkServe
       return textResult(JSON.stringify({
         title: snapshot.title,
         url: snapshot.url,
-        accessibilityTree: snapshot.accessibilityTree,
+        ...treeFields(snapshot),
         isLoginPage: snapshot.isLoginPage,
       }));
     }),
@@ -174,7 +182,8 @@ export function createWebAccessMcpServer(service: WebAccessService): McpSdkServe
 
   const fillTool = tool(
     'web_access_fill',
-    'Fill a form field with a value. Prefer ref from accessibility tree snapshot; use CSS selector as fallback.',
+    'Fill a form field with a value. Prefer ref from accessibility tree snapshot; use CSS selector as fallback. '
+    + 'May return accessibilityTreeDelta instead of the full tree (see web_access_click).',
     {
       tab_id: z.string().describe('Tab ID'),
       ref: z.string().optional().describe('Element ref from accessibility tree (e.g. "e5"). Preferred over selector.'),
@@ -189,7 +198,7 @@ export function createWebAccessMcpServer(service: WebAccessService): McpSdkServe
       return textResult(JSON.stringify({
         title: snapshot.title,
         url: snapshot.url,
-        accessibilityTree: snapshot.accessibilityTree,
+        ...treeFields(snapshot),
         isLoginPage: snapshot.isLoginPage,
       }));
     }),
@@ -0,0 +1,347 @@
+/**
+ * worker_threads pool for synchronous filesystem work that used to run on the
+ * event loop (directory listings, untracked-dir expansion, SmartPath and
+ * crontab.md scans).
+ *
+ * - Typed RPC: run('listDir', { dir }) → Promise<WorkerTaskMap['listDir']['result']>
+ * - Task bodies live in WORKER_SOURCE (evaluated as CommonJS so the pool runs
+ *   the same under tsx and the compiled build); they only do fs I/O and return
+ *   plain data — parsing that needs npm packages stays on the caller's side
+ * - Workers are spawned lazily up to `size`, one job each; extra jobs queue
+ *   FIFO. A crashed or timed-out worker is replaced on the next job
+ * - Workers are unref'd: an idle pool never keeps the process alive
+ */
+
+import os from 'node:os';
+import { Worker } from 'node:worker_threads';
+import { createLogger } from './utils/logger.js';
+
+const log = createLogger('WorkerPool');
+
+const DEFAULT_TASK_TIMEOUT_MS = 30_000;
+
+// ── Task contracts ────────────────────────────────────────────────
+
+export interface WorkerDirEntry {
+  name: string;
+  type: 'file' | 'directory';
+  size?: number;
+}
+
+export interface WorkerTaskMap {
+  /** One directory level with file sizes; null when `dir` is not a directory */
+  listDir: {
+    args: { dir: string };
+    result: WorkerDirEntry[] | null;
+  };
+  /**
+   * Expand untracked directories (workspace-relative, posix) into files.
+   * Directories in skipDirs are reported as `dir/` instead of being entered.
+   */
+  expandUntracked: {
+    args: { root: string; dirs: string[]; skipDirs: string[]; maxDepth: number; maxFiles: number };
+    result: string[];
+  };
+  /** Raw path.md contents of a SmartPath directory; legacy {id}.md files are only named */
+  readSmartPathFiles: {
+    args: { dir: string };
+    result: { files: Array<{ file: string; raw: string; mtimeMs: number }>; legacy: string[] } | null;
+  };
+  /** crontab.md of every skill under {workspace}/.claude/skills */
+  readCrontabs: {
+    args: { workspaces: string[] };
+    result: Array<{ workspace: string; skillName: string; content: string }>;
+  };
+  /** fs.existsSync for each path */
+  pathsExist: {
+    args: { paths: string[] };
+    result: boolean[];
+  };
+}
+
+export type WorkerTaskName = keyof WorkerTaskMap;
+
+const WORKER_SOURCE = `
+const fs = require('node:fs');
+const path = require('node:path');
+const { parentPort } = require('node:worker_threads');
+
+const tasks = {
+  listDir({ dir }) {
+    let stat;
+    try { stat = fs.statSync(dir); } catch { return null; }
+    if (!stat.isDirectory()) return null;
+    const entries = [];
+    for (const entry of fs.readdirSync(dir, { withFileTypes: true })) {
+      if (entry.isDirectory()) {
+        entries.push({ name: entry.name, type: 'directory' });
+      } else if (entry.isFile()) {
+        try {
+          entries.push({ name: entry.name, type: 'file', size: fs.statSync(path.join(dir, entry.name)).size });
+        } catch {
+          entries.push({ name: entry.name, type: 'file' });
+        }
+      }
+    }
+    return entries;
+  },
+
+  expandUntracked({ root, dirs, skipDirs, maxDepth, maxFiles }) {
+    const skip = new Set(skipDirs);
+    const out = [];
+    const expand = (rel, depth) => {
+      if (depth > maxDepth || out.length >= maxFiles) return;
+      let entries;
+      try { entries = fs.readdirSync(path.join(root, rel), { withFileTypes: true }); } catch { return; }
+      for (const entry of entries) {
+        if (out.length >= maxFiles) break;
+        if (entry.name.startsWith('.')) continue;
+        const child = rel ? rel + '/' + entry.name : entry.name;
+        if (entry.isDirectory()) {
+          if (skip.has(entry.name)) { out.push(child + '/'); continue; }
+          expand(child, depth + 1);
+        } else if (entry.isFile()) {
+          out.push(child);
+        }
+      }
+    };
+    for (const dir of dirs) expand(dir.replace(/\\/+$/, ''), 0);
+    return out;
+  },
+
+  readSmartPathFiles({ dir }) {
+    let entries;
+    try { entries = fs.readdirSync(dir, { withFileTypes: true }); } catch { return null; }
+    const files = [];
+    const legacy = [];
+    for (const entry of entries) {
+      if (entry.name.endsWith('.md')) {
+        legacy.push(entry.name);
+      } else if (entry.isDirectory()) {
+        const file = path.join(dir, entry.name, 'path.md');
+        try { files.push({ file, raw: fs.readFileSync(file, 'utf-8'), mtimeMs: fs.statSync(file).mtimeMs }); } catch { /* no path.md */ }
+      }
+    }
+    return { files, legacy };
+  },
+
+  readCrontabs({ workspaces }) {
+    const out = [];
+    for (const workspace of workspaces) {
+      const skillsDir = path.join(workspace, '.claude', 'skills');
+      let entries;
+      try { entries = fs.readdirSync(skillsDir, { withFileTypes: true }); } catch { continue; }
+      for (const entry of entries) {
+        if (!entry.isDirectory()) continue;
+        try {
+          const content = fs.readFileSync(path.join(skillsDir, entry.name, 'crontab.md'), 'utf-8');
+          out.push({ workspace, skillName: entry.name, content });
+        } catch { /* no crontab.md */ }
+      }
+    }
+    return out;
+  },
+
+  pathsExist({ paths }) {
+    return paths.map(p => fs.existsSync(p));
+  },
+};
+
+parentPort.on('message', ({ id, task, args }) => {
+  try {
+    parentPort.postMessage({ id, result: tasks[task](args) });
+  } catch (err) {
+    parentPort.postMessage({ id, error: err && err.message ? err.message : String(err) });
+  }
+});
+`;
+
+// ── Pool ──────────────────────────────────────────────────────────
+
+export interface WorkerPoolOptions {
+  /** Max worker threads (default: CPU count - 1, clamped to 1..4) */
+  size?: number;
+  /** A job running longer than this terminates its worker (default 30s) */
+  taskTimeoutMs?: number;
+}
+
+export interface WorkerPoolStats {
+  workers: number;
+  busy: number;
+  queued: number;
+  completed: number;
+  failed: number;
+  /** Time jobs spent waiting for a free worker */
+  queueWaitMs: { avg: number; max: number };
+  runMs: { avg: number; max: number };
+}
+
+interface Job {
+  id: number;
+  task: WorkerTaskName;
+  args: unknown;
+  enqueuedAt: number;
+  startedAt: number;
+  resolve: (value: any) => void;
+  reject: (err: Error) => void;
+}
+
+interface PoolWorker {
+  worker: Worker;
+  job: Job | null;
+  timer: ReturnType<typeof setTimeout> | null;
+}
+
+export class WorkerPool {
+  private readonly size: number;
+  private readonly taskTimeoutMs: number;
+  private workers: PoolWorker[] = [];
+  private queue: Job[] = [];
+  private nextId = 1;
+  private closed = false;
+
+  private completed = 0;
+  private failed = 0;
+  private waitTotalMs = 0;
+  private waitMaxMs = 0;
+  private runTotalMs = 0;
+  private runMaxMs = 0;
+
+  constructor(options: WorkerPoolOptions = {}) {
+    const cpus = typeof os.availableParallelism === 'function' ? os.availableParallelism() : os.cpus().length;
+    this.size = Math.max(1, options.size ?? Math.min(4, Math.max(1, cpus - 1)));
+    this.taskTimeoutMs = options.taskTimeoutMs ?? DEFAULT_TASK_TIMEOUT_MS;
+  }
+
+  run<K extends WorkerTaskName>(task: K, args: WorkerTaskMap[K]['args']): Promise<WorkerTaskMap[K]['result']> {
+    if (this.closed) return Promise.reject(new Error('Worker pool is closed'));
+    return new Promise((resolve, reject) => {
+      this.queue.push({ id: this.nextId++, task, args, enqueuedAt: Date.now(), startedAt: 0, resolve, reject });
+      this.dispatch();
+    });
+  }
+
+  stats(): WorkerPoolStats {
+    const done = this.completed + this.failed;
+    return {
+      workers: this.workers.length,
+      busy: this.workers.filter(w => w.job).length,
+      queued: this.queue.length,
+      completed: this.completed,
+      failed: this.failed,
+      queueWaitMs: { avg: done ? Math.round(this.waitTotalMs / done) : 0, max: this.waitMaxMs },
+      runMs: { avg: done ? Math.round(this.runTotalMs / done) : 0, max: this.runMaxMs },
+    };
+  }
+
+  /** Reject queued and running jobs and stop all workers */
+  async close(): Promise<void> {
+    this.closed = true;
+    const err = new Error('Worker pool is closed');
+    for (const job of this.queue.splice(0)) job.reject(err);
+    const workers = this.workers.splice(0);
+    for (const w of workers) {
+      if (w.timer) clearTimeout(w.timer);
+      w.job?.reject(err);
+      w.job = null;
+    }
+    await Promise.all(workers.map(w => w.worker.terminate()));
+  }
+
+  private dispatch(): void {
+    while (this.queue.length > 0) {
+      let slot = this.workers.find(w => !w.job);
+      if (!slot) {
+        if (this.workers.length >= this.size) return;
+        slot = this.spawn();
+      }
+      const job = this.queue.shift()!;
+      job.startedAt = Date.now();
+      const wait = job.startedAt - job.enqueuedAt;
+      this.waitTotalMs += wait;
+      this.waitMaxMs = Math.max(this.waitMaxMs, wait);
+      slot.job = job;
+      // The worker is refed while it has a job, so pending RPCs keep the process alive
+      slot.worker.ref();
+      const busy = slot;
+      slot.timer = setTimeout(() => {
+        this.fail(busy, new Error(`Worker task ${job.task} timed out after ${this.taskTimeoutMs}ms`));
+        void busy.worker.terminate();
+      }, this.taskTimeoutMs);
+      slot.worker.postMessage({ id: job.id, task: job.task, args: job.args });
+    }
+  }
+
+  private spawn(): PoolWorker {
+    const worker = new Worker(WORKER_SOURCE, { eval: true });
+    worker.unref();
+    const slot: PoolWorker = { worker, job: null, timer: null };
+
+    worker.on('message', (msg: { id: number; result?: unknown; error?: string }) => {
+      const job = slot.job;
+      if (!job || job.id !== msg.id) return;
+      this.finish(slot);
+      if (msg.error !== undefined) {
+        this.failed++;
+        job.reject(new Error(msg.error));
+      } else {
+        this.completed++;
+        job.resolve(msg.result);
+      }
+      this.dispatch();
+    });
+    worker.on('error', (err) => {
+      log.warn('Pool worker crashed', { error: err.message });
+      this.fail(slot, err);
+    });
+    worker.on('exit', () => {
+      this.fail(slot, new Error('Pool worker exited'));
+    });
+
+    this.workers.push(slot);
+    return slot;
+  }
+
+  /** Record timing and detach the job from its worker */
+  private finish(slot: PoolWorker): void {
+    if (slot.timer) clearTimeout(slot.timer);
+    slot.timer = null;
+    if (slot.job) {
+      const ran = Date.now() - slot.job.startedAt;
+      this.runTotalMs += ran;
+      this.runMaxMs = Math.max(this.runMaxMs, ran);
+    }
+    slot.job = null;
+    slot.worker.unref();
+  }
+
+  /** Drop a broken worker, rejecting its job; queued jobs go to a fresh worker */
+  private fail(slot: PoolWorker, err: Error): void {
+    const index = this.workers.indexOf(slot);
+    if (index < 0) return;
+    this.workers.splice(index, 1);
+    const job = slot.job;
+    this.finish(slot);
+    if (job) {
+      this.failed++;
+      job.reject(err);
+    }
+    if (!this.closed) this.dispatch();
+  }
+}
+
+// ── Shared instance ──────────────────────────────────────────────
+
+let sharedPool: WorkerPool | null = null;
+
+/** Process-wide pool used by the WS handlers */
+export function getWorkerPool(): WorkerPool {
+  if (!sharedPool) sharedPool = new WorkerPool();
+  return sharedPool;
+}
+
+export async function closeWorkerPool(): Promise<void> {
+  const pool = sharedPool;
+  sharedPool = null;
+  await pool?.close();
+}
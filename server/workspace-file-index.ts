@@ -0,0 +1,659 @@
+/**
+ * Per-workspace in-memory file index for the code viewer.
+ *
+ * - The initial walk runs in a worker thread, so a 100k-file monorepo never
+ *   blocks the event loop; an in-process async walk is the fallback
+ * - Kept fresh by the shared workspace watcher (workspace-watcher.ts, off-thread):
+ *   changed paths are coalesced and re-stat'ed asynchronously; unknown events
+ *   (or a burst) trigger a rebuild
+ * - A snapshot is persisted to ~/.sman/file-index, so reopening a workspace
+ *   answers its first query from disk while the background rebuild reconciles
+ * - Queries are ranked fuzzy matches (scoreFuzzyPath) served from memory
+ *
+ * VCS metadata and node_modules are neither watched nor indexed
+ * (INDEX_SKIP_DIRS); the directory tree itself still shows everything (see shouldHide).
+ */
+
+import crypto from 'node:crypto';
+import fs from 'node:fs';
+import os from 'node:os';
+import path from 'node:path';
+import { Worker } from 'node:worker_threads';
+import { createLogger } from './utils/logger.js';
+import { subscribeWorkspaceChanges, WATCH_SKIP_DIRS, type WorkspaceChange } from './workspace-watcher.js';
+
+const log = createLogger('WorkspaceFileIndex');
+
+const SNAPSHOT_VERSION = 1;
+const DEFAULT_MAX_FILES = 500_000;
+const WATCH_DEBOUNCE_MS = 100;
+const PERSIST_DEBOUNCE_MS = 5_000;
+/** More pending changes than this → a full rebuild is cheaper */
+const MAX_PENDING_CHANGES = 2_000;
+/** Without a working watcher, queries older than this trigger a background rebuild */
+const UNWATCHED_REBUILD_MS = 60_000;
+/** Open indexes kept at once; the least recently used one is disposed */
+const MAX_OPEN_INDEXES = 8;
+
+export const INDEX_SKIP_DIRS = WATCH_SKIP_DIRS;
+
+// ── Fuzzy scoring ──────────────────────────────────────────────────
+
+const SCORE_MATCH = 16;
+const SCORE_GAP_START = -3;
+const SCORE_GAP_EXTENSION = -1;
+const BONUS_BOUNDARY = 8;
+const BONUS_CAMEL = 7;
+const BONUS_CONSECUTIVE = 4;
+const BONUS_BASENAME = 24;
+const BONUS_EXACT_NAME = 40;
+
+function isSeparator(ch: string): boolean {
+  return ch === '/' || ch === '_' || ch === '-' || ch === '.' || ch === ' ';
+}
+
+/**
+ * Score `query` (already lower-cased) as a subsequence of `target[from..]`.
+ *
+ * fzf v1 style: a forward scan finds the first complete match, a backward scan
+ * from its end shrinks it to the tightest window, and the window is scored —
+ * matches on word boundaries / camelCase humps and consecutive runs earn
+ * bonuses, gaps cost a little. O(target length); null when there is no match.
+ */
+function scoreWindow(query: string, target: string, lower: string, from: number): number | null {
+  let qi = 0;
+  let end = -1;
+  for (let i = from; i < lower.length; i++) {
+    if (lower[i] === query[qi] && ++qi === query.length) {
+      end = i + 1;
+      break;
+    }
+  }
+  if (end < 0) return null;
+
+  let start = end - 1;
+  qi = query.length - 1;
+  for (let i = end - 1; i >= from; i--) {
+    if (lower[i] === query[qi] && --qi < 0) {
+      start = i;
+      break;
+    }
+  }
+
+  let score = 0;
+  let inGap = false;
+  let consecutive = 0;
+  qi = 0;
+  for (let i = start; i < end; i++) {
+    if (qi < query.length && lower[i] === query[qi]) {
+      let bonus = 0;
+      if (i === from || isSeparator(target[i - 1])) {
+        bonus = BONUS_BOUNDARY;
+      } else if (target[i] !== lower[i] && target[i - 1] === lower[i - 1] && !isSeparator(target[i - 1])) {
+        bonus = BONUS_CAMEL;
+      }
+      if (consecutive > 0) bonus = Math.max(bonus, BONUS_CONSECUTIVE);
+      // The first query char counts double: "where the match starts" matters most
+      score += SCORE_MATCH + (qi === 0 ? bonus * 2 : bonus);
+      consecutive++;
+      inGap = false;
+      qi++;
+    } else {
+      score += inGap ? SCORE_GAP_EXTENSION : SCORE_GAP_START;
+      consecutive = 0;
+      inGap = true;
+    }
+  }
+  return score;
+}
+
+/** Lower-case the query and drop whitespace; backslashes count as '/' */
+export function normalizeFuzzyQuery(query: string): string {
+  return query.toLowerCase().replace(/\s+/g, '').replace(/\\/g, '/');
+}
+
+/**
+ * Rank `filePath` (posix, workspace-relative) against a normalized query.
+ * Higher is better, null means no match. Queries without '/' prefer matches
+ * inside the file name; otherwise the whole path is matched.
+ */
+export function scoreFuzzyPath(query: string, filePath: string, lowerPath = filePath.toLowerCase()): number | null {
+  if (!query) return null;
+  const nameStart = filePath.lastIndexOf('/') + 1;
+
+  if (!query.includes('/')) {
+    const nameScore = scoreWindow(query, filePath, lowerPath, nameStart);
+    if (nameScore !== null) {
+      let score = nameScore + BONUS_BASENAME;
+      const dot = lowerPath.indexOf('.', nameStart + 1);
+      const stem = lowerPath.slice(nameStart, dot < 0 ? undefined : dot);
+      if (stem === query || lowerPath.slice(nameStart) === query) score += BONUS_EXACT_NAME;
+      return score;
+    }
+  }
+  return scoreWindow(query, filePath, lowerPath, 0);
+}
+
+// ── Index ──────────────────────────────────────────────────────────
+
+interface IndexedFile {
+  path: string;
+  lower: string;
+  size: number;
+}
+
+export interface FileIndexSearchOptions {
+  limit?: number;
+  /** Applied to the file name before scoring */
+  filter?: (fileName: string) => boolean;
+}
+
+export interface FileIndexMatch {
+  filePath: string;
+  fileName: string;
+  score: number;
+}
+
+export interface WorkspaceFileIndexOptions {
+  /** Snapshot directory; null disables persistence (default ~/.sman/file-index) */
+  cacheDir?: string | null;
+  maxFiles?: number;
+  /** Keep the index fresh with the shared workspace watcher (default true) */
+  watch?: boolean;
+}
+
+interface FileListResult {
+  files: Array<[string, number]>;
+  truncated: boolean;
+}
+
+interface Snapshot extends FileListResult {
+  version: number;
+  root: string;
+  builtAt: number;
+}
+
+export class WorkspaceFileIndex {
+  readonly root: string;
+  private readonly cacheDir: string | null;
+  private readonly maxFiles: number;
+  private readonly watchEnabled: boolean;
+
+  private files: IndexedFile[] = [];
+  private byPath = new Map<string, number>();
+  private ready = false;
+  private truncated = false;
+  private builtAt = 0;
+  private startPromise: Promise<void> | null = null;
+  private building: Promise<void> | null = null;
+  private worker: Worker | null = null;
+
+  private unwatch: (() => void) | null = null;
+  /** Settles startWatcher() if the index is disposed before the watcher is ready */
+  private watchSettled: (() => void) | null = null;
+  private watching = false;
+  private pendingChanges = new Map<string, string>();
+  private fullRescan = false;
+  private flushing = false;
+  private flushTimer: ReturnType<typeof setTimeout> | null = null;
+  private persistTimer: ReturnType<typeof setTimeout> | null = null;
+  private disposed = false;
+
+  constructor(root: string, options: WorkspaceFileIndexOptions = {}) {
+    this.root = path.resolve(root);
+    this.cacheDir = options.cacheDir === undefined ? path.join(os.homedir(), '.sman', 'file-index') : options.cacheDir;
+    this.maxFiles = options.maxFiles ?? DEFAULT_MAX_FILES;
+    this.watchEnabled = options.watch ?? true;
+  }
+
+  get isReady(): boolean {
+    return this.ready;
+  }
+
+  get size(): number {
+    return this.files.length;
+  }
+
+  /**
+   * Load the snapshot (if any) and start watching + rebuilding.
+   * Resolves once the index can answer queries; idempotent.
+   */
+  start(): Promise<void> {
+    if (!this.startPromise) {
+      this.startPromise = (async () => {
+        // Walk only once watches are in place, so no change slips in between
+        const watcherReady = this.watchEnabled ? this.startWatcher() : Promise.resolve();
+        const snapshot = await this.loadSnapshot();
+        if (snapshot) {
+          this.replaceAll(snapshot.files);
+          this.truncated = snapshot.truncated;
+          this.builtAt = snapshot.builtAt;
+          this.ready = true;
+          // Reconcile changes made while the workspace was closed
+          void watcherReady.then(() => this.rebuild());
+          return;
+        }
+        await watcherReady;
+        await this.rebuild();
+      })();
+    }
+    return this.startPromise;
+  }
+
+  search(query: string, options: FileIndexSearchOptions = {}): FileIndexMatch[] {
+    const limit = options.limit ?? 50;
+    const normalized = normalizeFuzzyQuery(query);
+    if (!normalized || limit <= 0) return [];
+    this.maybeRefreshUnwatched();
+
+    // Bounded top-K, kept sorted best-first
+    const top: Array<{ score: number; file: IndexedFile }> = [];
+    const worse = (a: { score: number; file: IndexedFile }, b: { score: number; file: IndexedFile }) =>
+      a.score !== b.score ? a.score < b.score
+        : a.file.path.length !== b.file.path.length ? a.file.path.length > b.file.path.length
+          : a.file.path > b.file.path;
+
+    for (const file of this.files) {
+      if (options.filter && !options.filter(file.path.slice(file.path.lastIndexOf('/') + 1))) continue;
+      const score = scoreFuzzyPath(normalized, file.path, file.lower);
+      if (score === null) continue;
+      const candidate = { score, file };
+      if (top.length === limit && !worse(top[limit - 1], candidate)) continue;
+      let i = Math.min(top.length, limit - 1);
+      top[i] = candidate;
+      while (i > 0 && worse(top[i - 1], candidate)) {
+        top[i] = top[i - 1];
+        top[--i] = candidate;
+      }
+    }
+
+    return top.map(({ score, file }) => ({
+      filePath: file.path,
+      fileName: file.path.slice(file.path.lastIndexOf('/') + 1),
+      score,
+    }));
+  }
+
+  /** Workspace-relative path of a file with this exact name (shallowest first), or null */
+  findByName(fileName: string): string | null {
+    let best: string | null = null;
+    for (const file of this.files) {
+      const p = file.path;
+      if (p.length < fileName.length || !p.endsWith(fileName)) continue;
+      if (p.length !== fileName.length && p[p.length - fileName.length - 1] !== '/') continue;
+      if (best === null || p.length < best.length) best = p;
+    }
+    return best;
+  }
+
+  /** Size recorded for a workspace-relative file, undefined when not indexed */
+  sizeOf(relPath: string): number | undefined {
+    const i = this.byPath.get(relPath);
+    return i === undefined ? undefined : this.files[i].size;
+  }
+
+  stats(): { files: number; truncated: boolean; builtAt: number; watching: boolean } {
+    return { files: this.files.length, truncated: this.truncated, builtAt: this.builtAt, watching: this.watching };
+  }
+
+  /** Stop watching; a pending snapshot write is flushed (the returned promise) */
+  dispose(): Promise<void> {
+    this.disposed = true;
+    this.unwatch?.();
+    this.unwatch = null;
+    this.watchSettled?.();
+    this.watching = false;
+    void this.worker?.terminate();
+    this.worker = null;
+    if (this.flushTimer) clearTimeout(this.flushTimer);
+    if (this.persistTimer) {
+      clearTimeout(this.persistTimer);
+      this.persistTimer = null;
+      return this.persist();
+    }
+    return Promise.resolve();
+  }
+
+  // ── Build ──
+
+  /** Full walk (worker thread); the result replaces the index */
+  rebuild(): Promise<void> {
+    if (this.building) return this.building;
+    this.building = (async () => {
+      try {
+        const result = await this.buildFileList();
+        if (this.disposed) return;
+        this.replaceAll(result.files);
+        this.truncated = result.truncated;
+        this.builtAt = Date.now();
+        this.ready = true;
+        this.schedulePersist(0);
+        log.debug('Workspace file index built', { root: this.root, files: this.files.length, truncated: this.truncated });
+      } catch (err) {
+        log.warn('Workspace file index build failed', { root: this.root, error: String(err) });
+      } finally {
+        this.building = null;
+        // Changes seen during the walk may or may not be in it — re-apply them
+        if (this.pendingChanges.size > 0 || this.fullRescan) this.scheduleFlush();
+      }
+    })();
+    return this.building;
+  }
+
+  private async buildFileList(): Promise<FileListResult> {
+    try {
+      return await this.walkInWorker();
+    } catch (err) {
+      if (this.disposed) throw err;
+      log.warn('File index worker failed, walking in-process', { root: this.root, error: String(err) });
+      return walkAsync(this.root, this.maxFiles);
+    }
+  }
+
+  private walkInWorker(): Promise<FileListResult> {
+    return new Promise((resolve, reject) => {
+      const worker = new Worker(WALK_WORKER_SOURCE, {
+        eval: true,
+        workerData: { root: this.root, maxFiles: this.maxFiles, skipDirs: [...INDEX_SKIP_DIRS] },
+      });
+      this.worker = worker;
+      worker.unref();
+      let settled = false;
+      worker.once('message', (result: FileListResult) => {
+        settled = true;
+        resolve(result);
+        void worker.terminate();
+      });
+      worker.once('error', (err) => {
+        settled = true;
+        reject(err);
+      });
+      worker.once('exit', (code) => {
+        if (this.worker === worker) this.worker = null;
+        if (!settled) reject(new Error(`File index worker exited with code ${code}`));
+      });
+    });
+  }
+
+  private replaceAll(entries: Array<[string, number]>): void {
+    const files: IndexedFile[] = new Array(entries.length);
+    const byPath = new Map<string, number>();
+    for (let i = 0; i < entries.length; i++) {
+      const [p, size] = entries[i];
+      files[i] = { path: p, lower: p.toLowerCase(), size };
+      byPath.set(p, i);
+    }
+    this.files = files;
+    this.byPath = byPath;
+  }
+
+  private upsert(rel: string, size: number): void {
+    const i = this.byPath.get(rel);
+    if (i !== undefined) {
+      this.files[i].size = size;
+      return;
+    }
+    if (this.files.length >= this.maxFiles) {
+      this.truncated = true;
+      return;
+    }
+    this.byPath.set(rel, this.files.length);
+    this.files.push({ path: rel, lower: rel.toLowerCase(), size });
+  }
+
+  private remove(rel: string): void {
+    const i = this.byPath.get(rel);
+    if (i === undefined) return;
+    this.byPath.delete(rel);
+    const last = this.files.pop()!;
+    if (i < this.files.length) {
+      this.files[i] = last;
+      this.byPath.set(last.path, i);
+    }
+  }
+
+  /** Remove a file, or everything under a removed directory */
+  private removeTree(rel: string): void {
+    if (this.byPath.has(rel)) {
+      this.remove(rel);
+      return;
+    }
+    const prefix = rel + '/';
+    for (const file of this.files.filter(f => f.path.startsWith(prefix))) this.remove(file.path);
+  }
+
+  // ── Watch ──
+
+  /** Subscribe to the shared workspace watcher; resolves once it watches (or has failed) */
+  private startWatcher(): Promise<void> {
+    return new Promise((resolve) => {
+      this.watchSettled = resolve;
+      this.unwatch = subscribeWorkspaceChanges(this.root, {
+        onChanges: (changes) => this.onWatchEvents(changes),
+        onReady: () => {
+          this.watching = !this.disposed;
+          resolve();
+        },
+        onError: (err) => {
+          log.warn('Workspace watcher failed, falling back to periodic rebuilds', { root: this.root, error: String(err) });
+          this.unwatch = null;
+          this.watching = false;
+          resolve();
+        },
+      });
+    });
+  }
+
+  private onWatchEvents(changes: WorkspaceChange[]): void {
+    for (const [rel, eventType] of changes) {
+      if (rel === null) {
+        this.fullRescan = true;
+        continue;
+      }
+      // 'rename' wins: it means the path appeared or disappeared
+      if (this.pendingChanges.get(rel) !== 'rename') this.pendingChanges.set(rel, eventType);
+    }
+    if (this.pendingChanges.size > MAX_PENDING_CHANGES) this.fullRescan = true;
+    this.scheduleFlush();
+  }
+
+  private maybeRefreshUnwatched(): void {
+    if (!this.watchEnabled || this.watching || this.building || !this.ready) return;
+    if (Date.now() - this.builtAt > UNWATCHED_REBUILD_MS) void this.rebuild();
+  }
+
+  private scheduleFlush(): void {
+    if (this.flushTimer || this.disposed) return;
+    this.flushTimer = setTimeout(() => {
+      this.flushTimer = null;
+      void this.flushChanges();
+    }, WATCH_DEBOUNCE_MS);
+    this.flushTimer.unref?.();
+  }
+
+  private async flushChanges(): Promise<void> {
+    // A running walk or flush picks the pending set up when it finishes
+    if (this.building || this.flushing || this.disposed) return;
+    if (this.fullRescan) {
+      this.fullRescan = false;
+      this.pendingChanges.clear();
+      void this.rebuild();
+      return;
+    }
+
+    this.flushing = true;
+    const changes = [...this.pendingChanges];
+    this.pendingChanges.clear();
+    try {
+      for (const [rel, eventType] of changes) {
+        let stat: fs.Stats;
+        try {
+          stat = await fs.promises.lstat(path.join(this.root, rel));
+        } catch {
+          this.removeTree(rel);
+          continue;
+        }
+        if (stat.isFile()) {
+          this.upsert(rel, stat.size);
+        } else if (stat.isDirectory()) {
+          // A directory that appeared (moved in / extracted) may not report its children
+          if (eventType === 'rename') {
+            const sub = await walkAsync(path.join(this.root, rel), this.maxFiles - this.files.length);
+            for (const [p, size] of sub.files) this.upsert(`${rel}/${p}`, size);
+          }
+        } else {
+          this.remove(rel);
+        }
+      }
+      if (changes.length > 0) this.schedulePersist();
+    } finally {
+      this.flushing = false;
+      if (this.pendingChanges.size > 0 || this.fullRescan) this.scheduleFlush();
+    }
+  }
+
+  // ── Snapshot ──
+
+  private snapshotPath(): string | null {
+    if (!this.cacheDir) return null;
+    const key = crypto.createHash('sha1').update(this.root).digest('hex').slice(0, 16);
+    return path.join(this.cacheDir, `${key}.json`);
+  }
+
+  private async loadSnapshot(): Promise<Snapshot | null> {
+    const file = this.snapshotPath();
+    if (!file) return null;
+    try {
+      const snapshot = JSON.parse(await fs.promises.readFile(file, 'utf-8')) as Snapshot;
+      if (snapshot.version !== SNAPSHOT_VERSION || snapshot.root !== this.root || !Array.isArray(snapshot.files)) return null;
+      return snapshot;
+    } catch {
+      return null;
+    }
+  }
+
+  private schedulePersist(delayMs = PERSIST_DEBOUNCE_MS): void {
+    if (!this.cacheDir || this.disposed) return;
+    if (this.persistTimer) clearTimeout(this.persistTimer);
+    this.persistTimer = setTimeout(() => {
+      this.persistTimer = null;
+      void this.persist();
+    }, delayMs);
+    this.persistTimer.unref?.();
+  }
+
+  private async persist(): Promise<void> {
+    const file = this.snapshotPath();
+    if (!file || !this.ready) return;
+    const snapshot: Snapshot = {
+      version: SNAPSHOT_VERSION,
+      root: this.root,
+      builtAt: this.builtAt,
+      truncated: this.truncated,
+      files: this.files.map(f => [f.path, f.size]),
+    };
+    const tmp = `${file}.${process.pid}.tmp`;
+    try {
+      await fs.promises.mkdir(path.dirname(file), { recursive: true });
+      await fs.promises.writeFile(tmp, JSON.stringify(snapshot));
+      await fs.promises.rename(tmp, file);
+    } catch (err) {
+      log.warn('Failed to persist workspace file index', { root: this.root, error: String(err) });
+      await fs.promises.rm(tmp, { force: true }).catch(() => {});
+    }
+  }
+}
+
+/**
+ * Worker body (evaluated as CommonJS so it runs the same under tsx and the
+ * compiled build). Iterative walk; symlinks are not followed.
+ */
+const WALK_WORKER_SOURCE = `
+const fs = require('node:fs');
+const path = require('node:path');
+const { parentPort, workerData } = require('node:worker_threads');
+const { root, maxFiles, skipDirs } = workerData;
+const skip = new Set(skipDirs);
+const files = [];
+let truncated = false;
+const stack = [''];
+while (stack.length > 0 && !truncated) {
+  const rel = stack.pop();
+  let entries;
+  try { entries = fs.readdirSync(path.join(root, rel), { withFileTypes: true }); } catch { continue; }
+  for (const entry of entries) {
+    const childRel = rel ? rel + '/' + entry.name : entry.name;
+    if (entry.isDirectory()) {
+      if (!skip.has(entry.name)) stack.push(childRel);
+    } else if (entry.isFile()) {
+      if (files.length >= maxFiles) { truncated = true; break; }
+      let size = 0;
+      try { size = fs.statSync(path.join(root, childRel)).size; } catch {}
+      files.push([childRel, size]);
+    }
+  }
+}
+parentPort.postMessage({ files, truncated });
+`;
+
+/** Same walk as the worker, on the async fs API (fallback and subtree adds) */
+async function walkAsync(root: string, maxFiles: number): Promise<FileListResult> {
+  const files: Array<[string, number]> = [];
+  const stack = [''];
+  while (stack.length > 0) {
+    const rel = stack.pop()!;
+    let entries: fs.Dirent[];
+    try {
+      entries = await fs.promises.readdir(path.join(root, rel), { withFileTypes: true });
+    } catch {
+      continue;
+    }
+    for (const entry of entries) {
+      const childRel = rel ? `${rel}/${entry.name}` : entry.name;
+      if (entry.isDirectory()) {
+        if (!INDEX_SKIP_DIRS.has(entry.name)) stack.push(childRel);
+      } else if (entry.isFile()) {
+        if (files.length >= maxFiles) return { files, truncated: true };
+        const size = await fs.promises.stat(path.join(root, childRel)).then(s => s.size, () => 0);
+        files.push([childRel, size]);
+      }
+    }
+  }
+  return { files, truncated: false };
+}
+
+// ── Registry ──────────────────────────────────────────────────────
+
+const indexes = new Map<string, WorkspaceFileIndex>();
+
+/** Index for a workspace, created and started on first use (LRU-bounded) */
+export function getWorkspaceFileIndex(workspace: string): WorkspaceFileIndex {
+  const root = path.resolve(workspace);
+  let index = indexes.get(root);
+  if (index) {
+    // Re-insert to mark as most recently used
+    indexes.delete(root);
+    indexes.set(root, index);
+    return index;
+  }
+  index = new WorkspaceFileIndex(root);
+  indexes.set(root, index);
+  void index.start();
+  if (indexes.size > MAX_OPEN_INDEXES) {
+    const [oldestRoot, oldest] = indexes.entries().next().value as [string, WorkspaceFileIndex];
+    indexes.delete(oldestRoot);
+    void oldest.dispose();
+  }
+  return index;
+}
+
+/** Index for a workspace only if one is already open and ready (never starts one) */
+export function peekWorkspaceFileIndex(workspace: string): WorkspaceFileIndex | null {
+  const index = indexes.get(path.resolve(workspace));
+  return index?.isReady ? index : null;
+}
+
+export function disposeWorkspaceFileIndexes(): void {
+  for (const index of indexes.values()) void index.dispose();
+  indexes.clear();
+}
@@ -0,0 +1,216 @@
+/**
+ * Shared per-workspace file watcher.
+ *
+ * - One watcher per workspace root, shared by every subscriber (file index,
+ *   git state cache) and torn down when the last one unsubscribes
+ * - Runs in a worker thread: installing watches walks the tree, which must
+ *   never block the event loop
+ * - Linux: one non-recursive fs.watch per directory, skipping WATCH_SKIP_DIRS.
+ *   A recursive watch would walk and watch node_modules and .git as well.
+ *   Directories that appear later get watchers as they show up
+ * - macOS / Windows: the native recursive watch (one handle for the whole
+ *   tree); events under skipped directories are dropped
+ * - Changes are batched and delivered as workspace-relative posix paths;
+ *   a null path means "unknown, rescan"
+ */
+
+import path from 'node:path';
+import { Worker } from 'node:worker_threads';
+import { createLogger } from './utils/logger.js';
+
+const log = createLogger('WorkspaceWatcher');
+
+/** Never watched (nor indexed): VCS metadata and dependency trees */
+export const WATCH_SKIP_DIRS = new Set(['.git', '.svn', '.hg', 'node_modules']);
+
+/** Events are batched in the worker for this long before crossing to the main thread */
+const BATCH_MS = 50;
+
+/** [workspace-relative posix path or null (unknown), fs.watch event type] */
+export type WorkspaceChange = [rel: string | null, eventType: string];
+
+export interface WorkspaceWatchListener {
+  onChanges(changes: WorkspaceChange[]): void;
+  /** Initial watches are in place; changes from now on are reported */
+  onReady?(): void;
+  /** Watching stopped (watch limit reached, worker crashed); fall back to polling / TTLs */
+  onError?(err: Error): void;
+}
+
+interface SharedWatcher {
+  worker: Worker | null;
+  listeners: Set<WorkspaceWatchListener>;
+  ready: boolean;
+}
+
+const watchers = new Map<string, SharedWatcher>();
+
+/**
+ * Subscribe to changes under `root`; the returned function unsubscribes.
+ * onReady / onError are also delivered to late subscribers.
+ */
+export function subscribeWorkspaceChanges(root: string, listener: WorkspaceWatchListener): () => void {
+  const key = path.resolve(root);
+  let shared = watchers.get(key);
+  if (!shared) {
+    shared = startWatcher(key);
+    watchers.set(key, shared);
+  }
+  const current = shared;
+  current.listeners.add(listener);
+  if (current.ready) queueMicrotask(() => current.listeners.has(listener) && listener.onReady?.());
+
+  return () => {
+    if (!current.listeners.delete(listener) || current.listeners.size > 0) return;
+    if (watchers.get(key) === current) watchers.delete(key);
+    void current.worker?.terminate();
+    current.worker = null;
+  };
+}
+
+function startWatcher(root: string): SharedWatcher {
+  const shared: SharedWatcher = { worker: null, listeners: new Set(), ready: false };
+
+  const fail = (err: Error) => {
+    if (watchers.get(root) === shared) watchers.delete(root);
+    if (!shared.worker) return;
+    void shared.worker.terminate();
+    shared.worker = null;
+    log.warn('Workspace watcher failed', { root, error: String(err) });
+    queueMicrotask(() => {
+      for (const listener of [...shared.listeners]) listener.onError?.(err);
+    });
+  };
+
+  try {
+    shared.worker = new Worker(WATCH_WORKER_SOURCE, {
+      eval: true,
+      workerData: {
+        root,
+        skipDirs: [...WATCH_SKIP_DIRS],
+        recursive: process.platform === 'darwin' || process.platform === 'win32',
+        batchMs: BATCH_MS,
+      },
+    });
+  } catch (err) {
+    fail(err instanceof Error ? err : new Error(String(err)));
+    return shared;
+  }
+
+  const worker = shared.worker;
+  worker.unref();
+  worker.on('message', (msg: { type: string; changes?: WorkspaceChange[]; message?: string }) => {
+    if (shared.worker !== worker) return;
+    if (msg.type === 'changes') {
+      for (const listener of [...shared.listeners]) listener.onChanges(msg.changes!);
+    } else if (msg.type === 'ready') {
+      shared.ready = true;
+      for (const listener of [...shared.listeners]) listener.onReady?.();
+    } else if (msg.type === 'error') {
+      fail(new Error(msg.message));
+    }
+  });
+  worker.on('error', (err) => fail(err));
+  worker.on('exit', (code) => {
+    if (shared.worker === worker) fail(new Error(`Workspace watcher exited with code ${code}`));
+  });
+  return shared;
+}
+
+/**
+ * Worker body (evaluated as CommonJS so it runs the same under tsx and the
+ * compiled build). Symlinked directories are not followed.
+ */
+const WATCH_WORKER_SOURCE = `
+const fs = require('node:fs');
+const path = require('node:path');
+const { parentPort, workerData } = require('node:worker_threads');
+const { root, skipDirs, recursive, batchMs } = workerData;
+const skip = new Set(skipDirs);
+const dirWatchers = new Map();
+let pending = [];
+let timer = null;
+let failed = false;
+
+function flush() {
+  timer = null;
+  const changes = pending;
+  pending = [];
+  parentPort.postMessage({ type: 'changes', changes });
+}
+function emit(rel, eventType) {
+  pending.push([rel, eventType]);
+  if (!timer) timer = setTimeout(flush, batchMs);
+}
+function fail(err) {
+  if (failed) return;
+  failed = true;
+  for (const w of dirWatchers.values()) w.close();
+  dirWatchers.clear();
+  parentPort.postMessage({ type: 'error', message: String((err && err.message) || err) });
+}
+function abs(rel) {
+  return rel ? path.join(root, rel) : root;
+}
+function unwatchTree(rel) {
+  const prefix = rel + '/';
+  for (const [dir, w] of dirWatchers) {
+    if (dir === rel || dir.startsWith(prefix)) { w.close(); dirWatchers.delete(dir); }
+  }
+}
+function watchDir(rel) {
+  if (failed || dirWatchers.has(rel)) return;
+  let watcher;
+  try {
+    watcher = fs.watch(abs(rel), (eventType, filename) => {
+      if (filename == null) return emit(null, 'rename');
+      const name = String(filename);
+      if (skip.has(name)) return;
+      // The watched directory itself went away (its parent reports that)
+      if (eventType === 'rename' && rel && !fs.existsSync(abs(rel))) return unwatchTree(rel);
+      const childRel = rel ? rel + '/' + name : name;
+      emit(childRel, eventType);
+      if (eventType === 'rename') onRename(childRel);
+    });
+  } catch (err) {
+    // Vanished or unreadable directories are simply not watched; ENOSPC (watch limit) is fatal
+    if (rel && ['ENOENT', 'ENOTDIR', 'EACCES', 'EPERM'].includes(err.code)) return;
+    return fail(err);
+  }
+  watcher.on('error', (err) => (rel ? unwatchTree(rel) : fail(err)));
+  dirWatchers.set(rel, watcher);
+}
+function watchTree(rel) {
+  const stack = [rel];
+  while (stack.length > 0 && !failed) {
+    const dir = stack.pop();
+    watchDir(dir);
+    let entries;
+    try { entries = fs.readdirSync(abs(dir), { withFileTypes: true }); } catch { continue; }
+    for (const entry of entries) {
+      if (entry.isDirectory() && !skip.has(entry.name)) stack.push(dir ? dir + '/' + entry.name : entry.name);
+    }
+  }
+}
+function onRename(rel) {
+  let stat;
+  try { stat = fs.lstatSync(abs(rel)); } catch { return unwatchTree(rel); }
+  if (stat.isDirectory()) watchTree(rel);
+}
+
+if (recursive) {
+  try {
+    const watcher = fs.watch(root, { recursive: true }, (eventType, filename) => {
+      if (filename == null) return emit(null, 'rename');
+      const rel = String(filename).split(path.sep).join('/');
+      if (!rel.split('/').some(segment => skip.has(segment))) emit(rel, eventType);
+    });
+    watcher.on('error', fail);
+  } catch (err) {
+    fail(err);
+  }
+} else {
+  watchTree('');
+}
+if (!failed) parentPort.postMessage({ type: 'ready' });
+`;
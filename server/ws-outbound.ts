@@ -0,0 +1,244 @@
+/**
+ * Per-client outbound queues and topic fan-out for the WebSocket server.
+ *
+ * - Frames are typed envelopes ({ type, ...fields }) serialized once at send time,
+ *   so routing and backpressure decisions never re-parse JSON
+ * - Topics ('session:<id>', 'smartpath:<pathId>') route frames
+ *   only to subscribed clients
+ * - When a client's socket buffer is above the threshold, frames are queued
+ *   instead of written; queued streaming deltas are merged into the previous
+ *   frame and progress frames are superseded by the latest one, so nothing is lost
+ */
+
+import { WebSocket } from 'ws';
+import { createLogger, type Logger } from './utils/logger.js';
+
+export interface OutboundFrame {
+  type: string;
+  [key: string]: unknown;
+}
+
+/** Pre-serialized frames (legacy call sites) are forwarded as-is and never coalesced */
+export type OutboundPayload = OutboundFrame | string;
+
+export const sessionTopic = (sessionId: string) => `session:${sessionId}`;
+export const smartPathTopic = (pathId: string) => `smartpath:${pathId}`;
+
+const TOPIC_PREFIXES = ['session:', 'smartpath:'];
+
+export function isValidTopic(topic: unknown): topic is string {
+  return typeof topic === 'string' && topic.length < 256 && TOPIC_PREFIXES.some(p => topic.startsWith(p));
+}
+
+/** Streaming frames whose text field can be concatenated onto the previous queued frame */
+const APPEND_RULES: Record<string, { field: string; key: (f: OutboundFrame) => string }> = {
+  'chat.delta': { field: 'content', key: f => `${f.sessionId}|${f.deltaType}` },
+  'chat.tool_delta': { field: 'content', key: f => `${f.sessionId}|${f.toolId}` },
+  'smartpath.stepExecutionProgress': { field: 'delta', key: f => `${f.pathId}|${f.stepIndex}` },
+};
+
+/** Snapshot frames where only the latest queued one matters */
+const LATEST_WINS: Record<string, (f: OutboundFrame) => string> = {
+  'chat.tool_progress': f => `${f.sessionId}|${f.toolUseId}`,
+  'batch.progress': f => String(f.taskId),
+  'smartpath.progress': f => String(f.pathId),
+  'session.partialUpdated': f => String(f.sessionId),
+};
+
+export interface ClientOutboxOptions {
+  /** Queue instead of writing while bufferedAmount exceeds this (bytes) */
+  highWaterMark?: number;
+  /** Drain poll interval while frames are queued */
+  drainIntervalMs?: number;
+  /** Close the socket if this many frames pile up (client is not reading) */
+  maxQueuedFrames?: number;
+}
+
+interface QueuedFrame {
+  frame: OutboundPayload;
+  /** Coalescing key for APPEND_RULES / LATEST_WINS types */
+  key?: string;
+}
+
+export class ClientOutbox {
+  private queue: QueuedFrame[] = [];
+  private drainTimer: ReturnType<typeof setTimeout> | null = null;
+  private readonly highWaterMark: number;
+  private readonly drainIntervalMs: number;
+  private readonly maxQueuedFrames: number;
+  /** Frames merged into an earlier queued frame (for diagnostics) */
+  coalesced = 0;
+
+  constructor(private ws: WebSocket, options: ClientOutboxOptions = {}) {
+    this.highWaterMark = options.highWaterMark ?? 256 * 1024;
+    this.drainIntervalMs = options.drainIntervalMs ?? 25;
+    this.maxQueuedFrames = options.maxQueuedFrames ?? 10_000;
+  }
+
+  get queued(): number {
+    return this.queue.length;
+  }
+
+  send(frame: OutboundPayload): void {
+    if (this.ws.readyState !== WebSocket.OPEN) return;
+    if (this.queue.length === 0 && this.ws.bufferedAmount <= this.highWaterMark) {
+      this.ws.send(serialize(frame));
+      return;
+    }
+    this.enqueue(frame);
+    this.scheduleDrain();
+  }
+
+  dispose(): void {
+    if (this.drainTimer) clearTimeout(this.drainTimer);
+    this.drainTimer = null;
+    this.queue = [];
+  }
+
+  private enqueue(frame: OutboundPayload): void {
+    if (typeof frame === 'string') {
+      this.queue.push({ frame });
+    } else {
+      const append = APPEND_RULES[frame.type];
+      const latest = LATEST_WINS[frame.type];
+      if (append) {
+        const key = append.key(frame);
+        const tail = this.queue[this.queue.length - 1];
+        // Only merge with the immediate tail so ordering against other frames is preserved
+        if (tail && tail.key === key && typeof tail.frame !== 'string' && tail.frame.type === frame.type) {
+          tail.frame[append.field] = String(tail.frame[append.field] ?? '') + String(frame[append.field] ?? '');
+          // A merged frame covers everything up to the newest seq (see stream-replay.ts)
+          if (frame.seq !== undefined) tail.frame.seq = frame.seq;
+          this.coalesced++;
+          return;
+        }
+        this.queue.push({ frame: { ...frame }, key });
+      } else if (latest) {
+        const key = latest(frame);
+        const idx = this.queue.findIndex(q => q.key === key && typeof q.frame !== 'string' && q.frame.type === frame.type);
+        if (idx !== -1) {
+          this.queue.splice(idx, 1);
+          this.coalesced++;
+        }
+        this.queue.push({ frame, key });
+      } else {
+        this.queue.push({ frame });
+      }
+    }
+
+    if (this.queue.length > this.maxQueuedFrames) {
+      // Client stopped reading; a reconnect reloads state from history
+      this.dispose();
+      this.ws.close(1013, 'Outbound queue overflow');
+    }
+  }
+
+  private scheduleDrain(): void {
+    if (this.drainTimer) return;
+    this.drainTimer = setTimeout(() => {
+      this.drainTimer = null;
+      this.drain();
+    }, this.drainIntervalMs);
+  }
+
+  private drain(): void {
+    if (this.ws.readyState !== WebSocket.OPEN) {
+      this.dispose();
+      return;
+    }
+    while (this.queue.length > 0 && this.ws.bufferedAmount <= this.highWaterMark) {
+      this.ws.send(serialize(this.queue.shift()!.frame));
+    }
+    if (this.queue.length > 0) this.scheduleDrain();
+  }
+}
+
+function serialize(frame: OutboundPayload): string {
+  return typeof frame === 'string' ? frame : JSON.stringify(frame);
+}
+
+/**
+ * Registry of client outboxes and topic subscriptions.
+ * Clients are attached after authentication and detached on close.
+ */
+export class OutboundHub {
+  private outboxes = new Map<WebSocket, ClientOutbox>();
+  private topicClients = new Map<string, Set<WebSocket>>();
+  private clientTopics = new Map<WebSocket, Set<string>>();
+  private log: Logger;
+
+  constructor(private options: ClientOutboxOptions = {}) {
+    this.log = createLogger('OutboundHub');
+  }
+
+  attach(ws: WebSocket): void {
+    if (!this.outboxes.has(ws)) this.outboxes.set(ws, new ClientOutbox(ws, this.options));
+  }
+
+  detach(ws: WebSocket): void {
+    const outbox = this.outboxes.get(ws);
+    if (outbox) {
+      if (outbox.coalesced > 0) this.log.debug(`Client detached, ${outbox.coalesced} frame(s) coalesced under backpressure`);
+      outbox.dispose();
+    }
+    this.outboxes.delete(ws);
+    const topics = this.clientTopics.get(ws);
+    if (topics) {
+      for (const topic of topics) this.removeFromTopic(ws, topic);
+    }
+    this.clientTopics.delete(ws);
+  }
+
+  subscribe(ws: WebSocket, topic: string): void {
+    let topics = this.clientTopics.get(ws);
+    if (!topics) { topics = new Set(); this.clientTopics.set(ws, topics); }
+    topics.add(topic);
+
+    let subscribers = this.topicClients.get(topic);
+    if (!subscribers) { subscribers = new Set(); this.topicClients.set(topic, subscribers); }
+    subscribers.add(ws);
+  }
+
+  unsubscribe(ws: WebSocket, topic: string): void {
+    const topics = this.clientTopics.get(ws);
+    if (topics) {
+      topics.delete(topic);
+      if (topics.size === 0) this.clientTopics.delete(ws);
+    }
+    this.removeFromTopic(ws, topic);
+  }
+
+  subscribers(topic: string): Set<WebSocket> {
+    return this.topicClients.get(topic) ?? new Set();
+  }
+
+  /** Send to one client through its outbox (falls back to a direct write before attach) */
+  send(ws: WebSocket, frame: OutboundPayload): void {
+    const outbox = this.outboxes.get(ws);
+    if (outbox) outbox.send(frame);
+    else if (ws.readyState === WebSocket.OPEN) ws.send(serialize(frame));
+  }
+
+  /** Send to every subscriber of a topic; returns the number of open recipients */
+  publish(topic: string, frame: OutboundPayload): number {
+    let sent = 0;
+    for (const ws of this.subscribers(topic)) {
+      if (ws.readyState !== WebSocket.OPEN) continue;
+      this.send(ws, frame);
+      sent++;
+    }
+    return sent;
+  }
+
+  /** Send to every attached client */
+  broadcast(frame: OutboundPayload): void {
+    for (const outbox of this.outboxes.values()) outbox.send(frame);
+  }
+
+  private removeFromTopic(ws: WebSocket, topic: string): void {
+    const subscribers = this.topicClients.get(topic);
+    if (!subscribers) return;
+    subscribers.delete(ws);
+    if (subscribers.size === 0) this.topicClients.delete(topic);
+  }
+}
@@ -15,8 +15,10 @@ import type { RawMessage } from '@/types/chat';
 import type { Message, AttachedFileMeta } from '@/stores/chat';
 import { extractText, extractThinking, extractImages, extractToolUse, formatTimestamp, getToolDisplayName, formatToolSummary, buildContent, safeTimestamp } from './message-utils';
 import { useCodePlugin } from '@/lib/streamdown-plugins';
+import { useMarkdownBlocks } from '@/lib/markdown-worker-client';
 import { streamdownComponents, useCodeBlockCollapse } from './streamdown-components';
 import { t } from '@/locales';
+import { useBlobUrl } from '@/lib/blob-url';
 
 
 interface ChatMessageProps {
@@ -164,6 +166,15 @@ export const ChatMessage = memo(function ChatMessage({
               const isImage = file.mimeType.startsWith('image/');
               // Skip image attachments if we already have images from content blocks
               if (isImage && images.length > 0) return null;
+              if (isImage && file.blobHash) {
+                return (
+                  <BlobImagePreviewCard
+                    key={`blob-${i}`}
+                    file={file}
+                    onPreview={(src) => setLightboxImg({ src, fileName: file.fileName, mimeType: file.mimeType })}
+                  />
+                );
+              }
               if (isImage) {
                 return file.preview ? (
                   <ImagePreviewCard
@@ -355,6 +366,31 @@ function AssistantHoverBar({ text, timestamp }: { text: string; timestamp?: numb
 
 // ── Message Bubble ──────────────────────────────────────────────
 
+/**
+ * One markdown block of a streaming answer. Closed blocks keep their text,
+ * so memo skips them and only the tail block re-renders on each flush.
+ */
+const MarkdownBlockView = memo(function MarkdownBlockView({
+  text,
+  isTail,
+  codePlugin,
+}: {
+  text: string;
+  isTail: boolean;
+  codePlugin: ReturnType<typeof useCodePlugin>;
+}) {
+  return (
+    <Streamdown
+      mode={isTail ? 'streaming' : 'static'}
+      components={streamdownComponents}
+      controls={{ code: true, table: true }}
+      plugins={codePlugin ? { code: codePlugin } : undefined}
+    >
+      {text}
+    </Streamdown>
+  );
+});
+
 const MessageBubble = memo(function MessageBubble({
   text,
   isUser,
@@ -365,6 +401,8 @@ const MessageBubble = memo(function MessageBubble({
   isStreaming: boolean;
 }) {
   const codePlugin = useCodePlugin();
+  // While streaming, markdown is split into blocks off the main thread
+  const blocks = useMarkdownBlocks(text, isStreaming && !isUser);
 
   if (isUser) {
     return (
@@ -385,14 +423,22 @@ const MessageBubble = memo(function MessageBubble({
   return (
     <div className="w-full" ref={collapseRef}>
       <div className="markdown-content overflow-x-auto prose prose-sm dark:prose-invert max-w-none break-words break-all text-foreground">
-        <Streamdown
-          mode={isStreaming ? 'streaming' : 'static'}
-          components={streamdownComponents}
-          controls={{ code: true, table: true }}
-          plugins={codePlugin ? { code: codePlugin } : undefined}
-        >
-          {text}
-        </Streamdown>
+        {blocks ? (
+          <div className="space-y-4">
+            {blocks.map((block, i) => (
+              <MarkdownBlockView key={block.id} text={block.text} isTail={i === blocks.length - 1} codePlugin={codePlugin} />
+            ))}
+          </div>
+        ) : (
+          <Streamdown
+            mode={isStreaming ? 'streaming' : 'static'}
+            components={streamdownComponents}
+            controls={{ code: true, table: true }}
+            plugins={codePlugin ? { code: codePlugin } : undefined}
+          >
+            {text}
+          </Streamdown>
+        )}
       </div>
       {isStreaming && (
         <span className="inline-block w-2 h-4 bg-foreground/50 animate-pulse ml-0.5" />
@@ -582,6 +628,32 @@ function ImagePreviewCard({
   );
 }
 
+/** Image attachment stored in the blob store — fetched only when the card renders */
+function BlobImagePreviewCard({
+  file,
+  onPreview,
+}: {
+  file: AttachedFileMeta;
+  onPreview: (src: string) => void;
+}) {
+  const src = useBlobUrl(file.blobHash, file.mimeType);
+  if (!src) {
+    return (
+      <div className="w-36 h-36 rounded-xl border border-black/10 dark:border-white/10 bg-black/5 dark:bg-white/5 flex items-center justify-center text-muted-foreground">
+        <Loader2 className="h-5 w-5 animate-spin" />
+      </div>
+    );
+  }
+  return (
+    <ImagePreviewCard
+      src={src}
+      fileName={file.fileName}
+      mimeType={file.mimeType}
+      onPreview={() => onPreview(src)}
+    />
+  );
+}
+
 // ── Image Lightbox ───────────────────────────────────────────────
 
 function ImageLightbox({
@@ -106,6 +106,10 @@ export function Chat() {
     const onScroll = () => {
       userAtBottomRef.current =
         container.scrollHeight - container.scrollTop - container.clientHeight < 150;
+      // Near the top: lazily load the previous history page
+      if (container.scrollTop < 200) {
+        useChatStore.getState().loadOlderHistory();
+      }
     };
     container.addEventListener('scroll', onScroll, { passive: true });
     return () => container.removeEventListener('scroll', onScroll);
@@ -198,6 +202,31 @@ export function Chat() {
     restoredRef.current = true;
   }, [messages, currentSessionId, virtualizer]);
 
+  // Keep the viewport anchored when an older page is prepended above the current first message
+  const firstMessageIdRef = useRef<string | undefined>(undefined);
+  useEffect(() => {
+    const prevFirstId = firstMessageIdRef.current;
+    firstMessageIdRef.current = messages[0]?.id;
+    if (!prevFirstId || prevFirstId === messages[0]?.id) return;
+    const prevIndex = messages.findIndex(m => m.id === prevFirstId);
+    if (prevIndex > 0) {
+      virtualizer.scrollToIndex(prevIndex, { align: 'start' });
+    }
+  }, [messages, virtualizer]);
+
+  // Fetch deferred content blocks (large images) only for messages that are actually on screen
+  const deferredVisibleKey = virtualizer.getVirtualItems()
+    .map(item => messages[item.index])
+    .filter(m => m?.blocksDeferred)
+    .map(m => m.id)
+    .join(',');
+  useEffect(() => {
+    if (!deferredVisibleKey) return;
+    for (const id of deferredVisibleKey.split(',')) {
+      useChatStore.getState().loadMessageBlocks(id);
+    }
+  }, [deferredVisibleKey]);
+
   // Auto-scroll during streaming: only if user is already at bottom
   useEffect(() => {
     if (!sending || !userAtBottomRef.current || messages.length === 0) return;
@@ -4,7 +4,7 @@ import {
   Loader2, Send, Sparkles, ChevronDown, ChevronRight, ArrowUp, ArrowDown,
   RefreshCw, Settings2, Check, Upload, Download, Search, Square, CheckSquare,
 } from 'lucide-react';
-import { useGitStore, applyTemplate, type GitFileStatus, type GitDiffHunk, type GitDiffLine, type GitBranch, type GitLogGraphNode } from '@/stores/git';
+import { useGitStore, applyTemplate, type GitFileStatus, type GitDiffHunk, type GitDiffLine, type GitBranch, type GitCommitSummary, type GitGraphRow } from '@/stores/git';
 import { useCodeViewerStore } from '@/stores/code-viewer';
 import { useChatStore } from '@/stores/chat';
 import { cn } from '@/lib/utils';
@@ -673,27 +673,10 @@ function RemoteDiffFile({ file, isDark }: { file: { path: string; hunks: GitDiff
 // ── Git Log Graph Renderer ──────────────────────────────────────────
 
 /**
- * Parse git --graph ASCII output into structured lane data for SVG rendering.
- * Characters: | * / \ space  (each char = 1 column, 2 chars wide per lane)
- * Returns per-row: array of { col, type } where type is 'commit' | 'pipe' | 'merge-l' | 'merge-r' | 'fork-l' | 'fork-r'
+ * Lanes are assigned by the server (git-commit-graph.ts): each row says which
+ * lanes enter its commit from above, leave it towards the parents, and pass
+ * straight through, so any window of rows renders on its own.
  */
-interface GraphSegment {
-  col: number;        // lane index (0-based)
-  char: string;       // raw char: | * / \
-}
-
-function parseGraphLine(line: string): GraphSegment[] {
-  const segs: GraphSegment[] = [];
-  // git graph uses 2-char columns: "| " "* " "|/" "|\\" etc
-  for (let i = 0; i < line.length; i++) {
-    const ch = line[i];
-    if (ch === '|' || ch === '*' || ch === '/' || ch === '\\') {
-      segs.push({ col: Math.floor(i / 2), char: ch });
-    }
-  }
-  return segs;
-}
-
 const LANE_W = 12;   // px per lane
 const ROW_H = 26;    // px per row
 const DOT_R = 3.5;   // commit dot radius
@@ -713,59 +696,45 @@ function getLaneColor(lane: number): string {
   return BRANCH_COLORS[lane % BRANCH_COLORS.length];
 }
 
-function GraphSvg({ nodes, isDark }: { nodes: GitLogGraphNode[]; isDark: boolean }) {
-  const maxLanes = Math.max(
-    1,
-    ...nodes.map(n => {
-      const segs = parseGraphLine(n.graphLine);
-      return segs.length > 0 ? Math.max(...segs.map(s => s.col)) + 1 : 1;
-    }),
-  );
-  const svgW = maxLanes * LANE_W + 4;
-  const svgH = nodes.length * ROW_H;
+function laneX(lane: number): number {
+  return lane * LANE_W + LANE_W / 2 + 2;
+}
+
+function GraphSvg({ rows, lanes }: { rows: GitGraphRow[]; lanes: number }) {
+  const svgW = Math.max(1, lanes) * LANE_W + 4;
+  const svgH = rows.length * ROW_H;
 
-  // Build SVG elements
   const paths: React.ReactElement[] = [];
   const dots: React.ReactElement[] = [];
 
-  for (let row = 0; row < nodes.length; row++) {
-    const segs = parseGraphLine(nodes[row].graphLine);
-    const y = row * ROW_H + ROW_H / 2;
-
-    for (const seg of segs) {
-      const cx = seg.col * LANE_W + LANE_W / 2 + 2;
-      const color = getLaneColor(seg.col);
-
-      if (seg.char === '*') {
-        // Commit dot
-        dots.push(
-          <circle key={`d-${row}-${seg.col}`} cx={cx} cy={y} r={DOT_R} fill={color} />,
-        );
-        // Vertical pipe through this row
-        paths.push(
-          <line key={`pv-${row}-${seg.col}`} x1={cx} y1={y - ROW_H / 2} x2={cx} y2={y + ROW_H / 2}
-            stroke={color} strokeWidth={1.5} opacity={0.4} />,
-        );
-      } else if (seg.char === '|') {
-        // Vertical pipe
-        paths.push(
-          <line key={`p-${row}-${seg.col}`} x1={cx} y1={y - ROW_H / 2} x2={cx} y2={y + ROW_H / 2}
-            stroke={color} strokeWidth={1.5} opacity={0.4} />,
-        );
-      } else if (seg.char === '/') {
-        // Merge: line going from bottom-left to top-right
-        paths.push(
-          <line key={`ml-${row}-${seg.col}`} x1={cx} y1={y + ROW_H / 2} x2={cx - LANE_W} y2={y - ROW_H / 2}
-            stroke={color} strokeWidth={1.5} opacity={0.4} />,
-        );
-      } else if (seg.char === '\\') {
-        // Fork: line going from bottom-right to top-left
-        paths.push(
-          <line key={`fr-${row}-${seg.col}`} x1={cx} y1={y + ROW_H / 2} x2={cx + LANE_W} y2={y - ROW_H / 2}
-            stroke={color} strokeWidth={1.5} opacity={0.4} />,
-        );
-      }
+  for (let row = 0; row < rows.length; row++) {
+    const node = rows[row];
+    const top = row * ROW_H;
+    const y = top + ROW_H / 2;
+    const cx = laneX(node.lane);
+
+    for (const lane of node.through) {
+      const x = laneX(lane);
+      paths.push(
+        <line key={`t-${row}-${lane}`} x1={x} y1={top} x2={x} y2={top + ROW_H}
+          stroke={getLaneColor(lane)} strokeWidth={1.5} opacity={0.4} />,
+      );
     }
+    for (const lane of node.up) {
+      paths.push(
+        <line key={`u-${row}-${lane}`} x1={laneX(lane)} y1={top} x2={cx} y2={y}
+          stroke={getLaneColor(lane)} strokeWidth={1.5} opacity={0.4} />,
+      );
+    }
+    for (const lane of node.down) {
+      paths.push(
+        <line key={`d-${row}-${lane}`} x1={cx} y1={y} x2={laneX(lane)} y2={top + ROW_H}
+          stroke={getLaneColor(lane)} strokeWidth={1.5} opacity={0.4} />,
+      );
+    }
+    dots.push(
+      <circle key={`c-${row}`} cx={cx} cy={y} r={DOT_R} fill={getLaneColor(node.lane)} />,
+    );
   }
 
   return (
@@ -778,17 +747,23 @@ function GraphSvg({ nodes, isDark }: { nodes: GitLogGraphNode[]; isDark: boolean
 
 // ── Git Log Tab ────────────────────────────────────────────────────
 
-const LOG_PAGE_SIZE = 40;
+/** Rows rendered above and below the viewport */
+const LOG_OVERSCAN = 20;
+/** Ask for the next page when the viewport gets this close to the last loaded row */
+const LOG_PREFETCH_ROWS = 100;
 
 function GitLogTab() {
   const logGraph = useGitStore((s) => s.logGraph);
+  const logGraphCursor = useGitStore((s) => s.logGraphCursor);
+  const logGraphLoading = useGitStore((s) => s.logGraphLoading);
+  const fetchMoreLogGraph = useGitStore((s) => s.fetchMoreLogGraph);
   const logSearchResults = useGitStore((s) => s.logSearchResults);
   const logSearchLoading = useGitStore((s) => s.logSearchLoading);
   const searchLog = useGitStore((s) => s.searchLog);
   const status = useGitStore((s) => s.status);
   const isDark = document.documentElement.classList.contains('dark');
   const [search, setSearch] = useState('');
-  const [visibleCount, setVisibleCount] = useState(LOG_PAGE_SIZE);
+  const [viewport, setViewport] = useState({ top: 0, height: 600 });
   const scrollRef = React.useRef<HTMLDivElement>(null);
   const searchTimerRef = React.useRef<ReturnType<typeof setTimeout>>(undefined);
 
@@ -805,26 +780,35 @@ function GitLogTab() {
   const isSearching = search.trim().length > 0;
   const searchResults = logSearchResults;
 
-  // Non-search: incremental loading from loaded logGraph
-  const visible = logGraph.slice(0, visibleCount);
-  const hasMore = !isSearching && visibleCount < logGraph.length;
-
-  React.useEffect(() => {
-    setVisibleCount(LOG_PAGE_SIZE);
-  }, [logGraph]);
+  // Non-search: only the rows around the viewport are rendered
+  const first = Math.max(0, Math.floor(viewport.top / ROW_H) - LOG_OVERSCAN);
+  const last = Math.min(logGraph.length, Math.ceil((viewport.top + viewport.height) / ROW_H) + LOG_OVERSCAN);
+  const visible = useMemo(() => logGraph.slice(first, last), [logGraph, first, last]);
+  const visibleLanes = useMemo(() => visible.reduce((max, row) => Math.max(max, row.width), 1), [visible]);
+  const hasMore = !isSearching && logGraphCursor !== null;
 
   const handleScroll = React.useCallback(() => {
     const el = scrollRef.current;
-    if (!el || isSearching || !hasMore) return;
-    if (el.scrollTop + el.clientHeight >= el.scrollHeight - 100) {
-      setVisibleCount(c => Math.min(c + LOG_PAGE_SIZE, logGraph.length));
+    if (!el) return;
+    setViewport({ top: el.scrollTop, height: el.clientHeight });
+  }, []);
+
+  useEffect(() => {
+    handleScroll();
+  }, [handleScroll, isSearching]);
+
+  useEffect(() => {
+    if (hasMore && !logGraphLoading && last >= logGraph.length - LOG_PREFETCH_ROWS) {
+      fetchMoreLogGraph();
     }
-  }, [hasMore, isSearching, logGraph.length]);
+  }, [hasMore, logGraphLoading, last, logGraph.length, fetchMoreLogGraph]);
 
   if (logGraph.length === 0) {
     return (
       <div className="flex-1 flex items-center justify-center">
-        <Loader2 className="w-6 h-6 animate-spin text-muted-foreground" />
+        {logGraphLoading
+          ? <Loader2 className="w-6 h-6 animate-spin text-muted-foreground" />
+          : <span className="text-[12px] text-muted-foreground">{t("git.noCommits")}</span>}
       </div>
     );
   }
@@ -877,19 +861,24 @@ function GitLogTab() {
             )}
           </div>
         ) : (
-          // Normal view: graph SVG + commit info
-          <div className="flex">
-            <GraphSvg nodes={visible} isDark={isDark} />
-            <div className="flex-1 min-w-0">
-              {visible.map((node, i) => (
-                <LogEntry key={`${node.hash}-${i}`} node={node} currentBranch={status?.branch} isDark={isDark} />
-              ))}
-              {hasMore && (
-                <div className="px-3 py-2 text-center text-[11px] text-muted-foreground">
-                  {t("git.scrollLoadMore")}
-                </div>
-              )}
+          // Normal view: virtualized graph SVG + commit info
+          <div style={{ height: logGraph.length * ROW_H + (hasMore ? ROW_H : 0), position: 'relative' }}>
+            <div className="flex" style={{ position: 'absolute', top: first * ROW_H, left: 0, right: 0 }}>
+              <GraphSvg rows={visible} lanes={visibleLanes} />
+              <div className="flex-1 min-w-0">
+                {visible.map((node) => (
+                  <LogEntry key={node.hash} node={node} currentBranch={status?.branch} isDark={isDark} />
+                ))}
+              </div>
             </div>
+            {hasMore && (
+              <div
+                className="px-3 text-center text-[11px] text-muted-foreground"
+                style={{ position: 'absolute', top: logGraph.length * ROW_H, left: 0, right: 0, height: ROW_H, lineHeight: `${ROW_H}px` }}
+              >
+                {t("git.scrollLoadMore")}
+              </div>
+            )}
           </div>
         )}
       </div>
@@ -897,7 +886,7 @@ function GitLogTab() {
   );
 }
 
-function LogEntry({ node, currentBranch, isDark }: { node: GitLogGraphNode; currentBranch?: string; isDark: boolean }) {
+function LogEntry({ node, currentBranch, isDark }: { node: GitCommitSummary; currentBranch?: string; isDark: boolean }) {
   // Parse refs: "HEAD -> main, origin/main, origin/HEAD"
   const refs = node.refs
     ? node.refs.split(',').map(r => r.trim()).filter(Boolean)
@@ -652,6 +652,36 @@ function ReportViewer({ content, onClose }: { content: string; onClose: () => vo
 
 // ── Edit mode ──
 
+/**
+ * Remove step `i` while keeping every other step's dependsOn pointing at the
+ * same steps: indexes after `i` shift down, and steps that depended on the
+ * removed one inherit its dependencies so the run order is preserved.
+ */
+function removeStepAt(steps: SmartPathStep[], i: number): SmartPathStep[] {
+  const removed = steps[i];
+  // Name references resolve to the first step with that name (as buildStepGraph does)
+  const isRemoved = (ref: number | string) => typeof ref === 'number'
+    ? ref === i
+    : steps.findIndex((s) => s.name === ref) === i;
+  const toArray = (deps: SmartPathStep['dependsOn']) => (deps === undefined || deps === null ? null : Array.isArray(deps) ? deps : [deps]);
+  const removedDeps = toArray(removed.dependsOn);
+  const inherited = removedDeps ?? (i > 0 ? [i - 1] : []);
+
+  return steps.filter((_, idx) => idx !== i).map((step, idx) => {
+    // The next step chained implicitly to the removed one; with explicit deps there, the
+    // implicit chain would now point at step i - 1, a dependency it never had
+    const deps = toArray(step.dependsOn) ?? (idx === i && removedDeps ? [i] : null);
+    if (!deps) return step;
+    const next: Array<number | string> = [];
+    for (const ref of deps.flatMap((r) => (isRemoved(r) ? inherited : [r]))) {
+      if (isRemoved(ref)) continue;
+      const mapped = typeof ref === 'number' && ref > i ? ref - 1 : ref;
+      if (!next.includes(mapped)) next.push(mapped);
+    }
+    return { ...step, dependsOn: next };
+  });
+}
+
 function PathEditor({ path, onSave, onCancel }: {
   path: SmartPath;
   onSave: (name: string, description: string, steps: SmartPathStep[], pathId: string, workspace: string, cronExpression: string, defaultArgs: string) => Promise<void>;
@@ -670,7 +700,7 @@ function PathEditor({ path, onSave, onCancel }: {
   const clearStepExecutionState = useSmartPathStore((s) => s.clearStepExecutionState);
 
   const updateStep = useCallback((i: number, s: SmartPathStep) => setSteps((prev) => { const n = [...prev]; n[i] = s; return n; }), []);
-  const removeStep = useCallback((i: number) => setSteps((prev) => prev.filter((_, idx) => idx !== i)), []);
+  const removeStep = useCallback((i: number) => setSteps((prev) => removeStepAt(prev, i)), []);
 
   const handleExecute = useCallback(async (i: number) => {
     const s = steps[i]; if (!s?.userInput.trim()) return;
@@ -747,7 +777,7 @@ function PathEditor({ path, onSave, onCancel }: {
 
 function PathDetail({ path, onEdit, onRun, onAbort, onDelete }: {
   path: SmartPath;
-  onEdit: () => void; onRun: (useRefs: boolean) => void; onAbort: () => void; onDelete: () => void;
+  onEdit: () => void; onRun: (useRefs: boolean, reuseCache: boolean) => void; onAbort: () => void; onDelete: () => void;
 }) {
   const steps = useMemo<SmartPathStep[]>(() => { try { return JSON.parse(path.steps); } catch { return []; } }, [path.steps]);
   const sc = STATUS_CONFIG[path.status];
@@ -778,6 +808,9 @@ function PathDetail({ path, onEdit, onRun, onAbort, onDelete }: {
   const pathUseRefsMap = useSmartPathStore((s) => s.pathUseRefsMap);
   const setPathUseRefs = useSmartPathStore((s) => s.setPathUseRefs);
   const useRefs = pathUseRefsMap[path.id] ?? false;
+  const pathReuseCacheMap = useSmartPathStore((s) => s.pathReuseCacheMap);
+  const setPathReuseCache = useSmartPathStore((s) => s.setPathReuseCache);
+  const reuseCache = pathReuseCacheMap[path.id] ?? path.reuseCachedSteps ?? false;
   const [viewingReport, setViewingReport] = useState<string | null>(null);
   const [viewingRef, setViewingRef] = useState<string | null>(null);
 
@@ -826,6 +859,18 @@ function PathDetail({ path, onEdit, onRun, onAbort, onDelete }: {
               {t('smartpath.useReferences')}
             </Button>
           )}
+          {!running && !stepping && (
+            <Button
+              variant="outline"
+              size="sm"
+              className={reuseCache ? '' : 'text-muted-foreground/50'}
+              onClick={() => setPathReuseCache(path.id, !reuseCache)}
+              title={t('smartpath.reuseCacheHint')}
+            >
+              {reuseCache ? <CheckCircle className="h-3.5 w-3.5 mr-1" /> : <Ban className="h-3.5 w-3.5 mr-1" />}
+              {t('smartpath.reuseCache')}
+            </Button>
+          )}
           {stepping ? (
             <Button variant="outline" size="sm" disabled={anyStepExecuting} onClick={() => cancelStepping(path.id)}>
               {t('smartpath.cancelStepExec')}
@@ -843,7 +888,7 @@ function PathDetail({ path, onEdit, onRun, onAbort, onDelete }: {
               <Square className="h-3.5 w-3.5 mr-1" /> {t("smartpath.stop")}
             </Button>
           ) : !stepping && (
-            <Button size="sm" onClick={() => onRun(useRefs)}>
+            <Button size="sm" onClick={() => onRun(useRefs, reuseCache)}>
               <Play className="h-3.5 w-3.5 mr-1" /> {t("smartpath.execute")}
             </Button>
           )}
@@ -1104,7 +1149,7 @@ export function SmartPathPage() {
           ) : currentPath ? (
             <PathDetail key={currentPath.id} path={currentPath}
               onEdit={() => setEditing(true)}
-              onRun={(useRefs) => runPath(currentPath.id, currentPath.workspace, currentPath.defaultArgs, useRefs)}
+              onRun={(useRefs, reuseCache) => runPath(currentPath.id, currentPath.workspace, currentPath.defaultArgs, useRefs, reuseCache)}
               onAbort={() => abortPath(currentPath.id)}
               onDelete={() => { deletePath(currentPath.id, currentPath.workspace); setCurrentPath(null); }} />
           ) : (
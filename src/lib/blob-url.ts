@@ -0,0 +1,53 @@
+/**
+ * Blob URL cache for content-addressed attachments (/api/blobs/:hash).
+ *
+ * <img> can't send the Bearer token, so blobs are fetched via authFetch and
+ * exposed as object URLs. A hash never changes content, so URLs are cached
+ * for the lifetime of the page and shared between messages.
+ */
+
+import { useEffect, useState } from 'react';
+import { authFetch } from '@/lib/auth';
+
+const objectUrls = new Map<string, string>();
+const inflight = new Map<string, Promise<string>>();
+
+export function loadBlobUrl(hash: string, mimeType: string): Promise<string> {
+  const cached = objectUrls.get(hash);
+  if (cached) return Promise.resolve(cached);
+  const pending = inflight.get(hash);
+  if (pending) return pending;
+
+  const params = new URLSearchParams({ type: mimeType });
+  const promise = authFetch(`/api/blobs/${hash}?${params}`)
+    .then((res) => {
+      if (!res.ok) throw new Error(`Failed to load blob ${hash}`);
+      return res.blob();
+    })
+    .then((blob) => {
+      const url = URL.createObjectURL(blob);
+      objectUrls.set(hash, url);
+      return url;
+    })
+    .finally(() => {
+      inflight.delete(hash);
+    });
+  inflight.set(hash, promise);
+  return promise;
+}
+
+/** Resolve a blob hash to a displayable URL; null until loaded (or on error) */
+export function useBlobUrl(hash: string | undefined, mimeType: string): string | null {
+  const [url, setUrl] = useState<string | null>(() => (hash ? objectUrls.get(hash) ?? null : null));
+
+  useEffect(() => {
+    if (!hash) return;
+    let cancelled = false;
+    loadBlobUrl(hash, mimeType)
+      .then((u) => { if (!cancelled) setUrl(u); })
+      .catch(() => { if (!cancelled) setUrl(null); });
+    return () => { cancelled = true; };
+  }, [hash, mimeType]);
+
+  return url;
+}
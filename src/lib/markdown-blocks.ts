@@ -0,0 +1,139 @@
+/**
+ * Incremental markdown block splitter for streamed answers.
+ *
+ * Splits markdown into top-level blocks (paragraphs, lists, tables, headings,
+ * fenced code) on line boundaries. Only the open tail block is re-scanned when
+ * text is appended — earlier blocks are closed for good and keep their IDs,
+ * so a renderer can memoize them and redraw just the tail.
+ *
+ * Pure (no DOM) so it runs in markdown-worker.ts, on the main thread as a
+ * fallback, and in scripts/bench-markdown-blocks.ts.
+ */
+
+export interface MarkdownBlock {
+  /** Stable for the life of the stream: "b{index}" */
+  id: string;
+  text: string;
+}
+
+// Any indentation: fences nested in list items are indented by the item's marker width
+const FENCE_OPEN_RE = /^\s*(`{3,}|~{3,})/;
+const FENCE_CLOSE_RE = /^\s*(`{3,}|~{3,})\s*$/;
+const LIST_ITEM_RE = /^ {0,3}(?:[-*+]|\d{1,9}[.)])(?:\s|$)/;
+const HEADING_RE = /^ {0,3}#{1,6}(?:\s|$)/;
+const INDENTED_RE = /^(?: {2,}|\t)/;
+
+export class MarkdownBlockSplitter {
+  private text = '';
+  /** Texts of closed blocks */
+  private closed: string[] = [];
+  /** Offset where the open tail block starts */
+  private tailStart = 0;
+
+  get blockCount(): number {
+    return this.closed.length + (this.tailStart < this.text.length ? 1 : 0);
+  }
+
+  /** Replace the whole text; cheap when `text` extends the previous one */
+  update(text: string): { changedFrom: number } {
+    if (text.startsWith(this.text)) return this.append(text.slice(this.text.length));
+    this.text = '';
+    this.closed = [];
+    this.tailStart = 0;
+    this.append(text);
+    return { changedFrom: 0 };
+  }
+
+  /** Append a delta. Blocks before `changedFrom` are unchanged. */
+  append(delta: string): { changedFrom: number } {
+    const changedFrom = this.closed.length;
+    if (delta) {
+      this.text += delta;
+      this.scanTail();
+    }
+    return { changedFrom };
+  }
+
+  blocks(from = 0): MarkdownBlock[] {
+    const out: MarkdownBlock[] = [];
+    for (let i = from; i < this.closed.length; i++) out.push({ id: `b${i}`, text: this.closed[i] });
+    if (this.tailStart < this.text.length) {
+      const i = this.closed.length;
+      if (i >= from) out.push({ id: `b${i}`, text: this.text.slice(this.tailStart) });
+    }
+    return out;
+  }
+
+  /**
+   * Re-scan from the start of the tail block. Each closed block starts with
+   * fresh scanner state, so nothing before tailStart needs revisiting.
+   * An unterminated last line always stays in the tail.
+   */
+  private scanTail(): void {
+    const text = this.text;
+    let pos = this.tailStart;
+    let blockStart = pos;
+    let hasContent = false;
+    let inList = false;
+    /** Open fence; `nested` when it belongs to the list item above and must not end the block */
+    let fence: { char: string; len: number; nested: boolean } | null = null;
+    let blankAfterContent = false;
+
+    const close = (end: number) => {
+      if (end > blockStart) this.closed.push(text.slice(blockStart, end));
+      blockStart = end;
+      hasContent = false;
+      inList = false;
+      blankAfterContent = false;
+    };
+
+    while (true) {
+      const nl = text.indexOf('\n', pos);
+      if (nl < 0) break;
+      const line = text.slice(pos, nl);
+      const next = nl + 1;
+
+      if (fence) {
+        const m = FENCE_CLOSE_RE.exec(line);
+        if (m && m[1][0] === fence.char && m[1].length >= fence.len) {
+          const nested = fence.nested;
+          fence = null;
+          if (!nested) close(next);
+        }
+        pos = next;
+        continue;
+      }
+
+      if (line.trim() === '') {
+        if (hasContent) blankAfterContent = true;
+        pos = next;
+        continue;
+      }
+
+      // A blank line ends the block unless a list continues below it
+      if (blankAfterContent) {
+        if (inList && (INDENTED_RE.test(line) || LIST_ITEM_RE.test(line))) blankAfterContent = false;
+        else close(pos);
+      }
+
+      const open = FENCE_OPEN_RE.exec(line);
+      if (open && inList && INDENTED_RE.test(line)) {
+        // Code block inside a list item: stays part of the list block
+        fence = { char: open[1][0], len: open[1].length, nested: true };
+      } else if (open) {
+        if (hasContent) close(pos);
+        fence = { char: open[1][0], len: open[1].length, nested: false };
+        hasContent = true;
+      } else if (HEADING_RE.test(line)) {
+        if (hasContent) close(pos);
+        close(next);
+      } else {
+        if (!hasContent) inList = LIST_ITEM_RE.test(line);
+        hasContent = true;
+      }
+      pos = next;
+    }
+
+    this.tailStart = blockStart;
+  }
+}
@@ -0,0 +1,118 @@
+/**
+ * Main-thread client for the markdown block Web Worker.
+ *
+ * useMarkdownBlocks(text, enabled) sends only the appended delta of a growing
+ * message to the worker and returns its blocks with stable IDs; unchanged
+ * blocks keep their object identity so memoized renderers skip them. Without
+ * Worker support the same splitter runs inline.
+ */
+
+import { useEffect, useRef, useState } from 'react';
+import { MarkdownBlockSplitter, type MarkdownBlock } from './markdown-blocks';
+import type { MarkdownWorkerRequest, MarkdownWorkerResponse } from './markdown-worker';
+
+type Listener = (response: MarkdownWorkerResponse) => void;
+
+let worker: Worker | null = null;
+let workerFailed = false;
+let streamSeq = 0;
+const listeners = new Map<string, Listener>();
+
+function getWorker(): Worker | null {
+  if (worker || workerFailed) return worker;
+  try {
+    worker = new Worker(new URL('./markdown-worker.ts', import.meta.url), {
+      type: 'module',
+    });
+    worker.onmessage = (event: MessageEvent<MarkdownWorkerResponse>) => {
+      listeners.get(event.data.key)?.(event.data);
+    };
+    worker.onerror = (err) => {
+      console.error('[MarkdownWorker] Worker error:', err);
+    };
+  } catch (err) {
+    console.warn('[MarkdownWorker] Unavailable, splitting on the main thread:', err);
+    workerFailed = true;
+  }
+  return worker;
+}
+
+/** Apply a worker reply to the previous block list, reusing unchanged blocks */
+function applyResponse(prev: MarkdownBlock[], response: MarkdownWorkerResponse): MarkdownBlock[] {
+  const next = prev.slice(0, response.changedFrom);
+  for (const block of response.changed) {
+    const old = prev[next.length];
+    next.push(old && old.id === block.id && old.text === block.text ? old : block);
+  }
+  return next.length === response.count ? next : next.slice(0, response.count);
+}
+
+/**
+ * Blocks of `text` while `enabled` (streaming); null otherwise or until the
+ * first reply arrives, in which case the caller renders `text` as a whole.
+ */
+export function useMarkdownBlocks(text: string, enabled: boolean): MarkdownBlock[] | null {
+  const [blocks, setBlocks] = useState<MarkdownBlock[] | null>(null);
+  const stream = useRef<{ key: string; sent: string; version: number; inline: MarkdownBlockSplitter | null } | null>(null);
+
+  useEffect(() => {
+    if (!enabled) {
+      if (stream.current) {
+        listeners.delete(stream.current.key);
+        if (!stream.current.inline) getWorker()?.postMessage({ type: 'dispose', key: stream.current.key } satisfies MarkdownWorkerRequest);
+        stream.current = null;
+      }
+      setBlocks(null);
+      return;
+    }
+
+    let s = stream.current;
+    if (!s) {
+      const key = `md-${++streamSeq}`;
+      const w = getWorker();
+      s = { key, sent: '', version: 0, inline: w ? null : new MarkdownBlockSplitter() };
+      stream.current = s;
+      if (w) {
+        listeners.set(key, (response) => {
+          // Replies for superseded versions still apply: they are cumulative
+          if (stream.current?.key !== key) return;
+          setBlocks(prev => applyResponse(prev ?? [], response));
+        });
+      }
+    }
+
+    if (text === s.sent) return;
+    const appended = text.startsWith(s.sent);
+    const version = ++s.version;
+
+    if (s.inline) {
+      const { changedFrom } = s.inline.update(text);
+      const response = { key: s.key, version, count: s.inline.blockCount, changedFrom, changed: s.inline.blocks(changedFrom) };
+      setBlocks(prev => applyResponse(prev ?? [], response));
+    } else {
+      const request: MarkdownWorkerRequest = appended
+        ? { type: 'append', key: s.key, version, delta: text.slice(s.sent.length) }
+        : { type: 'reset', key: s.key, version, text };
+      getWorker()!.postMessage(request);
+    }
+    s.sent = text;
+  }, [text, enabled]);
+
+  useEffect(() => () => {
+    const s = stream.current;
+    if (!s) return;
+    listeners.delete(s.key);
+    if (!s.inline) worker?.postMessage({ type: 'dispose', key: s.key } satisfies MarkdownWorkerRequest);
+    stream.current = null;
+  }, []);
+
+  return enabled ? blocks : null;
+}
+
+export function terminateMarkdownWorker(): void {
+  if (worker) {
+    worker.terminate();
+    worker = null;
+    listeners.clear();
+  }
+}
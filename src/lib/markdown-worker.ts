@@ -0,0 +1,49 @@
+/**
+ * Web Worker that splits streamed markdown into blocks.
+ *
+ * Keeps one MarkdownBlockSplitter per stream, so each delta only re-scans the
+ * tail block; replies carry just the blocks from the first changed one on.
+ */
+
+import { MarkdownBlockSplitter } from './markdown-blocks';
+
+export type MarkdownWorkerRequest =
+  | { type: 'append'; key: string; version: number; delta: string }
+  | { type: 'reset'; key: string; version: number; text: string }
+  | { type: 'dispose'; key: string };
+
+export interface MarkdownWorkerResponse {
+  key: string;
+  version: number;
+  /** Total blocks after this update */
+  count: number;
+  /** Index of changed[0]; blocks before it are unchanged */
+  changedFrom: number;
+  changed: Array<{ id: string; text: string }>;
+}
+
+const splitters = new Map<string, MarkdownBlockSplitter>();
+
+self.onmessage = (event: MessageEvent<MarkdownWorkerRequest>) => {
+  const msg = event.data;
+  if (msg.type === 'dispose') {
+    splitters.delete(msg.key);
+    return;
+  }
+
+  let splitter = splitters.get(msg.key);
+  if (!splitter || msg.type === 'reset') {
+    splitter = new MarkdownBlockSplitter();
+    splitters.set(msg.key, splitter);
+  }
+  const { changedFrom } = msg.type === 'reset' ? splitter.update(msg.text) : splitter.append(msg.delta);
+
+  const response: MarkdownWorkerResponse = {
+    key: msg.key,
+    version: msg.version,
+    count: splitter.blockCount,
+    changedFrom,
+    changed: splitter.blocks(changedFrom),
+  };
+  self.postMessage(response);
+};
@@ -27,6 +27,16 @@ export class WsClient {
   private _closed = false;
   private _token: string;
   private outbox: string[] = [];
+  /** Server-side topic subscriptions (smartpath:<id>), replayed after reconnect */
+  private topics = new Set<string>();
+  /** Highest chat stream seq applied per session — used for session.resume and to drop replayed duplicates */
+  private streamSeqs = new Map<string, number>();
+  /**
+   * Sessions waiting for session.resumed, with the stream frames held meanwhile.
+   * Live frames can arrive before the replay; applying them first would advance
+   * the seq past the gap and drop the replayed frames as duplicates.
+   */
+  private resuming = new Map<string, Array<Record<string, unknown>>>();
 
   private readonly port: number;
   private readonly urlOverride: string;
@@ -85,6 +95,9 @@ export class WsClient {
       try {
         const msg = JSON.parse(String(event.data));
         if (msg.type === 'auth.verified') {
+          if (this.topics.size > 0) {
+            this.ws!.send(JSON.stringify({ type: 'topic.subscribe', topics: [...this.topics] }));
+          }
           this.flushOutbox();
           this.emit('connected');
           return;
@@ -95,16 +108,27 @@ export class WsClient {
           this.ws?.close();
           return;
         }
-        if (msg.type) {
-          this.emit(msg.type, msg);
+        if (msg.type === 'session.resumed' && typeof msg.sessionId === 'string') {
+          this.finishResume(msg);
+          return;
+        }
+        if (typeof msg.seq === 'number' && typeof msg.sessionId === 'string') {
+          const held = this.resuming.get(msg.sessionId);
+          if (held) {
+            held.push(msg);
+            return;
+          }
+          if (!this.acceptSeq(msg.sessionId, msg.seq)) return;
         }
-        this.emit('message', msg);
+        this.dispatch(msg);
       } catch {
         // Ignore non-JSON messages
       }
     };
 
     this.ws.onclose = () => {
+      // Held frames were not applied; the next session.resume asks for them again
+      this.resuming.clear();
       this.emit('disconnected');
       if (this.autoReconnect && !this._closed) {
         this.scheduleReconnect();
@@ -135,6 +159,29 @@ export class WsClient {
     this.ws.send(json);
   }
 
+  /** Subscribe to server topic frames; kept across reconnects until unsubscribed */
+  subscribeTopic(topic: string): void {
+    if (this.topics.has(topic)) return;
+    this.topics.add(topic);
+    this.send({ type: 'topic.subscribe', topics: [topic] });
+  }
+
+  unsubscribeTopic(topic: string): void {
+    if (!this.topics.delete(topic)) return;
+    this.send({ type: 'topic.unsubscribe', topics: [topic] });
+  }
+
+  /** Last stream seq received for a session (undefined if none this page load) */
+  lastSeq(sessionId: string): number | undefined {
+    return this.streamSeqs.get(sessionId);
+  }
+
+  /** Ask the server to replay a session's stream after our last seq; live frames wait for the replay */
+  resumeSession(sessionId: string): void {
+    this.resuming.set(sessionId, []);
+    this.send({ type: 'session.resume', sessionId, lastSeq: this.streamSeqs.get(sessionId) ?? 0 });
+  }
+
   on(event: string, handler: EventHandler): void {
     if (!this.handlers.has(event)) {
       this.handlers.set(event, new Set());
@@ -156,6 +203,38 @@ export class WsClient {
     });
   }
 
+  private dispatch(msg: Record<string, unknown>): void {
+    if (typeof msg.type === 'string') {
+      this.emit(msg.type, msg);
+    }
+    this.emit('message', msg);
+  }
+
+  /** Record a stream seq; false when it was already applied */
+  private acceptSeq(sessionId: string, seq: number): boolean {
+    const last = this.streamSeqs.get(sessionId);
+    if (last !== undefined && seq <= last) return false;
+    this.streamSeqs.set(sessionId, seq);
+    return true;
+  }
+
+  /** Apply the frames held during a resume in seq order, then report the resume */
+  private finishResume(msg: Record<string, unknown>): void {
+    const sessionId = msg.sessionId as string;
+    const held = this.resuming.get(sessionId) ?? [];
+    this.resuming.delete(sessionId);
+    if (msg.reset) {
+      // The gap is gone — the store reloads history; continue from the server's position
+      if (typeof msg.lastSeq === 'number') this.streamSeqs.set(sessionId, msg.lastSeq);
+    } else {
+      held.sort((a, b) => (a.seq as number) - (b.seq as number));
+      for (const frame of held) {
+        if (this.acceptSeq(sessionId, frame.seq as number)) this.dispatch(frame);
+      }
+    }
+    this.dispatch(msg);
+  }
+
   private scheduleReconnect(): void {
     this.clearReconnectTimer();
     this.reconnectTimer = setTimeout(() => {
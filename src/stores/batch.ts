@@ -26,7 +26,7 @@ interface BatchState {
   tasks: BatchTask[];
   currentTask: BatchTask | null;
   items: BatchItem[];
-  testResult: { items: Record<string, unknown>[]; preview: string } | null;
+  testResult: { items: Record<string, unknown>[]; preview: string; totalItems: number } | null;
   loading: boolean;
   generating: boolean;
   testing: boolean;
@@ -49,7 +49,7 @@ interface BatchState {
   updateTask: (taskId: string, updates: Partial<BatchTask>) => Promise<void>;
   deleteTask: (taskId: string) => Promise<void>;
   generateCode: (taskId: string) => Promise<string>;
-  testCode: (taskId: string) => Promise<{ items: Record<string, unknown>[]; preview: string }>;
+  testCode: (taskId: string) => Promise<{ items: Record<string, unknown>[]; preview: string; totalItems: number }>;
   saveTask: (taskId: string) => Promise<void>;
   executeTask: (taskId: string) => Promise<void>;
   pauseTask: (taskId: string) => Promise<void>;
@@ -206,15 +206,19 @@ export const useBatchStore = create<BatchState>((set, get) => ({
     if (!client) throw new Error('Not connected');
 
     set({ testing: true, error: null, testResult: null });
-    return new Promise<{ items: Record<string, unknown>[]; preview: string }>((resolve, reject) => {
+    return new Promise<{ items: Record<string, unknown>[]; preview: string; totalItems: number }>((resolve, reject) => {
       const unsub = wrapHandler(client, 'batch.tested', (data) => {
         unsub();
         unsubErr();
-        const result = { items: data.items as Record<string, unknown>[], preview: data.preview as string };
+        const result = {
+          items: data.items as Record<string, unknown>[],
+          preview: data.preview as string,
+          totalItems: data.totalItems as number,
+        };
         set({ testing: false, testResult: result });
         set((state) => ({
           tasks: state.tasks.map((t) =>
-            t.id === taskId ? { ...t, status: 'tested' as BatchTaskStatus } : t,
+            t.id === taskId ? { ...t, status: 'tested' as BatchTaskStatus, totalItems: result.totalItems } : t,
           ),
         }));
         resolve(result);
@@ -28,6 +28,8 @@ export interface AttachedFileMeta {
   fileSize: number;
   preview: string | null;
   filePath?: string;
+  /** Content-addressed blob (see /api/blobs) — preview is resolved lazily */
+  blobHash?: string;
 }
 
 export interface Message {
@@ -37,6 +39,8 @@ export interface Message {
   content: string;
   contentBlocks?: ContentBlock[];
   isPartial?: boolean;
+  /** Server skipped large content blocks — load them with loadMessageBlocks when rendered */
+  blocksDeferred?: boolean;
   createdAt: string;
   timestamp?: number;
   resolvedContent?: unknown;
@@ -120,6 +124,9 @@ interface ChatState {
   // Messages
   messages: Message[];
   loading: boolean;
+  /** Older history pages exist on the server (loaded on scroll-up) */
+  hasMoreHistory: boolean;
+  loadingOlder: boolean;
   error: ChatError | null;
 
   /** Context length warning for current session */
@@ -155,6 +162,10 @@ interface ChatState {
   loadSessions: () => Promise<void>;
   switchSession: (sessionId: string) => void;
   loadHistory: () => Promise<void>;
+  /** Load the page of messages before the oldest loaded one */
+  loadOlderHistory: () => Promise<void>;
+  /** Fetch content blocks the server deferred (e.g. large images) for one message */
+  loadMessageBlocks: (messageId: string) => void;
   sendMessage: (content: string, media?: Array<{ type: string; mimeType: string; base64Data: string; fileName?: string }>) => Promise<void>;
   /** Synchronously push user message + start sending state — called from ChatInput for instant UI */
   pushUserMessage: (content: string, attachedFiles?: Message['_attachedFiles']) => void;
@@ -166,6 +177,14 @@ interface ChatState {
   toggleAutoConfirm: () => void;
   clearContextWarning: () => void;
   refresh: () => void;
+  /** After a reconnect: ask the server to replay stream frames missed by in-flight sessions */
+  resumeStreams: () => void;
+  /** Server answered session.resume; reset=true means the gap could not be replayed */
+  handleStreamResumed: (msg: Record<string, unknown>) => void;
+  /** Server persisted a new snapshot of a stream this tab did not start */
+  handlePartialUpdated: (msg: Record<string, unknown>) => void;
+  /** Server finalized (or dropped, message=null) a session's partial reply */
+  handleStreamCompleted: (msg: Record<string, unknown>) => void;
   updateSessionLabel: (sessionId: string, label: string) => Promise<void>;
   answerAskUser: (askId: string, answers: Record<string, string[]>) => void;
 }
@@ -177,8 +196,15 @@ export const sendingSessions = new Set<string>();
 
 const streamingBlocksMap = new Map<string, StreamingBlock[]>();
 
-// Partial message polling timers (session refresh after page refresh during stream)
-const partialPollTimers = new Map<string, ReturnType<typeof setInterval>>();
+/** Messages per session.history page — older pages load on scroll-up */
+const HISTORY_PAGE_SIZE = 50;
+/** Give up on an older-page request after this long so scroll-up can retry */
+const OLDER_HISTORY_TIMEOUT_MS = 10_000;
+/** The loadOlderHistory request that owns the loadingOlder flag */
+let activeOlderLoad: symbol | null = null;
+
+// In-flight session.messageBlocks requests (by message id)
+const pendingBlockLoads = new Set<string>();
 
 // ── Per-session sending state ──
 // Tracks which sessions are currently streaming a response.
@@ -288,9 +314,94 @@ export function resolveContent(text: string, blocks?: unknown[]): unknown {
   return [{ type: 'text', text }, ...blocks];
 }
 
+/** Server-persisted messages have numeric SQLite ids; optimistic local ones use UUIDs */
+function isServerMessageId(id: string): boolean {
+  return /^\d+$/.test(id);
+}
+
+/** Reconstruct _attachedFiles for user messages from persisted blocks or the file-path tag */
+function buildAttachedFiles(role: 'user' | 'assistant', content: string, blocks?: ContentBlock[]): AttachedFileMeta[] | undefined {
+  if (role !== 'user') return undefined;
+  const attachedFiles: AttachedFileMeta[] = [];
+  // From persisted contentBlocks (attached_file type)
+  if (blocks) {
+    const fileBlocks = blocks.filter((b: any) => b.type === 'attached_file');
+    for (const b of fileBlocks) {
+      attachedFiles.push({
+        fileName: (b as any).fileName || 'file',
+        mimeType: 'application/octet-stream',
+        fileSize: 0,
+        preview: null,
+        filePath: (b as any).filePath,
+      });
+    }
+    // From persisted image blocks stored in the blob store (fetched on render)
+    const blobBlocks = blocks.filter((b: any) => b.type === 'image' && b.source?.type === 'blob' && b.source?.hash);
+    for (const b of blobBlocks) {
+      const src = (b as any).source;
+      attachedFiles.push({
+        fileName: 'image',
+        mimeType: src.media_type || 'image/png',
+        fileSize: src.size ?? 0,
+        preview: null,
+        blobHash: src.hash,
+      });
+    }
+    // From persisted image blocks (legacy inline base64 images)
+    const imageBlocks = blocks.filter((b: any) => b.type === 'image' && b.source?.data);
+    for (const b of imageBlocks) {
+      const src = (b as any).source;
+      const mime = src?.media_type || 'image/png';
+      const data = src?.data as string;
+      attachedFiles.push({
+        fileName: 'image',
+        mimeType: mime,
+        fileSize: Math.round((data.length * 3) / 4),
+        preview: `data:${mime};base64,${data}`,
+      });
+    }
+  }
+  // Fallback: extract from text [用户文件路径:[path1,path2]]
+  if (attachedFiles.length === 0) {
+    const pathMatch = content.match(/\[用户文件路径:\[([^\]]+)\]\]/);
+    if (pathMatch) {
+      return pathMatch[1].split(',').map(fp => ({
+        fileName: fp.split(/[/\\]/).pop() || 'file',
+        mimeType: 'application/octet-stream',
+        fileSize: 0,
+        preview: null,
+        filePath: fp,
+      }));
+    }
+  }
+  return attachedFiles.length > 0 ? attachedFiles : undefined;
+}
+
+/** Map a session.history wire message to the store's Message shape */
+function toClientMessage(m: Record<string, unknown>): Message {
+  const content = String(m.content || '');
+  const blocks = m.contentBlocks as ContentBlock[] | undefined;
+  const role = String(m.role || 'user') as 'user' | 'assistant';
+  return {
+    id: String(m.id || ''),
+    sessionId: String(m.sessionId || ''),
+    role,
+    content,
+    contentBlocks: blocks,
+    blocksDeferred: !!m.blocksDeferred || undefined,
+    isPartial: !!m.isPartial,
+    createdAt: String(m.createdAt || ''),
+    timestamp: typeof m.timestamp === 'number' ? m.timestamp : undefined,
+    resolvedContent: resolveContent(content, blocks),
+    _attachedFiles: buildAttachedFiles(role, content, blocks),
+  };
+}
+
 export const useChatStore = create<ChatState>((set, get) => ({
   messages: [],
   loading: false,
+  hasMoreHistory: false,
+  loadingOlder: false,
   error: null,
   contextWarning: null,
   contextUsage: null,
@@ -469,6 +580,8 @@ export const useChatStore = create<ChatState>((set, get) => ({
       contextUsage: null,
       sending: isTargetSending,
       loading: !initCached,
+      hasMoreHistory: false,
+      loadingOlder: false,
     });
 
     // Now load from IndexedDB / server asynchronously
@@ -518,104 +631,30 @@ export const useChatStore = create<ChatState>((set, get) => ({
     if (!sessionCache.has(sessionId)) set({ loading: true, error: null });
 
     const unsub = wrapHandler(client, 'session.history', (data) => {
-      // Ignore responses for other sessions — don't unsub, wait for ours
-      if (String(data.sessionId) !== sessionId) return;
+      // Ignore responses for other sessions or older-page responses — don't unsub, wait for ours
+      if (String(data.sessionId) !== sessionId || data.beforeId != null) return;
       unsub();
 
       // User already switched away — just update cache, don't touch UI
       if (get().currentSessionId !== sessionId) return;
 
+      const pageMsgs: Message[] = Array.isArray(data.messages)
+        ? (data.messages as Record<string, unknown>[]).map(toClientMessage)
+        : [];
+      // Keep older pages the user already scrolled into — the newest page replaces only its own range
+      const firstPageId = pageMsgs.length > 0 ? Number(pageMsgs[0].id) : Infinity;
+      const keptOlder = get().messages.filter(m => isServerMessageId(m.id) && Number(m.id) < firstPageId);
+      const serverMsgs = keptOlder.length > 0 ? [...keptOlder, ...pageMsgs] : pageMsgs;
+      // With older pages kept we can't know what precedes them — let the next scroll-up ask the server
+      const hasMoreHistory = keptOlder.length > 0 || !!data.hasMore;
+
       // Session is now actively streaming in this tab — don't overwrite streaming content
       if (sendingSessions.has(sessionId)) {
         // Just update cache, don't touch UI
-        const serverMsgs: Message[] = Array.isArray(data.messages)
-          ? data.messages.map((m: Record<string, unknown>) => {
-              const content = String(m.content || '');
-              const blocks = m.contentBlocks as ContentBlock[] | undefined;
-              return {
-                id: String(m.id || ''),
-                sessionId: String(m.sessionId || ''),
-                role: String(m.role || 'user') as 'user' | 'assistant',
-                content,
-                contentBlocks: blocks,
-                isPartial: !!m.isPartial,
-                createdAt: String(m.createdAt || ''),
-                timestamp: typeof m.timestamp === 'number' ? m.timestamp : undefined,
-                resolvedContent: resolveContent(content, blocks),
-              };
-            })
-          : [];
         sessionCache.set(sessionId, serverMsgs);
         return;
       }
 
-      const serverMsgs: Message[] = Array.isArray(data.messages)
-        ? data.messages.map((m: Record<string, unknown>) => {
-            const content = String(m.content || '');
-            const blocks = m.contentBlocks as ContentBlock[] | undefined;
-            const role = String(m.role || 'user') as 'user' | 'assistant';
-            let attachedFiles: Array<{ fileName: string; mimeType: string; fileSize: number; preview: string | null; filePath?: string }> | undefined;
-
-            // Reconstruct _attachedFiles for user messages
-            if (role === 'user') {
-              attachedFiles = [];
-              // From persisted contentBlocks (attached_file type)
-              if (blocks) {
-                const fileBlocks = blocks.filter((b: any) => b.type === 'attached_file');
-                for (const b of fileBlocks) {
-                  attachedFiles.push({
-                    fileName: (b as any).fileName || 'file',
-                    mimeType: 'application/octet-stream',
-                    fileSize: 0,
-                    preview: null,
-                    filePath: (b as any).filePath,
-                  });
-                }
-                // From persisted image blocks (base64 images)
-                const imageBlocks = blocks.filter((b: any) => b.type === 'image' && b.source?.data);
-                for (const b of imageBlocks) {
-                  const src = (b as any).source;
-                  const mime = src?.media_type || 'image/png';
-                  const data = src?.data as string;
-                  attachedFiles.push({
-                    fileName: 'image',
-                    mimeType: mime,
-                    fileSize: Math.round((data.length * 3) / 4),
-                    preview: `data:${mime};base64,${data}`,
-                  });
-                }
-              }
-              // Fallback: extract from text [用户文件路径:[path1,path2]]
-              if (attachedFiles.length === 0) {
-                const pathMatch = content.match(/\[用户文件路径:\[([^\]]+)\]\]/);
-                if (pathMatch) {
-                  attachedFiles = pathMatch[1].split(',').map(fp => ({
-                    fileName: fp.split(/[/\\]/).pop() || 'file',
-                    mimeType: 'application/octet-stream',
-                    fileSize: 0,
-                    preview: null,
-                    filePath: fp,
-                  }));
-                }
-              }
-              if (attachedFiles.length === 0) attachedFiles = undefined;
-            }
-
-            return {
-              id: String(m.id || ''),
-              sessionId: String(m.sessionId || ''),
-              role,
-              content,
-              contentBlocks: blocks,
-              isPartial: !!m.isPartial,
-              createdAt: String(m.createdAt || ''),
-              timestamp: typeof m.timestamp === 'number' ? m.timestamp : undefined,
-              resolvedContent: resolveContent(content, blocks),
-              _attachedFiles: attachedFiles,
-            };
-          })
-        : [];
-
       // Update cache
       sessionCache.set(sessionId, serverMsgs);
 
@@ -623,31 +662,12 @@ export const useChatStore = create<ChatState>((set, get) => ({
       // Restore context usage from server if available
       const serverUsage = data.usage as { inputTokens: number; outputTokens: number } | null | undefined;
       const contextUsage = serverUsage && serverUsage.inputTokens > 0 ? serverUsage : null;
-      set({ messages: serverMsgs, loading: false, contextUsage });
-
-      // If last message is partial (backend stream still in progress), poll until it's replaced
-      const lastMsg = serverMsgs[serverMsgs.length - 1];
-      if (lastMsg?.role === 'assistant' && lastMsg.isPartial && !partialPollTimers.has(sessionId)) {
-        const timer = setInterval(() => {
-          if (get().currentSessionId !== sessionId) { clearInterval(timer); partialPollTimers.delete(sessionId); return; }
-          // Check if the partial message is still there
-          const msgs = get().messages;
-          const last = msgs[msgs.length - 1];
-          if (!last?.isPartial) { clearInterval(timer); partialPollTimers.delete(sessionId); return; }
-          get().loadHistory();
-        }, 5_000);
-        partialPollTimers.set(sessionId, timer);
-        setTimeout(() => { clearInterval(timer); partialPollTimers.delete(sessionId); }, 600_000);
-      } else if (lastMsg && !lastMsg.isPartial && partialPollTimers.has(sessionId)) {
-        // Partial replaced by complete message — stop polling
-        clearInterval(partialPollTimers.get(sessionId)!);
-        partialPollTimers.delete(sessionId);
-      }
+      set({ messages: serverMsgs, loading: false, contextUsage, hasMoreHistory });
 
-      // Auto-label from first user message
+      // Auto-label from first user message (only meaningful once the first page is loaded)
       const { sessions } = get();
       const session = sessions.find(s => s.key === sessionId);
-      if (!session?.label) {
+      if (!session?.label && !hasMoreHistory) {
         const firstUser = serverMsgs.find(m => m.role === 'user' && m.content.trim());
         if (firstUser) {
           const text = firstUser.content.trim();
@@ -656,7 +676,80 @@ export const useChatStore = create<ChatState>((set, get) => ({
         }
       }
     });
-    client.send({ type: 'session.history', sessionId });
+    client.send({ type: 'session.history', sessionId, limit: HISTORY_PAGE_SIZE });
+  },
+
+  loadOlderHistory: async () => {
+    const client = getWsClient();
+    if (!client) return;
+    const { currentSessionId: sessionId, messages, hasMoreHistory, loadingOlder } = get();
+    if (!sessionId || !hasMoreHistory || loadingOlder) return;
+    const oldest = messages.find(m => isServerMessageId(m.id));
+    if (!oldest) return;
+    const beforeId = Number(oldest.id);
+
+    set({ loadingOlder: true });
+    const request = Symbol('loadOlderHistory');
+    activeOlderLoad = request;
+    // Runs on the reply, a server error or the timeout — a dropped reply must not leave loadingOlder stuck
+    const finish = () => {
+      clearTimeout(timeout);
+      unsub();
+      unsubErr();
+      // After a session switch a newer request may own the flag
+      if (activeOlderLoad !== request) return;
+      activeOlderLoad = null;
+      set({ loadingOlder: false });
+    };
+    const timeout = setTimeout(finish, OLDER_HISTORY_TIMEOUT_MS);
+    const unsub = wrapHandler(client, 'session.history', (data) => {
+      if (String(data.sessionId) !== sessionId || data.beforeId !== beforeId) return;
+      if (get().currentSessionId === sessionId) {
+        const older: Message[] = Array.isArray(data.messages)
+          ? (data.messages as Record<string, unknown>[]).map(toClientMessage)
+          : [];
+        const merged = [...older, ...get().messages];
+        sessionCache.set(sessionId, merged);
+        set({ messages: merged, hasMoreHistory: !!data.hasMore });
+      }
+      finish();
+    });
+    const unsubErr = wrapHandler(client, 'chat.error', (data) => {
+      if (String(data.sessionId) !== sessionId) return;
+      finish();
+    });
+    client.send({ type: 'session.history', sessionId, beforeId, limit: HISTORY_PAGE_SIZE });
+  },
+
+  loadMessageBlocks: (messageId: string) => {
+    const client = getWsClient();
+    const sessionId = get().currentSessionId;
+    if (!client || !sessionId || !isServerMessageId(messageId) || pendingBlockLoads.has(messageId)) return;
+    pendingBlockLoads.add(messageId);
+
+    const unsub = wrapHandler(client, 'session.messageBlocks', (data) => {
+      if (String(data.sessionId) !== sessionId || String(data.messageId) !== messageId) return;
+      unsub();
+      pendingBlockLoads.delete(messageId);
+
+      const blocks = (data.contentBlocks as ContentBlock[] | null) ?? undefined;
+      const patch = (msgs: Message[]) => msgs.map(m => m.id === messageId
+        ? {
+            ...m,
+            contentBlocks: blocks,
+            blocksDeferred: undefined,
+            resolvedContent: resolveContent(m.content, blocks),
+            _attachedFiles: buildAttachedFiles(m.role, m.content, blocks),
+          }
+        : m);
+
+      const cached = sessionCache.get(sessionId) as Message[] | null;
+      if (cached) sessionCache.set(sessionId, patch(cached));
+      if (get().currentSessionId === sessionId) {
+        set({ messages: patch(get().messages) });
+      }
+    });
+    client.send({ type: 'session.messageBlocks', sessionId, messageId: Number(messageId) });
   },
 
   updateSessionLabel: async (sessionId: string, label: string) => {
@@ -1436,8 +1529,60 @@ export const useChatStore = create<ChatState>((set, get) => ({
     set({ messages: [], streamingBlocks: [], error: null, contextWarning: null, contextUsage: null, sending: false });
     get().loadHistory();
   },
+  resumeStreams: () => {
+    const client = getWsClient();
+    if (!client?.connected) return;
+    for (const sessionId of sendingSessions) {
+      client.resumeSession(sessionId);
+    }
+  },
+  handleStreamResumed: (msg) => {
+    const sessionId = String(msg.sessionId ?? '');
+    if (!sessionId || !msg.reset) return;
+    // Frames were lost — drop the half-built stream and take the server's persisted state
+    cleanupStream(sessionId);
+    clearStreamingBlocks(sessionId);
+    sendingSessions.delete(sessionId);
+    sessionCache.invalidate(sessionId);
+    syncSending();
+    if (get().currentSessionId === sessionId) {
+      set({ streamingBlocks: [] });
+      get().loadHistory();
+    }
+  },
+  handlePartialUpdated: (msg) => {
+    const sessionId = String(msg.sessionId ?? '');
+    // A tab that is sending renders the stream from chat.delta frames
+    if (!sessionId || !msg.message || sendingSessions.has(sessionId)) return;
+    applyPushedMessage(sessionId, toClientMessage(msg.message as Record<string, unknown>));
+  },
+  handleStreamCompleted: (msg) => {
+    const sessionId = String(msg.sessionId ?? '');
+    if (!sessionId || sendingSessions.has(sessionId)) return;
+    applyPushedMessage(sessionId, msg.message ? toClientMessage(msg.message as Record<string, unknown>) : null);
+  },
 }));
 
+/**
+ * Put a server-pushed message in place of the session's partial reply
+ * (null just drops the partial), in the visible list or the cache.
+ */
+function applyPushedMessage(sessionId: string, message: Message | null): void {
+  const merge = (messages: Message[]): Message[] => {
+    const rest = messages.filter(m => !m.isPartial && m.id !== message?.id);
+    return message ? [...rest, message] : rest;
+  };
+  const { currentSessionId, messages } = useChatStore.getState();
+  if (currentSessionId === sessionId) {
+    const next = merge(messages);
+    useChatStore.setState({ messages: next });
+    sessionCache.set(sessionId, next);
+    return;
+  }
+  const cached = sessionCache.get(sessionId) as Message[] | null;
+  if (cached) sessionCache.set(sessionId, merge(cached));
+}
+
 /** Convert streaming blocks to ContentBlock[] for message storage */
 function streamingBlocksToContentBlocks(blocks: StreamingBlock[]): ContentBlock[] {
   const result: ContentBlock[] = [];
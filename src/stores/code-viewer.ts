@@ -116,6 +116,9 @@ function stopFileRefresh() {
 // In-flight loadDir promises to prevent duplicate requests for the same path
 const _dirInFlight = new Map<string, Promise<DirEntry[]>>();
 
+// Handlers of the running symbol search (a superseded search never gets a final frame)
+let _symbolSearchUnsub: (() => void) | null = null;
+
 // ── Navigation History ──
 
 export interface NavLocation {
@@ -171,6 +174,7 @@ interface CodeViewerState {
   // Internal: request dedup counter
   _activeLoadId: number;
   _activeFileSearchId: number;
+  _activeSymbolSearchId: number;
 
   // Actions
   openViewer: (workspace: string, filePath: string, lineNumber?: number | null, sessionId?: string | null) => void;
@@ -236,6 +240,7 @@ export const useCodeViewerStore = create<CodeViewerState>((set, get) => ({
   // Internal
   _activeLoadId: 0,
   _activeFileSearchId: 0,
+  _activeSymbolSearchId: 0,
 
   openViewer(workspace, filePath, lineNumber = null, sessionId = null) {
     _dirInFlight.clear();
@@ -435,9 +440,19 @@ export const useCodeViewerStore = create<CodeViewerState>((set, get) => ({
 
     const { workspace } = get();
 
-    set({ searching: true, searchSymbol: symbol, searchResults: [] });
+    const searchId = get()._activeSymbolSearchId + 1;
+    set({ searching: true, searchSymbol: symbol, searchResults: [], _activeSymbolSearchId: searchId });
+
+    _symbolSearchUnsub?.();
+    // Partial results stream in as code.searchResult frames; code.searchSymbols is final
+    const unsubPartial = wrapHandler(client, 'code.searchResult', (msg) => {
+      if (msg.searchId !== String(searchId)) return;
+      const matches = msg.matches as SearchMatch[] | undefined;
+      if (matches?.length) set({ searchResults: [...get().searchResults, ...matches] });
+    });
 
-    const unsub = wrapHandler(client, 'code.searchSymbols', (msg) => {
+    const unsubFinal = wrapHandler(client, 'code.searchSymbols', (msg) => {
+      if (msg.searchId !== undefined && msg.searchId !== String(searchId)) return;
       unsub();
       try {
         if (msg.error) {
@@ -457,15 +472,24 @@ export const useCodeViewerStore = create<CodeViewerState>((set, get) => ({
       }
     });
 
+    const unsub = () => {
+      unsubPartial();
+      unsubFinal();
+      if (_symbolSearchUnsub === unsub) _symbolSearchUnsub = null;
+    };
+    _symbolSearchUnsub = unsub;
+
     client.send({
       type: 'code.searchSymbols',
       workspace,
       symbol,
+      searchId: String(searchId),
       ...(fileExt ? { fileExt } : {}),
     });
   },
 
   clearSearch() {
+    _symbolSearchUnsub?.();
     set({
       searchResults: [],
       searching: false,
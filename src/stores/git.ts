@@ -24,6 +24,22 @@ function getWorkspace(): string | undefined {
   return session?.workspace;
 }
 
+/** Request one commit graph page; replies are matched by the echoed cursor */
+function requestLogGraphPage(
+  client: NonNullable<ReturnType<typeof getWsClient>>,
+  workspace: string,
+  cursor: string | null,
+  onPage: (page: GitGraphPage) => void,
+) {
+  const unsub = wrapHandler(client, 'git.logGraphPage', (msg) => {
+    if ((msg.cursor ?? null) !== cursor) return;
+    unsub();
+    const result = msg.result as GitGraphPage | undefined;
+    onPage(result && Array.isArray(result.rows) ? result : { graphId: '', rows: [], offset: 0, nextCursor: null, error: result?.error ?? 'Invalid response' });
+  });
+  client.send({ type: 'git.logGraphPage', workspace, cursor: cursor ?? undefined });
+}
+
 // ── Commit Template (localStorage) ─────────────────────────────────
 
 const TEMPLATE_KEY = 'sman-commit-template';
@@ -93,16 +109,38 @@ export interface GitBranch {
 
 export type DiffTab = 'local' | 'remote' | 'log';
 
-export interface GitLogGraphNode {
+export interface GitCommitSummary {
   hash: string;
   shortHash: string;
   message: string;
   author: string;
   date: string;
   refs: string;
+}
+
+export interface GitLogGraphNode extends GitCommitSummary {
   graphLine: string;
 }
 
+/** One row of the paged commit graph; lanes are assigned server-side */
+export interface GitGraphRow extends GitCommitSummary {
+  parents: string[];
+  lane: number;
+  up: number[];
+  down: number[];
+  through: number[];
+  width: number;
+}
+
+interface GitGraphPage {
+  graphId: string;
+  rows: GitGraphRow[];
+  offset: number;
+  nextCursor: string | null;
+  reset?: boolean;
+  error?: string;
+}
+
 // ── Store ──────────────────────────────────────────────────────────
 
 interface GitState {
@@ -119,7 +157,10 @@ interface GitState {
   remoteDiffLoading: boolean;
 
   log: GitLogEntry[];
-  logGraph: GitLogGraphNode[];
+  logGraph: GitGraphRow[];
+  /** Cursor of the next graph page; null once all history is loaded */
+  logGraphCursor: string | null;
+  logGraphLoading: boolean;
   logSearchResults: GitLogGraphNode[];
   logSearchLoading: boolean;
   aheadCommits: { hash: string; shortHash: string; message: string; author: string; date: string }[];
@@ -143,6 +184,7 @@ interface GitState {
   commit: (message: string, files?: string[]) => void;
   fetchLog: () => void;
   fetchLogGraph: () => void;
+  fetchMoreLogGraph: () => void;
   searchLog: (query: string) => void;
   fetchAheadCommits: () => void;
   fetchBranches: () => void;
@@ -168,6 +210,8 @@ export const useGitStore = create<GitState>((set, get) => ({
   remoteDiffLoading: false,
   log: [],
   logGraph: [],
+  logGraphCursor: null,
+  logGraphLoading: false,
   logSearchResults: [],
   logSearchLoading: false,
   aheadCommits: [],
@@ -311,15 +355,32 @@ export const useGitStore = create<GitState>((set, get) => ({
     const workspace = getWorkspace();
     if (!client || !workspace) return;
 
-    const unsub = wrapHandler(client, 'git.logGraph', (msg) => {
-      unsub();
-      const result = msg.result as (GitLogGraphNode[] & { error?: string }) | undefined;
-      if (result?.error) return;
-      const logGraph = Array.isArray(result) ? result : [];
-      set({ logGraph });
+    set({ logGraphLoading: true });
+    requestLogGraphPage(client, workspace, null, (page) => {
+      if (page.error) {
+        set({ logGraphLoading: false });
+        return;
+      }
+      set({ logGraph: page.rows, logGraphCursor: page.nextCursor, logGraphLoading: false });
     });
+  },
+
+  fetchMoreLogGraph() {
+    const client = getWsClient();
+    const workspace = getWorkspace();
+    const { logGraphCursor: cursor, logGraphLoading } = get();
+    if (!client || !workspace || !cursor || logGraphLoading) return;
 
-    client.send({ type: 'git.logGraph', workspace });
+    set({ logGraphLoading: true });
+    requestLogGraphPage(client, workspace, cursor, (page) => {
+      if (page.error) {
+        set({ logGraphLoading: false });
+        return;
+      }
+      // Refs changed since the first page: the server restarted from the top
+      const logGraph = page.reset ? page.rows : [...get().logGraph.slice(0, page.offset), ...page.rows];
+      set({ logGraph, logGraphCursor: page.nextCursor, logGraphLoading: false });
+    });
   },
 
   searchLog(query: string) {
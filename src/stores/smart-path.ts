@@ -60,7 +60,7 @@ interface SmartPathState {
   createPath: (input: { name: string; description?: string; workspace: string; steps: string }) => Promise<SmartPath>;
   updatePath: (pathId: string, workspace: string, updates: Partial<SmartPath>) => Promise<void>;
   deletePath: (pathId: string, workspace: string) => Promise<void>;
-  runPath: (pathId: string, workspace: string, args?: string, useRefs?: boolean) => Promise<void>;
+  runPath: (pathId: string, workspace: string, args?: string, useRefs?: boolean, reuseCache?: boolean) => Promise<void>;
   abortPath: (pathId: string) => void;
   fetchRuns: (pathId: string, workspace: string) => Promise<void>;
   fetchReport: (pathId: string, workspace: string, fileName: string) => Promise<void>;
@@ -85,6 +85,8 @@ interface SmartPathState {
   currentStepIndex: number;
   stepUseRefs: boolean;
   pathUseRefsMap: Record<string, boolean>;
+  /** Per-path "reuse cached steps" toggle; unset falls back to the path's reuseCachedSteps */
+  pathReuseCacheMap: Record<string, boolean>;
 
   startStepping: (pathId: string, workspace: string, args?: string, useRefs?: boolean) => Promise<void>;
   runStepContinue: (pathId: string, workspace: string, args?: string, useRefs?: boolean) => Promise<void>;
@@ -95,6 +97,7 @@ interface SmartPathState {
   finalizeStepping: (pathId: string, workspace: string) => Promise<void>;
   cancelStepping: (pathId: string) => void;
   setPathUseRefs: (pathId: string, value: boolean) => void;
+  setPathReuseCache: (pathId: string, value: boolean) => void;
 
   // 指南对话
   guideChatOpen: Record<number, boolean>;
@@ -143,6 +146,7 @@ export const useSmartPathStore = create<SmartPathState>((set) => ({
   currentStepIndex: -1,
   stepUseRefs: false,
   pathUseRefsMap: {},
+  pathReuseCacheMap: {},
 
   fetchPaths: async (workspaces) => {
     const client = getWsClient();
@@ -220,7 +224,7 @@ export const useSmartPathStore = create<SmartPathState>((set) => ({
     });
   },
 
-  runPath: async (pathId, workspace, args, useRefs = false) => {
+  runPath: async (pathId, workspace, args, useRefs = false, reuseCache) => {
     const client = getWsClient();
     if (!client) throw new Error('Not connected');
     set({ running: true, error: null, stepExecutionStream: {}, stepExecutionStatus: {} });
@@ -252,6 +256,7 @@ export const useSmartPathStore = create<SmartPathState>((set) => ({
     const unsubComplete = wrapHandler(client, 'smartpath.completed', (data) => {
       if (data.pathId === pathId) {
         unsubStepProgress(); unsubStepResult(); unsubProgress(); unsubComplete(); unsubFailed();
+        client.unsubscribeTopic(`smartpath:${pathId}`);
         const p = data.path as SmartPath;
         const refs = (data.references as SmartPathReference[]) || [];
         set((s) => ({ running: false, paths: s.paths.map((x) => x.id === pathId ? { ...x, ...p } : x), references: refs }));
@@ -260,6 +265,7 @@ export const useSmartPathStore = create<SmartPathState>((set) => ({
     const unsubFailed = wrapHandler(client, 'smartpath.failed', (data) => {
       if (data.pathId === pathId) {
         unsubStepProgress(); unsubStepResult(); unsubProgress(); unsubComplete(); unsubFailed();
+        client.unsubscribeTopic(`smartpath:${pathId}`);
         set((s) => ({ running: false, paths: s.paths.map((p) => p.id === pathId ? { ...p, status: 'failed' as SmartPathStatus } : p), error: String(data.error) }));
       }
     });
@@ -268,10 +274,12 @@ export const useSmartPathStore = create<SmartPathState>((set) => ({
       const unsub = wrapHandler(client, 'smartpath.running', () => { unsub(); resolve(); });
       const unsubErr = wrapHandler(client, 'chat.error', (data) => {
         unsub(); unsubStepProgress(); unsubStepResult(); unsubProgress(); unsubComplete(); unsubFailed();
+        client.unsubscribeTopic(`smartpath:${pathId}`);
         set({ running: false, error: String(data.error) });
         reject(new Error(String(data.error)));
       });
-      client.send({ type: 'smartpath.run', pathId, workspace, args, useRefs });
+      client.subscribeTopic(`smartpath:${pathId}`);
+      client.send({ type: 'smartpath.run', pathId, workspace, args, useRefs, reuseCache });
     });
   },
 
@@ -454,6 +462,7 @@ export const useSmartPathStore = create<SmartPathState>((set) => ({
       });
       const unsubErr = wrapHandler(client, 'chat.error', (data) => {
         unsubOrchestrated(); unsubErr(); unsubProgress();
+        client.unsubscribeTopic(`smartpath:${pathId}`);
         set({ stepping: false, error: String(data.error) });
         reject(new Error(String(data.error)));
       });
@@ -470,6 +479,7 @@ export const useSmartPathStore = create<SmartPathState>((set) => ({
         }
       });
 
+      client.subscribeTopic(`smartpath:${pathId}`);
       client.send({ type: 'smartpath.orchestrate', pathId, workspace, args, useRefs });
     });
   },
@@ -637,6 +647,7 @@ export const useSmartPathStore = create<SmartPathState>((set) => ({
       const unsubComplete = wrapHandler(client, 'smartpath.completed', (data) => {
         if (data.pathId === pathId) {
           unsubComplete(); unsubErr();
+          client.unsubscribeTopic(`smartpath:${pathId}`);
           const p = data.path as SmartPath;
           const refs = (data.references as SmartPathReference[]) || [];
           set((s) => ({
@@ -654,6 +665,7 @@ export const useSmartPathStore = create<SmartPathState>((set) => ({
       });
       const unsubErr = wrapHandler(client, 'chat.error', (data) => {
         unsubComplete(); unsubErr();
+        client.unsubscribeTopic(`smartpath:${pathId}`);
         set({ stepping: false, finalizing: false, error: String(data.error) });
         reject(new Error(String(data.error)));
       });
@@ -667,7 +679,10 @@ export const useSmartPathStore = create<SmartPathState>((set) => ({
 
   cancelStepping: (pathId) => {
     const client = getWsClient();
-    if (client && pathId) client.send({ type: 'smartpath.abort', pathId });
+    if (client && pathId) {
+      client.send({ type: 'smartpath.abort', pathId });
+      client.unsubscribeTopic(`smartpath:${pathId}`);
+    }
     set({
       stepping: false,
       finalizing: false,
@@ -684,6 +699,10 @@ export const useSmartPathStore = create<SmartPathState>((set) => ({
     set((s) => ({ pathUseRefsMap: { ...s.pathUseRefsMap, [pathId]: value } }));
   },
 
+  setPathReuseCache: (pathId, value) => {
+    set((s) => ({ pathReuseCacheMap: { ...s.pathReuseCacheMap, [pathId]: value } }));
+  },
+
   // ── 指南对话 ──
 
   startGuideChat: async (pathId, workspace, stepIndex, stepResult) => {
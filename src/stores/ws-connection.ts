@@ -35,6 +35,16 @@ function registerListeners(client: WsClient) {
   client.on('connected', () => {
     useWsConnection.setState({ status: 'connected' });
     useIMStore.getState().syncAfterReconnect();
+    useChatStore.getState().resumeStreams();
+  });
+  client.on('session.resumed', (msg: unknown) => {
+    useChatStore.getState().handleStreamResumed(msg as Record<string, unknown>);
+  });
+  client.on('session.partialUpdated', (msg: unknown) => {
+    useChatStore.getState().handlePartialUpdated(msg as Record<string, unknown>);
+  });
+  client.on('session.streamCompleted', (msg: unknown) => {
+    useChatStore.getState().handleStreamCompleted(msg as Record<string, unknown>);
   });
   client.on('disconnected', () => useWsConnection.setState({ status: 'disconnected' }));
   client.on('authFailed', () => useWsConnection.setState({ status: 'auth_failed' }));
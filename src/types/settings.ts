@@ -202,6 +202,11 @@ export interface SmartPathStep {
   generatedContent?: string;
   deliveryCheck?: string;
   skills?: string[];
+  /**
+   * Steps whose results this step needs: 0-based step indexes or step names.
+   * Omitted means the previous step (sequential); [] starts without waiting.
+   */
+  dependsOn?: Array<number | string>;
 }
 
 export interface SmartPath {
@@ -213,6 +218,10 @@ export interface SmartPath {
   status: SmartPathStatus;
   cronExpression?: string;
   defaultArgs?: string;
+  /** Max steps of one run executing at once (path.md `max_parallel`) */
+  maxParallel?: number;
+  /** Reuse cached results of steps whose inputs are unchanged (path.md `reuse_cached_steps`) */
+  reuseCachedSteps?: boolean;
   createdAt: string;
   updatedAt: string;
 }
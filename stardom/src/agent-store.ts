@@ -4,6 +4,7 @@ import type { Database } from 'better-sqlite3';
 // @ts-expect-error - better-sqlite3 ESM interop
 const DatabaseConstructor = betterSqlite3 as unknown as typeof betterSqlite3.default;
 import { createLogger, type Logger } from './utils/logger.js';
+import { StatementCache } from './utils/sqlite.js';
 
 // ── 输入类型 ──
 
@@ -40,14 +41,20 @@ export interface AuditRow {
 
 export class AgentStore {
   private db: Database;
+  private statements: StatementCache;
   private log: Logger;
 
   constructor(dbPath: string) {
     this.db = new DatabaseConstructor(dbPath);
+    this.statements = new StatementCache(this.db);
     this.log = createLogger('AgentStore');
     this.init();
   }
 
+  private stmt(sql: string) {
+    return this.statements.get(sql);
+  }
+
   private init(): void {
     this.db.exec(`
       CREATE TABLE IF NOT EXISTS agents (
@@ -107,7 +114,7 @@ export class AgentStore {
 
   registerAgent(input: RegisterInput): AgentRow {
     const now = new Date().toISOString();
-    this.db.prepare(`
+    this.stmt(`
       INSERT INTO agents (id, username, hostname, name, description, avatar, status, created_at)
       VALUES (?, ?, ?, ?, ?, ?, 'idle', ?)
     `).run(input.id, input.username, input.hostname, input.name, input.description ?? '', input.avatar ?? '🧙', now);
@@ -115,32 +122,32 @@ export class AgentStore {
   }
 
   getAgent(id: string): AgentRow | undefined {
-    return this.db.prepare(
+    return this.stmt(
       'SELECT id, username, hostname, name, avatar, status, reputation, last_seen_at as lastSeenAt, created_at as createdAt FROM agents WHERE id = ?'
     ).get(id) as AgentRow | undefined;
   }
 
   getAgentByUsername(username: string): AgentRow | undefined {
-    return this.db.prepare(
+    return this.stmt(
       'SELECT id, username, hostname, name, avatar, status, reputation, last_seen_at as lastSeenAt, created_at as createdAt FROM agents WHERE username = ?'
     ).get(username) as AgentRow | undefined;
   }
 
   updateAgentStatus(id: string, status: string): void {
-    this.db.prepare('UPDATE agents SET status = ? WHERE id = ?').run(status, id);
+    this.stmt('UPDATE agents SET status = ? WHERE id = ?').run(status, id);
   }
 
   updateHeartbeat(id: string): void {
-    this.db.prepare('UPDATE agents SET last_seen_at = ?, status = CASE WHEN status = ? THEN ? ELSE status END WHERE id = ?')
+    this.stmt('UPDATE agents SET last_seen_at = ?, status = CASE WHEN status = ? THEN ? ELSE status END WHERE id = ?')
       .run(new Date().toISOString(), 'offline', 'idle', id);
   }
 
   setAgentOffline(id: string): void {
-    this.db.prepare('UPDATE agents SET status = ? WHERE id = ?').run('offline', id);
+    this.stmt('UPDATE agents SET status = ? WHERE id = ?').run('offline', id);
   }
 
   listOnlineAgents(): AgentRow[] {
-    return this.db.prepare(
+    return this.stmt(
       "SELECT id, username, hostname, name, avatar, status, reputation, last_seen_at as lastSeenAt, created_at as createdAt FROM agents WHERE status != 'offline'"
     ).all() as AgentRow[];
   }
@@ -148,14 +155,14 @@ export class AgentStore {
   // ── Audit Log ──
 
   logAudit(eventType: string, agentId: string, targetAgentId?: string, taskId?: string, detail?: Record<string, unknown>): void {
-    this.db.prepare(`
+    this.stmt(`
       INSERT INTO audit_log (timestamp, event_type, agent_id, target_agent_id, task_id, detail)
       VALUES (?, ?, ?, ?, ?, ?)
     `).run(new Date().toISOString(), eventType, agentId, targetAgentId ?? null, taskId ?? null, JSON.stringify(detail ?? {}));
   }
 
   getAuditLogs(agentId: string, limit = 100): AuditRow[] {
-    return this.db.prepare(
+    return this.stmt(
       'SELECT id, timestamp, event_type as eventType, agent_id as agentId, target_agent_id as targetAgentId, task_id as taskId, detail FROM audit_log WHERE agent_id = ? ORDER BY timestamp DESC LIMIT ?'
     ).all(agentId, limit) as AuditRow[];
   }
@@ -163,20 +170,20 @@ export class AgentStore {
   // ── Reputation ──
 
   updateReputation(agentId: string, delta: number): void {
-    this.db.prepare(`
+    this.stmt(`
       UPDATE agents SET reputation = MAX(0, reputation + ?) WHERE id = ?
     `).run(delta, agentId);
   }
 
   logReputation(agentId: string, taskId: string, delta: number, reason: string, sourceAgentId?: string): void {
-    this.db.prepare(`
+    this.stmt(`
       INSERT INTO reputation_log (agent_id, task_id, delta, reason, source_agent_id, created_at)
       VALUES (?, ?, ?, ?, ?, ?)
     `).run(agentId, taskId, delta, reason, sourceAgentId ?? null, new Date().toISOString());
   }
 
   getReputationLogs(agentId: string, limit = 100): Array<{ id: number; taskId: string; delta: number; reason: string; createdAt: string }> {
-    return this.db.prepare(`
+    return this.stmt(`
       SELECT id, task_id as taskId, delta, reason, created_at as createdAt
       FROM reputation_log WHERE agent_id = ?
       ORDER BY created_at DESC LIMIT ?
@@ -185,7 +192,7 @@ export class AgentStore {
 
   getReputationCountToday(agentId: string, sourceAgentId: string): number {
     const today = new Date().toISOString().slice(0, 10);
-    const row = this.db.prepare(`
+    const row = this.stmt(`
       SELECT COUNT(*) as count FROM reputation_log
       WHERE agent_id = ? AND source_agent_id = ? AND created_at >= ?
     `).get(agentId, sourceAgentId, today) as { count: number } | undefined;
@@ -193,7 +200,7 @@ export class AgentStore {
   }
 
   getLastCollaborationAt(agentId: string): string | null {
-    const row = this.db.prepare(`
+    const row = this.stmt(`
       SELECT MAX(created_at) as lastAt FROM reputation_log
       WHERE agent_id = ? AND reason != 'decay'
     `).get(agentId) as { lastAt: string | null } | undefined;
@@ -205,7 +212,7 @@ export class AgentStore {
     const today = new Date().toISOString().slice(0, 10);
 
     // 找到所有不活跃的 Agent（排除今天已经衰减过的）
-    const inactiveAgents = this.db.prepare(`
+    const inactiveAgents = this.stmt(`
       SELECT a.id, a.reputation
       FROM agents a
       WHERE a.status != 'offline'
@@ -219,10 +226,10 @@ export class AgentStore {
 
     if (inactiveAgents.length === 0) return 0;
 
-    const updateStmt = this.db.prepare(`
+    const updateStmt = this.stmt(`
       UPDATE agents SET reputation = MAX(0, reputation - ?) WHERE id = ?
     `);
-    const logStmt = this.db.prepare(`
+    const logStmt = this.stmt(`
       INSERT INTO reputation_log (agent_id, task_id, delta, reason, created_at)
       VALUES (?, '__decay__', ?, 'decay', ?)
     `);
@@ -248,7 +255,7 @@ export class AgentStore {
     status: string;
     helpCount: number;
   }> {
-    return this.db.prepare(`
+    return this.stmt(`
       SELECT a.id as agentId, a.name, a.avatar, a.reputation, a.status,
         (SELECT COUNT(*) FROM reputation_log rl WHERE rl.agent_id = a.id AND rl.reason != 'decay') as helpCount
       FROM agents a
@@ -269,8 +276,8 @@ export class AgentStore {
 
   updateCapabilities(agentId: string, domains: string[]): void {
     const now = new Date().toISOString();
-    const deleteStmt = this.db.prepare('DELETE FROM agent_capabilities WHERE agent_id = ?');
-    const insertStmt = this.db.prepare('INSERT INTO agent_capabilities (agent_id, domain, updated_at) VALUES (?, ?, ?)');
+    const deleteStmt = this.stmt('DELETE FROM agent_capabilities WHERE agent_id = ?');
+    const insertStmt = this.stmt('INSERT INTO agent_capabilities (agent_id, domain, updated_at) VALUES (?, ?, ?)');
     const tx = this.db.transaction(() => {
       deleteStmt.run(agentId);
       for (const domain of domains) {
@@ -281,7 +288,7 @@ export class AgentStore {
   }
 
   getCapabilities(agentId: string): string[] {
-    return this.db.prepare(
+    return this.stmt(
       'SELECT domain FROM agent_capabilities WHERE agent_id = ?'
     ).all(agentId).map((r: any) => r.domain);
   }
@@ -290,7 +297,7 @@ export class AgentStore {
    * 按领域查找在线 Agent（用于 task matching）
    */
   findAgentsByDomain(domain: string): Array<AgentRow & { domainMatch: boolean }> {
-    return this.db.prepare(`
+    return this.stmt(`
       SELECT a.id, a.username, a.hostname, a.name, a.description, a.avatar, a.status, a.reputation,
              a.last_seen_at as lastSeenAt, a.created_at as createdAt,
              CASE WHEN ac.domain IS NOT NULL THEN 1 ELSE 0 END as domainMatch
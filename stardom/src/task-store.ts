@@ -4,6 +4,7 @@ import type { Database } from 'better-sqlite3';
 // @ts-expect-error - better-sqlite3 ESM interop
 const DatabaseConstructor = betterSqlite3 as unknown as typeof betterSqlite3.default;
 import { createLogger, type Logger } from './utils/logger.js';
+import { StatementCache } from './utils/sqlite.js';
 import fs from 'fs';
 import path from 'path';
 
@@ -32,16 +33,22 @@ export interface ChatMessageRow {
 
 export class TaskStore {
   private db: Database;
+  private statements: StatementCache;
   private log: Logger;
 
   constructor(dbPath: string) {
     const dir = path.dirname(dbPath);
     if (!fs.existsSync(dir)) fs.mkdirSync(dir, { recursive: true });
     this.db = new DatabaseConstructor(dbPath);
+    this.statements = new StatementCache(this.db);
     this.log = createLogger('TaskStore');
     this.init();
   }
 
+  private stmt(sql: string) {
+    return this.statements.get(sql);
+  }
+
   private init(): void {
     this.db.exec(`
       CREATE TABLE IF NOT EXISTS tasks (
@@ -89,7 +96,7 @@ export class TaskStore {
     deadline?: string;
   }): void {
     const now = new Date().toISOString();
-    this.db.prepare(`
+    this.stmt(`
       INSERT INTO tasks (id, requester_id, helper_id, helper_name, question, capability_query, status, created_at, updated_at, deadline)
       VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
     `).run(
@@ -99,7 +106,7 @@ export class TaskStore {
   }
 
   getTask(id: string): TaskRow | undefined {
-    return this.db.prepare(`
+    return this.stmt(`
       SELECT id, requester_id as requesterId, helper_id as helperId, helper_name as helperName,
         question, capability_query as capabilityQuery, status, rating, feedback,
         created_at as createdAt, updated_at as updatedAt, completed_at as completedAt, deadline
@@ -117,7 +124,7 @@ export class TaskStore {
     const task = this.getTask(id);
     if (!task) return;
 
-    this.db.prepare(`
+    this.stmt(`
       UPDATE tasks SET status = ?, updated_at = ?,
         helper_id = COALESCE(?, helper_id),
         helper_name = COALESCE(?, helper_name),
@@ -134,7 +141,7 @@ export class TaskStore {
   }
 
   listActiveTasks(): TaskRow[] {
-    return this.db.prepare(`
+    return this.stmt(`
       SELECT id, requester_id as requesterId, helper_id as helperId, helper_name as helperName,
         question, capability_query as capabilityQuery, status, rating, feedback,
         created_at as createdAt, updated_at as updatedAt, completed_at as completedAt, deadline
@@ -144,7 +151,7 @@ export class TaskStore {
   }
 
   listTasksByAgent(agentId: string): TaskRow[] {
-    return this.db.prepare(`
+    return this.stmt(`
       SELECT id, requester_id as requesterId, helper_id as helperId, helper_name as helperName,
         question, capability_query as capabilityQuery, status, rating, feedback,
         created_at as createdAt, updated_at as updatedAt, completed_at as completedAt, deadline
@@ -154,7 +161,7 @@ export class TaskStore {
   }
 
   getActiveTaskCount(agentId: string): number {
-    const row = this.db.prepare(`
+    const row = this.stmt(`
       SELECT COUNT(*) as count FROM tasks
       WHERE (requester_id = ? OR helper_id = ?)
         AND status IN ('created', 'searching', 'offered', 'matched', 'chatting')
@@ -164,7 +171,7 @@ export class TaskStore {
 
   listTimedOutTasks(timeoutMinutes: number): TaskRow[] {
     const cutoff = new Date(Date.now() - timeoutMinutes * 60_000).toISOString();
-    return this.db.prepare(`
+    return this.stmt(`
       SELECT id, requester_id as requesterId, helper_id as helperId, helper_name as helperName,
         question, capability_query as capabilityQuery, status, rating, feedback,
         created_at as createdAt, updated_at as updatedAt, completed_at as completedAt, deadline
@@ -173,14 +180,14 @@ export class TaskStore {
   }
 
   saveChatMessage(taskId: string, from: string, text: string): void {
-    this.db.prepare(`
+    this.stmt(`
       INSERT INTO chat_messages (task_id, from_agent, text, timestamp)
       VALUES (?, ?, ?, ?)
     `).run(taskId, from, text, new Date().toISOString());
   }
 
   listChatMessages(taskId: string): ChatMessageRow[] {
-    return this.db.prepare(`
+    return this.stmt(`
       SELECT task_id as taskId, from_agent as \`from\`, text, timestamp
       FROM chat_messages WHERE task_id = ?
       ORDER BY timestamp ASC
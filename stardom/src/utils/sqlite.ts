@@ -0,0 +1,34 @@
+// stardom/src/utils/sqlite.ts
+import type { Database, Statement } from 'better-sqlite3';
+
+const DEFAULT_MAX_STATEMENTS = 256;
+
+/**
+ * Per-connection prepared statement cache, keyed by SQL text.
+ * Dynamically built SQL is bounded by an LRU cap.
+ */
+export class StatementCache {
+  private statements = new Map<string, Statement>();
+
+  constructor(private db: Database, private maxSize = DEFAULT_MAX_STATEMENTS) {}
+
+  get(sql: string): Statement {
+    const cached = this.statements.get(sql);
+    if (cached) {
+      this.statements.delete(sql);
+      this.statements.set(sql, cached);
+      return cached;
+    }
+    const stmt = this.db.prepare(sql);
+    this.statements.set(sql, stmt);
+    if (this.statements.size > this.maxSize) {
+      const oldest = this.statements.keys().next().value;
+      if (oldest !== undefined) this.statements.delete(oldest);
+    }
+    return stmt;
+  }
+
+  clear(): void {
+    this.statements.clear();
+  }
+}
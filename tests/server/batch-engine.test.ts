@@ -13,6 +13,7 @@ const mockAbort = vi.fn();
 const mockSessionManager = {
   sendMessageForCron: mockSendMessageForCron,
   createSessionWithId: mockCreateSessionWithId,
+  prewarmWorkspace: vi.fn(),
   abort: mockAbort,
   updateConfig: vi.fn(),
   close: vi.fn(),
@@ -134,6 +135,27 @@ describe('BatchEngine', () => {
       expect(store.getTask(task.id)!.status).toBe('tested');
     });
 
+    it('should stream NDJSON output into persisted items', async () => {
+      const task = store.createTask({
+        workspace: tmpDir,
+        skillName: 'test',
+        mdContent: '# md',
+        execTemplate: '/test ${name}',
+      });
+      store.updateTask(task.id, {
+        generatedCode: 'for (let i = 0; i < 2500; i++) console.log(JSON.stringify({ name: `item-${i}` }))',
+      });
+
+      const result = await engine.testCode(task.id);
+      expect(result.totalItems).toBe(2500);
+      expect(result.items).toHaveLength(100);
+      expect(store.getTask(task.id)!.totalItems).toBe(2500);
+      const items = store.listItems(task.id);
+      expect(items).toHaveLength(2500);
+      expect(items[2499].itemIndex).toBe(2499);
+      expect(JSON.parse(items[2499].itemData)).toEqual({ name: 'item-2499' });
+    });
+
     it('should reject if no generated code', async () => {
       const task = store.createTask({
         workspace: tmpDir,
@@ -183,6 +205,39 @@ describe('BatchEngine', () => {
 
       await expect(engine.testCode(task.id)).rejects.toThrow();
       expect(store.getTask(task.id)!.status).toBe('generated');
+      expect(store.listItems(task.id)).toHaveLength(0);
+    });
+
+    it('should refuse to re-test a running task', async () => {
+      const task = store.createTask({
+        workspace: tmpDir,
+        skillName: 'test',
+        mdContent: '# md',
+        execTemplate: '/test',
+      });
+      store.updateTask(task.id, { generatedCode: 'console.log(JSON.stringify([{name:"new"}]))' });
+      store.insertItemChunk(task.id, 0, [{ name: 'a' }]);
+      store.updateTask(task.id, { status: 'running', totalItems: 1 });
+
+      await expect(engine.testCode(task.id)).rejects.toThrow('while it is running');
+      expect(store.getTask(task.id)!.status).toBe('running');
+      expect(store.listItems(task.id)).toHaveLength(1);
+    });
+
+    it('should keep earlier items when a re-test produces no output', async () => {
+      const task = store.createTask({
+        workspace: tmpDir,
+        skillName: 'test',
+        mdContent: '# md',
+        execTemplate: '/test',
+      });
+      store.updateTask(task.id, { generatedCode: 'process.exit(1)' });
+      store.insertItemChunk(task.id, 0, [{ name: 'a' }, { name: 'b' }]);
+      store.updateTask(task.id, { status: 'completed', totalItems: 2 });
+
+      await expect(engine.testCode(task.id)).rejects.toThrow('code 1');
+      expect(store.getTask(task.id)!.status).toBe('completed');
+      expect(store.listItems(task.id)).toHaveLength(2);
     });
   });
 
@@ -237,6 +292,29 @@ describe('BatchEngine', () => {
       expect(updated.failedCount).toBe(0);
     });
 
+    it('should aggregate progress into rate-limited frames from in-memory counters', async () => {
+      const task = store.createTask({
+        workspace: tmpDir,
+        skillName: 'test',
+        mdContent: '# md',
+        execTemplate: '/test ${name}',
+        concurrency: 10,
+      });
+      store.bulkCreateItems(task.id, Array.from({ length: 50 }, (_, i) => ({ name: `item-${i}` })));
+      store.updateTask(task.id, { status: 'saved' });
+      const frames: any[] = [];
+      engine.setOnProgress((_taskId, data) => frames.push(data));
+      mockSendMessageForCron.mockResolvedValue(undefined);
+      const getItemCounts = vi.spyOn(store, 'getItemCounts');
+
+      await engine.execute(task.id);
+
+      expect(frames.length).toBeLessThan(5);
+      expect(frames[frames.length - 1]).toMatchObject({ successCount: 50, failedCount: 0, totalItems: 50, running: 0 });
+      expect(getItemCounts).not.toHaveBeenCalled();
+      expect(store.getTask(task.id)!.successCount).toBe(50);
+    });
+
     it('should use template to render prompts', async () => {
       const task = store.createTask({
         workspace: tmpDir,
@@ -256,6 +334,8 @@ describe('BatchEngine', () => {
         '/analyze 贵州茅台 --days 30',
         expect.any(AbortController),
         expect.any(Function),
+        undefined,
+        'batch',
       );
     });
 
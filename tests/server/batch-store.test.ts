@@ -157,6 +157,53 @@ describe('BatchStore', () => {
     });
   });
 
+  describe('insertItemChunk', () => {
+    it('should append chunks with continuing indexes and clear them again', () => {
+      const task = store.createTask({
+        workspace: '/a', skillName: 'test', mdContent: '', execTemplate: '',
+      });
+      store.insertItemChunk(task.id, 0, [{ name: 'a' }, { name: 'b' }]);
+      store.insertItemChunk(task.id, 2, [{ name: 'c' }]);
+
+      const items = store.listItems(task.id);
+      expect(items.map(i => [i.itemIndex, JSON.parse(i.itemData).name])).toEqual([[0, 'a'], [1, 'b'], [2, 'c']]);
+
+      store.clearItems(task.id);
+      expect(store.listItems(task.id)).toHaveLength(0);
+    });
+  });
+
+  describe('listPendingItemsAfter', () => {
+    it('should page pending items by item_index cursor', () => {
+      const task = store.createTask({
+        workspace: '/a', skillName: 'test', mdContent: '', execTemplate: '',
+      });
+      store.bulkCreateItems(task.id, Array.from({ length: 6 }, (_, i) => ({ name: `item-${i}` })));
+      store.updateItem(2, { status: 'success' });
+
+      const page1 = store.listPendingItemsAfter(task.id, -1, 3);
+      expect(page1.map(i => i.itemIndex)).toEqual([0, 2, 3]);
+
+      const page2 = store.listPendingItemsAfter(task.id, page1[2].itemIndex, 3);
+      expect(page2.map(i => i.itemIndex)).toEqual([4, 5]);
+    });
+  });
+
+  describe('requeueFailedItems', () => {
+    it('should reset only failed items to pending and count the retry', () => {
+      const task = store.createTask({
+        workspace: '/a', skillName: 'test', mdContent: '', execTemplate: '',
+      });
+      store.bulkCreateItems(task.id, [{ name: 'a' }, { name: 'b' }]);
+      store.updateItem(1, { status: 'failed', errorMessage: 'boom' });
+      store.updateItem(2, { status: 'success' });
+
+      expect(store.requeueFailedItems(task.id)).toBe(1);
+      expect(store.getItem(1)).toMatchObject({ status: 'pending', errorMessage: null, retries: 1 });
+      expect(store.getItem(2)!.status).toBe('success');
+    });
+  });
+
   describe('listItems', () => {
     it('should list items filtered by status', () => {
       const task = store.createTask({
@@ -1,5 +1,5 @@
 import { describe, it, expect } from 'vitest';
-import { renderTemplate, detectInterpreter } from '../../server/batch-utils.js';
+import { renderTemplate, detectInterpreter, JsonItemStream } from '../../server/batch-utils.js';
 
 describe('renderTemplate', () => {
   it('should replace single placeholder', () => {
@@ -57,3 +57,32 @@ describe('detectInterpreter', () => {
     expect(detectInterpreter('import psycopg2\n')).toBe('python3');
   });
 });
+
+describe('JsonItemStream', () => {
+  const parse = (chunks: string[]) => {
+    const stream = new JsonItemStream(1000);
+    const items = chunks.flatMap(c => stream.push(c));
+    return [...items, ...stream.end()];
+  };
+
+  it('should parse a JSON array split at arbitrary points', () => {
+    const text = JSON.stringify([{ name: 'a,]}"b' }, [1, [2]], 3]);
+    expect(parse(text.split(''))).toEqual([{ name: 'a,]}"b' }, [1, [2]], 3]);
+  });
+
+  it('should parse NDJSON lines across chunks', () => {
+    expect(parse(['{"n":1}\n{"n":', '2}\n\n{"n":3}'])).toEqual([{ n: 1 }, { n: 2 }, { n: 3 }]);
+  });
+
+  it('should accept empty output and an empty array', () => {
+    expect(parse([''])).toEqual([]);
+    expect(parse([' [ ] \n'])).toEqual([]);
+  });
+
+  it('should reject malformed output', () => {
+    expect(() => parse(['not json\n'])).toThrow('line 1');
+    expect(() => parse(['[1,2'])).toThrow('inside the JSON array');
+    expect(() => parse(['[1] 2'])).toThrow('after the JSON array');
+    expect(() => parse(['["' + 'x'.repeat(2000)])).toThrow('exceeds');
+  });
+});
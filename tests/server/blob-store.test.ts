@@ -0,0 +1,58 @@
+import { describe, it, expect, beforeEach, afterEach } from 'vitest';
+import { BlobStore } from '../../server/blob-store.js';
+import { SessionStore } from '../../server/session-store.js';
+import fs from 'fs';
+import path from 'path';
+import os from 'os';
+
+describe('BlobStore', () => {
+  let rootDir: string;
+  let blobs: BlobStore;
+
+  beforeEach(() => {
+    rootDir = fs.mkdtempSync(path.join(os.tmpdir(), 'sman-blobs-'));
+    blobs = new BlobStore(rootDir);
+  });
+
+  afterEach(() => {
+    fs.rmSync(rootDir, { recursive: true, force: true });
+  });
+
+  it('should deduplicate identical payloads by hash', () => {
+    const a = blobs.put(Buffer.from('hello'), 'image/png');
+    const b = blobs.putBase64(Buffer.from('hello').toString('base64'), 'image/png');
+    expect(a.hash).toBe(b.hash);
+    expect(a.size).toBe(5);
+    expect(fs.readdirSync(path.join(rootDir, a.hash.slice(0, 2)))).toEqual([a.hash]);
+  });
+
+  it('should reject malformed hashes', () => {
+    expect(blobs.resolve('../etc/passwd')).toBeUndefined();
+    expect(blobs.has('abc')).toBe(false);
+  });
+
+  it('should migrate inline base64 images out of messages once', () => {
+    const dbPath = path.join(rootDir, 'test.db');
+    const store = new SessionStore(dbPath);
+    try {
+      store.createSession({ id: 's1', systemId: 'sys', workspace: '/a' });
+      const data = Buffer.from('png-bytes').toString('base64');
+      const msg = store.addMessage('s1', {
+        role: 'user',
+        content: 'see image',
+        contentBlocks: [{ type: 'image', source: { type: 'base64', media_type: 'image/png', data } }],
+      });
+
+      expect(store.migrateInlineImages(blobs)).toBe(1);
+      const blocks = store.getMessageBlocks('s1', msg.id)!;
+      expect(blocks[0].source?.type).toBe('blob');
+      expect(blocks[0].source?.data).toBeUndefined();
+      expect(blobs.readBase64(blocks[0].source!.hash!)).toBe(data);
+
+      // Second run is a no-op
+      expect(store.migrateInlineImages(blobs)).toBe(0);
+    } finally {
+      store.close();
+    }
+  });
+});
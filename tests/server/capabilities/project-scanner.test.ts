@@ -35,10 +35,10 @@ describe('sanitizeEndpointSlug', () => {
 });
 
 describe('getGitInfo', () => {
-  it('returns nulls for non-git directory', () => {
+  it('returns nulls for non-git directory', async () => {
     const tmpDir = fs.mkdtempSync(path.join(os.tmpdir(), 'sman-git-'));
     try {
-      const info = getGitInfo(tmpDir);
+      const info = await getGitInfo(tmpDir);
       expect(info.commitHash).toBeNull();
       expect(info.gitUrl).toBeNull();
       expect(info.branch).toBeNull();
@@ -59,8 +59,8 @@ describe('isScanNeeded', () => {
     fs.rmSync(workspace, { recursive: true, force: true });
   });
 
-  it('returns needed=true when SKILL.md does not exist', () => {
-    const result = isScanNeeded(workspace, 'structure');
+  it('returns needed=true when SKILL.md does not exist', async () => {
+    const result = await isScanNeeded(workspace, 'structure');
     expect(result.needed).toBe(true);
     expect(result.reason).toBe('SKILL.md not found');
   });
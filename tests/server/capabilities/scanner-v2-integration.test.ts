@@ -26,19 +26,19 @@ describe('isScanNeeded integration', () => {
     fs.rmSync(workspace, { recursive: true, force: true });
   });
 
-  it('returns needed=true reason="SKILL.md not found" when no SKILL.md exists', () => {
-    const result = isScanNeeded(workspace, 'structure');
+  it('returns needed=true reason="SKILL.md not found" when no SKILL.md exists', async () => {
+    const result = await isScanNeeded(workspace, 'structure');
     expect(result.needed).toBe(true);
     expect(result.reason).toBe('SKILL.md not found');
   });
 
-  it('returns needed=true reason="SKILL.md not found" for apis scanner type', () => {
-    const result = isScanNeeded(workspace, 'apis');
+  it('returns needed=true reason="SKILL.md not found" for apis scanner type', async () => {
+    const result = await isScanNeeded(workspace, 'apis');
     expect(result.needed).toBe(true);
     expect(result.reason).toBe('SKILL.md not found');
   });
 
-  it('returns needed=false when commit hash matches for all scanner types', () => {
+  it('returns needed=false when commit hash matches for all scanner types', async () => {
     const currentCommit = execSync('git rev-parse HEAD', { cwd: workspace, encoding: 'utf-8' }).trim();
 
     // Create valid SKILL.md with matching commit hash for each scanner type
@@ -49,13 +49,13 @@ describe('isScanNeeded integration', () => {
     }
 
     for (const type of SCANNER_TYPES) {
-      const result = isScanNeeded(workspace, type);
+      const result = await isScanNeeded(workspace, type);
       expect(result.needed).toBe(false);
       expect(result.reason).toBe('up to date');
     }
   });
 
-  it('returns needed=true when commit hash differs', () => {
+  it('returns needed=true when commit hash differs', async () => {
     const originalCommit = execSync('git rev-parse HEAD', { cwd: workspace, encoding: 'utf-8' }).trim();
 
     // Create SKILL.md with original commit hash
@@ -68,22 +68,22 @@ describe('isScanNeeded integration', () => {
     execSync('git add NEWFILE.md', { cwd: workspace, encoding: 'utf-8' });
     execSync('git commit -m "new commit"', { cwd: workspace, encoding: 'utf-8' });
 
-    const result = isScanNeeded(workspace, 'structure');
+    const result = await isScanNeeded(workspace, 'structure');
     expect(result.needed).toBe(true);
     expect(result.reason).toContain('commit changed');
   });
 
-  it('returns needed=true reason="commit hash missing in SKILL.md" when _scanned.commitHash is absent', () => {
+  it('returns needed=true reason="commit hash missing in SKILL.md" when _scanned.commitHash is absent', async () => {
     const skillDir = path.join(workspace, '.claude', 'skills', 'project-structure');
     fs.mkdirSync(skillDir, { recursive: true });
     fs.writeFileSync(path.join(skillDir, 'SKILL.md'), `---\nname: project-structure\ndescription: "Test description"\n_scanned:\n  scannedAt: "2026-04-09T10:00:00Z"\n  branch: main\n---\n\n# Content`);
 
-    const result = isScanNeeded(workspace, 'structure');
+    const result = await isScanNeeded(workspace, 'structure');
     expect(result.needed).toBe(true);
     expect(result.reason).toBe('commit hash missing in SKILL.md');
   });
 
-  it('returns needed=true for not-a-git-repo when SKILL.md exists but git fails', () => {
+  it('returns needed=true for not-a-git-repo when SKILL.md exists but git fails', async () => {
     const nonGit = fs.mkdtempSync(path.join(os.tmpdir(), 'sman-nongit-'));
     try {
       // Create a SKILL.md with valid frontmatter so we reach the git check
@@ -91,7 +91,7 @@ describe('isScanNeeded integration', () => {
       fs.mkdirSync(skillDir, { recursive: true });
       fs.writeFileSync(path.join(skillDir, 'SKILL.md'), `---\nname: project-structure\ndescription: "Test description for scanner"\n_scanned:\n  commitHash: "abc123"\n  scannedAt: "2026-04-09T10:00:00Z"\n  branch: main\n---\n\n# Content`);
 
-      const result = isScanNeeded(nonGit, 'structure');
+      const result = await isScanNeeded(nonGit, 'structure');
       expect(result.needed).toBe(true);
       expect(result.reason).toBe('not a git repo');
     } finally {
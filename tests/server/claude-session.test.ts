@@ -1,4 +1,4 @@
-import { describe, it, expect, beforeEach, afterEach } from 'vitest';
+import { describe, it, expect, beforeEach, afterEach, vi } from 'vitest';
 import { ClaudeSessionManager } from '../../server/claude-session.js';
 import { SessionStore } from '../../server/session-store.js';
 import fs from 'fs';
@@ -93,4 +93,64 @@ describe('ClaudeSessionManager', () => {
     const sessionId = manager.createSession(workspace);
     expect(sessionId).toBeDefined();
   });
+
+  it('should serve interactive spawns before queued warm-pool refills', async () => {
+    type CreateLock = (fn: () => Promise<void>, priority?: 'interactive' | 'background') => Promise<void>;
+    const withCreateLock = ((manager as any).withCreateLock as CreateLock).bind(manager);
+    const order: string[] = [];
+    let releaseFirst!: () => void;
+    const held = new Promise<void>(resolve => { releaseFirst = resolve; });
+
+    const runs = [
+      withCreateLock(async () => { order.push('refill-1'); await held; }, 'background'),
+      withCreateLock(async () => { order.push('refill-2'); }, 'background'),
+      withCreateLock(async () => { order.push('user'); }),
+    ];
+    await Promise.resolve();
+    expect(order).toEqual(['refill-1']);
+
+    releaseFirst();
+    await Promise.all(runs);
+    expect(order).toEqual(['refill-1', 'user', 'refill-2']);
+  });
+
+  it('should reject with AbortError when aborted while waiting for an LLM slot', async () => {
+    const acquire = vi.fn((_lane: string, signal: AbortSignal) => new Promise((_resolve, reject) => {
+      signal.addEventListener('abort', () => {
+        const err = new Error('Aborted while waiting for an LLM slot');
+        err.name = 'AbortError';
+        reject(err);
+      }, { once: true });
+    }));
+    (manager as any).llmScheduler = { acquire };
+    const sessionId = manager.createSession(workspace);
+
+    const sending = manager.sendMessageForCron(sessionId, 'hi', new AbortController(), () => {}, undefined, 'batch');
+    await vi.waitFor(() => expect(acquire).toHaveBeenCalled());
+    // Queued calls are reachable through abort(), e.g. from BatchEngine.cancel
+    manager.abort(sessionId);
+
+    await expect(sending).rejects.toMatchObject({ name: 'AbortError' });
+    expect((manager as any).activeStreams.has(sessionId)).toBe(false);
+  });
+
+  it('should spawn once on a cold pool miss and refill afterwards', async () => {
+    let spawned = 0;
+    const spawnV2Session = vi.fn(async () => {
+      // The caller's own spawn goes first: no refill holds the create lock ahead of it
+      if (spawned === 0) expect(manager.getWarmPoolStats().spawning).toBe(0);
+      return { id: ++spawned, close: vi.fn() };
+    });
+    (manager as any).spawnV2Session = spawnV2Session;
+    const sessionId = manager.createSession(workspace);
+
+    const { session, isFresh } = await (manager as any).getOrCreateV2Session(sessionId);
+    expect(isFresh).toBe(true);
+    expect(session.id).toBe(1);
+    expect(manager.getWarmPoolStats()).toMatchObject({ misses: 1, spawning: 1 });
+
+    await new Promise(r => setTimeout(r, 0));
+    expect(spawnV2Session).toHaveBeenCalledTimes(2);
+    expect(manager.getWarmPoolStats()).toMatchObject({ idle: 1, spawning: 0 });
+  });
 });
@@ -362,5 +362,25 @@ describe('code-viewer-handler', () => {
       expect(edgeMatches.length).toBe(1);
       expect(edgeMatches[0].lineContent).toContain('myVar = 2');
     });
+
+    it('should stream matches as they are found', async () => {
+      const batches: number[] = [];
+      const result = await handleSearchSymbols(tmpDir, 'myVar', '.ts', 20, {
+        onMatches: (matches) => batches.push(matches.length),
+      });
+
+      expect(batches.length).toBeGreaterThanOrEqual(2);
+      expect(batches.reduce((a, b) => a + b, 0)).toBe(result.matches.length);
+    });
+
+    it('should stop and mark the result cancelled when aborted', async () => {
+      const controller = new AbortController();
+      controller.abort();
+
+      const result = await handleSearchSymbols(tmpDir, 'myVar', undefined, 20, { signal: controller.signal });
+
+      expect(result.cancelled).toBe(true);
+      expect(result.matches).toEqual([]);
+    });
   });
 });
@@ -0,0 +1,130 @@
+import { describe, it, expect, beforeAll, afterAll } from 'vitest';
+import { execSync } from 'node:child_process';
+import fs from 'node:fs';
+import os from 'node:os';
+import path from 'node:path';
+import { CommitGraph, LaneAssigner, disposeCommitGraphs, handleGitLogGraphPage } from '../../server/git-commit-graph.js';
+import { disposeGitStateCaches } from '../../server/git-state-cache.js';
+
+describe('LaneAssigner', () => {
+  it('should keep a linear history in lane 0', () => {
+    const lanes = new LaneAssigner();
+    expect(lanes.place('c', ['b'])).toEqual({ lane: 0, up: [], down: [0], through: [], width: 1 });
+    expect(lanes.place('b', ['a'])).toEqual({ lane: 0, up: [0], down: [0], through: [], width: 1 });
+    expect(lanes.place('a', [])).toEqual({ lane: 0, up: [0], down: [], through: [], width: 1 });
+  });
+
+  it('should open a lane for a merged branch and close it at the fork point', () => {
+    const lanes = new LaneAssigner();
+    // m merges f into main; both descend from base
+    expect(lanes.place('m', ['main1', 'f'])).toMatchObject({ lane: 0, down: [0, 1] });
+    expect(lanes.place('f', ['base'])).toMatchObject({ lane: 1, up: [1], down: [1], through: [0] });
+    expect(lanes.place('main1', ['base'])).toMatchObject({ lane: 0, up: [0], down: [0], through: [1] });
+    // Both lanes expect base: they converge and lane 1 is freed
+    expect(lanes.place('base', [])).toEqual({ lane: 0, up: [0, 1], down: [], through: [], width: 2 });
+  });
+
+  it('should reuse freed lanes for new branch tips', () => {
+    const lanes = new LaneAssigner();
+    lanes.place('a2', ['a1']);
+    lanes.place('a1', []);
+    expect(lanes.place('b1', [])).toMatchObject({ lane: 0, up: [] });
+  });
+});
+
+describe('CommitGraph', () => {
+  let repo: string;
+  const run = (cmd: string) => execSync(cmd, { cwd: repo, encoding: 'utf-8' });
+
+  beforeAll(() => {
+    repo = fs.mkdtempSync(path.join(os.tmpdir(), 'sman-graph-'));
+    run('git init -q -b main');
+    run('git config user.email "test@test.com"');
+    run('git config user.name "Test"');
+    for (let i = 0; i < 30; i++) run(`git commit -q --allow-empty -m "c${i}"`);
+    run('git checkout -q -b feature HEAD~5');
+    run('git commit -q --allow-empty -m "feature work"');
+    run('git checkout -q main');
+    run('git merge -q --no-ff -m "merge feature" feature');
+  });
+
+  afterAll(() => {
+    fs.rmSync(repo, { recursive: true, force: true });
+  });
+
+  it('should page through history with cursors', async () => {
+    const graph = new CommitGraph(repo, 'g1');
+    try {
+      const first = await graph.page(0, 10);
+      expect(first.rows).toHaveLength(10);
+      expect(first.rows[0].message).toBe('merge feature');
+      expect(first.rows[0].parents).toHaveLength(2);
+      expect(first.nextCursor).toBe('g1:10');
+
+      const rest = await graph.page(10, 100);
+      expect(rest.rows).toHaveLength(22);
+      expect(rest.nextCursor).toBeNull();
+
+      const hashes = new Set([...first.rows, ...rest.rows].map(r => r.hash));
+      expect(hashes.size).toBe(32);
+      expect(rest.rows[rest.rows.length - 1].message).toBe('c0');
+    } finally {
+      graph.dispose();
+    }
+  });
+
+  it('should place the merged branch in its own lane', async () => {
+    const graph = new CommitGraph(repo);
+    try {
+      const { rows } = await graph.page(0, 100);
+      const feature = rows.find(r => r.message === 'feature work')!;
+      expect(feature.lane).toBe(1);
+      expect(Math.max(...rows.map(r => r.width))).toBe(2);
+      expect(rows.filter(r => r.up.length === 2)).toHaveLength(1);
+    } finally {
+      graph.dispose();
+    }
+  });
+
+  it('should keep the graph id while refs are unchanged', async () => {
+    try {
+      const first = await handleGitLogGraphPage(repo, undefined, 10);
+      // Recomputed from scratch, as after the short unwatched TTL expires
+      disposeCommitGraphs();
+      disposeGitStateCaches();
+      const next = await handleGitLogGraphPage(repo, first.nextCursor!, 10);
+      expect(next.graphId).toBe(first.graphId);
+      expect(next.reset).toBeUndefined();
+      expect(next.offset).toBe(10);
+    } finally {
+      disposeCommitGraphs();
+      disposeGitStateCaches();
+    }
+  });
+
+  it('should retry after a failed read', async () => {
+    const dir = fs.mkdtempSync(path.join(os.tmpdir(), 'sman-graph-retry-'));
+    const graph = new CommitGraph(dir);
+    try {
+      await expect(graph.page(0, 10)).rejects.toThrow();
+      execSync('git init -q && git -c user.email=t@t -c user.name=T commit -q --allow-empty -m first', { cwd: dir });
+      const { rows } = await graph.page(0, 10);
+      expect(rows.map(r => r.message)).toEqual(['first']);
+    } finally {
+      graph.dispose();
+      fs.rmSync(dir, { recursive: true, force: true });
+    }
+  });
+
+  it('should return an empty page for a repository without commits', async () => {
+    const empty = fs.mkdtempSync(path.join(os.tmpdir(), 'sman-graph-empty-'));
+    execSync('git init -q', { cwd: empty });
+    const graph = new CommitGraph(empty);
+    try {
+      expect(await graph.page(0, 10)).toMatchObject({ rows: [], nextCursor: null });
+    } finally {
+      graph.dispose();
+      fs.rmSync(empty, { recursive: true, force: true });
+    }
+  });
+});
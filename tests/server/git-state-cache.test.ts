@@ -0,0 +1,167 @@
+import { describe, it, expect, beforeEach, afterEach } from 'vitest';
+import { execFileSync } from 'node:child_process';
+import fs from 'node:fs';
+import os from 'node:os';
+import path from 'node:path';
+import { GitStateCache, type GitChangesSince } from '../../server/git-state-cache.js';
+
+describe('GitStateCache', () => {
+  let tmpDir: string;
+  let cache: GitStateCache;
+
+  beforeEach(() => {
+    tmpDir = fs.mkdtempSync(path.join(os.tmpdir(), 'sman-gitcache-'));
+    cache = new GitStateCache(tmpDir, { watch: false });
+  });
+
+  afterEach(() => {
+    cache.dispose();
+    fs.rmSync(tmpDir, { recursive: true, force: true });
+  });
+
+  it('should share one compute between concurrent callers', async () => {
+    let calls = 0;
+    const compute = async () => {
+      calls++;
+      await new Promise(r => setTimeout(r, 10));
+      return 'main';
+    };
+
+    const results = await Promise.all([
+      cache.get('branches', ['refs'], compute),
+      cache.get('branches', ['refs'], compute),
+      cache.get('branches', ['refs'], compute),
+    ]);
+
+    expect(results).toEqual(['main', 'main', 'main']);
+    expect(calls).toBe(1);
+    expect(await cache.get('branches', ['refs'], compute)).toBe('main');
+    expect(calls).toBe(1);
+  });
+
+  it('should only recompute entries whose dependencies changed', async () => {
+    let logCalls = 0;
+    let statusCalls = 0;
+    const getLog = () => cache.get('log', ['refs'], async () => ++logCalls);
+    const getStatus = () => cache.get('status', ['refs', 'index', 'worktree'], async () => ++statusCalls);
+    await getLog();
+    await getStatus();
+
+    cache.invalidate('index');
+    expect(await getLog()).toBe(1);
+    expect(await getStatus()).toBe(2);
+
+    cache.invalidate('refs');
+    expect(await getLog()).toBe(2);
+    expect(await getStatus()).toBe(3);
+  });
+
+  it('should hand changed worktree paths to the next compute', async () => {
+    const seen: Array<GitChangesSince<number>> = [];
+    const get = () => cache.get<number>('status', ['worktree'], async (changes) => {
+      seen.push(changes);
+      return seen.length;
+    });
+
+    await get();
+    cache.recordWorktreeChange('src/a.ts');
+    cache.recordWorktreeChange('src/b.ts');
+    cache.recordWorktreeChange('src/a.ts');
+    await get();
+
+    expect(seen[0]).toMatchObject({ previous: undefined, paths: null, refsChanged: true, indexChanged: true });
+    expect(seen[1].previous).toBe(1);
+    expect(seen[1].paths?.sort()).toEqual(['src/a.ts', 'src/b.ts']);
+    expect(seen[1]).toMatchObject({ refsChanged: false, indexChanged: false });
+  });
+
+  it('should report unknown paths after an unscoped change', async () => {
+    const seen: Array<string[] | null> = [];
+    const get = () => cache.get('status', ['worktree'], async (changes) => {
+      seen.push(changes.paths);
+      return seen.length;
+    });
+
+    await get();
+    cache.recordWorktreeChange('a.ts');
+    cache.recordWorktreeChange(null);
+    await get();
+
+    expect(seen[1]).toBeNull();
+  });
+
+  it('should not cache a failed compute', async () => {
+    let calls = 0;
+    const compute = async () => {
+      if (++calls === 1) throw new Error('not a git repository');
+      return 'ok';
+    };
+
+    await expect(cache.get('log', ['refs'], compute)).rejects.toThrow('not a git repository');
+    expect(await cache.get('log', ['refs'], compute)).toBe('ok');
+    expect(cache.stats()).toMatchObject({ entries: 1, inFlight: 0, watching: false });
+  });
+
+  it('should track worktree and ref changes through the watchers', async () => {
+    execFileSync('git', ['init', '-q'], { cwd: tmpDir });
+    fs.mkdirSync(path.join(tmpDir, 'node_modules'));
+    const watched = new GitStateCache(tmpDir);
+    try {
+      const seen: Array<GitChangesSince<number>> = [];
+      let n = 0;
+      const read = (deps: Array<'refs' | 'worktree'>) => watched.get<number>(`k:${deps}`, deps, async (changes) => {
+        seen.push(changes);
+        return ++n;
+      });
+      await read(['worktree']);
+      await read(['refs']);
+      const deadline = Date.now() + 5_000;
+      while (!watched.stats().watching) {
+        if (Date.now() > deadline) throw new Error('watchers never became ready');
+        await new Promise(r => setTimeout(r, 20));
+      }
+
+      fs.writeFileSync(path.join(tmpDir, 'node_modules', 'dep.js'), 'x');
+      fs.writeFileSync(path.join(tmpDir, 'a.txt'), 'x');
+      fs.mkdirSync(path.join(tmpDir, '.git', 'refs', 'heads'), { recursive: true });
+      fs.writeFileSync(path.join(tmpDir, '.git', 'refs', 'heads', 'topic'), '0'.repeat(40) + '\n');
+      await new Promise(r => setTimeout(r, 300));
+
+      await read(['worktree']);
+      await read(['refs']);
+      expect(seen[2].paths).toEqual(['a.txt']);
+      expect(seen[3].refsChanged).toBe(true);
+    } finally {
+      watched.dispose();
+    }
+  });
+
+  it('should force a full recompute when info/exclude changes', async () => {
+    execFileSync('git', ['init', '-q'], { cwd: tmpDir });
+    fs.mkdirSync(path.join(tmpDir, '.git', 'info'), { recursive: true });
+    const watched = new GitStateCache(tmpDir);
+    try {
+      const seen: Array<GitChangesSince<number>> = [];
+      let n = 0;
+      const read = () => watched.get<number>('status', ['worktree'], async (changes) => {
+        seen.push(changes);
+        return ++n;
+      });
+      await read();
+      const deadline = Date.now() + 5_000;
+      while (!watched.stats().watching) {
+        if (Date.now() > deadline) throw new Error('watchers never became ready');
+        await new Promise(r => setTimeout(r, 20));
+      }
+
+      fs.writeFileSync(path.join(tmpDir, '.git', 'info', 'exclude'), '*.log\n');
+      await new Promise(r => setTimeout(r, 300));
+
+      await read();
+      expect(seen).toHaveLength(2);
+      expect(seen[1].paths).toBeNull();
+    } finally {
+      watched.dispose();
+    }
+  });
+});
@@ -1,6 +1,7 @@
 import { describe, it, expect, beforeEach } from 'vitest';
 import Database from 'better-sqlite3';
-import { IMStore, type IMMessage, type IMRoom } from '../../../server/im/im-store.js';
+import { IMStore, ensureIMReadState, type IMMessage, type IMRoom } from '../../../server/im/im-store.js';
+import { ensureIMSearchIndex, parseSearchQuery } from '../../../server/im/im-search-index.js';
 
 function createTestDB(): Database.Database {
   const db = new Database(':memory:');
@@ -17,6 +18,7 @@ function createTestDB(): Database.Database {
       attachments TEXT,
       session_id TEXT,
       timestamp INTEGER NOT NULL,
+      seq INTEGER DEFAULT 0,
       created_at DATETIME DEFAULT (datetime('now', 'localtime')),
       updated_at DATETIME DEFAULT (datetime('now', 'localtime'))
     );
@@ -33,6 +35,8 @@ function createTestDB(): Database.Database {
       created_at DATETIME DEFAULT (datetime('now', 'localtime'))
     );
   `);
+  ensureIMSearchIndex(db);
+  ensureIMReadState(db);
   return db;
 }
 
@@ -263,4 +267,196 @@ describe('IMStore', () => {
       expect(room!.lastMessageTime).toBe(200);
     });
   });
+
+  // === Read state / unread ===
+
+  describe('unread counters', () => {
+    beforeEach(() => {
+      store.createRoom({ id: 'room-1', name: 'Room 1', type: 'group', members: ['me', 'bot'] });
+      store.createRoom({ id: 'room-2', name: 'Room 2', type: 'group', members: ['me'] });
+    });
+
+    it('should count every non-system message for a client that never read', () => {
+      store.insertMessage(makeMessage({ id: 'm1', timestamp: 100 }));
+      store.insertMessage(makeMessage({ id: 'm2', timestamp: 200 }));
+      store.insertMessage(makeMessage({ id: 'sys', type: 'system', timestamp: 300 }));
+
+      expect(store.getUnreadCount('room-1', 'me')).toBe(2);
+      expect(store.getAllUnreadCounts('me')).toEqual(new Map([['room-1', 2]]));
+    });
+
+    it('should reset on read and count newer messages', () => {
+      store.insertMessage(makeMessage({ id: 'm1', timestamp: 100, seq: 1 }));
+      store.insertMessage(makeMessage({ id: 'm2', timestamp: 200, seq: 2 }));
+      store.updateLastRead('room-1', 'me', 200);
+      expect(store.getUnreadCount('room-1', 'me')).toBe(0);
+      expect(store.getLastRead('room-1', 'me')).toBe(200);
+      expect(store.getAllUnreadCounts('me').size).toBe(0);
+
+      store.insertMessage(makeMessage({ id: 'm3', timestamp: 300 }));
+      store.insertMessage(makeMessage({ id: 'm4', roomId: 'room-2', timestamp: 300 }));
+      expect(store.getAllUnreadCounts('me')).toEqual(new Map([['room-1', 1], ['room-2', 1]]));
+    });
+
+    it('should not count duplicate inserts or late messages before the read point', () => {
+      store.updateLastRead('room-1', 'me', 500);
+      const msg = makeMessage({ id: 'dup', timestamp: 600 });
+      store.insertMessage(msg);
+      store.insertMessage(msg);
+      store.insertMessage(makeMessage({ id: 'late', timestamp: 400 }));
+      expect(store.getUnreadCount('room-1', 'me')).toBe(1);
+    });
+
+    it('should never move the read position backwards', () => {
+      store.insertMessage(makeMessage({ id: 'm1', timestamp: 100 }));
+      store.insertMessage(makeMessage({ id: 'm2', timestamp: 200 }));
+      store.updateLastRead('room-1', 'me', 200);
+      store.updateLastRead('room-1', 'me', 50);
+      expect(store.getLastRead('room-1', 'me')).toBe(200);
+      expect(store.getUnreadCount('room-1', 'me')).toBe(0);
+    });
+
+    it('should order unread by timestamp, not by a relayed message seq', () => {
+      store.insertMessage(makeMessage({ id: 'local', timestamp: 100, seq: 7 }));
+      store.updateLastRead('room-1', 'me', 100);
+      // Hub-relayed messages keep the sending node's seq
+      store.insertMessage(makeMessage({ id: 'relayed', timestamp: 200, seq: 1 }));
+      expect(store.getUnreadCount('room-1', 'me')).toBe(1);
+      store.updateLastRead('room-1', 'me', 150);
+      expect(store.getUnreadCount('room-1', 'me')).toBe(1);
+    });
+
+    it('should keep read state per client', () => {
+      store.insertMessage(makeMessage({ id: 'm1', timestamp: 100 }));
+      store.updateLastRead('room-1', 'me', 100);
+      expect(store.getUnreadCount('room-1', 'me')).toBe(0);
+      expect(store.getUnreadCount('room-1', 'other')).toBe(1);
+    });
+  });
+
+  describe('ensureIMReadState', () => {
+    it('should migrate legacy last_read JSON', () => {
+      const legacy = new Database(':memory:');
+      legacy.exec(`
+        CREATE TABLE im_messages (id TEXT PRIMARY KEY, room_id TEXT NOT NULL, sender TEXT NOT NULL, content TEXT NOT NULL,
+          mentioned_agents TEXT, quote_id TEXT, type TEXT NOT NULL DEFAULT 'text', status TEXT, attachments TEXT,
+          session_id TEXT, timestamp INTEGER NOT NULL, seq INTEGER DEFAULT 0, updated_at DATETIME);
+        CREATE TABLE im_rooms (id TEXT PRIMARY KEY, name TEXT NOT NULL, type TEXT NOT NULL DEFAULT 'group',
+          members TEXT NOT NULL, last_message TEXT, last_message_time INTEGER, last_read TEXT DEFAULT '{}');
+        INSERT INTO im_rooms (id, name, members, last_read) VALUES ('room-1', 'R', '[]', '{"me":150}');
+        INSERT INTO im_messages (id, room_id, sender, content, timestamp, seq) VALUES ('a', 'room-1', 'u', 'x', 100, 1);
+        INSERT INTO im_messages (id, room_id, sender, content, timestamp, seq) VALUES ('b', 'room-1', 'u', 'y', 200, 2);
+      `);
+      ensureIMReadState(legacy);
+      ensureIMReadState(legacy); // idempotent
+
+      const legacyStore = new IMStore(legacy);
+      expect(legacyStore.getLastRead('room-1', 'me')).toBe(150);
+      expect(legacyStore.getUnreadCount('room-1', 'me')).toBe(1);
+      expect(legacyStore.getUnreadCount('room-1', 'new-client')).toBe(2);
+    });
+  });
+
+  // === Search ===
+
+  describe('searchMessages', () => {
+    it('should rank full-text matches', () => {
+      store.insertMessage(makeMessage({ id: 'a', content: 'deploy the staging cluster', timestamp: 1 }));
+      store.insertMessage(makeMessage({ id: 'b', content: 'deploy deploy deploy', timestamp: 2 }));
+      store.insertMessage(makeMessage({ id: 'c', content: 'unrelated chatter', timestamp: 3 }));
+
+      const results = store.searchMessages('deploy');
+      expect(results.map(m => m.id)).toEqual(['b', 'a']);
+    });
+
+    it('should match CJK substrings, including short terms', () => {
+      store.insertMessage(makeMessage({ id: 'cn1', content: '今天部署生产环境', timestamp: 1 }));
+      store.insertMessage(makeMessage({ id: 'cn2', content: '明天开会讨论需求', timestamp: 2 }));
+
+      expect(store.searchMessages('部署生产').map(m => m.id)).toEqual(['cn1']);
+      expect(store.searchMessages('开会').map(m => m.id)).toEqual(['cn2']);
+      expect(store.searchMessages('生产环境 今天').map(m => m.id)).toEqual(['cn1']);
+    });
+
+    it('should scope to a room and paginate', () => {
+      for (let i = 0; i < 5; i++) {
+        store.insertMessage(makeMessage({ id: `r1-${i}`, roomId: 'room-1', content: `build log ${i}`, timestamp: i }));
+      }
+      store.insertMessage(makeMessage({ id: 'r2', roomId: 'room-2', content: 'build log', timestamp: 9 }));
+
+      expect(store.searchMessages('build', { roomId: 'room-1' })).toHaveLength(5);
+      const page1 = store.searchMessages('build', { roomId: 'room-1', limit: 2 });
+      const page2 = store.searchMessages('build', { roomId: 'room-1', limit: 2, offset: 2 });
+      expect(page1).toHaveLength(2);
+      expect(page2).toHaveLength(2);
+      expect(page1.map(m => m.id)).not.toContain(page2[0].id);
+    });
+
+    it('should follow content updates', () => {
+      store.insertMessage(makeMessage({ id: 'agent', content: 'thinking...' }));
+      store.updateMessageContent('agent', 'final answer about kubernetes');
+
+      expect(store.searchMessages('thinking')).toHaveLength(0);
+      expect(store.searchMessages('kubernetes').map(m => m.id)).toEqual(['agent']);
+    });
+
+    it('should not index encrypted content', () => {
+      store.insertMessage(makeMessage({ id: 'enc', content: 'enc:c2VjcmV0IHBheWxvYWQ=' }));
+      expect(store.searchMessages('c2VjcmV0')).toHaveLength(0);
+      expect(store.searchMessages('en')).toHaveLength(0);
+
+      // Replacing ciphertext with plaintext indexes it
+      store.updateMessageContent('enc', 'secret payload');
+      expect(store.searchMessages('payload').map(m => m.id)).toEqual(['enc']);
+    });
+
+    it('should treat LIKE wildcards in short terms literally', () => {
+      store.insertMessage(makeMessage({ id: 'pct', content: '100% done' }));
+      store.insertMessage(makeMessage({ id: 'plain', content: 'all done' }));
+      expect(store.searchMessages('%').map(m => m.id)).toEqual(['pct']);
+    });
+  });
+
+  describe('searchRooms', () => {
+    it('should match room names and members', () => {
+      store.createRoom({ id: 'r1', name: '后端研发群', type: 'group', members: ['alice', 'bob'] });
+      store.createRoom({ id: 'r2', name: 'Design', type: 'group', members: ['carol'] });
+
+      expect(store.searchRooms('研发').map(r => r.id)).toEqual(['r1']);
+      expect(store.searchRooms('carol').map(r => r.id)).toEqual(['r2']);
+
+      store.updateRoomMembers('r2', ['dave']);
+      expect(store.searchRooms('carol')).toHaveLength(0);
+    });
+  });
+
+  describe('ensureIMSearchIndex', () => {
+    it('should backfill rows that existed before the index', () => {
+      const legacy = new Database(':memory:');
+      legacy.exec(`
+        CREATE TABLE im_messages (id TEXT PRIMARY KEY, room_id TEXT NOT NULL, sender TEXT NOT NULL, content TEXT NOT NULL,
+          mentioned_agents TEXT, quote_id TEXT, type TEXT NOT NULL DEFAULT 'text', status TEXT, attachments TEXT,
+          session_id TEXT, timestamp INTEGER NOT NULL, seq INTEGER DEFAULT 0, updated_at DATETIME);
+        CREATE TABLE im_rooms (id TEXT PRIMARY KEY, name TEXT NOT NULL, type TEXT NOT NULL DEFAULT 'group',
+          members TEXT NOT NULL, last_message TEXT, last_message_time INTEGER);
+        INSERT INTO im_messages (id, room_id, sender, content, timestamp) VALUES ('old', 'room-1', 'u', 'legacy message', 1);
+        INSERT INTO im_messages (id, room_id, sender, content, timestamp) VALUES ('sealed', 'room-1', 'u', 'enc:bGVnYWN5', 2);
+      `);
+      ensureIMSearchIndex(legacy);
+      ensureIMSearchIndex(legacy); // idempotent
+
+      const legacyStore = new IMStore(legacy);
+      expect(legacyStore.searchMessages('legacy').map(m => m.id)).toEqual(['old']);
+    });
+  });
+
+  describe('parseSearchQuery', () => {
+    it('should split indexable and short terms', () => {
+      expect(parseSearchQuery('deploy "x" ok')).toEqual({
+        match: '"deploy" AND """x"""',
+        likePatterns: ['%ok%'],
+      });
+      expect(parseSearchQuery('   ')).toEqual({ match: null, likePatterns: [] });
+    });
+  });
 });
@@ -0,0 +1,131 @@
+import { describe, it, expect, beforeEach, afterEach, vi } from 'vitest';
+import fs from 'fs';
+import path from 'path';
+import os from 'os';
+import { SessionStore } from '../../server/session-store.js';
+import { KnowledgeExtractorStore } from '../../server/knowledge-extractor-store.js';
+import { KnowledgeExtractor, chunkByTokenBudget, estimateTokens, mergeKnowledgeFile } from '../../server/knowledge-extractor.js';
+
+describe('knowledge extraction helpers', () => {
+  it('should estimate CJK characters as one token each', () => {
+    expect(estimateTokens('abcdefgh')).toBe(2);
+    expect(estimateTokens('业务规则')).toBe(4);
+    expect(estimateTokens('规则 rule')).toBe(4);
+  });
+
+  it('should split messages into token-budgeted chunks in order', () => {
+    const messages = ['a'.repeat(40), 'b'.repeat(40), 'c'.repeat(40), 'd'.repeat(400)].map(content => ({ content }));
+
+    const chunks = chunkByTokenBudget(messages, 25);
+
+    expect(chunks.map(c => c.map(m => m.content[0]).join(''))).toEqual(['ab', 'c', 'd']);
+  });
+
+  it('should keep entries written since the LLM saw the file', () => {
+    const entry = (hash: string, text: string) => `## ${text}\n<!-- hash: ${hash} -->\n- ${text}\n<!-- end: ${hash} -->`;
+    const basis = `# Business\n\n${entry('aaaaaa', 'old rule')}\n`;
+    const current = `${basis}\n${entry('bbbbbb', 'concurrent rule')}\n`;
+    const output = `# Business\n\n${entry('cccccc', 'new rule')}\n`;
+
+    const merged = mergeKnowledgeFile(basis, current, output);
+
+    expect(merged).toContain('new rule');
+    expect(merged).toContain('concurrent rule');
+    expect(merged).not.toContain('old rule');
+    expect(mergeKnowledgeFile(basis, basis, output)).toBe(output);
+  });
+});
+
+describe('KnowledgeExtractorStore pending messages', () => {
+  let dbPath: string;
+  let sessions: SessionStore;
+  let store: KnowledgeExtractorStore;
+
+  beforeEach(() => {
+    dbPath = path.join(os.tmpdir(), `sman-knowledge-test-${Date.now()}.db`);
+    sessions = new SessionStore(dbPath);
+    store = new KnowledgeExtractorStore(dbPath);
+  });
+
+  afterEach(() => {
+    store.close();
+    sessions.close();
+    if (fs.existsSync(dbPath)) fs.unlinkSync(dbPath);
+  });
+
+  it('should select unextracted messages of all sessions in one pass', () => {
+    sessions.createSession({ id: 's1', systemId: 'w', workspace: '/w' });
+    sessions.createSession({ id: 's2', systemId: 'w', workspace: '/w' });
+    sessions.createSession({ id: 'other', systemId: 'x', workspace: '/x' });
+    const first = sessions.addMessage('s1', { role: 'user', content: 'one' });
+    sessions.addMessage('s2', { role: 'user', content: 'two' });
+    sessions.addMessage('s1', { role: 'assistant', content: 'three' });
+    sessions.addMessage('other', { role: 'user', content: 'elsewhere' });
+    sessions.deleteSession('s2');
+    store.setProgress('/w', 's1', first.id);
+
+    const pending = store.getPendingMessages('/w', 100);
+
+    expect(pending.map(m => [m.sessionId, m.content, m.deleted])).toEqual([
+      ['s2', 'two', true],
+      ['s1', 'three', false],
+    ]);
+    expect(store.countPendingMessages('/w')).toBe(2);
+  });
+
+  it('should stop before a reply that is still streaming', () => {
+    sessions.createSession({ id: 's1', systemId: 'w', workspace: '/w' });
+    sessions.addMessage('s1', { role: 'user', content: 'question' });
+    sessions.upsertPartialMessage('s1', 'half an ans');
+    sessions.flushPendingWrites();
+
+    expect(store.getPendingMessages('/w', 100).map(m => m.content)).toEqual(['question']);
+  });
+
+  it('should never move progress backwards', () => {
+    store.setProgressMany('/w', [{ sessionId: 's1', lastId: 10 }]);
+    store.setProgressMany('/w', [{ sessionId: 's1', lastId: 4 }, { sessionId: 's2', lastId: 7 }]);
+
+    expect(store.getProgress('/w', 's1')?.lastExtractedMessageId).toBe(10);
+    expect(store.getProgress('/w', 's2')?.lastExtractedMessageId).toBe(7);
+  });
+});
+
+describe('KnowledgeExtractor', () => {
+  let dbPath: string;
+  let workspace: string;
+  let sessions: SessionStore;
+  let store: KnowledgeExtractorStore;
+
+  beforeEach(() => {
+    dbPath = path.join(os.tmpdir(), `sman-knowledge-run-${Date.now()}.db`);
+    workspace = fs.mkdtempSync(path.join(os.tmpdir(), 'sman-knowledge-ws-'));
+    sessions = new SessionStore(dbPath);
+    store = new KnowledgeExtractorStore(dbPath);
+  });
+
+  afterEach(() => {
+    vi.unstubAllGlobals();
+    store.close();
+    sessions.close();
+    if (fs.existsSync(dbPath)) fs.unlinkSync(dbPath);
+    fs.rmSync(workspace, { recursive: true, force: true });
+  });
+
+  it('should keep progress when the LLM call is rate limited', async () => {
+    sessions.createSession({ id: 's1', systemId: 'w', workspace });
+    sessions.addMessage('s1', { role: 'user', content: 'question' });
+    sessions.addMessage('s1', { role: 'assistant', content: 'answer' });
+    const fetchMock = vi.fn(async () => new Response('rate limited', { status: 429 }));
+    vi.stubGlobal('fetch', fetchMock);
+    const extractor = new KnowledgeExtractor(sessions, store, { llm: { apiKey: 'test', model: 'm' } } as any);
+
+    await (extractor as any).extractForWorkspace(workspace);
+
+    // One attempt, then the run stops instead of consuming the remaining chunks
+    expect(fetchMock).toHaveBeenCalledTimes(1);
+    expect(store.getProgress(workspace, 's1')).toBeUndefined();
+    expect(store.countPendingMessages(workspace)).toBe(2);
+    expect(extractor.stats()).toMatchObject({ chunksFailed: 1, chunksExtracted: 0, backlog: 2 });
+  });
+});
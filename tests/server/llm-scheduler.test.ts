@@ -0,0 +1,101 @@
+import { describe, it, expect, beforeEach, afterEach, vi } from 'vitest';
+import { LlmScheduler, errorCodeForStatus, type LlmPermit } from '../../server/llm-scheduler.js';
+
+describe('LlmScheduler', () => {
+  beforeEach(() => vi.useFakeTimers());
+  afterEach(() => vi.useRealTimers());
+
+  const settle = () => vi.advanceTimersByTimeAsync(0);
+
+  it('should grant slots up to the concurrency budget', async () => {
+    const scheduler = new LlmScheduler({ maxConcurrent: 2, reservedInteractive: 0, burst: 10 });
+    const granted: LlmPermit[] = [];
+    for (let i = 0; i < 3; i++) scheduler.acquire('batch').then(p => granted.push(p));
+    await settle();
+    expect(granted).toHaveLength(2);
+
+    granted[0].release();
+    await settle();
+    expect(granted).toHaveLength(3);
+  });
+
+  it('should keep reserved slots for interactive turns', async () => {
+    const scheduler = new LlmScheduler({ maxConcurrent: 3, reservedInteractive: 1, burst: 10 });
+    const batch: LlmPermit[] = [];
+    for (let i = 0; i < 3; i++) scheduler.acquire('batch').then(p => batch.push(p));
+    await settle();
+    expect(batch).toHaveLength(2);
+
+    const chat = await scheduler.acquire('interactive');
+    expect(chat.lane).toBe('interactive');
+  });
+
+  it('should serve higher-priority lanes first', async () => {
+    const scheduler = new LlmScheduler({ maxConcurrent: 1, reservedInteractive: 0, burst: 10 });
+    const first = await scheduler.acquire('batch');
+    const order: string[] = [];
+    scheduler.acquire('background').then(() => order.push('background'));
+    scheduler.acquire('cron').then(() => order.push('cron'));
+    scheduler.acquire('chatbot').then(() => order.push('chatbot'));
+
+    first.release();
+    await settle();
+    expect(order).toEqual(['chatbot']);
+    expect(scheduler.stats().queued).toEqual({ cron: 1, background: 1 });
+  });
+
+  it('should rate limit turn starts with the token bucket', async () => {
+    const scheduler = new LlmScheduler({ maxConcurrent: 10, reservedInteractive: 0, burst: 1, requestsPerMinute: 60 });
+    (await scheduler.acquire('cron')).release();
+    let granted = false;
+    scheduler.acquire('cron').then(() => { granted = true; });
+    await settle();
+    expect(granted).toBe(false);
+
+    await vi.advanceTimersByTimeAsync(1000);
+    expect(granted).toBe(true);
+  });
+
+  it('should back off non-interactive lanes after a rate limit error', async () => {
+    const scheduler = new LlmScheduler({ maxConcurrent: 4, reservedInteractive: 0, burst: 10, baseBackoffMs: 2000 });
+    (await scheduler.acquire('batch')).release('rate_limit');
+    expect(scheduler.stats().concurrencyLimit).toBe(2);
+
+    let batchGranted = false;
+    scheduler.acquire('batch').then(() => { batchGranted = true; });
+    const chat = await scheduler.acquire('interactive');
+    expect(chat).toBeDefined();
+    await settle();
+    expect(batchGranted).toBe(false);
+
+    await vi.advanceTimersByTimeAsync(2000);
+    expect(batchGranted).toBe(true);
+  });
+
+  it('should reject queued waiters when their signal aborts', async () => {
+    const scheduler = new LlmScheduler({ maxConcurrent: 1, reservedInteractive: 0 });
+    await scheduler.acquire('cron');
+    const controller = new AbortController();
+    const pending = scheduler.acquire('cron', controller.signal);
+    controller.abort();
+    await expect(pending).rejects.toMatchObject({ name: 'AbortError' });
+    expect(scheduler.stats().queued).toEqual({});
+  });
+
+  it('should ignore double release', async () => {
+    const scheduler = new LlmScheduler({ maxConcurrent: 2 });
+    const permit = await scheduler.acquire('interactive');
+    permit.release();
+    permit.release();
+    expect(scheduler.stats().active).toBe(0);
+  });
+});
+
+describe('errorCodeForStatus', () => {
+  it('should map provider pushback statuses', () => {
+    expect(errorCodeForStatus(429)).toBe('rate_limit');
+    expect(errorCodeForStatus(529)).toBe('overloaded');
+    expect(errorCodeForStatus(503)).toBe('server_error');
+    expect(errorCodeForStatus(400)).toBeUndefined();
+  });
+});
@@ -0,0 +1,51 @@
+import { describe, it, expect } from 'vitest';
+import { diffPartial, replayJournal, snapshotOf, emptySnapshot } from '../../server/partial-journal.js';
+import type { ContentBlock } from '../../server/session-store.js';
+
+describe('partial journal', () => {
+  it('should journal only the appended text suffix', () => {
+    const prev = snapshotOf('hello', undefined);
+    const ops = diffPartial(prev, 'hello world', undefined);
+    expect(ops).toEqual([{ field: 'content', op: 'append', idx: null, data: ' world' }]);
+  });
+
+  it('should reset content when the text was rewritten', () => {
+    const ops = diffPartial(snapshotOf('abc', undefined), 'xyz', undefined);
+    expect(ops).toEqual([{ field: 'content', op: 'reset', idx: null, data: 'xyz' }]);
+  });
+
+  it('should append to growing thinking blocks and set changed tool blocks', () => {
+    const prev = snapshotOf('', [
+      { type: 'thinking', thinking: 'let me' },
+      { type: 'tool_use', id: 't1', name: 'Read', input: { path: 'a' } },
+    ]);
+    const next: ContentBlock[] = [
+      { type: 'thinking', thinking: 'let me think' },
+      { type: 'tool_use', id: 't1', name: 'Read', input: { path: 'a' } },
+      { type: 'tool_use', id: 't2', name: 'Grep', input: { q: 'x' } },
+    ];
+    const ops = diffPartial(prev, '', next);
+    expect(ops).toEqual([
+      { field: 'block', op: 'append', idx: 0, data: ' think' },
+      { field: 'block', op: 'set', idx: 2, data: JSON.stringify(next[2]) },
+    ]);
+    expect(replayJournal(prev, ops).blocks).toEqual(next);
+  });
+
+  it('should replay a sequence of diffs back to the latest snapshot', () => {
+    const steps: Array<[string, ContentBlock[]]> = [
+      ['a', [{ type: 'thinking', thinking: 'x' }]],
+      ['ab', [{ type: 'thinking', thinking: 'xy' }, { type: 'tool_use', id: '1', name: 'Bash', input: {} }]],
+      ['abc', [{ type: 'thinking', thinking: 'xy' }]],
+    ];
+    let persisted = emptySnapshot();
+    const journal = [];
+    for (const [content, blocks] of steps) {
+      journal.push(...diffPartial(persisted, content, blocks));
+      persisted = snapshotOf(content, blocks);
+    }
+    const replayed = replayJournal(emptySnapshot(), journal);
+    expect(replayed.content).toBe('abc');
+    expect(replayed.blocks).toEqual([{ type: 'thinking', thinking: 'xy' }]);
+  });
+});
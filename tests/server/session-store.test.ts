@@ -95,4 +95,159 @@ describe('SessionStore', () => {
 
     expect(after).not.toBe(before);
   });
+
+  it('should page history newest-first with a beforeId cursor', () => {
+    store.createSession({ id: 'sess-6', systemId: 'sysA', workspace: '/a' });
+    for (let i = 0; i < 5; i++) {
+      store.addMessage('sess-6', { role: 'user', content: `m${i}` });
+    }
+
+    const newest = store.getMessagesPage('sess-6', { limit: 2 });
+    expect(newest.messages.map(m => m.content)).toEqual(['m3', 'm4']);
+    expect(newest.hasMore).toBe(true);
+
+    const older = store.getMessagesPage('sess-6', { beforeId: newest.messages[0].id, limit: 2 });
+    expect(older.messages.map(m => m.content)).toEqual(['m1', 'm2']);
+    expect(older.hasMore).toBe(true);
+
+    const oldest = store.getMessagesPage('sess-6', { beforeId: older.messages[0].id, limit: 2 });
+    expect(oldest.messages.map(m => m.content)).toEqual(['m0']);
+    expect(oldest.hasMore).toBe(false);
+  });
+
+  it('should defer large content blocks until requested', () => {
+    store.createSession({ id: 'sess-7', systemId: 'sysA', workspace: '/a' });
+    const bigImage = 'A'.repeat(100 * 1024);
+    const msg = store.addMessage('sess-7', {
+      role: 'user',
+      content: 'look',
+      contentBlocks: [{ type: 'image', source: { type: 'base64', media_type: 'image/png', data: bigImage } }],
+    });
+    store.addMessage('sess-7', { role: 'assistant', content: 'ok', contentBlocks: [{ type: 'text', text: 'ok' }] });
+
+    const page = store.getMessagesPage('sess-7');
+    expect(page.messages[0].blocksDeferred).toBe(true);
+    expect(page.messages[0].contentBlocks).toBeUndefined();
+    expect(page.messages[1].blocksDeferred).toBeUndefined();
+    expect(page.messages[1].contentBlocks).toHaveLength(1);
+
+    const blocks = store.getMessageBlocks('sess-7', msg.id);
+    expect(blocks?.[0].source?.data).toHaveLength(bigImage.length);
+  });
+
+  it('should coalesce partial upserts and expose them on read', () => {
+    store.createSession({ id: 'sess-8', systemId: 'sysA', workspace: '/a' });
+    store.upsertPartialMessage('sess-8', 'he');
+    store.upsertPartialMessage('sess-8', 'hello');
+
+    const msgs = store.getMessages('sess-8');
+    expect(msgs).toHaveLength(1);
+    expect(msgs[0].content).toBe('hello');
+    expect(msgs[0].isPartial).toBe(true);
+  });
+
+  it('should not resurrect a cleared partial from a pending write', () => {
+    store.createSession({ id: 'sess-9', systemId: 'sysA', workspace: '/a' });
+    store.upsertPartialMessage('sess-9', 'draft');
+    store.clearPartialMessages('sess-9');
+    store.addMessage('sess-9', { role: 'assistant', content: 'final' });
+
+    const msgs = store.getMessages('sess-9');
+    expect(msgs.map(m => m.content)).toEqual(['final']);
+  });
+
+  it('should journal streaming deltas instead of rewriting the partial row', () => {
+    store.createSession({ id: 'sess-10', systemId: 'sysA', workspace: '/a' });
+    store.upsertPartialMessage('sess-10', 'part one');
+    store.flushPendingWrites();
+    store.upsertPartialMessage('sess-10', 'part one, part two', [{ type: 'thinking', thinking: 'hmm' }]);
+    store.flushPendingWrites();
+
+    const db = store.getDatabase();
+    const row = db.prepare('SELECT content FROM messages WHERE session_id = ? AND is_partial = 1').get('sess-10') as { content: string };
+    expect(row.content).toBe('part one');
+    const journal = db.prepare('SELECT field, op, data FROM partial_journal').all();
+    expect(journal).toEqual([
+      { field: 'content', op: 'append', data: ', part two' },
+      { field: 'block', op: 'set', data: JSON.stringify({ type: 'thinking', thinking: 'hmm' }) },
+    ]);
+
+    const [msg] = store.getMessages('sess-10');
+    expect(msg.content).toBe('part one, part two');
+    expect(msg.contentBlocks).toEqual([{ type: 'thinking', thinking: 'hmm' }]);
+  });
+
+  it('should compact the journal into the final row on finalize', () => {
+    store.createSession({ id: 'sess-11', systemId: 'sysA', workspace: '/a' });
+    store.upsertPartialMessage('sess-11', 'stream');
+    store.flushPendingWrites();
+    store.upsertPartialMessage('sess-11', 'streaming');
+
+    const final = store.finalizePartialMessage('sess-11', { role: 'assistant', content: 'streaming done' });
+
+    const msgs = store.getMessages('sess-11');
+    expect(msgs).toHaveLength(1);
+    expect(msgs[0].id).toBe(final.id);
+    expect(msgs[0].content).toBe('streaming done');
+    expect(msgs[0].isPartial).toBeUndefined();
+    expect(store.getDatabase().prepare('SELECT COUNT(*) as c FROM partial_journal').get()).toEqual({ c: 0 });
+  });
+
+  it('should order the final message after messages added while streaming', () => {
+    store.createSession({ id: 'sess-14', systemId: 'sysA', workspace: '/a' });
+    store.addMessage('sess-14', { role: 'user', content: 'question' });
+    store.upsertPartialMessage('sess-14', 'thinking about it');
+    store.flushPendingWrites();
+    store.addMessage('sess-14', { role: 'user', content: 'tool result' });
+
+    store.finalizePartialMessage('sess-14', { role: 'assistant', content: 'answer' });
+
+    expect(store.getMessages('sess-14').map(m => m.content)).toEqual(['question', 'tool result', 'answer']);
+  });
+
+  it('should keep the thinking signature through journaled updates', () => {
+    store.createSession({ id: 'sess-15', systemId: 'sysA', workspace: '/a' });
+    store.upsertPartialMessage('sess-15', '', [{ type: 'thinking', thinking: 'let me' }]);
+    store.flushPendingWrites();
+    store.upsertPartialMessage('sess-15', '', [{ type: 'thinking', thinking: 'let me think', signature: 'sig' }]);
+    store.flushPendingWrites();
+
+    expect(store.getMessages('sess-15')[0].contentBlocks).toEqual([
+      { type: 'thinking', thinking: 'let me think', signature: 'sig' },
+    ]);
+  });
+
+  it('should recover journaled partial content after a restart', () => {
+    store.createSession({ id: 'sess-12', systemId: 'sysA', workspace: '/a' });
+    store.upsertPartialMessage('sess-12', 'before');
+    store.flushPendingWrites();
+    store.upsertPartialMessage('sess-12', 'before crash');
+    store.close();
+
+    store = new SessionStore(dbPath);
+    const db = store.getDatabase();
+    expect(db.prepare('SELECT COUNT(*) as c FROM partial_journal').get()).toEqual({ c: 0 });
+    const row = db.prepare('SELECT content FROM messages WHERE session_id = ? AND is_partial = 1').get('sess-12') as { content: string };
+    expect(row.content).toBe('before crash');
+  });
+
+  it('should push committed partial snapshots and the final message', () => {
+    store.createSession({ id: 'sess-13', systemId: 'p', workspace: '/p' });
+    const events: Array<{ type: string; content?: string; isPartial?: boolean }> = [];
+    store.setPartialMessageListener(e => events.push({ type: e.type, content: e.message?.content, isPartial: e.message?.isPartial }));
+
+    store.upsertPartialMessage('sess-13', 'hel');
+    store.upsertPartialMessage('sess-13', 'hello');
+    store.flushPendingWrites();
+    store.upsertPartialMessage('sess-13', 'hello');
+    store.flushPendingWrites();
+    store.finalizePartialMessage('sess-13', { role: 'assistant', content: 'hello world' });
+    store.clearPartialMessages('sess-13');
+
+    expect(events).toEqual([
+      { type: 'partialUpdated', content: 'hello', isPartial: true },
+      { type: 'streamCompleted', content: 'hello world', isPartial: undefined },
+      { type: 'streamCompleted', content: undefined, isPartial: undefined },
+    ]);
+  });
 });
@@ -1,6 +1,8 @@
 import { describe, it, expect, beforeEach, afterEach, vi } from 'vitest';
-import { SmartPathEngine } from '../../server/smart-path-engine.js';
+import { SmartPathEngine, buildStepGraph } from '../../server/smart-path-engine.js';
 import { SmartPathStore } from '../../server/smart-path-store.js';
+import { disposeGitStateCaches } from '../../server/git-state-cache.js';
+import { execFileSync } from 'child_process';
 import fs from 'fs';
 import path from 'path';
 import os from 'os';
@@ -36,6 +38,7 @@ describe('SmartPathEngine', () => {
       ]),
       closeV2Session: vi.fn(),
       removeEphemeralSession: vi.fn(),
+      prewarmWorkspace: vi.fn(),
     };
     engine = new SmartPathEngine(store, mockSessionManager as any);
   });
@@ -95,4 +98,155 @@ describe('SmartPathEngine', () => {
     const runs = store.listRuns(p.id, workspace);
     expect(runs[0].status).toBe('failed');
   });
+
+  it('should run independent steps concurrently and feed their outputs to the join step', async () => {
+    let active = 0;
+    let maxActive = 0;
+    const prompts = new Map<string, string>();
+    mockSessionManager.sendMessageForStep.mockImplementation(async (sessionId: string, prompt: string) => {
+      if (!sessionId.includes('-step-')) return 'ok';
+      prompts.set(sessionId.replace(/^.*-step-/, ''), prompt);
+      active++;
+      maxActive = Math.max(maxActive, active);
+      await new Promise(r => setTimeout(r, 10));
+      active--;
+      return `result ${sessionId.replace(/^.*-step-/, '')}`;
+    });
+
+    const p = store.create({
+      name: 'Fan In',
+      workspace,
+      steps: JSON.stringify([
+        { name: 'a', userInput: 'research a', dependsOn: [] },
+        { name: 'b', userInput: 'research b', dependsOn: [] },
+        { userInput: 'combine', dependsOn: ['a', 1] },
+      ]),
+    });
+    const onStepProgress = vi.fn();
+    const { stepResults } = await engine.runWithResults(p.id, workspace, undefined, onStepProgress);
+
+    expect(maxActive).toBe(2);
+    expect(stepResults).toEqual(['result 0', 'result 1', 'result 2']);
+    expect(prompts.get('2')).toContain('[步骤 1] result 0');
+    expect(prompts.get('2')).toContain('[步骤 2] result 1');
+    expect(prompts.get('0')).not.toContain('[前序步骤的关键信息]');
+  });
+
+  it('should pass run args to every step that does not follow step 0', async () => {
+    const prompts = new Map<string, string>();
+    mockSessionManager.sendMessageForStep.mockImplementation(async (sessionId: string, prompt: string) => {
+      if (sessionId.includes('-step-')) prompts.set(sessionId.replace(/^.*-step-/, ''), prompt);
+      return 'ok';
+    });
+    const p = store.create({
+      name: 'Two Roots',
+      workspace,
+      steps: JSON.stringify([
+        { userInput: 'research a', dependsOn: [] },
+        { userInput: 'research b', dependsOn: [] },
+        { userInput: 'combine', dependsOn: [0, 1] },
+      ]),
+    });
+
+    await engine.runWithResults(p.id, workspace, 'topic=x', vi.fn());
+
+    expect(prompts.get('0')).toContain('用户参数为:{topic=x}');
+    expect(prompts.get('1')).toContain('用户参数为:{topic=x}');
+    expect(prompts.get('2')).not.toContain('用户参数为');
+  });
+
+  it('should reuse cached step results when inputs are unchanged', async () => {
+    const p = store.create({
+      name: 'Cached',
+      workspace,
+      steps: JSON.stringify([{ userInput: 'step 1' }, { userInput: 'step 2' }]),
+    });
+
+    await engine.runWithResults(p.id, workspace, undefined, vi.fn(), false, true);
+    expect(mockSessionManager.sendMessageForStep).toHaveBeenCalledTimes(4);
+
+    mockSessionManager.sendMessageForStep.mockClear();
+    const { stepResults } = await engine.runWithResults(p.id, workspace, undefined, vi.fn(), false, true);
+    // Only updateRunGuide runs: the plan and both steps come from the cache
+    expect(mockSessionManager.sendMessageForStep).toHaveBeenCalledTimes(1);
+    expect(stepResults).toEqual(['step result', 'step result']);
+
+    mockSessionManager.sendMessageForStep.mockClear();
+    await engine.runWithResults(p.id, workspace, 'new args', vi.fn(), false, true);
+    // Args change the plan and step 1; step 2 still sees identical inputs
+    expect(mockSessionManager.sendMessageForStep).toHaveBeenCalledTimes(3);
+  });
+
+  it('should keep hitting the step cache when steps save reference scripts', async () => {
+    let calls = 0;
+    mockSessionManager.sendMessageForStep.mockImplementation(async (sessionId: string) => {
+      if (!sessionId.includes('-step-')) return 'ok';
+      // Fresh LLM output each time: the saved script differs between runs
+      calls++;
+      return ['done', '[REFERENCE:fetch.py]', '```', `print(${calls})`, '```', ''].join('\n');
+    });
+    const p = store.create({ name: 'Refs', workspace, steps: JSON.stringify([{ userInput: 'fetch data' }]) });
+
+    await engine.runWithResults(p.id, workspace, undefined, vi.fn(), false, true);
+    expect(store.getReference(workspace, p.id, 'fetch.py')).toBe('print(1)');
+
+    await engine.runWithResults(p.id, workspace, undefined, vi.fn(), false, true);
+    expect(calls).toBe(1);
+  });
+
+  it('should miss the step cache when uncommitted files change', async () => {
+    const git = (...args: string[]) => execFileSync('git', args, { cwd: workspace });
+    git('init', '-q');
+    fs.writeFileSync(path.join(workspace, 'data.txt'), 'v1');
+    git('add', '.');
+    git('-c', 'user.name=t', '-c', 'user.email=t@t', 'commit', '-qm', 'init');
+    const p = store.create({ name: 'Dirty', workspace, steps: JSON.stringify([{ userInput: 'read data.txt' }]) });
+    // Drop cached git state between runs instead of waiting for watcher events
+    const rerun = async () => {
+      disposeGitStateCaches();
+      mockSessionManager.sendMessageForStep.mockClear();
+      await engine.runWithResults(p.id, workspace, undefined, vi.fn(), false, true);
+      return mockSessionManager.sendMessageForStep.mock.calls.length;
+    };
+
+    try {
+      // plan + step + guide
+      expect(await rerun()).toBe(3);
+      expect(await rerun()).toBe(1);
+
+      fs.writeFileSync(path.join(workspace, 'data.txt'), 'v2');
+      expect(await rerun()).toBe(3);
+
+      // The app's own output under .sman/ doesn't count as a workspace change
+      fs.mkdirSync(path.join(workspace, '.sman', 'scratch'), { recursive: true });
+      fs.writeFileSync(path.join(workspace, '.sman', 'scratch', 'out.txt'), 'x');
+      expect(await rerun()).toBe(1);
+    } finally {
+      disposeGitStateCaches();
+    }
+  });
+
+  it('should reject dependency cycles before starting a run', async () => {
+    const p = store.create({
+      name: 'Cycle',
+      workspace,
+      steps: JSON.stringify([{ userInput: 'x', dependsOn: [1] }, { userInput: 'y' }]),
+    });
+    await expect(engine.run(p.id, workspace, vi.fn(), vi.fn())).rejects.toThrow('cycle');
+    expect(store.listRuns(p.id, workspace)).toHaveLength(0);
+  });
+});
+
+describe('buildStepGraph', () => {
+  it('should chain steps without dependsOn like a sequential path', () => {
+    const graph = buildStepGraph([{ userInput: 'a' }, { userInput: 'b' }, { userInput: 'c' }]);
+    expect(graph.order).toEqual([0, 1, 2]);
+    expect(graph.ancestors).toEqual([[], [0], [0, 1]]);
+    expect(graph.dependents).toEqual([[1], [2], []]);
+  });
+
+  it('should reject unknown and self references', () => {
+    expect(() => buildStepGraph([{ userInput: 'a', dependsOn: ['missing'] }])).toThrow('Invalid dependsOn');
+    expect(() => buildStepGraph([{ userInput: 'a' }, { userInput: 'b', dependsOn: [1] }])).toThrow('Invalid dependsOn');
+  });
 });
@@ -1,4 +1,4 @@
-import { describe, it, expect, beforeEach, afterEach } from 'vitest';
+import { describe, it, expect, beforeEach, afterEach, vi } from 'vitest';
 import fs from 'fs';
 import path from 'path';
 import os from 'os';
@@ -87,4 +87,39 @@ describe('SmartPathStore', () => {
     expect(runs).toHaveLength(1);
     expect(runs[0].status).toBe('completed');
   });
+
+  it('should serve repeated lists from the index without reading path files', () => {
+    store.create({ name: 'A', workspace: tmpWs, steps: '[]' });
+    store.list(tmpWs);
+
+    const readSpy = vi.spyOn(fs, 'readFileSync');
+    try {
+      expect(store.list(tmpWs).map(p => p.name)).toEqual(['A']);
+      expect(readSpy).not.toHaveBeenCalled();
+    } finally {
+      readSpy.mockRestore();
+    }
+  });
+
+  it('should pick up external edits and deletions once the index is stale', () => {
+    const a = store.create({ name: 'A', workspace: tmpWs, steps: '[]' });
+    const b = store.create({ name: 'B', workspace: tmpWs, steps: '[]' });
+    store.list(tmpWs);
+
+    const file = path.join(tmpWs, '.sman', 'paths', a.id, 'path.md');
+    fs.writeFileSync(file, fs.readFileSync(file, 'utf-8').replace('status: draft', 'status: running'));
+    const later = new Date(Date.now() + 5000);
+    fs.utimesSync(file, later, later);
+    fs.rmSync(path.join(tmpWs, '.sman', 'paths', b.id), { recursive: true });
+
+    vi.useFakeTimers({ toFake: ['Date'] });
+    vi.setSystemTime(Date.now() + 11_000);
+    try {
+      expect(store.list(tmpWs).map(p => [p.name, p.status])).toEqual([['A', 'running']]);
+      expect(store.resetRunningStatuses([tmpWs])).toBe(1);
+      expect(store.get(a.id, tmpWs)!.status).toBe('failed');
+    } finally {
+      vi.useRealTimers();
+    }
+  });
 });
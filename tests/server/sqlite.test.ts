@@ -0,0 +1,122 @@
+import { describe, it, expect, beforeEach, afterEach, vi } from 'vitest';
+import Database from 'better-sqlite3';
+import { StatementCache, WriteBatcher } from '../../server/utils/sqlite.js';
+
+describe('StatementCache', () => {
+  let db: Database.Database;
+
+  beforeEach(() => {
+    db = new Database(':memory:');
+    db.exec('CREATE TABLE t (id INTEGER PRIMARY KEY, v TEXT)');
+  });
+
+  afterEach(() => {
+    db.close();
+  });
+
+  it('should reuse the prepared statement for identical SQL', () => {
+    const cache = new StatementCache(db);
+    const a = cache.get('SELECT * FROM t WHERE id = ?');
+    const b = cache.get('SELECT * FROM t WHERE id = ?');
+    expect(a).toBe(b);
+    expect(cache.size).toBe(1);
+  });
+
+  it('should evict the least recently used statement past the cap', () => {
+    const cache = new StatementCache(db, 2);
+    const first = cache.get('SELECT 1');
+    cache.get('SELECT 2');
+    cache.get('SELECT 1'); // refresh
+    cache.get('SELECT 3'); // evicts SELECT 2
+    expect(cache.size).toBe(2);
+    expect(cache.get('SELECT 1')).toBe(first);
+  });
+});
+
+describe('WriteBatcher', () => {
+  let db: Database.Database;
+
+  beforeEach(() => {
+    vi.useFakeTimers();
+    db = new Database(':memory:');
+    db.exec('CREATE TABLE t (k TEXT PRIMARY KEY, v INTEGER)');
+  });
+
+  afterEach(() => {
+    vi.useRealTimers();
+    db.close();
+  });
+
+  function createBatcher(apply = vi.fn()) {
+    const upsert = db.prepare('INSERT INTO t (k, v) VALUES (?, ?) ON CONFLICT(k) DO UPDATE SET v = excluded.v');
+    return new WriteBatcher<string, number>(db, {
+      flushIntervalMs: 50,
+      maxPending: 3,
+      apply: (entries) => {
+        apply(entries);
+        for (const [k, v] of entries) upsert.run(k, v);
+      },
+    });
+  }
+
+  const count = () => (db.prepare('SELECT COUNT(*) as c FROM t').get() as { c: number }).c;
+
+  it('should coalesce writes per key and commit after the interval', () => {
+    const apply = vi.fn();
+    const batcher = createBatcher(apply);
+    batcher.enqueue('a', 1);
+    batcher.enqueue('a', 2);
+    batcher.enqueue('b', 1);
+    expect(count()).toBe(0);
+
+    vi.advanceTimersByTime(50);
+    expect(apply).toHaveBeenCalledTimes(1);
+    expect(apply).toHaveBeenCalledWith([['a', 2], ['b', 1]]);
+    expect(count()).toBe(2);
+  });
+
+  it('should use merge to combine pending values', () => {
+    const batcher = new WriteBatcher<string, number>(db, {
+      merge: (prev, next) => prev + next,
+      apply: (entries) => {
+        for (const [k, v] of entries) db.prepare('INSERT INTO t (k, v) VALUES (?, ?)').run(k, v);
+      },
+    });
+    batcher.enqueue('a', 1);
+    batcher.enqueue('a', 2);
+    batcher.flush();
+    expect((db.prepare('SELECT v FROM t WHERE k = ?').get('a') as { v: number }).v).toBe(3);
+  });
+
+  it('should flush immediately once maxPending keys are queued', () => {
+    const batcher = createBatcher();
+    batcher.enqueue('a', 1);
+    batcher.enqueue('b', 1);
+    batcher.enqueue('c', 1);
+    expect(count()).toBe(3);
+    expect(batcher.size).toBe(0);
+  });
+
+  it('should drop discarded keys', () => {
+    const batcher = createBatcher();
+    batcher.enqueue('a', 1);
+    batcher.discard('a');
+    batcher.flush();
+    expect(count()).toBe(0);
+  });
+
+  it('should roll back the whole batch when apply throws', () => {
+    const onError = vi.fn();
+    const batcher = new WriteBatcher<string, number>(db, {
+      apply: (entries) => {
+        for (const [k, v] of entries) db.prepare('INSERT INTO t (k, v) VALUES (?, ?)').run(k, v);
+        throw new Error('boom');
+      },
+      onError,
+    });
+    batcher.enqueue('a', 1);
+    batcher.flush();
+    expect(onError).toHaveBeenCalledTimes(1);
+    expect(count()).toBe(0);
+  });
+});
@@ -0,0 +1,39 @@
+import { describe, it, expect } from 'vitest';
+import { StreamReplayBuffer } from '../../server/stream-replay.js';
+
+const delta = (content: string) => ({ type: 'chat.delta', sessionId: 's1', deltaType: 'text', content });
+
+describe('StreamReplayBuffer', () => {
+  it('should stamp increasing seqs starting from the seed', () => {
+    const buffer = new StreamReplayBuffer(10, 100);
+    expect(buffer.push(delta('a')).seq).toBe(100);
+    expect(buffer.push(delta('b')).seq).toBe(101);
+    expect(buffer.lastSeq).toBe(101);
+  });
+
+  it('should replay only frames after lastSeq', () => {
+    const buffer = new StreamReplayBuffer(10, 1);
+    buffer.push(delta('a'));
+    buffer.push(delta('b'));
+    buffer.push(delta('c'));
+    expect(buffer.since(1)!.map(f => f.content)).toEqual(['b', 'c']);
+    expect(buffer.since(3)).toEqual([]);
+  });
+
+  it('should report a gap once needed frames were evicted', () => {
+    const buffer = new StreamReplayBuffer(2, 1);
+    buffer.push(delta('a'));
+    buffer.push(delta('b'));
+    buffer.push(delta('c')); // evicts seq 1
+    expect(buffer.size).toBe(2);
+    expect(buffer.since(1)!.map(f => f.content)).toEqual(['b', 'c']);
+    expect(buffer.since(0)).toBeNull();
+  });
+
+  it('should not mutate the frame passed in', () => {
+    const buffer = new StreamReplayBuffer(4, 1);
+    const frame = delta('a');
+    buffer.push(frame);
+    expect('seq' in frame).toBe(false);
+  });
+});
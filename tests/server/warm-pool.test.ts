@@ -0,0 +1,83 @@
+import { describe, it, expect, vi } from 'vitest';
+import { WarmPool } from '../../server/warm-pool.js';
+
+interface FakeProc {
+  id: number;
+  alive: boolean;
+}
+
+function createPool(limits = {}) {
+  let next = 0;
+  const spawn = vi.fn(async (_key: string): Promise<FakeProc> => ({ id: ++next, alive: true }));
+  const dispose = vi.fn((p: FakeProc) => { p.alive = false; });
+  const pool = new WarmPool<FakeProc>({ spawn, dispose, isAlive: p => p.alive }, limits);
+  return { pool, spawn, dispose };
+}
+
+const flush = () => new Promise(r => setTimeout(r, 0));
+
+describe('WarmPool', () => {
+  it('should miss on a cold key and warm it once the caller prewarms', async () => {
+    const { pool, spawn } = createPool({ sizePerKey: 1 });
+    expect(await pool.acquire('ws1')).toBeNull();
+    // The caller spawns its own process first; the refill waits for its prewarm()
+    expect(spawn).not.toHaveBeenCalled();
+    pool.prewarm('ws1');
+    expect(spawn).toHaveBeenCalledTimes(1);
+    await flush();
+
+    const proc = await pool.acquire('ws1');
+    expect(proc?.id).toBe(1);
+    expect(pool.stats()).toMatchObject({ hits: 1, misses: 1 });
+  });
+
+  it('should hand an in-flight spawn to a waiting caller', async () => {
+    const { pool } = createPool({ sizePerKey: 1 });
+    pool.prewarm('ws1');
+    const proc = await pool.acquire('ws1');
+    expect(proc?.id).toBe(1);
+    expect(pool.stats().hits).toBe(1);
+  });
+
+  it('should skip dead idle entries', async () => {
+    const { pool } = createPool({ sizePerKey: 1 });
+    pool.prewarm('ws1');
+    await flush();
+    const stale = (await pool.acquire('ws1'))!;
+    pool.release('ws1', stale);
+    stale.alive = false;
+    await flush();
+    const proc = await pool.acquire('ws1');
+    expect(proc?.id).not.toBe(stale.id);
+    expect(pool.stats().evicted).toBeGreaterThanOrEqual(1);
+  });
+
+  it('should respect the total idle cap', async () => {
+    const { pool, spawn } = createPool({ sizePerKey: 2, maxIdle: 3 });
+    pool.prewarm('a');
+    pool.prewarm('b');
+    expect(spawn).toHaveBeenCalledTimes(3);
+  });
+
+  it('should evict idle entries past the timeout on sweep', async () => {
+    const { pool, dispose } = createPool({ sizePerKey: 1, idleTimeoutMs: 0, demandTtlMs: 0 });
+    pool.prewarm('ws1');
+    await flush();
+    await new Promise(r => setTimeout(r, 2));
+    pool.sweep();
+    expect(dispose).toHaveBeenCalledTimes(1);
+    expect(pool.stats().idle).toBe(0);
+  });
+
+  it('should dispose idle entries on clear and close', async () => {
+    const { pool, dispose } = createPool({ sizePerKey: 1 });
+    pool.prewarm('1|ws');
+    pool.prewarm('2|ws');
+    await flush();
+    pool.clear(key => key.startsWith('2|'));
+    expect(dispose).toHaveBeenCalledTimes(1);
+    pool.close();
+    expect(dispose).toHaveBeenCalledTimes(2);
+    expect(await pool.acquire('2|ws')).toBeNull();
+  });
+});
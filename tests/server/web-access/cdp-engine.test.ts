@@ -337,79 +337,153 @@ describe('CdpEngine', () => {
   });
 
   describe('waitForDomStable', () => {
-    it('should resolve when network idle and DOM stable', async () => {
+    const settle = () => new Promise(r => setTimeout(r, 0));
+
+    /** Push a session-scoped CDP event, as Chrome does on a flattened session */
+    function push(engine: CdpEngine, method: string, params: any, sessionId = SESSION_ID) {
+      engine.onMessage({ data: JSON.stringify({ method, params, sessionId }) });
+    }
+
+    /** Engine whose injected observer reports `sinceMutation` ms of quiet on install */
+    function setupStableEngine(sinceMutation = 1000) {
       const engine = setupEngine();
       vi.spyOn(engine as any, 'ensureSession').mockResolvedValue(SESSION_ID);
-
-      vi.spyOn(engine as any, 'sendCDP').mockImplementation(async (method: string, params: any) => {
-        if (method === 'Network.enable') return { result: {} };
-        if (params?.expression?.includes('new MutationObserver')) {
-          return { result: { result: { value: 'installed' } } };
-        }
-        if (params?.expression?.includes('__domLastMutation')) {
-          return { result: { result: { value: JSON.stringify({ elapsed: 1000, mutations: 3 }) } } };
+      const sendCDPSpy = vi.spyOn(engine as any, 'sendCDP').mockImplementation(async (_method: string, params: any) => {
+        if (params?.expression?.includes('__smanDomWatch')) {
+          return { result: { result: { value: sinceMutation } } };
         }
         return { result: {} };
       });
+      return { engine, sendCDPSpy };
+    }
 
+    it('should resolve when network idle and DOM stable', async () => {
+      const { engine } = setupStableEngine();
       const result = engine.waitForDomStable(TAB_ID, {
         timeoutMs: 5000,
         networkIdleMs: 200,
         domStableMs: 300,
       });
+      await settle();
 
-      // Simulate network events becoming idle
-      engine.onMessage({ data: JSON.stringify({
-        method: 'Network.requestWillBeSent',
-        params: { requestId: 'req-1' },
-      }) });
-      engine.onMessage({ data: JSON.stringify({
-        method: 'Network.loadingFinished',
-        params: { requestId: 'req-1' },
-      }) });
+      push(engine, 'Network.requestWillBeSent', { requestId: 'req-1' });
+      push(engine, 'Network.loadingFinished', { requestId: 'req-1' });
 
       await expect(result).resolves.toBeUndefined();
     });
 
-    it('should timeout when DOM keeps changing', async () => {
-      const engine = setupEngine({ defaultTimeoutMs: 200 });
-      vi.spyOn(engine as any, 'ensureSession').mockResolvedValue(SESSION_ID);
+    it('should wait for in-flight requests to finish', async () => {
+      const { engine } = setupStableEngine();
+      let resolved = false;
+      const result = engine.waitForDomStable(TAB_ID, {
+        timeoutMs: 5000,
+        networkIdleMs: 50,
+        domStableMs: 50,
+      }).then(() => { resolved = true; });
+      await settle();
 
-      vi.spyOn(engine as any, 'sendCDP').mockImplementation(async (method: string, params: any) => {
-        if (method === 'Network.enable') return { result: {} };
-        if (params?.expression?.includes('new MutationObserver')) {
-          return { result: { result: { value: 'installed' } } };
-        }
-        if (params?.expression?.includes('__domLastMutation')) {
-          return { result: { result: { value: JSON.stringify({ elapsed: 0, mutations: 999 }) } } };
-        }
-        return { result: {} };
+      push(engine, 'Network.requestWillBeSent', { requestId: 'req-1' });
+      await new Promise(r => setTimeout(r, 200));
+      expect(resolved).toBe(false);
+
+      push(engine, 'Network.loadingFailed', { requestId: 'req-1' });
+      await result;
+      expect(resolved).toBe(true);
+    });
+
+    it('should not wait on EventSource streams', async () => {
+      const { engine } = setupStableEngine();
+      const result = engine.waitForDomStable(TAB_ID, {
+        timeoutMs: 1000,
+        networkIdleMs: 50,
+        domStableMs: 50,
       });
+      await settle();
+
+      push(engine, 'Network.requestWillBeSent', { requestId: 'sse-1', type: 'EventSource' });
+
+      await expect(result).resolves.toBeUndefined();
+    });
+
+    it('should stop counting requests that outlive LONG_REQUEST_MS', async () => {
+      const { engine } = setupStableEngine();
+      // Install the tracker first so the pushed request is not missed
+      await engine.waitForDomStable(TAB_ID, { networkIdleMs: 0, domStableMs: 0 });
+      vi.useFakeTimers();
+      try {
+        let resolved = false;
+        const result = engine.waitForDomStable(TAB_ID, {
+          timeoutMs: 10_000,
+          networkIdleMs: 50,
+          domStableMs: 50,
+        }).then(() => { resolved = true; });
+        await vi.advanceTimersByTimeAsync(0);
+
+        push(engine, 'Network.requestWillBeSent', { requestId: 'poll-1', type: 'XHR' });
+        await vi.advanceTimersByTimeAsync(4000);
+        expect(resolved).toBe(false);
+
+        await vi.advanceTimersByTimeAsync(1100);
+        await result;
+        expect(resolved).toBe(true);
+      } finally {
+        vi.useRealTimers();
+      }
+    });
+
+    it('should forget requests of the previous document on main-frame navigation', async () => {
+      const { engine } = setupStableEngine();
+      await engine.waitForDomStable(TAB_ID, { networkIdleMs: 0, domStableMs: 0 });
+      push(engine, 'Network.requestWillBeSent', { requestId: 'old-doc' });
+      push(engine, 'Page.frameNavigated', { frame: { id: 'main' } });
+
+      const activity = (engine as any).pageActivity.get(SESSION_ID);
+      expect(activity.activeRequests.size).toBe(0);
+    });
 
-      await expect(engine.waitForDomStable(TAB_ID, {
+    it('should timeout when DOM keeps changing', async () => {
+      const { engine } = setupStableEngine(0);
+      const result = engine.waitForDomStable(TAB_ID, {
         timeoutMs: 300,
         networkIdleMs: 100,
         domStableMs: 200,
-      })).rejects.toThrow(BrowserTimeoutError);
-    });
+      });
+      await settle();
 
-    it('should use default options when none provided', async () => {
-      const engine = setupEngine();
-      vi.spyOn(engine as any, 'ensureSession').mockResolvedValue(SESSION_ID);
+      const pinger = setInterval(() => {
+        push(engine, 'Runtime.bindingCalled', { name: '__smanDomActivity', payload: '0' });
+      }, 50);
+      try {
+        await expect(result).rejects.toThrow(BrowserTimeoutError);
+      } finally {
+        clearInterval(pinger);
+      }
+    });
 
-      const sendCDPSpy = vi.spyOn(engine as any, 'sendCDP').mockImplementation(async (method: string, params: any) => {
-        if (method === 'Network.enable') return { result: {} };
-        if (params?.expression?.includes('new MutationObserver')) {
-          return { result: { result: { value: 'installed' } } };
-        }
-        if (params?.expression?.includes('__domLastMutation')) {
-          return { result: { result: { value: JSON.stringify({ elapsed: 10000, mutations: 0 }) } } };
-        }
-        return { result: {} };
+    it('should ignore events from other sessions and bindings', async () => {
+      const { engine } = setupStableEngine();
+      const result = engine.waitForDomStable(TAB_ID, {
+        timeoutMs: 2000,
+        networkIdleMs: 100,
+        domStableMs: 100,
       });
+      await settle();
+
+      push(engine, 'Network.requestWillBeSent', { requestId: 'req-9' }, 'other-session');
+      push(engine, 'Runtime.bindingCalled', { name: 'somethingElse', payload: '0' });
+
+      await expect(result).resolves.toBeUndefined();
+    });
+
+    it('should install the tracker once per session', async () => {
+      const { engine, sendCDPSpy } = setupStableEngine(10_000);
 
       await engine.waitForDomStable(TAB_ID);
+      await engine.waitForDomStable(TAB_ID, { networkIdleMs: 0, domStableMs: 0 });
+
       expect(sendCDPSpy).toHaveBeenCalledWith('Network.enable', {}, SESSION_ID);
+      const bindingCalls = sendCDPSpy.mock.calls.filter(([method]) => method === 'Runtime.addBinding');
+      expect(bindingCalls).toEqual([['Runtime.addBinding', { name: '__smanDomActivity' }, SESSION_ID]]);
     });
   });
 
@@ -583,4 +657,102 @@ describe('CdpEngine', () => {
       expect(result).toBe('');
     });
   });
+
+  describe('incremental snapshots', () => {
+    const role = (value: string) => ({ type: 'role', value });
+    const name = (value: string) => ({ type: 'string', value });
+
+    const BASE_NODES: AxNode[] = [
+      { nodeId: 'root', role: role('WebArea'), name: name(''), childIds: ['nav', 'list', 'btn1'] },
+      { nodeId: 'nav', role: role('navigation'), name: name('Main'), childIds: ['l1', 'l2', 'l3', 'l4'] },
+      ...['l1', 'l2', 'l3', 'l4'].map(id => ({ nodeId: id, role: role('link'), name: name(`Link ${id}`), childIds: [] })),
+      { nodeId: 'list', role: role('list'), name: name('Results'), backendDOMNodeId: 300, childIds: ['old1'] },
+      { nodeId: 'old1', role: role('listitem'), name: name('Old row'), childIds: [] },
+      { nodeId: 'btn1', role: role('button'), name: name('Load more'), backendDOMNodeId: 100, childIds: [] },
+    ];
+
+    it('should replace a subtree and drop its old descendants', () => {
+      const merged = CdpEngine.mergeAxSubtrees(BASE_NODES, [[
+        { nodeId: 'list', role: role('list'), name: name('Results'), childIds: ['new1'] },
+        { nodeId: 'new1', role: role('listitem'), name: name('New row'), childIds: [] },
+      ]])!;
+      const ids = merged.map(n => n.nodeId);
+      expect(ids).toContain('new1');
+      expect(ids).not.toContain('old1');
+      expect(ids).toContain('l4');
+    });
+
+    it('should refuse to merge a subtree whose root is unknown', () => {
+      expect(CdpEngine.mergeAxSubtrees(BASE_NODES, [[
+        { nodeId: 'ghost', role: role('list'), name: name(''), childIds: [] },
+      ]])).toBeNull();
+    });
+
+    it('should diff serialized trees line by line', () => {
+      const delta = CdpEngine.diffSerializedTrees('a\nb\nb\nc', 'a\nb\nc\nd');
+      expect(delta).toBe('- b\n+ d');
+      expect(CdpEngine.diffSerializedTrees('a\nb', 'a\nb')).toBe('');
+    });
+
+    it('should fetch only mutated subtrees after an action and return a delta', async () => {
+      const engine = setupEngineWithTab();
+      (engine as any).cachedAxNodes.set(TAB_ID, BASE_NODES);
+      (engine as any).axTreeState.set(TAB_ID, { serialized: CdpEngine.serializeAxTree(BASE_NODES), epoch: 0 });
+      (engine as any).pageActivity.set(SESSION_ID, {
+        activeRequests: new Set(), lastNetworkActivity: 0, lastMutation: 0,
+        loaded: true, documentEpoch: 0, listeners: new Set(),
+      });
+
+      const sendCDPSpy = vi.spyOn(engine as any, 'sendCDP').mockImplementation(async (method: string, params: any) => {
+        if (method === 'DOM.resolveNode') return { result: { object: { objectId: 'obj-100' } } };
+        if (method === 'Runtime.callFunctionOn') return { result: { result: { value: true } } };
+        if (method === 'Runtime.evaluate' && params.expression.includes('__smanTakeDirty')) {
+          return { result: { result: { type: 'object', subtype: 'array', objectId: 'dirty-list' } } };
+        }
+        if (method === 'Runtime.evaluate') return { result: { result: { value: '{"title":"Results","url":"https://example.com"}' } } };
+        if (method === 'Runtime.getProperties') {
+          return { result: { result: [{ name: '0', value: { objectId: 'el-list' } }, { name: 'length', value: { value: 1 } }] } };
+        }
+        if (method === 'Accessibility.getPartialAXTree' && params.objectId === 'el-list') {
+          return { result: { nodes: [{ nodeId: 'list', role: role('list'), name: name('Results'), backendDOMNodeId: 300, childIds: ['new1'] }] } };
+        }
+        if (method === 'Accessibility.getPartialAXTree' && params.backendNodeId === 100) {
+          return { result: { nodes: [BASE_NODES.find(n => n.nodeId === 'btn1')] } };
+        }
+        if (method === 'Accessibility.getChildAXNodes' && params.id === 'list') {
+          return { result: { nodes: [{ nodeId: 'new1', role: role('listitem'), name: name('New row'), childIds: [] }] } };
+        }
+        return { result: {} };
+      });
+
+      const snapshot = await engine.click(TAB_ID, { ref: 'btn1' });
+      expect(sendCDPSpy).not.toHaveBeenCalledWith('Accessibility.getFullAXTree', expect.anything(), expect.anything());
+      expect(snapshot.accessibilityTree).toContain('"New row"');
+      expect(snapshot.accessibilityTreeDelta).toContain('- ');
+      expect(snapshot.accessibilityTreeDelta).toContain('"Old row"');
+      expect(snapshot.accessibilityTreeDelta).toContain('+ ');
+      expect(snapshot.accessibilityTreeDelta).not.toContain('Link l1');
+    });
+
+    it('should fall back to a full fetch after navigation', async () => {
+      const engine = setupEngineWithTab();
+      (engine as any).cachedAxNodes.set(TAB_ID, BASE_NODES);
+      (engine as any).axTreeState.set(TAB_ID, { serialized: '', epoch: 0 });
+      (engine as any).pageActivity.set(SESSION_ID, {
+        activeRequests: new Set(), lastNetworkActivity: 0, lastMutation: 0,
+        loaded: true, documentEpoch: 1, listeners: new Set(),
+      });
+
+      const sendCDPSpy = vi.spyOn(engine as any, 'sendCDP').mockImplementation(async (method: string) => {
+        if (method === 'DOM.resolveNode') return { result: { object: { objectId: 'obj-100' } } };
+        if (method === 'Accessibility.getFullAXTree') return { result: { nodes: BASE_NODES } };
+        if (method === 'Runtime.evaluate') return { result: { result: { value: '{"title":"Next","url":"https://example.com/next"}' } } };
+        return { result: {} };
+      });
+
+      await engine.click(TAB_ID, { ref: 'btn1' });
+      expect(sendCDPSpy).toHaveBeenCalledWith('Accessibility.getFullAXTree', {}, SESSION_ID);
+      expect((engine as any).axTreeState.get(TAB_ID).epoch).toBe(1);
+    });
+  });
 });
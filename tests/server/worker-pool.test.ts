@@ -0,0 +1,80 @@
+import { describe, it, expect, beforeEach, afterEach } from 'vitest';
+import fs from 'node:fs';
+import os from 'node:os';
+import path from 'node:path';
+import { WorkerPool } from '../../server/worker-pool.js';
+
+describe('WorkerPool', () => {
+  let tmpDir: string;
+  let pool: WorkerPool;
+
+  beforeEach(() => {
+    tmpDir = fs.mkdtempSync(path.join(os.tmpdir(), 'sman-pool-'));
+    pool = new WorkerPool({ size: 2 });
+  });
+
+  afterEach(async () => {
+    await pool.close();
+    fs.rmSync(tmpDir, { recursive: true, force: true });
+  });
+
+  it('should list a directory with file sizes', async () => {
+    fs.mkdirSync(path.join(tmpDir, 'src'));
+    fs.writeFileSync(path.join(tmpDir, 'a.txt'), 'hello');
+
+    const entries = await pool.run('listDir', { dir: tmpDir });
+
+    expect(entries).toEqual(expect.arrayContaining([
+      { name: 'src', type: 'directory' },
+      { name: 'a.txt', type: 'file', size: 5 },
+    ]));
+    expect(await pool.run('listDir', { dir: path.join(tmpDir, 'a.txt') })).toBeNull();
+  });
+
+  it('should expand untracked directories and report skipped ones', async () => {
+    fs.mkdirSync(path.join(tmpDir, 'new', 'deep'), { recursive: true });
+    fs.mkdirSync(path.join(tmpDir, 'new', 'node_modules'));
+    fs.writeFileSync(path.join(tmpDir, 'new', 'deep', 'x.ts'), '');
+    fs.writeFileSync(path.join(tmpDir, 'new', '.hidden'), '');
+
+    const files = await pool.run('expandUntracked', {
+      root: tmpDir, dirs: ['new/'], skipDirs: ['node_modules'], maxDepth: 3, maxFiles: 500,
+    });
+
+    expect(files.sort()).toEqual(['new/deep/x.ts', 'new/node_modules/']);
+  });
+
+  it('should read crontab.md files of every workspace', async () => {
+    const skillDir = path.join(tmpDir, '.claude', 'skills', 'daily');
+    fs.mkdirSync(skillDir, { recursive: true });
+    fs.mkdirSync(path.join(tmpDir, '.claude', 'skills', 'no-cron'));
+    fs.writeFileSync(path.join(skillDir, 'crontab.md'), '0 9 * * *');
+
+    const crontabs = await pool.run('readCrontabs', { workspaces: [tmpDir, path.join(tmpDir, 'missing')] });
+
+    expect(crontabs).toEqual([{ workspace: tmpDir, skillName: 'daily', content: '0 9 * * *' }]);
+  });
+
+  it('should queue jobs beyond the pool size and report stats', async () => {
+    const results = await Promise.all(
+      Array.from({ length: 6 }, () => pool.run('pathsExist', { paths: [tmpDir, path.join(tmpDir, 'nope')] })),
+    );
+
+    expect(results).toEqual(Array(6).fill([true, false]));
+    const stats = pool.stats();
+    expect(stats.workers).toBeLessThanOrEqual(2);
+    expect(stats.completed).toBe(6);
+    expect(stats.queued).toBe(0);
+  });
+
+  it('should reject a failing task without losing the worker', async () => {
+    await expect(pool.run('nope' as never, {} as never)).rejects.toThrow();
+    expect(await pool.run('pathsExist', { paths: [tmpDir] })).toEqual([true]);
+    expect(pool.stats().failed).toBe(1);
+  });
+
+  it('should reject new jobs after close', async () => {
+    await pool.close();
+    await expect(pool.run('pathsExist', { paths: [] })).rejects.toThrow('Worker pool is closed');
+  });
+});
@@ -0,0 +1,128 @@
+import { describe, it, expect, beforeEach, afterEach } from 'vitest';
+import fs from 'node:fs';
+import path from 'node:path';
+import os from 'node:os';
+import {
+  WorkspaceFileIndex,
+  scoreFuzzyPath,
+  normalizeFuzzyQuery,
+} from '../../server/workspace-file-index.js';
+
+function write(root: string, rel: string, content = 'x'): void {
+  const file = path.join(root, rel);
+  fs.mkdirSync(path.dirname(file), { recursive: true });
+  fs.writeFileSync(file, content);
+}
+
+describe('scoreFuzzyPath', () => {
+  const rank = (query: string, paths: string[]) =>
+    paths
+      .map(p => ({ p, score: scoreFuzzyPath(normalizeFuzzyQuery(query), p) }))
+      .filter(r => r.score !== null)
+      .sort((a, b) => b.score! - a.score!)
+      .map(r => r.p);
+
+  it('should reject non-subsequences', () => {
+    expect(scoreFuzzyPath('xyz', 'src/app.ts')).toBeNull();
+    expect(scoreFuzzyPath('bc', 'src/abc.java')).not.toBeNull();
+  });
+
+  it('should prefer file name matches over directory matches', () => {
+    expect(rank('app', ['app/index.ts', 'src/App.tsx'])).toEqual(['src/App.tsx', 'app/index.ts']);
+  });
+
+  it('should prefer word boundaries and camelCase humps', () => {
+    expect(rank('cvh', ['src/covehicle.ts', 'server/code-viewer-handler.ts'])[0]).toBe('server/code-viewer-handler.ts');
+    expect(rank('fi', ['src/profile.ts', 'src/FileIndex.ts'])[0]).toBe('src/FileIndex.ts');
+  });
+
+  it('should prefer an exact name', () => {
+    expect(rank('index', ['src/indexer-utils.ts', 'src/index.ts'])[0]).toBe('src/index.ts');
+  });
+
+  it('should match across the path when the query has a slash', () => {
+    expect(scoreFuzzyPath('srv/idx', 'server/index.ts')).not.toBeNull();
+    expect(scoreFuzzyPath('srv/idx', 'src/index.ts')).toBeNull();
+  });
+});
+
+describe('WorkspaceFileIndex', () => {
+  let tmpDir: string;
+  let cacheDir: string;
+  let index: WorkspaceFileIndex | null;
+
+  beforeEach(() => {
+    tmpDir = fs.mkdtempSync(path.join(os.tmpdir(), 'sman-fileindex-'));
+    cacheDir = fs.mkdtempSync(path.join(os.tmpdir(), 'sman-fileindex-cache-'));
+    index = null;
+    write(tmpDir, 'src/App.tsx', '<App />');
+    write(tmpDir, 'src/components/Button.tsx');
+    write(tmpDir, 'server/index.ts', 'export {}');
+    write(tmpDir, 'README.md', 'hello');
+    write(tmpDir, 'node_modules/react/index.js');
+    write(tmpDir, '.git/HEAD');
+  });
+
+  afterEach(async () => {
+    await index?.dispose();
+    fs.rmSync(tmpDir, { recursive: true, force: true });
+    fs.rmSync(cacheDir, { recursive: true, force: true });
+  });
+
+  it('should index the workspace off-thread, skipping VCS and node_modules', async () => {
+    index = new WorkspaceFileIndex(tmpDir, { cacheDir: null, watch: false });
+    await index.start();
+
+    expect(index.isReady).toBe(true);
+    expect(index.size).toBe(4);
+    expect(index.sizeOf('README.md')).toBe(5);
+    expect(index.sizeOf('node_modules/react/index.js')).toBeUndefined();
+  });
+
+  it('should return ranked matches with a filter and limit', async () => {
+    index = new WorkspaceFileIndex(tmpDir, { cacheDir: null, watch: false });
+    await index.start();
+
+    expect(index.search('app')[0]).toMatchObject({ filePath: 'src/App.tsx', fileName: 'App.tsx' });
+    expect(index.search('x', { filter: name => name.endsWith('.ts') }).map(m => m.filePath)).toEqual(['server/index.ts']);
+    expect(index.search('t', { limit: 2 })).toHaveLength(2);
+    expect(index.search('   ')).toEqual([]);
+  });
+
+  it('should find files by exact name, shallowest first', async () => {
+    write(tmpDir, 'index.ts');
+    index = new WorkspaceFileIndex(tmpDir, { cacheDir: null, watch: false });
+    await index.start();
+
+    expect(index.findByName('index.ts')).toBe('index.ts');
+    expect(index.findByName('Button.tsx')).toBe('src/components/Button.tsx');
+    expect(index.findByName('ton.tsx')).toBeNull();
+  });
+
+  it('should persist a snapshot and serve from it on reopen', async () => {
+    index = new WorkspaceFileIndex(tmpDir, { cacheDir, watch: false });
+    await index.start();
+    await index.dispose();
+    expect(fs.readdirSync(cacheDir).filter(f => f.endsWith('.json'))).toHaveLength(1);
+
+    // The reopened index is ready from the snapshot before its rebuild finishes
+    fs.rmSync(path.join(tmpDir, 'README.md'));
+    index = new WorkspaceFileIndex(tmpDir, { cacheDir, watch: false });
+    await index.start();
+    expect(index.sizeOf('README.md')).toBe(5);
+
+    await index.rebuild();
+    expect(index.sizeOf('README.md')).toBeUndefined();
+  });
+
+  it('should rebuild to pick up changes', async () => {
+    index = new WorkspaceFileIndex(tmpDir, { cacheDir: null, watch: false });
+    await index.start();
+    write(tmpDir, 'src/newFile.ts');
+    fs.rmSync(path.join(tmpDir, 'src/components'), { recursive: true });
+
+    await index.rebuild();
+    expect(index.findByName('newFile.ts')).toBe('src/newFile.ts');
+    expect(index.findByName('Button.tsx')).toBeNull();
+  });
+});
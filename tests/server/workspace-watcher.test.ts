@@ -0,0 +1,76 @@
+import { describe, it, expect, beforeEach, afterEach } from 'vitest';
+import fs from 'node:fs';
+import path from 'node:path';
+import os from 'node:os';
+import { subscribeWorkspaceChanges, type WorkspaceChange } from '../../server/workspace-watcher.js';
+
+describe('subscribeWorkspaceChanges', () => {
+  let tmpDir: string;
+  const unsubscribes: Array<() => void> = [];
+
+  beforeEach(() => {
+    tmpDir = fs.mkdtempSync(path.join(os.tmpdir(), 'sman-watch-'));
+    fs.mkdirSync(path.join(tmpDir, 'src'));
+    fs.mkdirSync(path.join(tmpDir, 'node_modules', 'dep'), { recursive: true });
+  });
+
+  afterEach(() => {
+    for (const unsubscribe of unsubscribes.splice(0)) unsubscribe();
+    fs.rmSync(tmpDir, { recursive: true, force: true });
+  });
+
+  /** Subscribe and resolve once the initial watches are in place */
+  function subscribe(changes: WorkspaceChange[]): Promise<void> {
+    return new Promise((resolve, reject) => {
+      unsubscribes.push(subscribeWorkspaceChanges(tmpDir, {
+        onChanges: (batch) => changes.push(...batch),
+        onReady: resolve,
+        onError: reject,
+      }));
+    });
+  }
+
+  async function waitFor(changes: WorkspaceChange[], rel: string): Promise<void> {
+    const deadline = Date.now() + 5_000;
+    while (!changes.some(([p]) => p === rel)) {
+      if (Date.now() > deadline) throw new Error(`No event for ${rel}: ${JSON.stringify(changes)}`);
+      await new Promise(r => setTimeout(r, 20));
+    }
+  }
+
+  it('should report workspace changes but not node_modules', async () => {
+    const changes: WorkspaceChange[] = [];
+    await subscribe(changes);
+
+    fs.writeFileSync(path.join(tmpDir, 'node_modules', 'dep', 'index.js'), 'x');
+    fs.writeFileSync(path.join(tmpDir, 'src', 'a.ts'), 'x');
+    await waitFor(changes, 'src/a.ts');
+
+    expect(changes.some(([p]) => p?.startsWith('node_modules'))).toBe(false);
+  });
+
+  it('should watch directories created after startup', async () => {
+    const changes: WorkspaceChange[] = [];
+    await subscribe(changes);
+
+    fs.mkdirSync(path.join(tmpDir, 'src', 'new', 'deep'), { recursive: true });
+    await waitFor(changes, 'src/new');
+    // Let the worker install watchers on the new subtree
+    await new Promise(r => setTimeout(r, 100));
+    fs.writeFileSync(path.join(tmpDir, 'src', 'new', 'deep', 'b.ts'), 'x');
+
+    await waitFor(changes, 'src/new/deep/b.ts');
+  });
+
+  it('should share one watcher between subscribers', async () => {
+    const first: WorkspaceChange[] = [];
+    const second: WorkspaceChange[] = [];
+    await subscribe(first);
+    await subscribe(second);
+
+    fs.writeFileSync(path.join(tmpDir, 'src', 'c.ts'), 'x');
+
+    await waitFor(first, 'src/c.ts');
+    await waitFor(second, 'src/c.ts');
+  });
+});
@@ -0,0 +1,109 @@
+import { describe, it, expect, beforeEach, afterEach, vi } from 'vitest';
+import type { WebSocket } from 'ws';
+import { ClientOutbox, OutboundHub, sessionTopic, isValidTopic } from '../../server/ws-outbound.js';
+
+function fakeSocket() {
+  return {
+    readyState: 1,
+    bufferedAmount: 0,
+    send: vi.fn(),
+    close: vi.fn(),
+  };
+}
+
+const asWs = (s: ReturnType<typeof fakeSocket>) => s as unknown as WebSocket;
+const sentFrames = (s: ReturnType<typeof fakeSocket>) => s.send.mock.calls.map(c => JSON.parse(c[0] as string));
+
+describe('ClientOutbox', () => {
+  beforeEach(() => vi.useFakeTimers());
+  afterEach(() => vi.useRealTimers());
+
+  it('should write immediately when the socket is not backed up', () => {
+    const sock = fakeSocket();
+    const outbox = new ClientOutbox(asWs(sock), { highWaterMark: 100 });
+    outbox.send({ type: 'chat.delta', sessionId: 's1', deltaType: 'text', content: 'hi' });
+    expect(sentFrames(sock)).toEqual([{ type: 'chat.delta', sessionId: 's1', deltaType: 'text', content: 'hi' }]);
+  });
+
+  it('should coalesce adjacent deltas under backpressure instead of dropping them', () => {
+    const sock = fakeSocket();
+    sock.bufferedAmount = 1000;
+    const outbox = new ClientOutbox(asWs(sock), { highWaterMark: 100, drainIntervalMs: 10 });
+    outbox.send({ type: 'chat.delta', sessionId: 's1', deltaType: 'text', content: 'a' });
+    outbox.send({ type: 'chat.delta', sessionId: 's1', deltaType: 'text', content: 'b' });
+    outbox.send({ type: 'chat.delta', sessionId: 's1', deltaType: 'thinking', content: 'x' });
+    outbox.send({ type: 'chat.delta', sessionId: 's1', deltaType: 'thinking', content: 'y' });
+    expect(sock.send).not.toHaveBeenCalled();
+    expect(outbox.queued).toBe(2);
+
+    sock.bufferedAmount = 0;
+    vi.advanceTimersByTime(10);
+    expect(sentFrames(sock)).toEqual([
+      { type: 'chat.delta', sessionId: 's1', deltaType: 'text', content: 'ab' },
+      { type: 'chat.delta', sessionId: 's1', deltaType: 'thinking', content: 'xy' },
+    ]);
+  });
+
+  it('should not merge deltas across an intervening frame', () => {
+    const sock = fakeSocket();
+    sock.bufferedAmount = 1000;
+    const outbox = new ClientOutbox(asWs(sock), { highWaterMark: 100 });
+    outbox.send({ type: 'chat.delta', sessionId: 's1', deltaType: 'text', content: 'a' });
+    outbox.send({ type: 'chat.segment', sessionId: 's1', segmentType: 'text' });
+    outbox.send({ type: 'chat.delta', sessionId: 's1', deltaType: 'text', content: 'b' });
+    expect(outbox.queued).toBe(3);
+  });
+
+  it('should keep only the latest queued progress frame', () => {
+    const sock = fakeSocket();
+    sock.bufferedAmount = 1000;
+    const outbox = new ClientOutbox(asWs(sock), { highWaterMark: 100, drainIntervalMs: 10 });
+    outbox.send({ type: 'batch.progress', taskId: 't1', successCount: 1 });
+    outbox.send({ type: 'batch.progress', taskId: 't1', successCount: 2 });
+    expect(outbox.queued).toBe(1);
+
+    sock.bufferedAmount = 0;
+    vi.advanceTimersByTime(10);
+    expect(sentFrames(sock)).toEqual([{ type: 'batch.progress', taskId: 't1', successCount: 2 }]);
+  });
+
+  it('should close the socket when the queue overflows', () => {
+    const sock = fakeSocket();
+    sock.bufferedAmount = 1000;
+    const outbox = new ClientOutbox(asWs(sock), { highWaterMark: 100, maxQueuedFrames: 2 });
+    for (let i = 0; i < 3; i++) outbox.send(JSON.stringify({ type: 'x', i }));
+    expect(sock.close).toHaveBeenCalledWith(1013, expect.any(String));
+  });
+});
+
+describe('OutboundHub', () => {
+  it('should deliver topic frames only to subscribers', () => {
+    const hub = new OutboundHub();
+    const a = fakeSocket();
+    const b = fakeSocket();
+    hub.attach(asWs(a));
+    hub.attach(asWs(b));
+    hub.subscribe(asWs(a), sessionTopic('s1'));
+
+    expect(hub.publish(sessionTopic('s1'), { type: 'chat.done', sessionId: 's1' })).toBe(1);
+    expect(a.send).toHaveBeenCalledTimes(1);
+    expect(b.send).not.toHaveBeenCalled();
+  });
+
+  it('should drop subscriptions on detach', () => {
+    const hub = new OutboundHub();
+    const a = fakeSocket();
+    hub.attach(asWs(a));
+    hub.subscribe(asWs(a), 'smartpath:p1');
+    hub.detach(asWs(a));
+    expect(hub.subscribers('smartpath:p1').size).toBe(0);
+    expect(hub.publish('smartpath:p1', { type: 'smartpath.stepExecutionProgress', pathId: 'p1' })).toBe(0);
+  });
+
+  it('should only accept known topic prefixes', () => {
+    expect(isValidTopic('smartpath:abc')).toBe(true);
+    expect(isValidTopic('im:room')).toBe(false);
+    expect(isValidTopic('batch:t1')).toBe(false);
+    expect(isValidTopic(42)).toBe(false);
+  });
+});
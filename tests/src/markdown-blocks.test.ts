@@ -0,0 +1,57 @@
+import { describe, it, expect } from 'vitest';
+import { MarkdownBlockSplitter } from '../../src/lib/markdown-blocks';
+
+function split(text: string): string[] {
+  const splitter = new MarkdownBlockSplitter();
+  splitter.update(text);
+  return splitter.blocks().map(b => b.text);
+}
+
+/** Feed the text in small deltas, as a stream does */
+function splitStreamed(text: string, step = 3): string[] {
+  const splitter = new MarkdownBlockSplitter();
+  for (let i = 0; i < text.length; i += step) splitter.append(text.slice(i, i + step));
+  return splitter.blocks().map(b => b.text);
+}
+
+describe('MarkdownBlockSplitter', () => {
+  it('should split paragraphs, headings and fences into blocks', () => {
+    const text = '# Title\n\nFirst paragraph\nstill first\n\n```ts\nconst a = 1;\n```\nAfter\n';
+    expect(split(text)).toEqual([
+      '# Title\n',
+      '\nFirst paragraph\nstill first\n\n',
+      '```ts\nconst a = 1;\n```\n',
+      'After\n',
+    ]);
+  });
+
+  it('should keep a fence nested in a list item inside the list block', () => {
+    const text = '1. Install:\n   ```bash\n   # install deps\n   npm i\n   ```\n2. Run it\n\nDone.\n';
+    const expected = ['1. Install:\n   ```bash\n   # install deps\n   npm i\n   ```\n2. Run it\n\n', 'Done.\n'];
+    expect(split(text)).toEqual(expected);
+    expect(splitStreamed(text)).toEqual(expected);
+  });
+
+  it('should not split on headings or blank lines inside code', () => {
+    const text = '```python\n# comment\n\n\n## not a heading\n```\n~~~\n# shell comment\n\n```\n~~~\nTail\n';
+    expect(split(text)).toEqual([
+      '```python\n# comment\n\n\n## not a heading\n```\n',
+      '~~~\n# shell comment\n\n```\n~~~\n',
+      'Tail\n',
+    ]);
+  });
+
+  it('should only close a fence with the same character and at least its length', () => {
+    const text = '````md\n```\ninner\n```\n````\nAfter\n';
+    expect(split(text)).toEqual(['````md\n```\ninner\n```\n````\n', 'After\n']);
+  });
+
+  it('should keep block ids stable while streaming', () => {
+    const splitter = new MarkdownBlockSplitter();
+    splitter.update('# A\n\npara');
+    const first = splitter.blocks();
+    const { changedFrom } = splitter.update('# A\n\npara more\n\n# B\n');
+    expect(changedFrom).toBe(1);
+    expect(splitter.blocks()[0]).toEqual(first[0]);
+  });
+});
@@ -0,0 +1,79 @@
+import { describe, it, expect, afterEach, vi } from 'vitest';
+import { WsClient } from '../../src/lib/ws-client';
+
+class FakeSocket {
+  static OPEN = 1;
+  static CONNECTING = 0;
+  static last: FakeSocket;
+  readyState = FakeSocket.OPEN;
+  sent: Array<Record<string, unknown>> = [];
+  onopen: (() => void) | null = null;
+  onmessage: ((event: { data: string }) => void) | null = null;
+  onclose: (() => void) | null = null;
+  onerror: (() => void) | null = null;
+
+  constructor(public url: string) {
+    FakeSocket.last = this;
+  }
+
+  send(data: string): void {
+    this.sent.push(JSON.parse(data));
+  }
+
+  close(): void {
+    this.readyState = 3;
+  }
+
+  receive(msg: Record<string, unknown>): void {
+    this.onmessage?.({ data: JSON.stringify(msg) });
+  }
+}
+
+function connectClient() {
+  vi.stubGlobal('WebSocket', FakeSocket);
+  const client = new WsClient({ url: 'ws://test/ws', token: 't', autoReconnect: false });
+  client.connect();
+  const socket = FakeSocket.last;
+  socket.receive({ type: 'auth.verified' });
+  const deltas: number[] = [];
+  client.on('chat.delta', (msg) => deltas.push((msg as { seq: number }).seq));
+  return { client, socket, deltas };
+}
+
+describe('WsClient stream resume', () => {
+  afterEach(() => {
+    vi.unstubAllGlobals();
+  });
+
+  it('should apply replayed frames before live frames that arrived first', () => {
+    const { client, socket, deltas } = connectClient();
+    socket.receive({ type: 'chat.delta', sessionId: 's1', seq: 1 });
+
+    client.resumeSession('s1');
+    expect(socket.sent.at(-1)).toEqual({ type: 'session.resume', sessionId: 's1', lastSeq: 1 });
+    // A live frame overtakes the replay of seqs 2-4
+    socket.receive({ type: 'chat.delta', sessionId: 's1', seq: 4 });
+    for (const seq of [2, 3, 4]) socket.receive({ type: 'chat.delta', sessionId: 's1', seq });
+    expect(deltas).toEqual([1]);
+
+    socket.receive({ type: 'session.resumed', sessionId: 's1', replayed: 3, lastSeq: 4, reset: false });
+    socket.receive({ type: 'chat.delta', sessionId: 's1', seq: 5 });
+
+    expect(deltas).toEqual([1, 2, 3, 4, 5]);
+    expect(client.lastSeq('s1')).toBe(5);
+  });
+
+  it('should drop held frames when the server cannot replay the gap', () => {
+    const { client, socket, deltas } = connectClient();
+    const resumed = vi.fn();
+    client.on('session.resumed', resumed);
+
+    client.resumeSession('s1');
+    socket.receive({ type: 'chat.delta', sessionId: 's1', seq: 9 });
+    socket.receive({ type: 'session.resumed', sessionId: 's1', replayed: 0, lastSeq: 9, reset: true });
+
+    expect(deltas).toEqual([]);
+    expect(resumed).toHaveBeenCalledTimes(1);
+    expect(client.lastSeq('s1')).toBe(9);
+  });
+});